@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping of requests to a wrapper by {@link Mapper#map(MessageBytes, MessageBytes, String, MappingData)} for a host
+ * with the given number of contexts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapperBenchmark {
+
+    private static final String HOST_NAME = "www.example.org";
+
+    @Param({ "10", "1000" })
+    public int contextCount;
+
+    private Mapper mapper;
+    private MessageBytes host;
+    private MessageBytes exactUri;
+    private MessageBytes prefixUri;
+    private MessageBytes extensionUri;
+    private MessageBytes defaultUri;
+    private final MappingData mappingData = new MappingData();
+
+
+    @Setup
+    public void setup() {
+        mapper = new Mapper();
+        Host mappedHost = new StandardHost();
+        mappedHost.setName(HOST_NAME);
+        mapper.addHost(HOST_NAME, new String[0], mappedHost);
+        mapper.setDefaultHostName(HOST_NAME);
+
+        for (int i = 0; i < contextCount; i++) {
+            String path = "/app" + i;
+            Context context = new StandardContext();
+            context.setName(path);
+            List<WrapperMappingInfo> wrappers = new ArrayList<>();
+            wrappers.add(new WrapperMappingInfo("/", createWrapper("default"), false, false));
+            wrappers.add(new WrapperMappingInfo("/login", createWrapper("login"), false, false));
+            wrappers.add(new WrapperMappingInfo("/api/*", createWrapper("api"), false, false));
+            wrappers.add(new WrapperMappingInfo("*.jsp", createWrapper("jsp"), false, false));
+            mapper.addContextVersion(HOST_NAME, mappedHost, path, "1", context, new String[0], null, wrappers);
+        }
+
+        String contextPath = "/app" + (contextCount / 2);
+        host = createMessageBytes(HOST_NAME);
+        exactUri = createMessageBytes(contextPath + "/login");
+        prefixUri = createMessageBytes(contextPath + "/api/orders/1234/items");
+        extensionUri = createMessageBytes(contextPath + "/views/orders/list.jsp");
+        defaultUri = createMessageBytes(contextPath + "/static/css/site.css");
+    }
+
+
+    @Benchmark
+    public MappingData mapExact() throws IOException {
+        return map(exactUri);
+    }
+
+
+    @Benchmark
+    public MappingData mapPrefix() throws IOException {
+        return map(prefixUri);
+    }
+
+
+    @Benchmark
+    public MappingData mapExtension() throws IOException {
+        return map(extensionUri);
+    }
+
+
+    @Benchmark
+    public MappingData mapDefault() throws IOException {
+        return map(defaultUri);
+    }
+
+
+    private MappingData map(MessageBytes uri) throws IOException {
+        mappingData.recycle();
+        mapper.map(host, uri, null, mappingData);
+        return mappingData;
+    }
+
+
+    private static Wrapper createWrapper(String name) {
+        Wrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
+
+
+    private static MessageBytes createMessageBytes(String value) {
+        MessageBytes mb = MessageBytes.newInstance();
+        mb.setString(value);
+        mb.toChars();
+        // Mapper requires the limit to be disabled
+        mb.getCharChunk().setLimit(-1);
+        return mb;
+    }
+}
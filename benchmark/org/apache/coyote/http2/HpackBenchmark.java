@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * HPACK encoding of typical response headers and decoding of typical request headers. The first variants use a new
+ * encoder / decoder for each header block (the first block on a connection) and the repeated variants reuse the
+ * encoder / decoder so the dynamic table is populated (subsequent blocks on a connection).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HpackBenchmark {
+
+    private final MimeHeaders responseHeaders = new MimeHeaders();
+    private final ByteBuffer encoded = ByteBuffer.allocate(16 * 1024);
+    private HpackEncoder repeatedEncoder;
+
+    private ByteBuffer requestBlock;
+    private ByteBuffer repeatedRequestBlock;
+    private HpackDecoder repeatedDecoder;
+
+
+    @Setup
+    public void setup() throws HpackException {
+        responseHeaders.addValue(":status").setString("200");
+        responseHeaders.addValue("content-type").setString("text/html;charset=UTF-8");
+        responseHeaders.addValue("content-length").setString("12345");
+        responseHeaders.addValue("date").setString("Tue, 15 Oct 2024 10:15:30 GMT");
+        responseHeaders.addValue("cache-control").setString("no-cache, no-store, must-revalidate");
+        responseHeaders.addValue("set-cookie").setString("JSESSIONID=5A3C1F0E9B2D4C6A8E7F1A2B3C4D5E6F; Path=/; " +
+                "HttpOnly; SameSite=Lax");
+        responseHeaders.addValue("vary").setString("accept-encoding");
+        responseHeaders.addValue("x-request-id").setString("3f2b8c1e-7d4a-4e9b-9c6f-2a1d0e5b7c8a");
+        repeatedEncoder = new HpackEncoder();
+
+        MimeHeaders requestHeaders = new MimeHeaders();
+        requestHeaders.addValue(":method").setString("GET");
+        requestHeaders.addValue(":scheme").setString("https");
+        requestHeaders.addValue(":authority").setString("www.example.org");
+        requestHeaders.addValue(":path").setString("/products/catalogue?page=2&sort=price");
+        requestHeaders.addValue("user-agent").setString("Mozilla/5.0 (Windows NT 10.0; Win64; x64) " +
+                "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36");
+        requestHeaders.addValue("accept").setString("text/html,application/xhtml+xml,application/xml;q=0.9," +
+                "*/*;q=0.8");
+        requestHeaders.addValue("accept-encoding").setString("gzip, deflate, br, zstd");
+        requestHeaders.addValue("accept-language").setString("en-GB,en-US;q=0.9,en;q=0.8");
+        requestHeaders.addValue("cookie").setString("JSESSIONID=5A3C1F0E9B2D4C6A8E7F1A2B3C4D5E6F; theme=dark");
+
+        // The first block populates the dynamic table, the second uses it
+        HpackEncoder encoder = new HpackEncoder();
+        requestBlock = encode(encoder, requestHeaders);
+        repeatedRequestBlock = encode(encoder, requestHeaders);
+
+        repeatedDecoder = new HpackDecoder();
+        repeatedDecoder.setHeaderEmitter(new NoOpHeaderEmitter(null));
+        repeatedDecoder.decode(requestBlock.duplicate());
+    }
+
+
+    @Benchmark
+    public ByteBuffer encodeFirst() {
+        encoded.clear();
+        new HpackEncoder().encode(responseHeaders, encoded);
+        return encoded;
+    }
+
+
+    @Benchmark
+    public ByteBuffer encodeRepeated() {
+        encoded.clear();
+        repeatedEncoder.encode(responseHeaders, encoded);
+        return encoded;
+    }
+
+
+    @Benchmark
+    public void decodeFirst(Blackhole blackhole) throws HpackException {
+        HpackDecoder decoder = new HpackDecoder();
+        decoder.setHeaderEmitter(new NoOpHeaderEmitter(blackhole));
+        decoder.decode(requestBlock.duplicate());
+    }
+
+
+    @Benchmark
+    public void decodeRepeated(Blackhole blackhole) throws HpackException {
+        repeatedDecoder.setHeaderEmitter(new NoOpHeaderEmitter(blackhole));
+        repeatedDecoder.decode(repeatedRequestBlock.duplicate());
+    }
+
+
+    private static ByteBuffer encode(HpackEncoder encoder, MimeHeaders headers) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        encoder.encode(headers, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+
+    private static class NoOpHeaderEmitter implements HpackDecoder.HeaderEmitter {
+
+        private final Blackhole blackhole;
+
+        NoOpHeaderEmitter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void emitHeader(String name, String value) {
+            if (blackhole != null) {
+                blackhole.consume(name);
+                blackhole.consume(value);
+            }
+        }
+
+        @Override
+        public void setHeaderException(StreamException streamException) {
+            // NO-OP
+        }
+
+        @Override
+        public void validateHeaders() throws StreamException {
+            // NO-OP
+        }
+    }
+}
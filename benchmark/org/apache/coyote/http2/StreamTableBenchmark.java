@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Stream look-up and stream churn (a new stream is created and the oldest stream is pruned) for a connection that
+ * retains the given number of streams, comparing the {@link StreamTable} with the {@link ConcurrentSkipListMap} it
+ * replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamTableBenchmark {
+
+    @Param({ "100", "1000" })
+    public int streamCount;
+
+    private final ConcurrentNavigableMap<Integer,AbstractNonZeroStream> map = new ConcurrentSkipListMap<>();
+    private final StreamTable table = new StreamTable();
+    private int lookupId;
+    private int mapNextId;
+    private int tableNextId;
+
+
+    @Setup
+    public void setup() {
+        lookupId = 1;
+        int id = 1;
+        for (int i = 0; i < streamCount; i++) {
+            AbstractNonZeroStream stream = createStream(id);
+            map.put(stream.getIdentifier(), stream);
+            table.put(stream);
+            id += 2;
+        }
+        mapNextId = id;
+        tableNextId = id;
+    }
+
+
+    @Benchmark
+    public AbstractNonZeroStream lookupSkipListMap() {
+        return map.get(Integer.valueOf(nextLookupId()));
+    }
+
+
+    @Benchmark
+    public AbstractNonZeroStream lookupStreamTable() {
+        return table.get(nextLookupId());
+    }
+
+
+    @Benchmark
+    public int churnSkipListMap() {
+        AbstractNonZeroStream stream = createStream(mapNextId);
+        mapNextId += 2;
+        map.put(stream.getIdentifier(), stream);
+        Iterator<AbstractNonZeroStream> iter = map.values().iterator();
+        iter.next();
+        iter.remove();
+        return map.size();
+    }
+
+
+    @Benchmark
+    public int churnStreamTable() {
+        AbstractNonZeroStream stream = createStream(tableNextId);
+        tableNextId += 2;
+        table.put(stream);
+        return table.prune(1, s -> true, s -> {});
+    }
+
+
+    /*
+     * Cycles through the odd, client initiated, stream identifiers 1, 3, 5... that were added in setup() so every
+     * lookup is a hit.
+     */
+    private int nextLookupId() {
+        int id = lookupId;
+        lookupId += 2;
+        if (lookupId >= streamCount * 2) {
+            lookupId = 1;
+        }
+        return id;
+    }
+
+
+    private static AbstractNonZeroStream createStream(int id) {
+        return new RecycledStream("0", Integer.valueOf(id), new StreamStateMachine("0", Integer.toString(id)), 0);
+    }
+}
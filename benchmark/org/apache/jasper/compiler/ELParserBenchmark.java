@@ -0,0 +1,56 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.el.parser.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of EL by Jasper's {@link ELParser}, which splits JSP template text into text and EL nodes, and by the EL
+ * implementation's parser, which builds the expression tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ELParserBenchmark {
+
+    private static final String TEMPLATE_TEXT = "<td class=\"${row.index % 2 == 0 ? 'even' : 'odd'}\">" +
+            "${fn:escapeXml(order.customer.name)}</td><td>${order.total * (1 + taxRate)}</td>" +
+            "<td>#{order.status}</td><td>\\${literal}</td>";
+
+    private static final String EXPRESSION = "${order.items.stream().filter(i -> i.price > 10)" +
+            ".map(i -> i.name).toList() += ' and ' += empty order.notes ? 'none' : order.notes}";
+
+
+    @Benchmark
+    public ELNode.Nodes parseTemplateText() {
+        return ELParser.parse(TEMPLATE_TEXT, false);
+    }
+
+
+    @Benchmark
+    public Node parseExpression() {
+        return org.apache.el.parser.ELParser.parse(EXPRESSION);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Conversions between bytes and characters using {@link ByteChunk}, {@link CharChunk}, {@link MessageBytes} and the
+ * converters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionBenchmark {
+
+    @Param({ "ISO-8859-1", "UTF-8" })
+    public String charsetName;
+
+    @Param({ "16", "1024" })
+    public int length;
+
+    private Charset charset;
+    private byte[] bytes;
+    private char[] chars;
+
+    private final MessageBytes messageBytes = MessageBytes.newInstance();
+    private final ByteChunk byteChunk = new ByteChunk();
+    private final CharChunk charChunk = new CharChunk();
+    private B2CConverter b2c;
+    private C2BConverter c2b;
+
+
+    @Setup
+    public void setup() {
+        charset = Charset.forName(charsetName);
+        StringBuilder sb = new StringBuilder(length);
+        // Mostly ASCII with some non-ASCII characters as is typical for URIs and parameters
+        String sample = "/path/to/r\u00e9sum\u00e9s?name=value&other=";
+        while (sb.length() < length) {
+            sb.append(sample.charAt(sb.length() % sample.length()));
+        }
+        String text = sb.toString();
+        bytes = text.getBytes(charset);
+        chars = text.toCharArray();
+        byteChunk.allocate(bytes.length * 2, -1);
+        charChunk.allocate(chars.length * 2, -1);
+        b2c = new B2CConverter(charset);
+        c2b = new C2BConverter(charset);
+    }
+
+
+    @Benchmark
+    public String messageBytesToString() {
+        messageBytes.setBytes(bytes, 0, bytes.length);
+        messageBytes.setCharset(charset);
+        return messageBytes.toString();
+    }
+
+
+    @Benchmark
+    public String byteChunkToString() {
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 0, bytes.length);
+        bc.setCharset(charset);
+        return bc.toString();
+    }
+
+
+    @Benchmark
+    public CharChunk bytesToChars() throws IOException {
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 0, bytes.length);
+        charChunk.recycle();
+        b2c.recycle();
+        b2c.convert(bc, charChunk, true);
+        return charChunk;
+    }
+
+
+    @Benchmark
+    public ByteChunk charsToBytes() throws IOException {
+        CharChunk cc = new CharChunk();
+        cc.setChars(chars, 0, chars.length);
+        byteChunk.recycle();
+        c2b.recycle();
+        c2b.convert(cc, byteChunk);
+        return byteChunk;
+    }
+
+
+    @Benchmark
+    public byte[] stringToBytesJre() {
+        // Reference point for the conversions above
+        return new String(chars).getBytes(charset);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compression of a small JSON response body using a new Deflater for each body (as GZIPOutputStream does) and using a
+ * Deflater obtained from a {@link DeflaterPool}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeflaterPoolBenchmark {
+
+    @Param({ "1", "6" })
+    public int level;
+
+    private byte[] body;
+    private final byte[] output = new byte[64 * 1024];
+    private DeflaterPool pool;
+
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i)
+                    .append("\",\"enabled\":true,\"tags\":[\"alpha\",\"beta\"]}");
+        }
+        sb.append(']');
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        pool = new DeflaterPool(level, true, -1);
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        pool.clear();
+    }
+
+
+    @Benchmark
+    public int newDeflater() {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            return compress(deflater);
+        } finally {
+            deflater.end();
+        }
+    }
+
+
+    @Benchmark
+    public int pooledDeflater() {
+        Deflater deflater = pool.lease();
+        try {
+            return compress(deflater);
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+
+    private int compress(Deflater deflater) {
+        deflater.setInput(body);
+        deflater.finish();
+        int len = 0;
+        while (!deflater.finished()) {
+            len += deflater.deflate(output, len, output.length - len);
+        }
+        return len;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.Cookie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of a typical browser Cookie header and generation of a session cookie Set-Cookie header by
+ * {@link Rfc6265CookieProcessor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CookieProcessorBenchmark {
+
+    private static final byte[] COOKIE_HEADER = ("JSESSIONID=5A3C1F0E9B2D4C6A8E7F1A2B3C4D5E6F; " +
+            "_ga=GA1.2.1234567890.1700000000; _gid=GA1.2.987654321.1700000000; theme=dark; " +
+            "consent=analytics%3Dtrue%26marketing%3Dfalse; \"quoted\"=\"value\"")
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    private final Rfc6265CookieProcessor cookieProcessor = new Rfc6265CookieProcessor();
+    private final MimeHeaders headers = new MimeHeaders();
+    private final ServerCookies serverCookies = new ServerCookies(8);
+    private Cookie sessionCookie;
+
+
+    @Setup
+    public void setup() {
+        headers.addValue("Cookie").setBytes(COOKIE_HEADER, 0, COOKIE_HEADER.length);
+        sessionCookie = new Cookie("JSESSIONID", "5A3C1F0E9B2D4C6A8E7F1A2B3C4D5E6F");
+        sessionCookie.setPath("/app");
+        sessionCookie.setHttpOnly(true);
+        sessionCookie.setSecure(true);
+    }
+
+
+    @Benchmark
+    public ServerCookies parse() {
+        serverCookies.recycle();
+        cookieProcessor.parseCookieHeader(headers, serverCookies);
+        return serverCookies;
+    }
+
+
+    @Benchmark
+    public String generate() {
+        return cookieProcessor.generateHeader(sessionCookie, null);
+    }
+}
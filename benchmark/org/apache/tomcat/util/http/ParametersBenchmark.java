@@ -0,0 +1,76 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Processing of application/x-www-form-urlencoded parameters by {@link Parameters}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParametersBenchmark {
+
+    @Param({ "4", "64" })
+    public int parameterCount;
+
+    private final Parameters parameters = new Parameters();
+    private byte[] body;
+    private byte[] buffer;
+
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parameterCount; i++) {
+            if (i > 0) {
+                sb.append('&');
+            }
+            // A mix of plain and %nn encoded values
+            sb.append("field").append(i).append('=');
+            if (i % 2 == 0) {
+                sb.append("value").append(i);
+            } else {
+                sb.append("caf%C3%A9+cr%C3%A8me+").append(i);
+            }
+        }
+        body = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        buffer = new byte[body.length];
+    }
+
+
+    @Benchmark
+    public Parameters processParameters() {
+        parameters.recycle();
+        parameters.setCharset(StandardCharsets.UTF_8);
+        // %nn decoding is performed in place so restore the original body
+        System.arraycopy(body, 0, buffer, 0, body.length);
+        parameters.processParameters(buffer, 0, buffer.length);
+        return parameters;
+    }
+}
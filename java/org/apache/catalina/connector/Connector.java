@@ -239,6 +239,12 @@ public class Connector extends LifecycleMBeanBase {
     protected boolean useIPVHosts = false;
 
 
+    /**
+     * Should the number of bytes allocated by the container thread be recorded for each request?
+     */
+    protected boolean trackAllocations = false;
+
+
     /**
      * Coyote Protocol handler class name. See {@link #Connector()} for current default.
      */
@@ -843,6 +849,26 @@ public class Connector extends LifecycleMBeanBase {
     }
 
 
+    /**
+     * @return <code>true</code> if the number of bytes allocated by the container thread while processing each request
+     *             is recorded in the allocation histogram of the global request processor
+     */
+    public boolean getTrackAllocations() {
+        return trackAllocations;
+    }
+
+
+    /**
+     * Enable or disable recording of the number of bytes allocated by the container thread while processing each
+     * request. This is a diagnostic aid and relies on the JVM supporting per thread allocation accounting.
+     *
+     * @param trackAllocations <code>true</code> to record allocations
+     */
+    public void setTrackAllocations(boolean trackAllocations) {
+        this.trackAllocations = trackAllocations;
+    }
+
+
     public String getExecutorName() {
         Object obj = protocolHandler.getExecutor();
         if (obj instanceof org.apache.catalina.Executor) {
@@ -18,6 +18,8 @@ package org.apache.catalina.connector;
 
 import java.io.IOException;
 import java.io.Serial;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
@@ -41,6 +43,7 @@ import org.apache.catalina.util.SessionConfig;
 import org.apache.catalina.util.URLEncoder;
 import org.apache.coyote.ActionCode;
 import org.apache.coyote.Adapter;
+import org.apache.coyote.RequestGroupInfo;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
@@ -73,6 +76,25 @@ public class CoyoteAdapter implements Adapter {
 
     private static final EnumSet<SessionTrackingMode> SSL_ONLY = EnumSet.of(SessionTrackingMode.SSL);
 
+    /**
+     * Source of the per thread allocation counts used when allocation tracking is enabled. {@code null} if the JVM does
+     * not support per thread allocation accounting.
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN;
+
+    static {
+        com.sun.management.ThreadMXBean threadMXBean = null;
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+                threadMXBean = sunBean;
+            }
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+        }
+        THREAD_MX_BEAN = threadMXBean;
+    }
+
     public static final int ADAPTER_NOTES = 1;
 
 
@@ -330,6 +352,13 @@ public class CoyoteAdapter implements Adapter {
         boolean async = false;
         boolean postParseSuccess = false;
 
+        long allocatedBytesStart = -1;
+        Context allocationContext = null;
+        Wrapper allocationWrapper = null;
+        if (THREAD_MX_BEAN != null && connector.getTrackAllocations()) {
+            allocatedBytesStart = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        }
+
         req.setRequestThread();
 
         try {
@@ -375,10 +404,8 @@ public class CoyoteAdapter implements Adapter {
         } catch (IOException e) {
             // Ignore
         } finally {
-            AtomicBoolean error = new AtomicBoolean(false);
-            res.action(ActionCode.IS_ERROR, error);
-
-            if (request.isAsyncCompleting() && error.get()) {
+            // Only check for an error if it might matter to avoid a per request allocation
+            if (request.isAsyncCompleting() && isError(res)) {
                 // Connection will be forcibly closed which will prevent
                 // completion happening at the usual point. Need to trigger
                 // call to onComplete() here.
@@ -415,12 +442,43 @@ public class CoyoteAdapter implements Adapter {
             req.getRequestProcessor().setWorkerThreadName(null);
             req.clearRequestThread();
 
+            if (allocatedBytesStart >= 0) {
+                allocationContext = request.getContext();
+                allocationWrapper = request.getWrapper();
+            }
+
             // Recycle the wrapper request and response
             if (!async) {
                 updateWrapperErrorCount(request, response);
                 request.recycle();
                 response.recycle();
             }
+
+            if (allocatedBytesStart >= 0) {
+                recordAllocatedBytes(req, allocationContext, allocationWrapper, allocatedBytesStart);
+            }
+        }
+    }
+
+
+    private static boolean isError(org.apache.coyote.Response res) {
+        AtomicBoolean error = new AtomicBoolean(false);
+        res.action(ActionCode.IS_ERROR, error);
+        return error.get();
+    }
+
+
+    private static void recordAllocatedBytes(org.apache.coyote.Request req, Context context, Wrapper wrapper,
+            long allocatedBytesStart) {
+        long allocatedBytesEnd = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        if (context == null || allocatedBytesEnd < allocatedBytesStart) {
+            // Request was not mapped or accounting is not available for this thread
+            return;
+        }
+        RequestGroupInfo global = req.getRequestProcessor().getGlobalProcessor();
+        if (global != null) {
+            global.addAllocatedBytes(context.getName(), wrapper == null ? "" : wrapper.getName(),
+                    allocatedBytesEnd - allocatedBytesStart);
         }
     }
 
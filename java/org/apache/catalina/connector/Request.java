@@ -302,9 +302,10 @@ public class Request implements HttpServletRequest {
 
 
     /**
-     * Hash map used in the getParametersMap method.
+     * Hash map used in the getParametersMap method. Created on first use since most requests never call
+     * getParameterMap().
      */
-    protected ParameterMap<String,String[]> parameterMap = new ParameterMap<>();
+    protected ParameterMap<String,String[]> parameterMap = null;
 
 
     /**
@@ -486,8 +487,8 @@ public class Request implements HttpServletRequest {
         recycleCookieInfo(false);
 
         if (getDiscardFacades()) {
-            parameterMap = new ParameterMap<>();
-        } else {
+            parameterMap = null;
+        } else if (parameterMap != null) {
             parameterMap.setLocked(false);
             parameterMap.clear();
         }
@@ -1068,7 +1069,9 @@ public class Request implements HttpServletRequest {
     @Override
     public Map<String,String[]> getParameterMap() {
 
-        if (parameterMap.isLocked()) {
+        if (parameterMap == null) {
+            parameterMap = new ParameterMap<>();
+        } else if (parameterMap.isLocked()) {
             return parameterMap;
         }
 
@@ -74,6 +74,16 @@ public class ClusterRuleSet implements RuleSet {
         digester.addSetProperties(prefix + "Manager/SessionIdGenerator");
         digester.addSetNext(prefix + "Manager/SessionIdGenerator", "setSessionIdGenerator",
                 "org.apache.catalina.SessionIdGenerator");
+        digester.addObjectCreate(prefix + "Manager/SessionSerializer",
+                "org.apache.catalina.session.CompactSessionSerializer", "className");
+        digester.addSetProperties(prefix + "Manager/SessionSerializer");
+        digester.addSetNext(prefix + "Manager/SessionSerializer", "setSessionSerializer",
+                "org.apache.catalina.session.SessionSerializer");
+        digester.addObjectCreate(prefix + "Manager/SessionSerializer/Codec", null, // MUST be specified in the element
+                "className");
+        digester.addSetProperties(prefix + "Manager/SessionSerializer/Codec");
+        digester.addSetNext(prefix + "Manager/SessionSerializer/Codec", "addCodec",
+                "org.apache.catalina.session.SessionAttributeCodec");
 
         digester.addObjectCreate(prefix + "Channel", null, // MUST be specified in the element
                 "className");
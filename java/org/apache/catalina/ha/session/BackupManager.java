@@ -26,6 +26,7 @@ import org.apache.catalina.Session;
 import org.apache.catalina.ha.ClusterManager;
 import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.tribes.Channel;
+import org.apache.catalina.tribes.tipis.AbstractReplicatedMap.MapEntry;
 import org.apache.catalina.tribes.tipis.AbstractReplicatedMap.MapOwner;
 import org.apache.catalina.tribes.tipis.LazyReplicatedMap;
 import org.apache.juli.logging.Log;
@@ -106,9 +107,29 @@ public class BackupManager extends ClusterManagerBase implements MapOwner, Distr
                 session.setPrimarySession(true);
                 session.endAccess();
             }
+            scheduleExpiry(session);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This node only expires the sessions for which it is the primary node. The map entry is examined directly as
+     * looking up a session in the replicated map may make this node the primary node for that session.
+     */
+    @Override
+    protected boolean isExpiryManaged(Session session) {
+        if (sessions instanceof LazyReplicatedMap<String,Session> map) {
+            String id = session.getIdInternal();
+            if (id == null) {
+                return false;
+            }
+            MapEntry<String,Session> entry = map.getInternal(id);
+            return entry != null && entry.isPrimary() && entry.getValue() == session;
+        }
+        return true;
+    }
+
     @Override
     public Session createEmptySession() {
         return new DeltaSession(this);
@@ -18,6 +18,7 @@ package org.apache.catalina.ha.session;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 
 import org.apache.catalina.Cluster;
 import org.apache.catalina.Context;
@@ -131,6 +132,25 @@ public abstract class ClusterManagerBase extends ManagerBase implements ClusterM
     }
 
 
+    /**
+     * Open a stream to read replicated session data that was written with the configured
+     * {@link org.apache.catalina.session.SessionSerializer}.
+     *
+     * @param data   The replicated session data
+     * @param offset The offset of the session data in the array
+     * @param length The length of the session data
+     *
+     * @return The stream from which the session data should be read
+     *
+     * @throws IOException If the stream cannot be opened
+     */
+    public ObjectInputStream getSessionInputStream(byte[] data, int offset, int length) throws IOException {
+        ByteArrayInputStream fis = new ByteArrayInputStream(data, offset, length);
+        return getSessionSerializer().createObjectInputStream(fis,
+                is -> new ReplicationStream(is, getClassLoaders()));
+    }
+
+
     // ---------------------------------------------------- persistence handler
 
     /**
@@ -172,6 +192,7 @@ public abstract class ClusterManagerBase extends ManagerBase implements ClusterM
                 // Ignore
             }
         }
+        copy.setSessionSerializer(getSessionSerializer());
         copy.setRecordAllActions(isRecordAllActions());
     }
 
@@ -33,7 +33,6 @@ import org.apache.catalina.ha.ClusterManager;
 import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.tribes.Channel;
 import org.apache.catalina.tribes.Member;
-import org.apache.catalina.tribes.io.ReplicationStream;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
@@ -514,10 +513,9 @@ public class DeltaManager extends ClusterManagerBase {
      */
     protected byte[] serializeSessionId(String sessionId) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeUTF(sessionId);
-        oos.flush();
-        oos.close();
+        try (ObjectOutputStream oos = getSessionSerializer().createObjectOutputStream(bos)) {
+            oos.writeUTF(sessionId);
+        }
         return bos.toByteArray();
     }
 
@@ -531,10 +529,9 @@ public class DeltaManager extends ClusterManagerBase {
      * @throws IOException if an input/output error occurs
      */
     protected String deserializeSessionId(byte[] data) throws IOException {
-        ReplicationStream ois = getReplicationStream(data);
-        String sessionId = ois.readUTF();
-        ois.close();
-        return sessionId;
+        try (ObjectInputStream ois = getSessionInputStream(data, 0, data.length)) {
+            return ois.readUTF();
+        }
     }
 
     /**
@@ -553,7 +550,7 @@ public class DeltaManager extends ClusterManagerBase {
 
         // Open an input stream to the specified pathname, if any
         // Load the previously unloaded active sessions
-        try (ObjectInputStream ois = getReplicationStream(data)) {
+        try (ObjectInputStream ois = getSessionInputStream(data, 0, data.length)) {
             Integer count = (Integer) ois.readObject();
             int n = count.intValue();
             for (int i = 0; i < n; i++) {
@@ -608,7 +605,7 @@ public class DeltaManager extends ClusterManagerBase {
 
         // Open an output stream to the specified pathname, if any
         ByteArrayOutputStream fos = new ByteArrayOutputStream();
-        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+        try (ObjectOutputStream oos = getSessionSerializer().createObjectOutputStream(new BufferedOutputStream(fos))) {
             oos.writeObject(Integer.valueOf(currentSessions.length));
             for (Session currentSession : currentSessions) {
                 ((DeltaSession) currentSession).writeObjectData(oos);
@@ -26,6 +26,7 @@ import java.util.Deque;
 
 import org.apache.catalina.SessionListener;
 import org.apache.catalina.realm.GenericPrincipal;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
@@ -338,6 +339,25 @@ public class DeltaRequest implements Externalizable {
         return bos.toByteArray();
     }
 
+    /**
+     * serialize DeltaRequest using the given serializer
+     *
+     * @see DeltaRequest#writeExternal(java.io.ObjectOutput)
+     *
+     * @param serializer The serializer that creates the stream the delta request is written to
+     *
+     * @return serialized delta request
+     *
+     * @throws IOException IO error serializing
+     */
+    protected byte[] serialize(SessionSerializer serializer) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            writeExternal(oos);
+        }
+        return bos.toByteArray();
+    }
+
     private static class AttributeInfo implements Externalizable {
         private String name = null;
         private Object value = null;
@@ -41,7 +41,6 @@ import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.ha.ClusterSession;
 import org.apache.catalina.session.ManagerBase;
 import org.apache.catalina.session.StandardSession;
-import org.apache.catalina.tribes.io.ReplicationStream;
 import org.apache.catalina.tribes.tipis.ReplicatedMapEntry;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -143,7 +142,12 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
 
         DeltaRequest oldDeltaRequest = replaceDeltaRequest(newDeltaRequest);
 
-        byte[] result = oldDeltaRequest.serialize();
+        byte[] result;
+        if (manager instanceof ClusterManagerBase cmb) {
+            result = oldDeltaRequest.serialize(cmb.getSessionSerializer());
+        } else {
+            result = oldDeltaRequest.serialize();
+        }
 
         if (deltaRequestPool != null) {
             // Only need to reset the old request if it is going to be pooled.
@@ -164,12 +168,19 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
         return null;
     }
 
+    private ObjectInputStream getSessionInputStream(byte[] data, int offset, int length) throws IOException {
+        if (manager instanceof ClusterManagerBase cmb) {
+            return cmb.getSessionInputStream(data, offset, length);
+        }
+        return ((ClusterManager) manager).getReplicationStream(data, offset, length);
+    }
+
     @Override
     public void applyDiff(byte[] diff, int offset, int length) throws IOException, ClassNotFoundException {
         Thread currentThread = Thread.currentThread();
         ClassLoader contextLoader = currentThread.getContextClassLoader();
         lockInternal();
-        try (ObjectInputStream stream = ((ClusterManager) getManager()).getReplicationStream(diff, offset, length)) {
+        try (ObjectInputStream stream = getSessionInputStream(diff, offset, length)) {
             ClassLoader[] loaders = getClassLoaders();
             if (loaders != null && loaders.length > 0) {
                 currentThread.setContextClassLoader(loaders[0]);
@@ -290,6 +301,9 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
 
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
         super.maxInactiveInterval = interval;
+        if (manager instanceof ManagerBase managerBase) {
+            managerBase.maxInactiveIntervalChanged(this);
+        }
         if (addDeltaRequest) {
             lockInternal();
             try {
@@ -564,9 +578,9 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
                 newDeltaRequest = createRequest(null, ((ClusterManagerBase) manager).isRecordAllActions());
             }
 
-            ReplicationStream ois = ((ClusterManagerBase) manager).getReplicationStream(delta);
-            newDeltaRequest.readExternal(ois);
-            ois.close();
+            try (ObjectInputStream ois = getSessionInputStream(delta, 0, delta.length)) {
+                newDeltaRequest.readExternal(ois);
+            }
 
             DeltaRequest oldDeltaRequest = null;
             lockInternal();
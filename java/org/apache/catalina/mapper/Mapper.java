@@ -434,9 +434,13 @@ public final class Mapper {
      * @param wrappers       Information on wrapper mappings
      */
     private void addWrappers(ContextVersion contextVersion, Collection<WrapperMappingInfo> wrappers) {
-        for (WrapperMappingInfo wrapper : wrappers) {
-            addWrapper(contextVersion, wrapper.mapping(), wrapper.wrapper(), wrapper.jspWildCard(),
-                    wrapper.resourceOnly());
+        synchronized (contextVersion) {
+            for (WrapperMappingInfo wrapper : wrappers) {
+                addWrapperMapping(contextVersion, wrapper.mapping(), wrapper.wrapper(), wrapper.jspWildCard(),
+                        wrapper.resourceOnly());
+            }
+            // Build the lookup tables once rather than once per wrapper
+            contextVersion.buildWrapperTables();
         }
     }
 
@@ -454,47 +458,59 @@ public final class Mapper {
             boolean resourceOnly) {
 
         synchronized (context) {
-            if (path.endsWith("/*")) {
-                // Wildcard wrapper
-                String name = path.substring(0, path.length() - 2);
-                MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
-                MappedWrapper[] oldWrappers = context.wildcardWrappers;
-                MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
-                if (insertMap(oldWrappers, newWrappers, newWrapper)) {
-                    context.wildcardWrappers = newWrappers;
-                    int slashCount = slashCount(newWrapper.name);
-                    if (slashCount > context.nesting) {
-                        context.nesting = slashCount;
-                    }
-                }
-            } else if (path.startsWith("*.")) {
-                // Extension wrapper
-                String name = path.substring(2);
-                MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
-                MappedWrapper[] oldWrappers = context.extensionWrappers;
-                MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
-                if (insertMap(oldWrappers, newWrappers, newWrapper)) {
-                    context.extensionWrappers = newWrappers;
+            addWrapperMapping(context, path, wrapper, jspWildCard, resourceOnly);
+            context.buildWrapperTables();
+        }
+    }
+
+
+    /*
+     * Adds a wrapper to the sorted wrapper arrays of the given context. The caller must hold the lock on the context
+     * and rebuild the wrapper lookup tables once all the wrappers have been added.
+     */
+    private void addWrapperMapping(ContextVersion context, String path, Wrapper wrapper, boolean jspWildCard,
+            boolean resourceOnly) {
+
+        if (path.endsWith("/*")) {
+            // Wildcard wrapper
+            String name = path.substring(0, path.length() - 2);
+            MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
+            MappedWrapper[] oldWrappers = context.wildcardWrappers;
+            MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
+            if (insertMap(oldWrappers, newWrappers, newWrapper)) {
+                context.wildcardWrappers = newWrappers;
+                int slashCount = slashCount(newWrapper.name);
+                if (slashCount > context.nesting) {
+                    context.nesting = slashCount;
                 }
-            } else if (path.equals("/")) {
-                // Default wrapper
-                context.defaultWrapper = new MappedWrapper("", wrapper, jspWildCard, resourceOnly);
+            }
+        } else if (path.startsWith("*.")) {
+            // Extension wrapper
+            String name = path.substring(2);
+            MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
+            MappedWrapper[] oldWrappers = context.extensionWrappers;
+            MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
+            if (insertMap(oldWrappers, newWrappers, newWrapper)) {
+                context.extensionWrappers = newWrappers;
+            }
+        } else if (path.equals("/")) {
+            // Default wrapper
+            context.defaultWrapper = new MappedWrapper("", wrapper, jspWildCard, resourceOnly);
+        } else {
+            // Exact wrapper
+            final String name;
+            if (path.isEmpty()) {
+                // Special case for the Context Root mapping which is
+                // treated as an exact match
+                name = "/";
             } else {
-                // Exact wrapper
-                final String name;
-                if (path.isEmpty()) {
-                    // Special case for the Context Root mapping which is
-                    // treated as an exact match
-                    name = "/";
-                } else {
-                    name = path;
-                }
-                MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
-                MappedWrapper[] oldWrappers = context.exactWrappers;
-                MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
-                if (insertMap(oldWrappers, newWrappers, newWrapper)) {
-                    context.exactWrappers = newWrappers;
-                }
+                name = path;
+            }
+            MappedWrapper newWrapper = new MappedWrapper(name, wrapper, jspWildCard, resourceOnly);
+            MappedWrapper[] oldWrappers = context.exactWrappers;
+            MappedWrapper[] newWrappers = new MappedWrapper[oldWrappers.length + 1];
+            if (insertMap(oldWrappers, newWrappers, newWrapper)) {
+                context.exactWrappers = newWrappers;
             }
         }
     }
@@ -576,6 +592,7 @@ public final class Mapper {
                     context.exactWrappers = newWrappers;
                 }
             }
+            context.buildWrapperTables();
         }
     }
 
@@ -842,12 +859,12 @@ public final class Mapper {
         path.setStart(servletPath);
 
         // Rule 1 -- Exact Match
-        MappedWrapper[] exactWrappers = contextVersion.exactWrappers;
+        MappedWrapperTable exactWrappers = contextVersion.exactWrapperTable;
         internalMapExactWrapper(exactWrappers, path, mappingData);
 
         // Rule 2 -- Prefix Match
         boolean checkJspWelcomeFiles = false;
-        MappedWrapper[] wildcardWrappers = contextVersion.wildcardWrappers;
+        MappedWrapperTable wildcardWrappers = contextVersion.wildcardWrapperTable;
         if (mappingData.wrapper == null) {
             internalMapWildcardWrapper(wildcardWrappers, contextVersion.nesting, path, mappingData);
             if (mappingData.wrapper != null && mappingData.jspWildCard) {
@@ -879,7 +896,7 @@ public final class Mapper {
         }
 
         // Rule 3 -- Extension Match
-        MappedWrapper[] extensionWrappers = contextVersion.extensionWrappers;
+        MappedWrapperTable extensionWrappers = contextVersion.extensionWrapperTable;
         if (mappingData.wrapper == null && !checkJspWelcomeFiles) {
             internalMapExtensionWrapper(extensionWrappers, path, mappingData, true);
         }
@@ -1004,14 +1021,14 @@ public final class Mapper {
     /**
      * Exact mapping.
      */
-    private void internalMapExactWrapper(MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
+    private void internalMapExactWrapper(MappedWrapperTable wrappers, CharChunk path, MappingData mappingData) {
         if (path.isEmpty()) {
             /*
              * Looking for a context root mapped servlet but that will be stored under the name "/"
              */
             path = CONTEXT_ROOT_MAPPED_PATH_CHAR_CHUNK;
         }
-        MappedWrapper wrapper = exactFind(wrappers, path);
+        MappedWrapper wrapper = wrappers.get(path.getBuffer(), path.getStart(), path.getEnd());
         if (wrapper != null) {
             mappingData.requestPath.setString(wrapper.name);
             mappingData.wrapper = wrapper.object;
@@ -1029,49 +1046,48 @@ public final class Mapper {
 
 
     /**
-     * Wildcard mapping.
+     * Wildcard mapping. The longest prefix of the path that ends at a '/' (or at the end of the path) and matches a
+     * wildcard mapping wins. Candidate prefixes are looked up from the longest to the shortest, starting with the path
+     * truncated to the maximum nesting of the wildcard mappings.
      */
-    private void internalMapWildcardWrapper(MappedWrapper[] wrappers, int nesting, CharChunk path,
+    private void internalMapWildcardWrapper(MappedWrapperTable wrappers, int nesting, CharChunk path,
             MappingData mappingData) {
 
+        if (wrappers.isEmpty()) {
+            return;
+        }
+
+        char[] buf = path.getBuffer();
+        int pathStart = path.getStart();
         int pathEnd = path.getEnd();
 
-        int lastSlash = -1;
-        int length = -1;
-        int pos = find(wrappers, path);
-        if (pos != -1) {
-            boolean found = false;
-            while (pos >= 0) {
-                if (path.startsWith(wrappers[pos].name)) {
-                    length = wrappers[pos].name.length();
-                    if (path.getLength() == length) {
-                        found = true;
-                        break;
-                    } else if (path.startsWithIgnoreCase("/", length)) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (lastSlash == -1) {
-                    lastSlash = nthSlash(path, nesting + 1);
-                } else {
-                    lastSlash = lastSlash(path);
+        MappedWrapper wrapper = wrappers.get(buf, pathStart, pathEnd);
+        if (wrapper == null) {
+            // No wildcard mapping has more than nesting slashes so longer prefixes can be skipped
+            int end = nthSlash(path, nesting + 1);
+            if (end == pathEnd) {
+                end = lastSlash(path);
+            }
+            while (true) {
+                wrapper = wrappers.get(buf, pathStart, end);
+                if (wrapper != null || end == pathStart) {
+                    break;
                 }
-                path.setEnd(lastSlash);
-                pos = find(wrappers, path);
+                path.setEnd(end);
+                end = lastSlash(path);
             }
             path.setEnd(pathEnd);
-            if (found) {
-                mappingData.wrapperPath.setString(wrappers[pos].name);
-                if (path.getLength() > length) {
-                    mappingData.pathInfo.setChars(path.getBuffer(), path.getStart() + length,
-                            path.getLength() - length);
-                }
-                mappingData.requestPath.setChars(path.getBuffer(), path.getStart(), path.getLength());
-                mappingData.wrapper = wrappers[pos].object;
-                mappingData.jspWildCard = wrappers[pos].jspWildCard;
-                mappingData.matchType = MappingMatch.PATH;
+        }
+        if (wrapper != null) {
+            int length = wrapper.name.length();
+            mappingData.wrapperPath.setString(wrapper.name);
+            if (path.getLength() > length) {
+                mappingData.pathInfo.setChars(buf, pathStart + length, path.getLength() - length);
             }
+            mappingData.requestPath.setChars(buf, pathStart, path.getLength());
+            mappingData.wrapper = wrapper.object;
+            mappingData.jspWildCard = wrapper.jspWildCard;
+            mappingData.matchType = MappingMatch.PATH;
         }
     }
 
@@ -1084,8 +1100,11 @@ public final class Mapper {
      * @param mappingData      Mapping data for result
      * @param resourceExpected Is this mapping expecting to find a resource
      */
-    private void internalMapExtensionWrapper(MappedWrapper[] wrappers, CharChunk path, MappingData mappingData,
+    private void internalMapExtensionWrapper(MappedWrapperTable wrappers, CharChunk path, MappingData mappingData,
             boolean resourceExpected) {
+        if (wrappers.isEmpty()) {
+            return;
+        }
         char[] buf = path.getBuffer();
         int pathEnd = path.getEnd();
         int servletPath = path.getStart();
@@ -1105,17 +1124,13 @@ public final class Mapper {
                 }
             }
             if (period >= 0) {
-                path.setStart(period + 1);
-                path.setEnd(pathEnd);
-                MappedWrapper wrapper = exactFind(wrappers, path);
+                MappedWrapper wrapper = wrappers.get(buf, period + 1, pathEnd);
                 if (wrapper != null && (resourceExpected || !wrapper.resourceOnly)) {
                     mappingData.wrapperPath.setChars(buf, servletPath, pathEnd - servletPath);
                     mappingData.requestPath.setChars(buf, servletPath, pathEnd - servletPath);
                     mappingData.wrapper = wrapper.object;
                     mappingData.matchType = MappingMatch.EXTENSION;
                 }
-                path.setStart(servletPath);
-                path.setEnd(pathEnd);
             }
         }
     }
@@ -1291,21 +1306,6 @@ public final class Mapper {
         return null;
     }
 
-    /**
-     * Find a map element given its name in a sorted array of map elements. This will return the element that you were
-     * searching for. Otherwise it will return <code>null</code>.
-     */
-    private static <T, E extends MapElement<T>> E exactFind(E[] map, CharChunk name) {
-        int pos = find(map, name);
-        if (pos >= 0) {
-            E result = map[pos];
-            if (name.equals(result.name)) {
-                return result;
-            }
-        }
-        return null;
-    }
-
     /**
      * Find a map element given its name in a sorted array of map elements. This will return the element that you were
      * searching for. Otherwise it will return <code>null</code>.
@@ -1632,6 +1632,9 @@ public final class Mapper {
         public MappedWrapper[] exactWrappers = new MappedWrapper[0];
         public MappedWrapper[] wildcardWrappers = new MappedWrapper[0];
         public MappedWrapper[] extensionWrappers = new MappedWrapper[0];
+        public MappedWrapperTable exactWrapperTable = MappedWrapperTable.EMPTY;
+        public MappedWrapperTable wildcardWrapperTable = MappedWrapperTable.EMPTY;
+        public MappedWrapperTable extensionWrapperTable = MappedWrapperTable.EMPTY;
         public int nesting = 0;
         private volatile boolean paused;
 
@@ -1651,6 +1654,23 @@ public final class Mapper {
         public void markPaused() {
             paused = true;
         }
+
+        /*
+         * Rebuild the lookup tables used to map requests from the sorted wrapper arrays. Must be called with the lock
+         * on this ContextVersion held after any change to the wrapper arrays.
+         */
+        void buildWrapperTables() {
+            // The wrapper arrays are replaced rather than modified so only rebuild the tables that have changed
+            if (exactWrapperTable.wrappers != exactWrappers) {
+                exactWrapperTable = new MappedWrapperTable(exactWrappers);
+            }
+            if (wildcardWrapperTable.wrappers != wildcardWrappers) {
+                wildcardWrapperTable = new MappedWrapperTable(wildcardWrappers);
+            }
+            if (extensionWrapperTable.wrappers != extensionWrappers) {
+                extensionWrapperTable = new MappedWrapperTable(extensionWrappers);
+            }
+        }
     }
 
     // ---------------------------------------------------- Wrapper Inner Class
@@ -1667,4 +1687,90 @@ public final class Mapper {
             this.resourceOnly = resourceOnly;
         }
     }
+
+
+    /**
+     * Immutable open addressing hash table of wrappers keyed by name. Lookups hash the characters of the path directly
+     * so mapping a request neither allocates nor performs the series of string comparisons required by a binary search
+     * of the sorted wrapper arrays. A new table is built whenever the wrappers of a context change.
+     */
+    protected static final class MappedWrapperTable {
+
+        static final MappedWrapperTable EMPTY = new MappedWrapperTable(new MappedWrapper[0]);
+
+        /*
+         * The sorted array the table was built from.
+         */
+        final MappedWrapper[] wrappers;
+
+        private final MappedWrapper[] table;
+        private final int[] hashes;
+        private final int mask;
+
+        MappedWrapperTable(MappedWrapper[] wrappers) {
+            this.wrappers = wrappers;
+            // Power of two capacity with a load factor of at most 0.5
+            int capacity = Integer.highestOneBit(Math.max(wrappers.length, 1) * 4 - 1);
+            table = new MappedWrapper[capacity];
+            hashes = new int[capacity];
+            mask = capacity - 1;
+            for (MappedWrapper wrapper : wrappers) {
+                int hash = spread(wrapper.name.hashCode());
+                int index = hash & mask;
+                while (table[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = wrapper;
+                hashes[index] = hash;
+            }
+        }
+
+        boolean isEmpty() {
+            return wrappers.length == 0;
+        }
+
+        /**
+         * Find the wrapper with the given name.
+         *
+         * @param buf   The characters to look up
+         * @param start The start of the name in the buffer
+         * @param end   The end of the name in the buffer
+         *
+         * @return the matching wrapper or <code>null</code> if there is no wrapper with the given name
+         */
+        MappedWrapper get(char[] buf, int start, int end) {
+            // Same hash as String.hashCode() so the hashes of the wrapper names can be used
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + buf[i];
+            }
+            int hash = spread(h);
+            int index = hash & mask;
+            MappedWrapper wrapper;
+            while ((wrapper = table[index]) != null) {
+                if (hashes[index] == hash && matches(wrapper.name, buf, start, end)) {
+                    return wrapper;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        private static boolean matches(String name, char[] buf, int start, int end) {
+            int len = end - start;
+            if (name.length() != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (name.charAt(i) != buf[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
 }
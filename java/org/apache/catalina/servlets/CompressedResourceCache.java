@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.servlets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.servlets.DefaultServlet.CompressionFormat;
+import org.apache.catalina.servlets.DefaultServlet.PrecompressedResource;
+import org.apache.catalina.webresources.FileResource;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.http.compression.ContentCodings;
+import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
+
+/**
+ * A bounded, on-disk cache of compressed versions of static resources that is used by the {@link DefaultServlet} when
+ * a precompressed version of a resource is not provided by the web application.
+ * <p>
+ * The first request for a compressible resource is served uncompressed and triggers the compression of the resource,
+ * using the configured level of each content coding, on a small pool of threads owned by the cache. Compression is kept
+ * off the server's utility executor as high compression levels may take seconds per resource. If all the threads are
+ * busy and the queue of waiting resources is full, the resource is not compressed until it is requested again. Once
+ * compressed, later requests are served from the compressed file so they may use sendfile and require no compression
+ * per request. An entry is only used while the last modified time and length of the resource, as reported by the web
+ * resources and therefore subject to the resource cache TTL, match those of the resource that was compressed. Otherwise
+ * the resource is compressed again. When the cache is full, the least recently used entries are removed. Entries for
+ * resources that are not worth compressing count towards the size of the cache with a nominal size so their number is
+ * bounded too.
+ * <p>
+ * A request may still be using the compressed file of an entry that is replaced or removed, for example to serve it
+ * with sendfile, so such files are only deleted {@link #RETIRED_FILE_DELAY} milliseconds after the entry was replaced
+ * or removed.
+ */
+class CompressedResourceCache {
+
+    private static final Log log = LogFactory.getLog(CompressedResourceCache.class);
+    private static final StringManager sm = StringManager.getManager(CompressedResourceCache.class);
+
+    /**
+     * The size used for entries without a compressed file.
+     */
+    static final long NEGATIVE_ENTRY_SIZE = 1024;
+
+    /**
+     * The time, in milliseconds, for which the compressed file of a replaced or removed entry is kept before it is
+     * deleted.
+     */
+    static final long RETIRED_FILE_DELAY = 60000;
+
+    /**
+     * The maximum number of resources waiting for a compression thread.
+     */
+    static final int MAX_QUEUED_COMPRESSIONS = 256;
+
+    private final WebResourceRoot resources;
+    private final File directory;
+    private final long maxSize;
+    private final String[] mimeTypes;
+    private final ThreadPoolExecutor executor;
+    private final CompressionFormat[] formats;
+    private final ContentCoding[] contentCodings;
+    private final int[] levels;
+
+    // Keyed by the path of the compressed resource. Guarded by this.
+    private final Map<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    // Compressed files waiting to be deleted, oldest first. Guarded by this.
+    private final Deque<RetiredFile> retiredFiles = new ArrayDeque<>();
+
+    private final Set<String> compressing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong fileCounter = new AtomicLong();
+    private volatile boolean destroyed = false;
+
+
+    /**
+     * Create a cache.
+     *
+     * @param resources The web application resources
+     * @param tempDir   The directory in which to create the directory that holds the compressed files
+     * @param maxSize   The maximum total size of the compressed files in bytes
+     * @param mimeTypes The MIME types of the resources that should be compressed
+     * @param formats   The compression formats. Formats with a content coding that is not available are ignored.
+     * @param levels    The compression level to use for each content coding, keyed by content coding name. Content
+     *                      codings without a level use their default level.
+     * @param threads   The maximum number of resources that are compressed at the same time
+     * @param name      The name used for the compression threads
+     *
+     * @throws IOException If the directory for the compressed files cannot be created
+     */
+    CompressedResourceCache(WebResourceRoot resources, File tempDir, long maxSize, String[] mimeTypes,
+            CompressionFormat[] formats, Map<String,Integer> levels, int threads, String name) throws IOException {
+        this.resources = resources;
+        this.directory = Files.createTempDirectory(tempDir.toPath(), "compressed").toFile();
+        this.maxSize = maxSize;
+        this.mimeTypes = mimeTypes;
+        List<CompressionFormat> availableFormats = new ArrayList<>();
+        List<ContentCoding> availableContentCodings = new ArrayList<>();
+        for (CompressionFormat format : formats) {
+            ContentCoding contentCoding = ContentCodings.getContentCoding(format.encoding());
+            if (contentCoding != null) {
+                availableFormats.add(format);
+                availableContentCodings.add(contentCoding);
+            }
+        }
+        this.formats = availableFormats.toArray(new CompressionFormat[0]);
+        this.contentCodings = availableContentCodings.toArray(new ContentCoding[0]);
+        this.levels = new int[contentCodings.length];
+        for (int i = 0; i < contentCodings.length; i++) {
+            Integer level = levels.get(contentCodings[i].getName());
+            this.levels[i] = level == null ? contentCodings[i].getDefaultLevel() : level.intValue();
+        }
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_COMPRESSIONS),
+                new TaskThreadFactory(name + "-compress-", true, Thread.MIN_PRIORITY));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * @param contentType The content type of the resource
+     *
+     * @return {@code true} if resources of the given content type should be compressed
+     */
+    boolean isCompressible(String contentType) {
+        if (contentType == null || formats.length == 0) {
+            return false;
+        }
+        for (String mimeType : mimeTypes) {
+            if (contentType.startsWith(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Obtain the compressed versions of the given resource that are currently available. If any are missing or out of
+     * date, their compression is started.
+     *
+     * @param path     The path of the resource
+     * @param resource The resource
+     *
+     * @return the compressed versions of the resource, in the order of the configured formats
+     */
+    List<PrecompressedResource> getCompressedResources(String path, WebResource resource) {
+        List<PrecompressedResource> result = new ArrayList<>(formats.length);
+        for (int i = 0; i < formats.length; i++) {
+            String compressedPath = path + formats[i].extension();
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(compressedPath);
+            }
+            if (entry != null && entry.lastModified() == resource.getLastModified() &&
+                    entry.contentLength() == resource.getContentLength()) {
+                if (entry.file() != null) {
+                    result.add(new PrecompressedResource(
+                            new FileResource(resources, compressedPath, entry.file(), true, null), formats[i]));
+                }
+            } else if (compressing.add(compressedPath)) {
+                CompressTask task = new CompressTask(path, compressedPath, contentCodings[i], levels[i]);
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    compressing.remove(compressedPath);
+                    log.debug(sm.getString("compressedResourceCache.rejected", path), e);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the total size of the entries in bytes
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+
+    /**
+     * Remove all the compressed files and the directory that holds them.
+     */
+    void destroy() {
+        destroyed = true;
+        // Compressions that have not started are abandoned
+        executor.shutdownNow();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                entry.delete();
+            }
+            entries.clear();
+            size = 0;
+            for (RetiredFile retiredFile : retiredFiles) {
+                delete(retiredFile.file());
+            }
+            retiredFiles.clear();
+        }
+        // Compressions that are in progress will delete their files when they complete
+        delete(directory);
+    }
+
+
+    private synchronized void put(String compressedPath, Entry entry) {
+        if (destroyed) {
+            entry.delete();
+            return;
+        }
+        Entry previous = entries.put(compressedPath, entry);
+        if (previous != null) {
+            size -= previous.size();
+            retire(previous);
+        }
+        size += entry.size();
+        Iterator<Entry> iter = entries.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Entry eldest = iter.next();
+            size -= eldest.size();
+            retire(eldest);
+            iter.remove();
+        }
+        deleteRetiredFiles(System.currentTimeMillis());
+    }
+
+
+    private void retire(Entry entry) {
+        if (entry.file() != null) {
+            retiredFiles.add(new RetiredFile(entry.file(), System.currentTimeMillis()));
+        }
+    }
+
+
+    private void deleteRetiredFiles(long now) {
+        RetiredFile retiredFile = retiredFiles.peek();
+        while (retiredFile != null && now - retiredFile.retired() >= RETIRED_FILE_DELAY) {
+            retiredFiles.remove();
+            delete(retiredFile.file());
+            retiredFile = retiredFiles.peek();
+        }
+    }
+
+
+    private class CompressTask implements Runnable {
+
+        private final String path;
+        private final String compressedPath;
+        private final ContentCoding contentCoding;
+        private final int level;
+
+        CompressTask(String path, String compressedPath, ContentCoding contentCoding, int level) {
+            this.path = path;
+            this.compressedPath = compressedPath;
+            this.contentCoding = contentCoding;
+            this.level = level;
+        }
+
+        @Override
+        public void run() {
+            File file = null;
+            try {
+                // Look up the resource again as it may have changed since it was requested
+                WebResource resource = resources.getResource(path);
+                if (!resource.isFile()) {
+                    return;
+                }
+                long lastModified = resource.getLastModified();
+                long contentLength = resource.getContentLength();
+                file = new File(directory, fileCounter.incrementAndGet() + compressedPath.substring(path.length()));
+                try (InputStream is = resource.getInputStream();
+                        OutputStream os = contentCoding.createOutputStream(new FileOutputStream(file), level)) {
+                    is.transferTo(os);
+                }
+                long compressedLength = file.length();
+                if (compressedLength >= contentLength || compressedLength > maxSize) {
+                    // Not worth serving compressed or too big to cache. Remember that so it is not compressed again.
+                    delete(file);
+                    file = null;
+                    compressedLength = 0;
+                }
+                put(compressedPath, new Entry(lastModified, contentLength, file, compressedLength));
+                file = null;
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.warn(sm.getString("compressedResourceCache.compressFail", path, contentCoding.getName()), t);
+            } finally {
+                if (file != null) {
+                    delete(file);
+                }
+                compressing.remove(compressedPath);
+            }
+        }
+    }
+
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            log.debug(sm.getString("compressedResourceCache.deleteFail", file.getAbsolutePath()));
+        }
+    }
+
+
+    /**
+     * A compressed resource.
+     *
+     * @param lastModified     The last modified time of the resource that was compressed
+     * @param contentLength    The length of the resource that was compressed
+     * @param file             The compressed file or {@code null} if the resource should not be served compressed
+     * @param compressedLength The length of the compressed file
+     */
+    private record Entry(long lastModified, long contentLength, File file, long compressedLength) {
+
+        long size() {
+            return file == null ? NEGATIVE_ENTRY_SIZE : compressedLength;
+        }
+
+        void delete() {
+            if (file != null) {
+                CompressedResourceCache.delete(file);
+            }
+        }
+    }
+
+
+    /**
+     * The compressed file of an entry that has been replaced or removed.
+     *
+     * @param file    The compressed file
+     * @param retired The time the file was retired
+     */
+    private record RetiredFile(File file, long retired) {
+    }
+}
@@ -40,8 +40,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.function.Function;
 
 import javax.xml.transform.Source;
@@ -74,6 +76,7 @@ import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
 import org.apache.catalina.webresources.CachedResource;
 import org.apache.tomcat.util.buf.B2CConverter;
+import org.apache.tomcat.util.buf.StringUtils;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
 import org.apache.tomcat.util.http.ResponseUtil;
 import org.apache.tomcat.util.http.parser.ContentRange;
@@ -157,6 +160,12 @@ public class DefaultServlet extends HttpServlet {
      */
     protected static final int BUFFER_SIZE = 4096;
 
+    /**
+     * MIME types of the resources that are compressed on demand if not configured otherwise.
+     */
+    private static final String DEFAULT_PRECOMPRESSED_CACHE_MIME_TYPES = "text/html,text/xml,text/plain,text/css," +
+            "text/javascript,application/javascript,application/json,application/xml,image/svg+xml";
+
 
     // ----------------------------------------------------- Instance Variables
 
@@ -232,6 +241,12 @@ public class DefaultServlet extends HttpServlet {
      */
     private BomConfig useBomIfPresent = null;
 
+    /**
+     * Cache of compressed versions of resources for which the web application does not provide a precompressed
+     * version.
+     */
+    private transient CompressedResourceCache compressedResourceCache = null;
+
     /**
      * Minimum size for sendfile usage in bytes.
      */
@@ -274,7 +289,10 @@ public class DefaultServlet extends HttpServlet {
 
     @Override
     public void destroy() {
-        // NOOP
+        if (compressedResourceCache != null) {
+            compressedResourceCache.destroy();
+            compressedResourceCache = null;
+        }
     }
 
 
@@ -376,6 +394,31 @@ public class DefaultServlet extends HttpServlet {
             throw new UnavailableException(sm.getString("defaultServlet.noResources"));
         }
 
+        if (getServletConfig().getInitParameter("precompressedCacheSize") != null) {
+            long precompressedCacheSize =
+                    Long.parseLong(getServletConfig().getInitParameter("precompressedCacheSize")) * 1024;
+            if (precompressedCacheSize > 0 && compressionFormats.length > 0) {
+                String mimeTypes = getServletConfig().getInitParameter("precompressedCacheMimeTypes");
+                if (mimeTypes == null) {
+                    mimeTypes = DEFAULT_PRECOMPRESSED_CACHE_MIME_TYPES;
+                }
+                int threads = 1;
+                if (getServletConfig().getInitParameter("precompressedCacheThreads") != null) {
+                    threads = Integer.parseInt(getServletConfig().getInitParameter("precompressedCacheThreads"));
+                }
+                Map<String,Integer> levels =
+                        parseCompressionLevels(getServletConfig().getInitParameter("precompressedCacheLevels"));
+                File tempDir = (File) getServletContext().getAttribute(ServletContext.TEMPDIR);
+                try {
+                    compressedResourceCache = new CompressedResourceCache(resources, tempDir, precompressedCacheSize,
+                            StringUtils.splitCommaSeparated(mimeTypes), compressionFormats, levels, threads,
+                            getServletConfig().getServletName() + resources.getContext().getName());
+                } catch (IOException ioe) {
+                    throw new ServletException(ioe);
+                }
+            }
+        }
+
         if (getServletConfig().getInitParameter("showServerInfo") != null) {
             showServerInfo = Boolean.parseBoolean(getServletConfig().getInitParameter("showServerInfo"));
         }
@@ -431,6 +474,18 @@ public class DefaultServlet extends HttpServlet {
     }
 
 
+    private Map<String,Integer> parseCompressionLevels(String precompressedCacheLevels) {
+        Map<String,Integer> ret = new HashMap<>();
+        if (precompressedCacheLevels != null) {
+            for (String pair : precompressedCacheLevels.split(",")) {
+                String[] setting = pair.split("=");
+                ret.put(setting[0].trim(), Integer.valueOf(setting[1].trim()));
+            }
+        }
+        return ret;
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
 
@@ -951,7 +1006,14 @@ public class DefaultServlet extends HttpServlet {
         boolean usingPrecompressedVersion = false;
         if (compressionFormats.length > 0 && !included && resource.isFile() && !pathEndsWithCompressedExtension(path)) {
             List<PrecompressedResource> precompressedResources = getAvailablePrecompressedResources(path);
-            if (!precompressedResources.isEmpty()) {
+            boolean compressible = !precompressedResources.isEmpty();
+            if (!compressible && compressedResourceCache != null && !isError &&
+                    compressedResourceCache.isCompressible(contentType)) {
+                // The compressed versions may not be available yet but the response may still vary
+                compressible = true;
+                precompressedResources = compressedResourceCache.getCompressedResources(path, resource);
+            }
+            if (compressible) {
                 ResponseUtil.addVaryFieldName(response, "accept-encoding");
                 PrecompressedResource bestResource = getBestPrecompressedResource(request, precompressedResources);
                 if (bestResource != null) {
@@ -2754,7 +2816,7 @@ public class DefaultServlet extends HttpServlet {
     }
 
 
-    private record PrecompressedResource(WebResource resource, CompressionFormat format) {
+    record PrecompressedResource(WebResource resource, CompressionFormat format) {
     }
 
 
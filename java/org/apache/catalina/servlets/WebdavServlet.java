@@ -345,6 +345,7 @@ public class WebdavServlet extends DefaultServlet implements PeriodicEventListen
     @Override
     public void destroy() {
         store.destroy();
+        super.destroy();
     }
 
 
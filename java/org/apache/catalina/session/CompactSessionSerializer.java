@@ -0,0 +1,838 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A {@link SessionSerializer} that writes session data in a compact binary format rather than with Java serialization:
+ * <ul>
+ * <li>Strings, primitive wrappers and byte arrays are written with a one byte tag followed by the value. Integral
+ * values and lengths use variable length encoding so small values, such as attribute counts and the maximum inactive
+ * interval, use few bytes.</li>
+ * <li>Short strings, such as attribute names, are added to a dictionary when first written and are written as a
+ * reference to the dictionary entry afterwards.</li>
+ * <li>Values of a class for which a {@link SessionAttributeCodec} has been registered are written by that codec. The
+ * class name is added to a dictionary when first written so later values of the same class are written with just an
+ * index.</li>
+ * <li>All other values are written with a single Java serialization stream that is shared by the whole session data
+ * stream so class descriptors are written once per stream rather than once per value. The configured
+ * deserialization filter is applied when these values are read.</li>
+ * </ul>
+ * Streams written with Java serialization, for example session data persisted by an earlier version of Tomcat, are
+ * recognised when read and are read with Java serialization. Earlier versions of Tomcat cannot read the compact format.
+ * <p>
+ * Lengths read from the stream are checked against {@link #getMaxLength()} and the memory for a value is only
+ * allocated as the bytes of that value are read so a corrupted or malicious length does not trigger a large
+ * allocation.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    private static final StringManager sm = StringManager.getManager(CompactSessionSerializer.class);
+
+    private static final int MAGIC = 0x5443;
+    private static final int VERSION = 1;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    /*
+     * Strings up to this length are added to the dictionary until the dictionary is full. Both limits are part of the
+     * format as the reader has to build the same dictionary as the writer.
+     */
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 64;
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_STRING_REF = 4;
+    private static final int TAG_INTEGER = 5;
+    private static final int TAG_LONG = 6;
+    private static final int TAG_SHORT = 7;
+    private static final int TAG_BYTE = 8;
+    private static final int TAG_CHARACTER = 9;
+    private static final int TAG_FLOAT = 10;
+    private static final int TAG_DOUBLE = 11;
+    private static final int TAG_BYTE_ARRAY = 12;
+    private static final int TAG_CODEC = 13;
+    private static final int TAG_JAVA = 14;
+
+    /*
+     * Values longer than this are read in steps so the memory allocated is limited by the data actually read.
+     */
+    private static final int MAX_BUFFERED_LENGTH = 8192;
+
+    private final Map<String,SessionAttributeCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    private int maxLength = -1;
+
+
+    /**
+     * @return The maximum length, in bytes, of a single string, byte array or Java serialized value that will be read.
+     *             A value of less than zero means no limit.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+
+    /**
+     * Set the maximum length, in bytes, of a single string, byte array or Java serialized value that will be read.
+     * Streams that contain a longer value are rejected.
+     *
+     * @param maxLength The new maximum length, or a value of less than zero for no limit
+     */
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+
+    /**
+     * Register a codec. Any codec previously registered for the same class is replaced. Codecs have to be registered
+     * with the same class name on every instance that reads the data written by this instance.
+     *
+     * @param codec The codec to register
+     */
+    public void addCodec(SessionAttributeCodec<?> codec) {
+        codecs.put(codec.getType().getName(), codec);
+    }
+
+
+    /**
+     * @return The registered codecs
+     */
+    public SessionAttributeCodec<?>[] findCodecs() {
+        return codecs.values().toArray(new SessionAttributeCodec<?>[0]);
+    }
+
+
+    /**
+     * Remove a codec.
+     *
+     * @param codec The codec to remove
+     */
+    public void removeCodec(SessionAttributeCodec<?> codec) {
+        codecs.remove(codec.getType().getName(), codec);
+    }
+
+
+    @Override
+    public ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException {
+        return new CompactObjectOutputStream(os, codecs);
+    }
+
+
+    @Override
+    public ObjectInputStream createObjectInputStream(InputStream is, ObjectInputStreamFactory javaStreamFactory)
+            throws IOException {
+        InputStream input = is;
+        if (!input.markSupported()) {
+            input = new BufferedInputStream(input);
+        }
+        input.mark(2);
+        int b1 = input.read();
+        int b2 = input.read();
+        if (b2 < 0) {
+            throw new EOFException();
+        }
+        int magic = (b1 << 8) | b2;
+        if (magic == JAVA_SERIALIZATION_MAGIC) {
+            input.reset();
+            return javaStreamFactory.create(input);
+        }
+        if (magic != MAGIC) {
+            throw new StreamCorruptedException(
+                    sm.getString("compactSessionSerializer.invalidHeader", Integer.toHexString(magic)));
+        }
+        int version = input.read();
+        if (version != VERSION) {
+            throw new StreamCorruptedException(
+                    sm.getString("compactSessionSerializer.invalidVersion", Integer.toString(version)));
+        }
+        return new CompactObjectInputStream(input, codecs, javaStreamFactory, maxLength);
+    }
+
+
+    private static final class CompactObjectOutputStream extends ObjectOutputStream {
+
+        private final DataOutputStream out;
+        private final Map<String,SessionAttributeCodec<?>> codecs;
+        private final Map<String,Integer> strings = new HashMap<>();
+        private final Map<String,Integer> classNames = new HashMap<>();
+        private final byte[] varintBuffer = new byte[10];
+        private byte[] stringBuffer = new byte[256];
+        private ByteArrayOutputStream javaBuffer;
+        private ObjectOutputStream javaOut;
+
+        CompactObjectOutputStream(OutputStream os, Map<String,SessionAttributeCodec<?>> codecs) throws IOException {
+            super();
+            this.out = new DataOutputStream(os);
+            this.codecs = codecs;
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+
+        @Override
+        protected void writeObjectOverride(Object obj) throws IOException {
+            if (obj == null) {
+                out.write(TAG_NULL);
+            } else if (obj instanceof String s) {
+                writeString(s);
+            } else if (obj instanceof Boolean b) {
+                out.write(b.booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (obj instanceof Integer i) {
+                out.write(TAG_INTEGER);
+                writeVarLong(zigZag(i.intValue()));
+            } else if (obj instanceof Long l) {
+                out.write(TAG_LONG);
+                writeVarLong(zigZag(l.longValue()));
+            } else if (obj instanceof Short s) {
+                out.write(TAG_SHORT);
+                writeVarLong(zigZag(s.shortValue()));
+            } else if (obj instanceof Byte b) {
+                out.write(TAG_BYTE);
+                out.write(b.byteValue());
+            } else if (obj instanceof Character c) {
+                out.write(TAG_CHARACTER);
+                writeVarLong(c.charValue());
+            } else if (obj instanceof Float f) {
+                out.write(TAG_FLOAT);
+                out.writeFloat(f.floatValue());
+            } else if (obj instanceof Double d) {
+                out.write(TAG_DOUBLE);
+                out.writeDouble(d.doubleValue());
+            } else if (obj instanceof byte[] bytes) {
+                out.write(TAG_BYTE_ARRAY);
+                writeVarLong(bytes.length);
+                out.write(bytes);
+            } else {
+                @SuppressWarnings("unchecked")
+                SessionAttributeCodec<Object> codec =
+                        (SessionAttributeCodec<Object>) codecs.get(obj.getClass().getName());
+                if (codec != null && codec.getType() == obj.getClass()) {
+                    writeClassName(obj.getClass().getName());
+                    codec.write(this, obj);
+                } else {
+                    writeJava(obj);
+                }
+            }
+        }
+
+
+        private void writeString(String s) throws IOException {
+            boolean dictionary = s.length() <= MAX_DICTIONARY_STRING_LENGTH;
+            if (dictionary) {
+                Integer index = strings.get(s);
+                if (index != null) {
+                    out.write(TAG_STRING_REF);
+                    writeVarLong(index.intValue());
+                    return;
+                }
+            }
+            out.write(TAG_STRING);
+            writeUtf(s);
+            if (dictionary && strings.size() < MAX_DICTIONARY_SIZE) {
+                strings.put(s, Integer.valueOf(strings.size()));
+            }
+        }
+
+
+        private void writeClassName(String className) throws IOException {
+            out.write(TAG_CODEC);
+            Integer index = classNames.get(className);
+            if (index == null) {
+                int newIndex = classNames.size();
+                writeVarLong(newIndex);
+                writeUtf(className);
+                classNames.put(className, Integer.valueOf(newIndex));
+            } else {
+                writeVarLong(index.intValue());
+            }
+        }
+
+
+        private void writeJava(Object obj) throws IOException {
+            if (javaOut == null) {
+                javaBuffer = new ByteArrayOutputStream();
+                javaOut = new ObjectOutputStream(javaBuffer);
+            }
+            IOException failure = null;
+            try {
+                javaOut.writeObject(obj);
+            } catch (IOException e) {
+                // Java serialization has written a marker so the reader sees the same failure
+                failure = e;
+            }
+            javaOut.flush();
+            out.write(TAG_JAVA);
+            writeVarLong(javaBuffer.size());
+            javaBuffer.writeTo(out);
+            javaBuffer.reset();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+
+        /*
+         * Modified UTF-8, as used by DataOutput.writeUTF(), prefixed by a variable length byte count rather than a
+         * two byte count so strings of any length may be written.
+         */
+        private void writeUtf(String s) throws IOException {
+            int len = s.length();
+            int utfLen = len;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x800) {
+                    utfLen += 2;
+                } else if (c >= 0x80 || c == 0) {
+                    utfLen++;
+                }
+            }
+            writeVarLong(utfLen);
+            byte[] buf = stringBuffer;
+            if (buf.length < utfLen) {
+                buf = new byte[utfLen];
+                if (utfLen <= 8192) {
+                    stringBuffer = buf;
+                }
+            }
+            int pos = 0;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80 && c != 0) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            out.write(buf, 0, pos);
+        }
+
+
+        private void writeVarLong(long value) throws IOException {
+            long v = value;
+            int pos = 0;
+            while ((v & ~0x7FL) != 0) {
+                varintBuffer[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            varintBuffer[pos++] = (byte) v;
+            out.write(varintBuffer, 0, pos);
+        }
+
+
+        private static long zigZag(int value) {
+            return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+        }
+
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+
+        @Override
+        public void writeUnshared(Object obj) throws IOException {
+            writeObject(obj);
+        }
+
+
+        @Override
+        public void reset() throws IOException {
+            if (javaOut != null) {
+                javaOut.reset();
+            }
+        }
+
+
+        @Override
+        public void write(int val) throws IOException {
+            out.write(val);
+        }
+
+
+        @Override
+        public void write(byte[] buf) throws IOException {
+            out.write(buf);
+        }
+
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            out.write(buf, off, len);
+        }
+
+
+        @Override
+        public void writeBoolean(boolean val) throws IOException {
+            out.writeBoolean(val);
+        }
+
+
+        @Override
+        public void writeByte(int val) throws IOException {
+            out.writeByte(val);
+        }
+
+
+        @Override
+        public void writeShort(int val) throws IOException {
+            out.writeShort(val);
+        }
+
+
+        @Override
+        public void writeChar(int val) throws IOException {
+            out.writeChar(val);
+        }
+
+
+        @Override
+        public void writeInt(int val) throws IOException {
+            out.writeInt(val);
+        }
+
+
+        @Override
+        public void writeLong(long val) throws IOException {
+            out.writeLong(val);
+        }
+
+
+        @Override
+        public void writeFloat(float val) throws IOException {
+            out.writeFloat(val);
+        }
+
+
+        @Override
+        public void writeDouble(double val) throws IOException {
+            out.writeDouble(val);
+        }
+
+
+        @Override
+        public void writeBytes(String str) throws IOException {
+            out.writeBytes(str);
+        }
+
+
+        @Override
+        public void writeChars(String str) throws IOException {
+            out.writeChars(str);
+        }
+
+
+        @Override
+        public void writeUTF(String str) throws IOException {
+            out.writeUTF(str);
+        }
+
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            out.close();
+        }
+    }
+
+
+    private static final class CompactObjectInputStream extends ObjectInputStream {
+
+        private final DataInputStream in;
+        private final Map<String,SessionAttributeCodec<?>> codecs;
+        private final ObjectInputStreamFactory javaStreamFactory;
+        private final int maxLength;
+        private final List<String> strings = new ArrayList<>();
+        private final List<SessionAttributeCodec<?>> classCodecs = new ArrayList<>();
+        private byte[] stringBuffer = new byte[256];
+        private char[] charBuffer = new char[256];
+        private JavaChunkInputStream javaChunks;
+        private ObjectInputStream javaIn;
+
+        CompactObjectInputStream(InputStream is, Map<String,SessionAttributeCodec<?>> codecs,
+                ObjectInputStreamFactory javaStreamFactory, int maxLength) throws IOException {
+            super();
+            this.in = new DataInputStream(is);
+            this.codecs = codecs;
+            this.javaStreamFactory = javaStreamFactory;
+            this.maxLength = maxLength;
+        }
+
+
+        @Override
+        protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+            int tag = in.read();
+            switch (tag) {
+                case -1:
+                    throw new EOFException();
+                case TAG_NULL:
+                    return null;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_STRING:
+                    String s = readUtf();
+                    if (s.length() <= MAX_DICTIONARY_STRING_LENGTH && strings.size() < MAX_DICTIONARY_SIZE) {
+                        strings.add(s);
+                    }
+                    return s;
+                case TAG_STRING_REF:
+                    int index = readLength();
+                    if (index >= strings.size()) {
+                        throw new StreamCorruptedException(
+                                sm.getString("compactSessionSerializer.invalidReference", Integer.toString(index)));
+                    }
+                    return strings.get(index);
+                case TAG_INTEGER:
+                    return Integer.valueOf(unZigZag((int) readVarLong()));
+                case TAG_LONG:
+                    return Long.valueOf(unZigZag(readVarLong()));
+                case TAG_SHORT:
+                    return Short.valueOf((short) unZigZag((int) readVarLong()));
+                case TAG_BYTE:
+                    return Byte.valueOf(in.readByte());
+                case TAG_CHARACTER:
+                    return Character.valueOf((char) readVarLong());
+                case TAG_FLOAT:
+                    return Float.valueOf(in.readFloat());
+                case TAG_DOUBLE:
+                    return Double.valueOf(in.readDouble());
+                case TAG_BYTE_ARRAY:
+                    return readBytes(readLength());
+                case TAG_CODEC:
+                    return readCodec();
+                case TAG_JAVA:
+                    return readJava();
+                default:
+                    throw new StreamCorruptedException(
+                            sm.getString("compactSessionSerializer.invalidTag", Integer.toString(tag)));
+            }
+        }
+
+
+        private Object readCodec() throws IOException, ClassNotFoundException {
+            int index = readLength();
+            SessionAttributeCodec<?> codec;
+            if (index == classCodecs.size()) {
+                String className = readUtf();
+                codec = codecs.get(className);
+                if (codec == null) {
+                    throw new InvalidClassException(className, sm.getString("compactSessionSerializer.noCodec"));
+                }
+                classCodecs.add(codec);
+            } else if (index < classCodecs.size()) {
+                codec = classCodecs.get(index);
+            } else {
+                throw new StreamCorruptedException(
+                        sm.getString("compactSessionSerializer.invalidReference", Integer.toString(index)));
+            }
+            return codec.read(this);
+        }
+
+
+        private Object readJava() throws IOException, ClassNotFoundException {
+            byte[] data = readBytes(readLength());
+            if (javaChunks == null) {
+                javaChunks = new JavaChunkInputStream();
+            }
+            javaChunks.setData(data);
+            if (javaIn == null) {
+                // The first chunk starts with the Java serialization stream header
+                javaIn = javaStreamFactory.create(javaChunks);
+            }
+            return javaIn.readObject();
+        }
+
+
+        private String readUtf() throws IOException {
+            int utfLen = readLength();
+            byte[] buf = stringBuffer;
+            char[] chars = charBuffer;
+            if (utfLen <= MAX_BUFFERED_LENGTH) {
+                if (buf.length < utfLen) {
+                    buf = new byte[utfLen];
+                    chars = new char[utfLen];
+                    stringBuffer = buf;
+                    charBuffer = chars;
+                }
+                in.readFully(buf, 0, utfLen);
+            } else {
+                buf = readBytes(utfLen);
+                chars = new char[utfLen];
+            }
+            int pos = 0;
+            int charCount = 0;
+            while (pos < utfLen) {
+                int c = buf[pos] & 0xFF;
+                if (c < 0x80) {
+                    chars[charCount++] = (char) c;
+                    pos++;
+                } else if ((c & 0xE0) == 0xC0) {
+                    if (pos + 2 > utfLen || (buf[pos + 1] & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException();
+                    }
+                    chars[charCount++] = (char) (((c & 0x1F) << 6) | (buf[pos + 1] & 0x3F));
+                    pos += 2;
+                } else if ((c & 0xF0) == 0xE0) {
+                    if (pos + 3 > utfLen || (buf[pos + 1] & 0xC0) != 0x80 || (buf[pos + 2] & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException();
+                    }
+                    chars[charCount++] =
+                            (char) (((c & 0x0F) << 12) | ((buf[pos + 1] & 0x3F) << 6) | (buf[pos + 2] & 0x3F));
+                    pos += 3;
+                } else {
+                    throw new UTFDataFormatException();
+                }
+            }
+            return new String(chars, 0, charCount);
+        }
+
+
+        private int readLength() throws IOException {
+            long length = readVarLong();
+            if (length > Integer.MAX_VALUE || maxLength >= 0 && length > maxLength) {
+                throw new StreamCorruptedException(
+                        sm.getString("compactSessionSerializer.invalidLength", Long.toString(length)));
+            }
+            return (int) length;
+        }
+
+
+        /*
+         * Reads a value of the given length. Long values are read in steps so a length that is larger than the
+         * remaining input fails with an EOFException once the input is exhausted rather than allocating memory for the
+         * full length up front.
+         */
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes;
+            if (length <= MAX_BUFFERED_LENGTH) {
+                bytes = new byte[length];
+                in.readFully(bytes);
+            } else {
+                bytes = in.readNBytes(length);
+                if (bytes.length < length) {
+                    throw new EOFException();
+                }
+            }
+            return bytes;
+        }
+
+
+        private long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidVarint"));
+        }
+
+
+        private static int unZigZag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        @Override
+        public Object readUnshared() throws IOException, ClassNotFoundException {
+            return readObject();
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            return in.read(buf, off, len);
+        }
+
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return in.readBoolean();
+        }
+
+
+        @Override
+        public byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+
+        @Override
+        public int readUnsignedByte() throws IOException {
+            return in.readUnsignedByte();
+        }
+
+
+        @Override
+        public char readChar() throws IOException {
+            return in.readChar();
+        }
+
+
+        @Override
+        public short readShort() throws IOException {
+            return in.readShort();
+        }
+
+
+        @Override
+        public int readUnsignedShort() throws IOException {
+            return in.readUnsignedShort();
+        }
+
+
+        @Override
+        public int readInt() throws IOException {
+            return in.readInt();
+        }
+
+
+        @Override
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+
+        @Override
+        public float readFloat() throws IOException {
+            return in.readFloat();
+        }
+
+
+        @Override
+        public double readDouble() throws IOException {
+            return in.readDouble();
+        }
+
+
+        @Override
+        public void readFully(byte[] buf) throws IOException {
+            in.readFully(buf);
+        }
+
+
+        @Override
+        public void readFully(byte[] buf, int off, int len) throws IOException {
+            in.readFully(buf, off, len);
+        }
+
+
+        @Override
+        public int skipBytes(int len) throws IOException {
+            return in.skipBytes(len);
+        }
+
+
+        @Override
+        @Deprecated
+        public String readLine() throws IOException {
+            return in.readLine();
+        }
+
+
+        @Override
+        public String readUTF() throws IOException {
+            return in.readUTF();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            if (javaIn != null) {
+                javaIn.close();
+            }
+            in.close();
+        }
+    }
+
+
+    /*
+     * Provides the chunks of the shared Java serialization stream to the Java serialization reader. Each chunk holds
+     * exactly the bytes written for one value.
+     */
+    private static final class JavaChunkInputStream extends ByteArrayInputStream {
+
+        JavaChunkInputStream() {
+            super(new byte[0]);
+        }
+
+        void setData(byte[] data) {
+            buf = data;
+            pos = 0;
+            count = data.length;
+            mark = 0;
+        }
+    }
+}
@@ -29,7 +29,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -37,14 +45,21 @@ import javax.naming.NamingException;
 import javax.sql.DataSource;
 
 import org.apache.catalina.Container;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Server;
 import org.apache.catalina.Service;
 import org.apache.catalina.Session;
 import org.apache.juli.logging.Log;
+import org.apache.tomcat.util.ExceptionUtils;
 
 /**
  * Implementation of the {@link org.apache.catalina.Store Store} interface that stores serialized session objects in a
  * database. Sessions that are saved are still subject to being expired based on inactivity.
+ * <p>
+ * If write-behind is enabled, saved and removed sessions are queued and written to the database in batches by a
+ * background thread rather than by the thread that saves or removes the session. Repeated changes to the same session
+ * while it is queued are coalesced. Sessions that are queued are visible to {@link #load(String)} and the queue is
+ * written to the database before the saved sessions are counted or listed.
  *
  * @author Bip Thelin
  */
@@ -113,6 +128,51 @@ public class DataSourceStore extends StoreBase {
      */
     protected String sessionLastAccessedCol = "lastaccess";
 
+
+    // ------------------------------------------------------------ Write-behind
+
+    /**
+     * Are sessions written to the database by a background thread?
+     */
+    private boolean writeBehind = false;
+
+    /**
+     * The value of {@link #writeBehind} when this Store was last started.
+     */
+    private volatile boolean writeBehindActive = false;
+
+    /**
+     * The maximum number of sessions written to the database in a single batch.
+     */
+    private int writeBehindBatchSize = 100;
+
+    /**
+     * The interval in milliseconds between writes of the queued sessions to the database.
+     */
+    private int writeBehindInterval = 1000;
+
+    /**
+     * The maximum number of sessions that may be queued. Once reached, sessions are written on the calling thread.
+     */
+    private int writeBehindMaxQueueSize = 10000;
+
+    /*
+     * The queued and in flight writes are guarded by this lock. Queued writes are keyed by session ID so later changes
+     * replace earlier ones.
+     */
+    private final Object writeBehindLock = new Object();
+    private final Map<String,PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private final Map<String,PendingWrite> inFlightWrites = new HashMap<>();
+
+    /*
+     * Held while writes are in flight so that the database always receives the changes to a session in order.
+     */
+    private final Object flushLock = new Object();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService writeBehindExecutor = null;
+    private ScheduledFuture<?> writeBehindFuture = null;
+
     // -------------------------------------------------------------- Properties
 
     /**
@@ -307,16 +367,106 @@ public class DataSourceStore extends StoreBase {
         this.localDataSource = localDataSource;
     }
 
+    /**
+     * @return {@code true} if sessions are written to the database by a background thread
+     */
+    public boolean getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Set to {@code true} to queue saved and removed sessions and write them to the database in batches from a
+     * background thread. The new value takes effect the next time this Store is started.
+     *
+     * @param writeBehind the new flag value
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        boolean oldWriteBehind = this.writeBehind;
+        this.writeBehind = writeBehind;
+        support.firePropertyChange("writeBehind", Boolean.valueOf(oldWriteBehind), Boolean.valueOf(this.writeBehind));
+    }
+
+    /**
+     * @return the maximum number of sessions written to the database in a single batch
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * Set the maximum number of sessions written to the database in a single batch. A write is also started, without
+     * waiting for the write-behind interval, once this many sessions are queued.
+     *
+     * @param writeBehindBatchSize The new batch size
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        int oldWriteBehindBatchSize = this.writeBehindBatchSize;
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        support.firePropertyChange("writeBehindBatchSize", Integer.valueOf(oldWriteBehindBatchSize),
+                Integer.valueOf(this.writeBehindBatchSize));
+    }
+
+    /**
+     * @return the interval in milliseconds between writes of the queued sessions to the database
+     */
+    public int getWriteBehindInterval() {
+        return writeBehindInterval;
+    }
+
+    /**
+     * Set the interval between writes of the queued sessions to the database. The new value takes effect the next time
+     * this Store is started.
+     *
+     * @param writeBehindInterval The new interval in milliseconds
+     */
+    public void setWriteBehindInterval(int writeBehindInterval) {
+        int oldWriteBehindInterval = this.writeBehindInterval;
+        this.writeBehindInterval = writeBehindInterval;
+        support.firePropertyChange("writeBehindInterval", Integer.valueOf(oldWriteBehindInterval),
+                Integer.valueOf(this.writeBehindInterval));
+    }
+
+    /**
+     * @return the maximum number of sessions that may be queued
+     */
+    public int getWriteBehindMaxQueueSize() {
+        return writeBehindMaxQueueSize;
+    }
+
+    /**
+     * Set the maximum number of sessions that may be queued. Once the queue is full, further sessions are written to
+     * the database by the thread that saves or removes them.
+     *
+     * @param writeBehindMaxQueueSize The new maximum queue size
+     */
+    public void setWriteBehindMaxQueueSize(int writeBehindMaxQueueSize) {
+        int oldWriteBehindMaxQueueSize = this.writeBehindMaxQueueSize;
+        this.writeBehindMaxQueueSize = writeBehindMaxQueueSize;
+        support.firePropertyChange("writeBehindMaxQueueSize", Integer.valueOf(oldWriteBehindMaxQueueSize),
+                Integer.valueOf(this.writeBehindMaxQueueSize));
+    }
+
+    /**
+     * @return the number of sessions currently queued to be written to the database
+     */
+    public int getWriteBehindQueueSize() {
+        synchronized (writeBehindLock) {
+            return pendingWrites.size();
+        }
+    }
+
 
     // --------------------------------------------------------- Public Methods
 
     @Override
     public String[] expiredKeys() throws IOException {
+        flush();
         return keys(true);
     }
 
     @Override
     public String[] keys() throws IOException {
+        flush();
         return keys(false);
     }
 
@@ -375,6 +525,7 @@ public class DataSourceStore extends StoreBase {
 
     @Override
     public int getSize() throws IOException {
+        flush();
         int size = 0;
         String sizeSql = "SELECT COUNT(" + sessionIdCol + ") FROM " + sessionTable + " WHERE " + sessionAppCol + " = ?";
 
@@ -411,6 +562,31 @@ public class DataSourceStore extends StoreBase {
         org.apache.catalina.Context context = getManager().getContext();
         Log contextLog = context.getLogger();
 
+        if (writeBehindActive) {
+            PendingWrite pendingWrite;
+            synchronized (writeBehindLock) {
+                pendingWrite = pendingWrites.get(id);
+                if (pendingWrite == null) {
+                    pendingWrite = inFlightWrites.get(id);
+                }
+            }
+            if (pendingWrite != null) {
+                if (pendingWrite.data() == null) {
+                    // Removed but not yet deleted from the database
+                    return null;
+                }
+                ClassLoader oldThreadContextCL = context.bind(null);
+                try (ObjectInputStream ois = getObjectInputStream(new ByteArrayInputStream(pendingWrite.data()))) {
+                    _session = (StandardSession) manager.createEmptySession();
+                    _session.readObjectData(ois);
+                    _session.setManager(manager);
+                    return _session;
+                } finally {
+                    context.unbind(oldThreadContextCL);
+                }
+            }
+        }
+
         int numberOfTries = 2;
         String loadSql = "SELECT " + sessionIdCol + ", " + sessionDataCol + " FROM " + sessionTable + " WHERE " +
                 sessionIdCol + " = ? AND " + sessionAppCol + " = ?";
@@ -456,6 +632,14 @@ public class DataSourceStore extends StoreBase {
     @Override
     public void remove(String id) throws IOException {
 
+        if (writeBehindActive) {
+            queue(new PendingWrite(id, null, false, 0, 0));
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger().trace(sm.getString("dataSourceStore.queued", id));
+            }
+            return;
+        }
+
         int numberOfTries = 2;
         while (numberOfTries > 0) {
             Connection _conn = getConnection();
@@ -502,6 +686,14 @@ public class DataSourceStore extends StoreBase {
 
     @Override
     public void clear() throws IOException {
+        if (writeBehindActive) {
+            synchronized (flushLock) {
+                synchronized (writeBehindLock) {
+                    pendingWrites.clear();
+                }
+            }
+        }
+
         String clearSql = "DELETE FROM " + sessionTable + " WHERE " + sessionAppCol + " = ?";
 
         int numberOfTries = 2;
@@ -527,6 +719,23 @@ public class DataSourceStore extends StoreBase {
 
     @Override
     public void save(Session session) throws IOException {
+        if (writeBehindActive) {
+            PendingWrite pendingWrite;
+            synchronized (session) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos))) {
+                    ((StandardSession) session).writeObjectData(oos);
+                }
+                pendingWrite = new PendingWrite(session.getIdInternal(), bos.toByteArray(), session.isValid(),
+                        session.getMaxInactiveInterval(), session.getLastAccessedTime());
+            }
+            queue(pendingWrite);
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger().trace(sm.getString("dataSourceStore.queued", session.getIdInternal()));
+            }
+            return;
+        }
+
         String saveSql = "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " + sessionAppCol + ", " +
                 sessionDataCol + ", " + sessionValidCol + ", " + sessionMaxInactiveCol + ", " + sessionLastAccessedCol +
                 ") VALUES (?, ?, ?, ?, ?, ?)";
@@ -580,8 +789,77 @@ public class DataSourceStore extends StoreBase {
     }
 
 
+    /**
+     * Write all the queued sessions to the database. If writing a batch fails, the sessions in that batch remain
+     * queued and are written by a later call to this method. This method does nothing if write-behind is not enabled.
+     */
+    public void flush() {
+        if (!writeBehindActive) {
+            return;
+        }
+        flushRequested.set(false);
+        while (true) {
+            synchronized (flushLock) {
+                List<PendingWrite> batch = new ArrayList<>();
+                synchronized (writeBehindLock) {
+                    Iterator<PendingWrite> iter = pendingWrites.values().iterator();
+                    while (iter.hasNext() && batch.size() < writeBehindBatchSize) {
+                        PendingWrite pendingWrite = iter.next();
+                        iter.remove();
+                        inFlightWrites.put(pendingWrite.id(), pendingWrite);
+                        batch.add(pendingWrite);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                boolean written = write(batch);
+                synchronized (writeBehindLock) {
+                    inFlightWrites.clear();
+                    if (!written) {
+                        // Retry later unless the session has been queued again in the meantime
+                        for (PendingWrite pendingWrite : batch) {
+                            pendingWrites.putIfAbsent(pendingWrite.id(), pendingWrite);
+                        }
+                    }
+                }
+                if (!written) {
+                    return;
+                }
+            }
+        }
+    }
+
+
     // --------------------------------------------------------- Protected Methods
 
+    @Override
+    protected void startInternal() throws LifecycleException {
+        writeBehindActive = writeBehind;
+        if (writeBehindActive) {
+            Service service = Container.getService(manager.getContext());
+            writeBehindExecutor = service == null ? null : service.getServer().getUtilityExecutor();
+            if (writeBehindExecutor != null) {
+                writeBehindFuture = writeBehindExecutor.scheduleWithFixedDelay(this::backgroundFlush,
+                        writeBehindInterval, writeBehindInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+        super.startInternal();
+    }
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        if (writeBehindFuture != null) {
+            writeBehindFuture.cancel(false);
+            writeBehindFuture = null;
+        }
+        writeBehindExecutor = null;
+        // Write any sessions still queued, such as those swapped out as the Manager stopped
+        flush();
+        writeBehindActive = false;
+        super.stopInternal();
+    }
+
     /**
      * Check the connection associated with this store, if it's <code>null</code> or closed try to reopen it. Returns
      * <code>null</code> if the connection could not be established.
@@ -700,4 +978,152 @@ public class DataSourceStore extends StoreBase {
         }
     }
 
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Queue the given write, replacing any write of the same session that is already queued. If the queue is full, the
+     * write is performed on the calling thread.
+     *
+     * @param pendingWrite The write to queue
+     *
+     * @throws IOException if the queue is full and the write on the calling thread fails
+     */
+    private void queue(PendingWrite pendingWrite) throws IOException {
+        boolean queued = false;
+        boolean batchReady = false;
+        synchronized (writeBehindLock) {
+            if (pendingWrites.size() < writeBehindMaxQueueSize || pendingWrites.containsKey(pendingWrite.id())) {
+                pendingWrites.put(pendingWrite.id(), pendingWrite);
+                queued = true;
+                batchReady = pendingWrites.size() >= writeBehindBatchSize;
+            }
+        }
+
+        if (!queued) {
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString("dataSourceStore.queueFull", pendingWrite.id()));
+            }
+            // Wait for any earlier write of this session that is in flight
+            boolean written;
+            synchronized (flushLock) {
+                written = write(List.of(pendingWrite));
+            }
+            if (!written) {
+                throw new IOException(sm.getString("dataSourceStore.writeFail", pendingWrite.id()));
+            }
+            return;
+        }
+
+        ScheduledExecutorService executor = writeBehindExecutor;
+        if (batchReady && executor != null && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::backgroundFlush);
+        }
+    }
+
+    private void backgroundFlush() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            manager.getContext().getLogger().error(sm.getString("dataSourceStore.flushFail"), t);
+        }
+    }
+
+    /**
+     * Write a batch of sessions to the database in a single transaction. Sessions are replaced by deleting any existing
+     * row and inserting a new one since there is no portable SQL for an upsert.
+     *
+     * @param batch The sessions to write
+     *
+     * @return {@code true} if the batch was written, otherwise {@code false}
+     */
+    private boolean write(List<PendingWrite> batch) {
+        String removeSql =
+                "DELETE FROM " + sessionTable + " WHERE " + sessionIdCol + " = ?  AND " + sessionAppCol + " = ?";
+        String saveSql = "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " + sessionAppCol + ", " +
+                sessionDataCol + ", " + sessionValidCol + ", " + sessionMaxInactiveCol + ", " + sessionLastAccessedCol +
+                ") VALUES (?, ?, ?, ?, ?, ?)";
+
+        boolean written = false;
+        int numberOfTries = 2;
+        while (numberOfTries > 0) {
+            Connection _conn = getConnection();
+            if (_conn == null) {
+                return false;
+            }
+
+            boolean autoCommit = true;
+            try {
+                autoCommit = _conn.getAutoCommit();
+                _conn.setAutoCommit(false);
+                try (PreparedStatement preparedRemoveSql = _conn.prepareStatement(removeSql);
+                        PreparedStatement preparedSaveSql = _conn.prepareStatement(saveSql)) {
+                    boolean save = false;
+                    for (PendingWrite pendingWrite : batch) {
+                        preparedRemoveSql.setString(1, pendingWrite.id());
+                        preparedRemoveSql.setString(2, getName());
+                        preparedRemoveSql.addBatch();
+                        byte[] data = pendingWrite.data();
+                        if (data != null) {
+                            preparedSaveSql.setString(1, pendingWrite.id());
+                            preparedSaveSql.setString(2, getName());
+                            preparedSaveSql.setBinaryStream(3, new ByteArrayInputStream(data), data.length);
+                            preparedSaveSql.setString(4, pendingWrite.valid() ? "1" : "0");
+                            preparedSaveSql.setInt(5, pendingWrite.maxInactiveInterval());
+                            preparedSaveSql.setLong(6, pendingWrite.lastAccessedTime());
+                            preparedSaveSql.addBatch();
+                            save = true;
+                        }
+                    }
+                    preparedRemoveSql.executeBatch();
+                    if (save) {
+                        preparedSaveSql.executeBatch();
+                    }
+                }
+                _conn.commit();
+                written = true;
+                // Break out after the finally block
+                numberOfTries = 0;
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString("dataSourceStore.SQLException", e));
+                try {
+                    _conn.rollback();
+                } catch (SQLException e2) {
+                    manager.getContext().getLogger().error(sm.getString("dataSourceStore.SQLException", e2));
+                }
+            } finally {
+                try {
+                    _conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    manager.getContext().getLogger().error(sm.getString("dataSourceStore.SQLException", e));
+                }
+                release(_conn);
+            }
+            numberOfTries--;
+        }
+
+        if (written && manager.getContext().getLogger().isTraceEnabled()) {
+            manager.getContext().getLogger()
+                    .trace(sm.getString("dataSourceStore.written", Integer.valueOf(batch.size()), sessionTable));
+        }
+        return written;
+    }
+
+
+    // ----------------------------------------------------------- Inner classes
+
+    /**
+     * A change to a session that has not yet been written to the database.
+     *
+     * @param id                  The session ID
+     * @param data                The serialized session or {@code null} if the session has been removed
+     * @param valid               The validity of the session
+     * @param maxInactiveInterval The maximum inactive interval of the session
+     * @param lastAccessedTime    The last accessed time of the session
+     */
+    private record PendingWrite(String id, byte[] data, boolean valid, int maxInactiveInterval,
+            long lastAccessedTime) {
+    }
+
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link SessionSerializer} that writes and reads session data using Java serialization. This is the format used
+ * by versions of Tomcat that did not support configurable session serialization so it may be used when session data
+ * has to be exchanged with those versions, for example while performing a rolling upgrade of a cluster.
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+
+    @Override
+    public ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException {
+        return new ObjectOutputStream(os);
+    }
+
+
+    @Override
+    public ObjectInputStream createObjectInputStream(InputStream is, ObjectInputStreamFactory javaStreamFactory)
+            throws IOException {
+        return javaStreamFactory.create(is);
+    }
+}
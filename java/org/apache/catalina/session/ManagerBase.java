@@ -103,6 +103,11 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     protected SessionIdGenerator sessionIdGenerator = null;
     protected Class<? extends SessionIdGenerator> sessionIdGeneratorClass = null;
 
+    /**
+     * The serializer used to create the streams that sessions are written to and read from.
+     */
+    protected SessionSerializer sessionSerializer = new JavaSessionSerializer();
+
     /**
      * The longest time (in seconds) that an expired session had been alive.
      */
@@ -127,6 +132,11 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
      */
     protected Map<String,Session> sessions = new ConcurrentHashMap<>();
 
+    /**
+     * The sessions of this Manager indexed by the time at which they are due to expire.
+     */
+    private final SessionExpiryIndex expiryIndex = new SessionExpiryIndex();
+
     protected volatile int maxActive = 0;
 
     private final Object maxActiveUpdateLock = new Object();
@@ -404,6 +414,25 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * @return the serializer used to create the streams that sessions are written to when they are persisted across
+     *             restarts or replicated and read from when they are restored
+     */
+    public SessionSerializer getSessionSerializer() {
+        return sessionSerializer;
+    }
+
+
+    /**
+     * Set the serializer used to create the streams that sessions are written to and read from.
+     *
+     * @param sessionSerializer The new serializer
+     */
+    public void setSessionSerializer(SessionSerializer sessionSerializer) {
+        this.sessionSerializer = sessionSerializer;
+    }
+
+
     /**
      * @return The descriptive short name of this Manager implementation.
      */
@@ -563,17 +592,11 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0;
 
         if (log.isTraceEnabled()) {
-            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        }
-        for (Session session : sessions) {
-            if (session != null && !session.isValid()) {
-                expireHere++;
-            }
+            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
         }
+        int expireHere = expireDueSessions(timeNow);
         long timeEnd = System.currentTimeMillis();
         if (log.isTraceEnabled()) {
             log.trace("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) +
@@ -584,6 +607,76 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * Expire the sessions that have expired by the given time. Rather than checking every session, only the sessions
+     * that the expiry index identifies as possibly having expired are checked. Sessions that have been accessed since
+     * they were indexed are re-indexed by their new expiry time. The map of sessions is not used to determine which
+     * sessions to check as, for some Manager implementations, accessing that map has side effects.
+     *
+     * @param timeNow The current time in milliseconds
+     *
+     * @return the number of sessions that were found to have expired
+     */
+    protected int expireDueSessions(long timeNow) {
+        int expired = 0;
+        for (Session session : expiryIndex.removeDue(timeNow)) {
+            if (!expiryIndex.contains(session)) {
+                // Removed while the due sessions were being checked
+                continue;
+            }
+            if (!isExpiryManaged(session)) {
+                expiryIndex.remove(session);
+            } else if (session.isValid()) {
+                expiryIndex.reschedule(session, timeNow);
+            } else {
+                expiryIndex.remove(session);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+
+    /**
+     * Determine whether this Manager is responsible for expiring a session that is in its expiry index. Managers that
+     * may hold sessions that are owned by another node, such as cluster managers, may override this method to stop
+     * tracking the expiry of such sessions. Implementations must not have side effects.
+     *
+     * @param session The session
+     *
+     * @return {@code true} if this Manager should check the session for expiry. This implementation always returns
+     *             {@code true}.
+     */
+    protected boolean isExpiryManaged(Session session) {
+        return true;
+    }
+
+
+    /**
+     * Start tracking the expiry of a session that this Manager has become responsible for without the session having
+     * been passed to {@link #add(Session)}, for example a replicated copy of a session for which this node has become
+     * the primary node.
+     *
+     * @param session The session
+     */
+    protected void scheduleExpiry(Session session) {
+        expiryIndex.schedule(session, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Notify this Manager that the maximum inactive interval of one of its sessions has changed. Reducing the maximum
+     * inactive interval may mean that the session will expire earlier than the expiry index expects so session
+     * implementations must call this method whenever the maximum inactive interval is changed. Sessions whose expiry
+     * this Manager does not track are ignored.
+     *
+     * @param session The session
+     */
+    public void maxInactiveIntervalChanged(Session session) {
+        expiryIndex.reschedule(session, System.currentTimeMillis());
+    }
+
+
     @Override
     protected void initInternal() throws LifecycleException {
         super.initInternal();
@@ -641,6 +734,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
 
     @Override
     protected void stopInternal() throws LifecycleException {
+        expiryIndex.clear();
         if (sessionIdGenerator instanceof Lifecycle) {
             ((Lifecycle) sessionIdGenerator).stop();
         }
@@ -649,6 +743,8 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
 
     @Override
     public void add(Session session) {
+        // Index the session first so the index is never missing a session that is in the map of sessions
+        expiryIndex.schedule(session, System.currentTimeMillis());
         sessions.put(session.getIdInternal(), session);
         int size = getActiveSessions();
         if (size > maxActive) {
@@ -744,6 +840,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        expiryIndex.remove(session);
     }
 
 
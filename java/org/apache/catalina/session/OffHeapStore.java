@@ -0,0 +1,724 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.modeler.Registry;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Implementation of the <b>Store</b> interface that holds saved Sessions, in serialized form, outside of the Java heap.
+ * When used with a {@link PersistentManager} that has <code>maxActiveSessions</code> and <code>minIdleSwap</code>
+ * configured, the Manager retains the most recently used sessions in memory and swaps the others out to this Store so
+ * the attributes of idle sessions no longer have to be retained, and traced, by the garbage collector.
+ * <p>
+ * Sessions are written to fixed size blocks of direct buffers, up to <code>maxOffHeapSize</code> bytes in total. Once
+ * that memory has been used, further sessions are written to blocks of a memory-mapped spill file of up to
+ * <code>maxSpillSize</code> bytes. Saved Sessions are discarded when this Store is stopped so this Store does not
+ * retain sessions across restarts.
+ */
+public final class OffHeapStore extends StoreBase {
+
+    private static final Log log = LogFactory.getLog(OffHeapStore.class);
+    private static final StringManager sm = StringManager.getManager(OffHeapStore.class);
+
+
+    // ----------------------------------------------------- Constants
+
+    /**
+     * The largest amount of memory, or of the spill file, that is allocated or mapped at once.
+     */
+    private static final int MAX_REGION_SIZE = 4 * 1024 * 1024;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "offHeapStore";
+
+
+    /**
+     * The size, in bytes, of the blocks sessions are written to.
+     */
+    private int blockSize = 1024;
+
+
+    /**
+     * The maximum amount of memory, in bytes, used outside of the Java heap for saved sessions.
+     */
+    private long maxOffHeapSize = 64L * 1024 * 1024;
+
+
+    /**
+     * The pathname of the file to which sessions are written once the off-heap memory has been used. This may be an
+     * absolute pathname, or a relative path that is resolved against the temporary work directory for this
+     * application.
+     */
+    private String spillFile = "SESSIONS.spill";
+
+
+    /**
+     * The maximum size, in bytes, of the spill file.
+     */
+    private long maxSpillSize = 1024L * 1024 * 1024;
+
+
+    /*
+     * The saved sessions, the memory and spill file regions they are written to and the statistics are all guarded by
+     * this lock.
+     */
+    private final Object lock = new Object();
+    private final Map<String,StoredSession> storedSessions = new HashMap<>();
+    private final List<ByteBuffer> regions = new ArrayList<>();
+    private final BlockStack freeMemoryBlocks = new BlockStack();
+    private final BlockStack freeSpillBlocks = new BlockStack();
+    private int blocksPerRegion;
+    private int regionSize;
+    private int maxMemoryRegions;
+    private int maxSpillRegions;
+    private File spillLocation;
+    private FileChannel spillChannel;
+    private long memoryLoadCount;
+    private long spillLoadCount;
+    private long missCount;
+
+    private ObjectName oname;
+
+
+    // ------------------------------------------------------------- Properties
+
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    /**
+     * @return the size, in bytes, of the blocks sessions are written to
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Set the size of the blocks sessions are written to. Each saved session wastes, on average, half a block. The new
+     * value takes effect the next time this Store is started.
+     *
+     * @param blockSize The new block size in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        int oldBlockSize = this.blockSize;
+        this.blockSize = blockSize;
+        support.firePropertyChange("blockSize", Integer.valueOf(oldBlockSize), Integer.valueOf(this.blockSize));
+    }
+
+
+    /**
+     * @return the maximum amount of memory, in bytes, used outside of the Java heap for saved sessions
+     */
+    public long getMaxOffHeapSize() {
+        return maxOffHeapSize;
+    }
+
+
+    /**
+     * Set the maximum amount of memory used outside of the Java heap for saved sessions. The new value takes effect the
+     * next time this Store is started.
+     *
+     * @param maxOffHeapSize The new limit in bytes
+     */
+    public void setMaxOffHeapSize(long maxOffHeapSize) {
+        long oldMaxOffHeapSize = this.maxOffHeapSize;
+        this.maxOffHeapSize = maxOffHeapSize;
+        support.firePropertyChange("maxOffHeapSize", Long.valueOf(oldMaxOffHeapSize),
+                Long.valueOf(this.maxOffHeapSize));
+    }
+
+
+    /**
+     * @return the pathname of the spill file
+     */
+    public String getSpillFile() {
+        return spillFile;
+    }
+
+
+    /**
+     * Set the pathname of the file to which sessions are written once the off-heap memory has been used. The file is
+     * deleted when this Store is stopped. The new value takes effect the next time this Store is started.
+     *
+     * @param spillFile The new pathname. A relative path is resolved against the temporary work directory for this
+     *                      application. If <code>null</code> or empty, no spill file is used.
+     */
+    public void setSpillFile(String spillFile) {
+        String oldSpillFile = this.spillFile;
+        this.spillFile = spillFile;
+        support.firePropertyChange("spillFile", oldSpillFile, this.spillFile);
+    }
+
+
+    /**
+     * @return the maximum size, in bytes, of the spill file
+     */
+    public long getMaxSpillSize() {
+        return maxSpillSize;
+    }
+
+
+    /**
+     * Set the maximum size of the spill file. Once both the off-heap memory and the spill file have been used,
+     * attempts to save further sessions fail and those sessions remain in the memory of the Manager. The new value
+     * takes effect the next time this Store is started.
+     *
+     * @param maxSpillSize The new limit in bytes. A value of zero disables the spill file.
+     */
+    public void setMaxSpillSize(long maxSpillSize) {
+        long oldMaxSpillSize = this.maxSpillSize;
+        this.maxSpillSize = maxSpillSize;
+        support.firePropertyChange("maxSpillSize", Long.valueOf(oldMaxSpillSize), Long.valueOf(this.maxSpillSize));
+    }
+
+
+    @Override
+    public int getSize() throws IOException {
+        synchronized (lock) {
+            return storedSessions.size();
+        }
+    }
+
+
+    /**
+     * @return the amount of memory, in bytes, currently allocated outside of the Java heap by this Store
+     */
+    public long getOffHeapSize() {
+        synchronized (lock) {
+            return (long) memoryRegionCount() * regionSize;
+        }
+    }
+
+
+    /**
+     * @return the amount of memory, in bytes, allocated outside of the Java heap that currently holds saved sessions
+     */
+    public long getOffHeapUsed() {
+        synchronized (lock) {
+            return ((long) memoryRegionCount() * blocksPerRegion - freeMemoryBlocks.size()) * blockSize;
+        }
+    }
+
+
+    /**
+     * @return the current size, in bytes, of the spill file
+     */
+    public long getSpillSize() {
+        synchronized (lock) {
+            return (long) spillRegionCount() * regionSize;
+        }
+    }
+
+
+    /**
+     * @return the amount of the spill file, in bytes, that currently holds saved sessions
+     */
+    public long getSpillUsed() {
+        synchronized (lock) {
+            return ((long) spillRegionCount() * blocksPerRegion - freeSpillBlocks.size()) * blockSize;
+        }
+    }
+
+
+    /**
+     * @return the number of sessions loaded from this Store that were read from off-heap memory
+     */
+    public long getMemoryLoadCount() {
+        synchronized (lock) {
+            return memoryLoadCount;
+        }
+    }
+
+
+    /**
+     * @return the number of sessions loaded from this Store that were read, at least in part, from the spill file
+     */
+    public long getSpillLoadCount() {
+        synchronized (lock) {
+            return spillLoadCount;
+        }
+    }
+
+
+    /**
+     * @return the number of attempts to load a session that was not held by this Store
+     */
+    public long getMissCount() {
+        synchronized (lock) {
+            return missCount;
+        }
+    }
+
+
+    /**
+     * @return the proportion of the sessions loaded from this Store that were read from off-heap memory rather than
+     *             from the spill file
+     */
+    public double getHitRatio() {
+        synchronized (lock) {
+            long loadCount = memoryLoadCount + spillLoadCount;
+            if (loadCount == 0) {
+                return 0;
+            }
+            return (double) memoryLoadCount / loadCount;
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * Reset the load statistics of this Store.
+     */
+    public void resetStatistics() {
+        synchronized (lock) {
+            memoryLoadCount = 0;
+            spillLoadCount = 0;
+            missCount = 0;
+        }
+    }
+
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (lock) {
+            for (StoredSession storedSession : storedSessions.values()) {
+                free(storedSession.blocks(), storedSession.blocks().length);
+            }
+            storedSessions.clear();
+        }
+    }
+
+
+    @Override
+    public String[] keys() throws IOException {
+        synchronized (lock) {
+            return storedSessions.keySet().toArray(new String[0]);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This Store retains the last access time and the maximum inactive interval of each saved session so the sessions
+     * that have not expired do not have to be loaded to find the ones that have.
+     */
+    @Override
+    public String[] expiredKeys() throws IOException {
+        long timeNow = System.currentTimeMillis();
+        List<String> expiredKeys = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<String,StoredSession> entry : storedSessions.entrySet()) {
+                if (entry.getValue().isExpired(timeNow)) {
+                    expiredKeys.add(entry.getKey());
+                }
+            }
+        }
+        return expiredKeys.toArray(new String[0]);
+    }
+
+
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+        byte[] data;
+        synchronized (lock) {
+            StoredSession storedSession = storedSessions.get(id);
+            if (storedSession == null) {
+                missCount++;
+                return null;
+            }
+            data = read(storedSession);
+            if (isSpilled(storedSession)) {
+                spillLoadCount++;
+            } else {
+                memoryLoadCount++;
+            }
+        }
+
+        Context context = getManager().getContext();
+        if (context.getLogger().isTraceEnabled()) {
+            context.getLogger().trace(sm.getString(getStoreName() + ".loading", id));
+        }
+
+        ClassLoader oldThreadContextCL = context.bind(null);
+
+        try (ObjectInputStream ois = getObjectInputStream(new ByteArrayInputStream(data))) {
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            context.unbind(oldThreadContextCL);
+        }
+    }
+
+
+    @Override
+    public void remove(String id) throws IOException {
+        if (manager.getContext().getLogger().isTraceEnabled()) {
+            manager.getContext().getLogger().trace(sm.getString(getStoreName() + ".removing", id));
+        }
+        synchronized (lock) {
+            StoredSession storedSession = storedSessions.remove(id);
+            if (storedSession != null) {
+                free(storedSession.blocks(), storedSession.blocks().length);
+            }
+        }
+    }
+
+
+    @Override
+    public void save(Session session) throws IOException {
+        StandardSession standardSession = (StandardSession) session;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            standardSession.writeObjectData(oos);
+        }
+        byte[] data = bos.toByteArray();
+
+        String id = session.getIdInternal();
+        if (manager.getContext().getLogger().isTraceEnabled()) {
+            manager.getContext().getLogger()
+                    .trace(sm.getString(getStoreName() + ".saving", id, Integer.valueOf(data.length)));
+        }
+
+        synchronized (lock) {
+            if (blocksPerRegion == 0) {
+                throw new IOException(sm.getString("offHeapStore.notStarted"));
+            }
+            /*
+             * Allocate before freeing any previously saved copy so that the previous copy is retained if there is no
+             * space for the new one.
+             */
+            int[] blocks = allocate(id, (data.length + blockSize - 1) / blockSize);
+            write(blocks, data);
+            StoredSession oldStoredSession = storedSessions.put(id, new StoredSession(blocks, data.length,
+                    standardSession.getThisAccessedTimeInternal(), standardSession.getMaxInactiveInterval()));
+            if (oldStoredSession != null) {
+                free(oldStoredSession.blocks(), oldStoredSession.blocks().length);
+            }
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+        if (blockSize <= 0 || blockSize > MAX_REGION_SIZE) {
+            throw new LifecycleException(sm.getString("offHeapStore.invalidBlockSize", Integer.valueOf(blockSize),
+                    Integer.valueOf(MAX_REGION_SIZE)));
+        }
+
+        synchronized (lock) {
+            /*
+             * Regions are no larger than the off-heap limit so small limits are honoured exactly. All block numbers
+             * have to fit in an int.
+             */
+            long size = MAX_REGION_SIZE;
+            if (maxOffHeapSize >= blockSize && maxOffHeapSize < size) {
+                size = maxOffHeapSize;
+            }
+            blocksPerRegion = (int) (size / blockSize);
+            regionSize = blocksPerRegion * blockSize;
+            int maxRegions = Integer.MAX_VALUE / blocksPerRegion;
+            maxMemoryRegions = (int) Math.min(Math.max(maxOffHeapSize, 0) / regionSize, maxRegions);
+            spillLocation = spillFile();
+            if (spillLocation == null) {
+                maxSpillRegions = 0;
+            } else {
+                maxSpillRegions =
+                        (int) Math.min(Math.max(maxSpillSize, 0) / regionSize, maxRegions - maxMemoryRegions);
+            }
+        }
+
+        register();
+
+        super.startInternal();
+    }
+
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        super.stopInternal();
+
+        unregister();
+
+        synchronized (lock) {
+            storedSessions.clear();
+            freeMemoryBlocks.clear();
+            freeSpillBlocks.clear();
+            for (ByteBuffer region : regions) {
+                ByteBufferUtils.cleanDirectBuffer(region);
+            }
+            regions.clear();
+            blocksPerRegion = 0;
+            if (spillChannel != null) {
+                try {
+                    spillChannel.close();
+                } catch (IOException ioe) {
+                    log.warn(sm.getString("offHeapStore.closeFailed", spillLocation), ioe);
+                }
+                spillChannel = null;
+                if (!spillLocation.delete() && spillLocation.exists()) {
+                    log.warn(sm.getString("offHeapStore.deleteFailed", spillLocation));
+                }
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /*
+     * Block n is the (n % blocksPerRegion)th block of region (n / blocksPerRegion). The first maxMemoryRegions regions
+     * are direct buffers and the remaining regions are mapped from the spill file. Regions are only mapped from the
+     * spill file once all the memory regions have been allocated.
+     */
+    private int memoryRegionCount() {
+        return Math.min(regions.size(), maxMemoryRegions);
+    }
+
+
+    private int spillRegionCount() {
+        return regions.size() - memoryRegionCount();
+    }
+
+
+    private boolean isSpilled(StoredSession storedSession) {
+        int firstSpillBlock = maxMemoryRegions * blocksPerRegion;
+        for (int block : storedSession.blocks()) {
+            if (block >= firstSpillBlock) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private int[] allocate(String id, int count) throws IOException {
+        int[] blocks = new int[count];
+        int allocated = 0;
+        try {
+            while (allocated < count) {
+                blocks[allocated] = allocateBlock(id);
+                allocated++;
+            }
+        } catch (IOException ioe) {
+            free(blocks, allocated);
+            throw ioe;
+        }
+        return blocks;
+    }
+
+
+    private int allocateBlock(String id) throws IOException {
+        if (freeMemoryBlocks.isEmpty() && regions.size() < maxMemoryRegions) {
+            addRegion(ByteBuffer.allocateDirect(regionSize), freeMemoryBlocks);
+        }
+        if (!freeMemoryBlocks.isEmpty()) {
+            return freeMemoryBlocks.pop();
+        }
+        if (freeSpillBlocks.isEmpty() && spillRegionCount() < maxSpillRegions) {
+            addRegion(mapSpillRegion(), freeSpillBlocks);
+        }
+        if (!freeSpillBlocks.isEmpty()) {
+            return freeSpillBlocks.pop();
+        }
+        throw new IOException(sm.getString("offHeapStore.full", id));
+    }
+
+
+    private void addRegion(ByteBuffer region, BlockStack freeBlocks) {
+        int firstBlock = regions.size() * blocksPerRegion;
+        regions.add(region);
+        // Push in reverse order so the lowest blocks are used first
+        for (int block = firstBlock + blocksPerRegion - 1; block >= firstBlock; block--) {
+            freeBlocks.push(block);
+        }
+    }
+
+
+    private ByteBuffer mapSpillRegion() throws IOException {
+        if (spillChannel == null) {
+            log.info(sm.getString("offHeapStore.spill", Long.valueOf(getOffHeapSize()), spillLocation));
+            spillChannel = FileChannel.open(spillLocation.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long position = (long) spillRegionCount() * regionSize;
+        return spillChannel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+    }
+
+
+    private void free(int[] blocks, int count) {
+        int firstSpillBlock = maxMemoryRegions * blocksPerRegion;
+        for (int i = 0; i < count; i++) {
+            if (blocks[i] < firstSpillBlock) {
+                freeMemoryBlocks.push(blocks[i]);
+            } else {
+                freeSpillBlocks.push(blocks[i]);
+            }
+        }
+    }
+
+
+    private void write(int[] blocks, byte[] data) {
+        for (int i = 0; i < blocks.length; i++) {
+            int start = i * blockSize;
+            regions.get(blocks[i] / blocksPerRegion).put((blocks[i] % blocksPerRegion) * blockSize, data, start,
+                    Math.min(blockSize, data.length - start));
+        }
+    }
+
+
+    private byte[] read(StoredSession storedSession) {
+        byte[] data = new byte[storedSession.length()];
+        int[] blocks = storedSession.blocks();
+        for (int i = 0; i < blocks.length; i++) {
+            int start = i * blockSize;
+            regions.get(blocks[i] / blocksPerRegion).get((blocks[i] % blocksPerRegion) * blockSize, data, start,
+                    Math.min(blockSize, data.length - start));
+        }
+        return data;
+    }
+
+
+    /**
+     * Return a File object representing the pathname of the spill file, if any.
+     */
+    private File spillFile() {
+        if (spillFile == null || spillFile.isEmpty()) {
+            return null;
+        }
+        File file = new File(spillFile);
+        if (!file.isAbsolute()) {
+            ServletContext servletContext = manager.getContext().getServletContext();
+            File work = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+            file = new File(work, spillFile);
+        }
+        return file;
+    }
+
+
+    private void register() {
+        Context context = manager.getContext();
+        String domain = context.getDomain();
+        if (domain == null) {
+            return;
+        }
+        StringBuilder name = new StringBuilder(domain);
+        name.append(":type=Store,host=");
+        name.append(context.getParent().getName());
+        name.append(",context=");
+        String contextName = context.getName();
+        if (!contextName.startsWith("/")) {
+            name.append('/');
+        }
+        name.append(contextName);
+        try {
+            oname = new ObjectName(name.toString());
+            Registry.getRegistry(null).registerComponent(this, oname, null);
+        } catch (Exception e) {
+            oname = null;
+            log.warn(sm.getString("offHeapStore.jmxRegistrationFail", name), e);
+        }
+    }
+
+
+    private void unregister() {
+        if (oname != null) {
+            Registry.getRegistry(null).unregisterComponent(oname);
+            oname = null;
+        }
+    }
+
+
+    // ----------------------------------------------------------- Inner classes
+
+    private record StoredSession(int[] blocks, int length, long thisAccessedTime, int maxInactiveInterval) {
+
+        boolean isExpired(long timeNow) {
+            return maxInactiveInterval > 0 && (timeNow - thisAccessedTime) / 1000L >= maxInactiveInterval;
+        }
+    }
+
+
+    private static class BlockStack {
+
+        private int[] blocks = new int[0];
+        private int size;
+
+        void push(int block) {
+            if (size == blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.max(16, size * 2));
+            }
+            blocks[size++] = block;
+        }
+
+        int pop() {
+            return blocks[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            blocks = new int[0];
+            size = 0;
+        }
+    }
+}
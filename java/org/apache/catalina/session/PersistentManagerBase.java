@@ -18,6 +18,7 @@ package org.apache.catalina.session;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -311,17 +312,11 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0;
         if (log.isTraceEnabled()) {
-            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        }
-        for (Session session : sessions) {
-            if (!session.isValid()) {
-                expiredSessions.incrementAndGet();
-                expireHere++;
-            }
+            log.trace("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
         }
+        int expireHere = expireDueSessions(timeNow);
+        expiredSessions.addAndGet(expireHere);
         processPersistenceChecks();
         if (getStore() instanceof StoreBase) {
             ((StoreBase) getStore()).processExpires();
@@ -790,7 +785,6 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
 
         Session[] sessions = findSessions();
 
-        // FIXME: Smarter algorithm (LRU)
         int limit = (int) (getMaxActiveSessions() * 0.9);
 
         if (limit >= sessions.length) {
@@ -801,6 +795,9 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
             log.debug(sm.getString("persistentManager.tooManyActive", Integer.valueOf(sessions.length)));
         }
 
+        // Swap out the least recently used sessions first
+        sortLeastRecentlyUsedFirst(sessions);
+
         int toswap = sessions.length - limit;
 
         for (int i = 0; i < sessions.length && toswap > 0; i++) {
@@ -829,6 +826,25 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
     }
 
 
+    /**
+     * Sort the given sessions so that the session that was least recently accessed is first.
+     *
+     * @param sessions The sessions to sort
+     */
+    private static void sortLeastRecentlyUsedFirst(Session[] sessions) {
+        // Sort on a snapshot of the access times as they may change while sorting
+        AccessedSession[] accessedSessions = new AccessedSession[sessions.length];
+        for (int i = 0; i < sessions.length; i++) {
+            accessedSessions[i] = new AccessedSession(sessions[i],
+                    ((StandardSession) sessions[i]).getThisAccessedTimeInternal());
+        }
+        Arrays.sort(accessedSessions, Comparator.comparingLong(AccessedSession::thisAccessedTime));
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = accessedSessions[i].session();
+        }
+    }
+
+
     /**
      * Back up idle sessions.
      */
@@ -874,4 +890,9 @@ public abstract class PersistentManagerBase extends ManagerBase implements Store
 
     }
 
+
+    // ----------------------------------------------------------- Inner classes
+
+    private record AccessedSession(Session session, long thisAccessedTime) {
+    }
 }
@@ -0,0 +1,728 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved Sessions to a series of segment files in a
+ * configured directory. An in-memory index maps the identifier of each saved Session to the location of its most
+ * recent record so saving a Session does not require a file to be created and listing the saved Sessions does not
+ * require the directory to be read. Sessions that are saved are still subject to being expired based on inactivity.
+ * <p>
+ * Records that have been replaced or removed remain in the segment files until the segment that contains them is
+ * compacted. Compaction is performed by the background processing thread once the proportion of a segment that is
+ * still in use falls below <code>compactionThreshold</code>. The index is rebuilt when the Store is started by reading
+ * the record headers of the segment files, without deserializing the saved Sessions.
+ * <p>
+ * Records are written to the segment files without forcing them to the storage device. Records that have been
+ * written survive a restart of Tomcat but the most recently written records may be lost if the operating system
+ * fails. Any incomplete or corrupt record found when the index is rebuilt is discarded along with the rest of that
+ * segment file. Records copied during compaction are forced to the storage device before the segment file they were
+ * copied from is deleted so compaction never loses a record that was on the storage device before it started.
+ */
+public final class SegmentFileStore extends StoreBase {
+
+    private static final Log log = LogFactory.getLog(SegmentFileStore.class);
+    private static final StringManager sm = StringManager.getManager(SegmentFileStore.class);
+
+
+    // ----------------------------------------------------- Constants
+
+    /**
+     * The prefix and extension used for segment file names.
+     */
+    private static final String FILE_PREFIX = "sessions-";
+    private static final String FILE_EXT = ".segment";
+
+    /*
+     * Each record is written as:
+     * int    length of the record body
+     * byte   record type
+     * long   time the session was last accessed
+     * int    maximum inactive interval of the session
+     * short  length of the session ID
+     * byte[] session ID
+     * byte[] serialized session (only for RECORD_SAVE)
+     * int    CRC32 of the record body
+     */
+    private static final byte RECORD_SAVE = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int BODY_HEADER_SIZE = 1 + 8 + 4 + 2;
+    private static final int RECORD_OVERHEAD = 4 + BODY_HEADER_SIZE + 4;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The pathname of the directory in which Sessions are stored. This may be an absolute pathname, or a relative path
+     * that is resolved against the temporary work directory for this application.
+     */
+    private String directory = ".";
+
+
+    /**
+     * A File representing the directory in which Sessions are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size, in bytes, at which a new segment file is started.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+
+    /**
+     * The proportion of a segment file that is still in use below which the segment file is compacted.
+     */
+    private double compactionThreshold = 0.5;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "segmentFileStore";
+
+
+    /*
+     * The segments and the index are guarded by this lock.
+     */
+    private final Object lock = new Object();
+    private final TreeMap<Long,Segment> segments = new TreeMap<>();
+    private final Map<String,Location> index = new HashMap<>();
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * @return The directory path for this Store.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory, this.directory);
+    }
+
+
+    /**
+     * @return The size, in bytes, at which a new segment file is started.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size at which a new segment file is started. A segment file only exceeds this size if it contains a
+     * single record that is larger.
+     *
+     * @param segmentSize The new segment size in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        int oldSegmentSize = this.segmentSize;
+        this.segmentSize = segmentSize;
+        support.firePropertyChange("segmentSize", Integer.valueOf(oldSegmentSize), Integer.valueOf(this.segmentSize));
+    }
+
+
+    /**
+     * @return The proportion of a segment file that is still in use below which the segment file is compacted.
+     */
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Set the proportion of a segment file that is still in use below which the segment file is compacted. Higher
+     * values use less disk space at the cost of copying more records during compaction.
+     *
+     * @param compactionThreshold The new threshold between 0 and 1
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+        double oldCompactionThreshold = this.compactionThreshold;
+        this.compactionThreshold = compactionThreshold;
+        support.firePropertyChange("compactionThreshold", Double.valueOf(oldCompactionThreshold),
+                Double.valueOf(this.compactionThreshold));
+    }
+
+
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    @Override
+    public int getSize() throws IOException {
+        synchronized (lock) {
+            return index.size();
+        }
+    }
+
+
+    /**
+     * @return The number of segment files currently used by this Store.
+     */
+    int getSegmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+
+    @Override
+    public String[] keys() throws IOException {
+        synchronized (lock) {
+            return index.keySet().toArray(new String[0]);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The index retains the last access time and the maximum inactive interval of each saved session so the sessions
+     * that have not expired do not have to be loaded to find the ones that have.
+     */
+    @Override
+    public String[] expiredKeys() throws IOException {
+        long timeNow = System.currentTimeMillis();
+        List<String> expiredKeys = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<String,Location> entry : index.entrySet()) {
+                if (entry.getValue().isExpired(timeNow)) {
+                    expiredKeys.add(entry.getKey());
+                }
+            }
+        }
+        return expiredKeys.toArray(new String[0]);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Once expired sessions have been removed, any segment files that have fallen below the compaction threshold are
+     * compacted.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+
+        if (!getState().isAvailable()) {
+            return;
+        }
+
+        try {
+            compact();
+        } catch (IOException ioe) {
+            manager.getContext().getLogger().error(sm.getString("segmentFileStore.compactFailed"), ioe);
+        }
+    }
+
+
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+        byte[] data;
+        synchronized (lock) {
+            Location location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger().trace(
+                        sm.getString(getStoreName() + ".loading", id, location.segment().file.getAbsolutePath()));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(location.dataLength());
+            location.segment().read(buffer, location.dataPosition());
+            data = buffer.array();
+        }
+
+        Context context = getManager().getContext();
+        ClassLoader oldThreadContextCL = context.bind(null);
+
+        try (ObjectInputStream ois = getObjectInputStream(new ByteArrayInputStream(data))) {
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            context.unbind(oldThreadContextCL);
+        }
+    }
+
+
+    @Override
+    public void remove(String id) throws IOException {
+        synchronized (lock) {
+            Location location = index.remove(id);
+            if (location == null) {
+                return;
+            }
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger().trace(
+                        sm.getString(getStoreName() + ".removing", id, location.segment().file.getAbsolutePath()));
+            }
+            location.segment().liveBytes -= location.length();
+            // The earlier record remains on disk so a remove record is required for the next restart
+            append(createRecord(RECORD_REMOVE, id, 0, 0, null));
+        }
+    }
+
+
+    @Override
+    public void save(Session session) throws IOException {
+        StandardSession standardSession = (StandardSession) session;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            standardSession.writeObjectData(oos);
+        }
+        byte[] data = bos.toByteArray();
+        String id = session.getIdInternal();
+        long thisAccessedTime = standardSession.getThisAccessedTimeInternal();
+        int maxInactiveInterval = standardSession.getMaxInactiveInterval();
+        ByteBuffer record = createRecord(RECORD_SAVE, id, thisAccessedTime, maxInactiveInterval, data);
+
+        synchronized (lock) {
+            Segment segment = append(record);
+            if (manager.getContext().getLogger().isTraceEnabled()) {
+                manager.getContext().getLogger()
+                        .trace(sm.getString(getStoreName() + ".saving", id, segment.file.getAbsolutePath()));
+            }
+            index(segment, segment.size - record.limit(), record.limit(), data.length, id, thisAccessedTime,
+                    maxInactiveInterval);
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Start this component and rebuild the index from the segment files found in the configured directory.
+     *
+     * @exception LifecycleException if this component detects a fatal error that prevents this component from being
+     *                                   used
+     */
+    @Override
+    protected void startInternal() throws LifecycleException {
+        try {
+            synchronized (lock) {
+                File dir = directory();
+                File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXT));
+                if (files != null) {
+                    for (File file : files) {
+                        String number = file.getName().substring(FILE_PREFIX.length(),
+                                file.getName().length() - FILE_EXT.length());
+                        try {
+                            long n = Long.parseLong(number);
+                            segments.put(Long.valueOf(n), new Segment(n, file));
+                        } catch (NumberFormatException e) {
+                            log.warn(sm.getString("segmentFileStore.invalidSegment", file));
+                        }
+                    }
+                }
+                // Later records replace earlier ones so the segments have to be read in order
+                for (Segment segment : segments.values()) {
+                    recover(segment);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("segmentFileStore.recovered", Integer.valueOf(index.size()),
+                            Integer.valueOf(segments.size()), dir));
+                }
+            }
+        } catch (IOException ioe) {
+            throw new LifecycleException(sm.getString("segmentFileStore.startFailed"), ioe);
+        }
+
+        super.startInternal();
+    }
+
+
+    /**
+     * Stop this component and close the segment files.
+     *
+     * @exception LifecycleException if this component detects a fatal error that prevents this component from being
+     *                                   used
+     */
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        super.stopInternal();
+
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Copy the records that are still in use from each segment file that has fallen below the compaction threshold to
+     * the current segment file and delete the original segment file. The lock is released between segment files so
+     * sessions may continue to be saved and loaded while compaction is in progress.
+     */
+    private void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (lock) {
+            if (segments.size() < 2) {
+                return;
+            }
+            // The current segment file is never compacted
+            for (Segment segment : segments.headMap(segments.lastKey()).values()) {
+                if (segment.liveBytes == 0 || segment.liveBytes < segment.size * compactionThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        for (Segment segment : candidates) {
+            synchronized (lock) {
+                if (segments.get(Long.valueOf(segment.number)) == segment) {
+                    compact(segment);
+                }
+            }
+        }
+    }
+
+
+    private void compact(Segment segment) throws IOException {
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString("segmentFileStore.compacting",
+                    segment.file.getAbsolutePath(), Long.valueOf(segment.liveBytes), Long.valueOf(segment.size)));
+        }
+
+        /*
+         * A remove record is only required while an earlier segment may contain a save record for the same session.
+         * Once a later save record exists, that save record takes precedence.
+         */
+        boolean oldest = segments.firstKey().longValue() == segment.number;
+
+        Set<Segment> targets = new HashSet<>();
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        try {
+            int position = 0;
+            Record record;
+            while ((record = readRecord(buffer, position)) != null) {
+                boolean copy;
+                if (record.type() == RECORD_SAVE) {
+                    Location location = index.get(record.id());
+                    copy = location != null && location.segment() == segment && location.position() == position;
+                } else {
+                    copy = !oldest && !index.containsKey(record.id());
+                }
+                if (copy) {
+                    Segment target = append(buffer.slice(position, record.length()));
+                    targets.add(target);
+                    if (record.type() == RECORD_SAVE) {
+                        index(target, target.size - record.length(), record.length(), record.dataLength(),
+                                record.id(), record.thisAccessedTime(), record.maxInactiveInterval());
+                    }
+                }
+                position += record.length();
+            }
+        } finally {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+
+        // The copies must reach the storage device before the originals are deleted
+        for (Segment target : targets) {
+            target.channel.force(false);
+        }
+
+        segments.remove(Long.valueOf(segment.number));
+        segment.delete();
+    }
+
+
+    /**
+     * Add the records of the given segment file to the index, truncating the segment file at the first record that
+     * is incomplete or corrupt.
+     */
+    private void recover(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException(sm.getString("segmentFileStore.segmentTooLarge", segment.file));
+        }
+        int position = 0;
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        try {
+            Record record;
+            while ((record = readRecord(buffer, position)) != null) {
+                if (record.type() == RECORD_SAVE) {
+                    index(segment, position, record.length(), record.dataLength(), record.id(),
+                            record.thisAccessedTime(), record.maxInactiveInterval());
+                } else {
+                    Location location = index.remove(record.id());
+                    if (location != null) {
+                        location.segment().liveBytes -= location.length();
+                    }
+                }
+                position += record.length();
+                segment.size = position;
+            }
+        } finally {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+        if (position < fileSize) {
+            log.warn(sm.getString("segmentFileStore.truncated", segment.file, Integer.valueOf(position),
+                    Long.valueOf(fileSize)));
+            segment.channel.truncate(position);
+        }
+    }
+
+
+    private void index(Segment segment, long position, int length, int dataLength, String id, long thisAccessedTime,
+            int maxInactiveInterval) {
+        segment.liveBytes += length;
+        Location oldLocation = index.put(id,
+                new Location(segment, position, length, dataLength, thisAccessedTime, maxInactiveInterval));
+        if (oldLocation != null) {
+            oldLocation.segment().liveBytes -= oldLocation.length();
+        }
+    }
+
+
+    /**
+     * Append the given record to the current segment file, starting a new segment file if the current one is full.
+     *
+     * @return The segment file the record was appended to
+     */
+    private Segment append(ByteBuffer record) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.size > 0 && segment.size + record.remaining() > segmentSize) {
+            long number = segment == null ? 0 : segment.number + 1;
+            segment = new Segment(number, new File(directory(), String.format("%s%010d%s", FILE_PREFIX,
+                    Long.valueOf(number), FILE_EXT)));
+            segments.put(Long.valueOf(number), segment);
+        }
+        long position = segment.size;
+        while (record.hasRemaining()) {
+            position += segment.channel.write(record, position);
+        }
+        segment.size = position;
+        return segment;
+    }
+
+
+    private static ByteBuffer createRecord(byte type, String id, long thisAccessedTime, int maxInactiveInterval,
+            byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int dataLength = data == null ? 0 : data.length;
+        int bodyLength = BODY_HEADER_SIZE + idBytes.length + dataLength;
+        ByteBuffer record = ByteBuffer.allocate(4 + bodyLength + 4);
+        record.putInt(bodyLength);
+        record.put(type);
+        record.putLong(thisAccessedTime);
+        record.putInt(maxInactiveInterval);
+        record.putShort((short) idBytes.length);
+        record.put(idBytes);
+        if (data != null) {
+            record.put(data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, bodyLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+
+    /**
+     * Read the record at the given position.
+     *
+     * @return The record or {@code null} if the buffer does not contain a complete and valid record at the given
+     *             position
+     */
+    private static Record readRecord(ByteBuffer buffer, int position) {
+        if (buffer.limit() - position < RECORD_OVERHEAD) {
+            return null;
+        }
+        int bodyLength = buffer.getInt(position);
+        if (bodyLength < BODY_HEADER_SIZE || bodyLength > buffer.limit() - position - 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + 4, bodyLength));
+        if ((int) crc.getValue() != buffer.getInt(position + 4 + bodyLength)) {
+            return null;
+        }
+        int body = position + 4;
+        byte type = buffer.get(body);
+        long thisAccessedTime = buffer.getLong(body + 1);
+        int maxInactiveInterval = buffer.getInt(body + 9);
+        int idLength = Short.toUnsignedInt(buffer.getShort(body + 13));
+        int dataLength = bodyLength - BODY_HEADER_SIZE - idLength;
+        if (dataLength < 0 || type != RECORD_SAVE && type != RECORD_REMOVE) {
+            return null;
+        }
+        byte[] idBytes = new byte[idLength];
+        buffer.get(body + BODY_HEADER_SIZE, idBytes);
+        return new Record(type, new String(idBytes, StandardCharsets.UTF_8), thisAccessedTime, maxInactiveInterval,
+                4 + bodyLength + 4, dataLength);
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our session persistence directory. The directory will be
+     * created if it does not already exist.
+     */
+    private File directory() throws IOException {
+        if (this.directoryFile != null) {
+            // NOTE: Race condition is harmless, so do not synchronize
+            return this.directoryFile;
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            ServletContext servletContext = context.getServletContext();
+            File work = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+            file = new File(work, this.directory);
+        }
+        if (!file.exists() || !file.isDirectory()) {
+            if (!file.delete() && file.exists()) {
+                throw new IOException(sm.getString("segmentFileStore.deleteFailed", file));
+            }
+            if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException(sm.getString("segmentFileStore.createFailed", file));
+            }
+        }
+        this.directoryFile = file;
+        return file;
+    }
+
+
+    // ----------------------------------------------------------- Inner classes
+
+    private static final class Segment {
+
+        private final long number;
+        private final File file;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        Segment(long number, File file) throws IOException {
+            this.number = number;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        void read(ByteBuffer buffer, long position) throws IOException {
+            long next = position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, next);
+                if (read < 0) {
+                    throw new IOException(sm.getString("segmentFileStore.readFailed", file, Long.valueOf(position)));
+                }
+                next += read;
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                log.warn(sm.getString("segmentFileStore.closeFailed", file), ioe);
+            }
+        }
+
+        void delete() {
+            close();
+            if (!file.delete() && file.exists()) {
+                log.warn(sm.getString("segmentFileStore.deleteSegmentFailed", file));
+            }
+        }
+    }
+
+
+    private record Location(Segment segment, long position, int length, int dataLength, long thisAccessedTime,
+            int maxInactiveInterval) {
+
+        long dataPosition() {
+            return position + length - 4 - dataLength;
+        }
+
+        boolean isExpired(long timeNow) {
+            return maxInactiveInterval > 0 && (timeNow - thisAccessedTime) / 1000L >= maxInactiveInterval;
+        }
+    }
+
+
+    private record Record(byte type, String id, long thisAccessedTime, int maxInactiveInterval, int length,
+            int dataLength) {
+    }
+}
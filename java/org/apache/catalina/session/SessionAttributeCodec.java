@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Writes and reads values of a single class for the {@link CompactSessionSerializer}. A codec avoids the class
+ * descriptors and reflection of Java serialization for the classes that are commonly stored in sessions. Codecs are
+ * matched on the exact class of a value so sub-classes need their own codec. Only distributable session attributes
+ * are written so the class must still implement {@link java.io.Serializable}.
+ *
+ * @param <T> The class of the values handled by this codec
+ */
+public interface SessionAttributeCodec<T> {
+
+    /**
+     * @return The class of the values handled by this codec
+     */
+    Class<T> getType();
+
+
+    /**
+     * Write a value.
+     *
+     * @param out   The stream to write the value to. Any nested values that are written with
+     *                  {@link ObjectOutput#writeObject(Object)} will also be written in the compact format.
+     * @param value The value to write
+     *
+     * @throws IOException If the value cannot be written
+     */
+    void write(ObjectOutput out, T value) throws IOException;
+
+
+    /**
+     * Read a value written by {@link #write(ObjectOutput, Object)}.
+     *
+     * @param in The stream to read the value from
+     *
+     * @return The value
+     *
+     * @throws IOException            If the value cannot be read
+     * @throws ClassNotFoundException If the class of a nested value cannot be found
+     */
+    T read(ObjectInput in) throws IOException, ClassNotFoundException;
+}
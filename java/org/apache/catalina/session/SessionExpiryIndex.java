@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.catalina.Session;
+
+/**
+ * An index of sessions by the time at which they are due to expire, so that a manager only needs to examine the
+ * sessions that may have expired rather than every session.
+ * <p>
+ * Sessions are held in one second buckets. A session is placed in the first bucket that ends at or after the time at
+ * which the session would expire if it were not accessed again. Accessing a session only ever moves that time later so
+ * sessions are not moved between buckets as they are accessed. Instead, when a bucket is processed, any session in it
+ * that has been accessed in the meantime is placed in the bucket for its new expiry time. The work required to process
+ * expiry is therefore proportional to the number of sessions that expire plus, at most, one re-indexing of each active
+ * session per maximum inactive interval.
+ * <p>
+ * The one change that can move the expiry time of a session earlier is reducing its maximum inactive interval so that
+ * change must be reported via {@link #reschedule(Session, long)}.
+ * <p>
+ * The index, rather than the map of sessions, determines which sessions a manager checks for expiry. A session is
+ * added by {@link #schedule(Session, long)} and stays in the index, including while it is being checked after it has
+ * been returned by {@link #removeDue(long)}, until {@link #remove(Session)} is called.
+ */
+final class SessionExpiryIndex {
+
+    private static final long BUCKET_WIDTH = 1000;
+    private static final Long NEVER = Long.valueOf(Long.MAX_VALUE);
+    // Marks a session that has been returned by removeDue() and has not yet been rescheduled or removed
+    private static final Long PENDING = Long.valueOf(Long.MIN_VALUE);
+
+    private final Object lock = new Object();
+    // Guarded by lock. Buckets may contain stale entries for sessions that have since been removed or moved to another
+    // bucket. Those entries are ignored when the bucket is processed.
+    private final NavigableMap<Long,List<Session>> buckets = new TreeMap<>();
+    // Only modified while holding lock. The current bucket for each session in the index.
+    private final Map<Session,Long> scheduled = new ConcurrentHashMap<>();
+
+
+    /**
+     * Add a session to the index or, if it is already in the index, update the bucket it is held in.
+     *
+     * @param session The session
+     * @param timeNow The current time in milliseconds
+     */
+    void schedule(Session session, long timeNow) {
+        schedule(session, timeNow, false);
+    }
+
+
+    /**
+     * Update the bucket a session is held in if, and only if, the session is in the index. Sessions that have been
+     * removed from the index, or were never added to it, are ignored.
+     *
+     * @param session The session
+     * @param timeNow The current time in milliseconds
+     */
+    void reschedule(Session session, long timeNow) {
+        if (scheduled.containsKey(session)) {
+            schedule(session, timeNow, true);
+        }
+    }
+
+
+    private void schedule(Session session, long timeNow, boolean onlyIfPresent) {
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        Long bucketKey;
+        if (maxInactiveInterval <= 0) {
+            bucketKey = NEVER;
+        } else {
+            long expiry = timeNow - session.getIdleTimeInternal() + maxInactiveInterval * 1000L;
+            // Sessions that are already due are checked again when the next bucket is processed
+            bucketKey = Long.valueOf(Math.max(Math.ceilDiv(expiry, BUCKET_WIDTH), timeNow / BUCKET_WIDTH + 1));
+        }
+        synchronized (lock) {
+            Long current = scheduled.get(session);
+            if (current == null ? onlyIfPresent : current.equals(bucketKey)) {
+                return;
+            }
+            if (maxInactiveInterval > 0) {
+                buckets.computeIfAbsent(bucketKey, k -> new ArrayList<>()).add(session);
+            }
+            scheduled.put(session, bucketKey);
+        }
+    }
+
+
+    /**
+     * @param session The session
+     *
+     * @return {@code true} if the session is in the index
+     */
+    boolean contains(Session session) {
+        return scheduled.containsKey(session);
+    }
+
+
+    /**
+     * Remove a session from the index.
+     *
+     * @param session The session
+     */
+    void remove(Session session) {
+        synchronized (lock) {
+            scheduled.remove(session);
+        }
+    }
+
+
+    /**
+     * Remove the sessions that may have expired by the given time from their buckets. The sessions remain in the index
+     * so the caller is responsible for checking whether each of the returned sessions has expired and then either
+     * calling {@link #reschedule(Session, long)} or {@link #remove(Session)} for it.
+     *
+     * @param timeNow The current time in milliseconds
+     *
+     * @return the sessions that may have expired
+     */
+    List<Session> removeDue(long timeNow) {
+        List<Session> result = new ArrayList<>();
+        synchronized (lock) {
+            NavigableMap<Long,List<Session>> due = buckets.headMap(Long.valueOf(timeNow / BUCKET_WIDTH), true);
+            for (Map.Entry<Long,List<Session>> entry : due.entrySet()) {
+                for (Session session : entry.getValue()) {
+                    if (scheduled.replace(session, entry.getKey(), PENDING)) {
+                        result.add(session);
+                    }
+                }
+            }
+            due.clear();
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the number of sessions in the index
+     */
+    int size() {
+        return scheduled.size();
+    }
+
+
+    /**
+     * Remove all sessions from the index.
+     */
+    void clear() {
+        synchronized (lock) {
+            buckets.clear();
+            scheduled.clear();
+        }
+    }
+}
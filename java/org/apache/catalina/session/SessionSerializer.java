@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Creates the streams used to write and read session data when sessions are persisted across restarts by the
+ * {@link StandardManager} and when sessions are replicated between the members of a cluster. The sessions write
+ * themselves to, and read themselves from, the returned streams so an implementation controls the format in which
+ * the session fields and attribute values are encoded.
+ * <p>
+ * Implementations must be thread safe as a single instance is used concurrently for all the streams created for a
+ * {@link org.apache.catalina.Manager}.
+ */
+public interface SessionSerializer {
+
+    /**
+     * Create a stream to write session data to.
+     *
+     * @param os The stream to which the encoded session data should be written
+     *
+     * @return The stream to which the sessions should write themselves
+     *
+     * @throws IOException If the stream cannot be created
+     */
+    ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException;
+
+
+    /**
+     * Create a stream to read session data from.
+     *
+     * @param is                The stream from which the encoded session data should be read
+     * @param javaStreamFactory Creates the Java serialization stream, configured with the class loader and the
+     *                              deserialization filter of the web application, that is used to read any values
+     *                              that were written with Java serialization
+     *
+     * @return The stream from which the sessions should read themselves
+     *
+     * @throws IOException If the stream cannot be created
+     */
+    ObjectInputStream createObjectInputStream(InputStream is, ObjectInputStreamFactory javaStreamFactory)
+            throws IOException;
+
+
+    /**
+     * Creates a Java serialization {@link ObjectInputStream}.
+     */
+    @FunctionalInterface
+    interface ObjectInputStreamFactory {
+
+        /**
+         * Create a Java serialization stream.
+         *
+         * @param is The stream from which the serialized data should be read
+         *
+         * @return The Java serialization stream
+         *
+         * @throws IOException If the stream cannot be created
+         */
+        ObjectInputStream create(InputStream is) throws IOException;
+    }
+}
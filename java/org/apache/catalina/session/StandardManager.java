@@ -133,11 +133,14 @@ public class StandardManager extends ManagerBase {
             if (classLoader == null) {
                 classLoader = getClass().getClassLoader();
             }
+            ClassLoader sessionClassLoader = classLoader;
 
             // Load the previously unloaded active sessions
             synchronized (sessions) {
-                try (ObjectInputStream ois = new CustomObjectInputStream(bis, classLoader, logger,
-                        getSessionAttributeValueClassNamePattern(), getWarnOnSessionAttributeFilterFailure())) {
+                try (ObjectInputStream ois = getSessionSerializer().createObjectInputStream(bis,
+                        is -> new CustomObjectInputStream(is, sessionClassLoader, logger,
+                                getSessionAttributeValueClassNamePattern(),
+                                getWarnOnSessionAttributeFilterFailure()))) {
                     Integer count = (Integer) ois.readObject();
                     int n = count.intValue();
                     if (log.isTraceEnabled()) {
@@ -147,7 +150,7 @@ public class StandardManager extends ManagerBase {
                         StandardSession session = getNewSession();
                         session.readObjectData(ois);
                         session.setManager(this);
-                        sessions.put(session.getIdInternal(), session);
+                        add(session);
                         session.activate();
                         if (!session.isValidInternal()) {
                             // If session is already invalid,
@@ -203,7 +206,7 @@ public class StandardManager extends ManagerBase {
 
         try (FileOutputStream fos = new FileOutputStream(file.getAbsolutePath());
                 BufferedOutputStream bos = new BufferedOutputStream(fos);
-                ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                ObjectOutputStream oos = getSessionSerializer().createObjectOutputStream(bos)) {
 
             synchronized (sessions) {
                 if (log.isTraceEnabled()) {
@@ -440,6 +440,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        if (manager instanceof ManagerBase managerBase) {
+            managerBase.maxInactiveIntervalChanged(this);
+        }
     }
 
 
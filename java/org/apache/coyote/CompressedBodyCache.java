@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, least recently used, cache of compressed response bodies keyed by the host, request URI and ETag of the
+ * response. The cache is shared by all the hosts and web applications of a connector so the ETag alone is not a
+ * sufficient key. An ETag is only a hint that a response body is unchanged so users of the cache must also confirm that
+ * the uncompressed body they are about to compress has the length and SHA-256 digest recorded in the entry before using
+ * the cached compressed body.
+ */
+public class CompressedBodyCache {
+
+    private final long maxSize;
+    private final Map<Key,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Guarded by this
+    private long size = 0;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxSize The maximum total size, in bytes, of the compressed bodies held by the cache
+     */
+    public CompressedBodyCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * @param key The host, request URI and ETag of the response
+     *
+     * @return the cached entry for the given key or {@code null} if there is no such entry
+     */
+    public synchronized Entry get(Key key) {
+        return entries.get(key);
+    }
+
+
+    /**
+     * Add an entry to the cache, replacing any existing entry for the same key and removing the least recently used
+     * entries if the cache becomes too large.
+     *
+     * @param key   The host, request URI and ETag of the response
+     * @param entry The compressed body and details of the uncompressed body
+     */
+    public synchronized void put(Key key, Entry entry) {
+        if (entry.compressedBody().length > maxSize) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.compressedBody().length;
+        }
+        size += entry.compressedBody().length;
+        Iterator<Entry> iter = entries.values().iterator();
+        while (size > maxSize) {
+            size -= iter.next().compressedBody().length;
+            iter.remove();
+        }
+    }
+
+
+    /**
+     * @return the maximum total size, in bytes, of the compressed bodies held by the cache
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+
+    /**
+     * @return the total size, in bytes, of the compressed bodies currently held by the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+
+    public void recordHit() {
+        hitCount.increment();
+    }
+
+
+    public void recordMiss() {
+        missCount.increment();
+    }
+
+
+    /**
+     * @return the number of responses that used a cached compressed body
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return the number of responses with an ETag that had to be compressed
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+
+    /**
+     * The key of a cached compressed body.
+     *
+     * @param host The host name of the request
+     * @param uri  The request URI, including the context path
+     * @param eTag The ETag of the response
+     */
+    public record Key(String host, String uri, String eTag) {
+    }
+
+
+    /**
+     * A cached compressed body.
+     *
+     * @param uncompressedLength The length of the uncompressed body
+     * @param digest             The SHA-256 digest of the uncompressed body
+     * @param compressedBody     The compressed body
+     */
+    public record Entry(long uncompressedLength, byte[] digest, byte[] compressedBody) {
+    }
+}
@@ -25,12 +25,17 @@ import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.DeflaterPool;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.ResponseUtil;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.http.compression.ContentCodings;
+import org.apache.tomcat.util.http.compression.GzipContentCoding;
 import org.apache.tomcat.util.http.parser.AcceptEncoding;
 import org.apache.tomcat.util.http.parser.TE;
 import org.apache.tomcat.util.http.parser.TokenList;
@@ -47,6 +52,14 @@ public class CompressionConfig {
             "text/javascript,application/javascript,application/json,application/xml";
     private String[] compressibleMimeTypes = null;
     private int compressionMinSize = 2048;
+    private int compressionGzipLevel = Deflater.DEFAULT_COMPRESSION;
+    private int compressionGzipPoolSize = -1;
+    private int defaultCompressionGzipPoolSize = 200;
+    private int compressionCacheSize = 0;
+    private String compressionEncodings = GzipContentCoding.NAME;
+    private volatile ContentCoding[] contentCodings = new ContentCoding[] { new GzipContentCoding() };
+    private volatile DeflaterPool deflaterPool = null;
+    private volatile CompressedBodyCache compressedBodyCache = null;
 
 
     /**
@@ -173,6 +186,171 @@ public class CompressionConfig {
     }
 
 
+    public int getCompressionGzipLevel() {
+        return compressionGzipLevel;
+    }
+
+
+    /**
+     * Set the level used to compress responses with gzip.
+     *
+     * @param compressionGzipLevel The compression level, from 1 (fastest) to 9 (best compression), or -1 for the
+     *                                 default level
+     */
+    public void setCompressionGzipLevel(int compressionGzipLevel) {
+        if (compressionGzipLevel < Deflater.DEFAULT_COMPRESSION || compressionGzipLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(
+                    sm.getString("compressionConfig.invalidGzipLevel", Integer.toString(compressionGzipLevel)));
+        }
+        this.compressionGzipLevel = compressionGzipLevel;
+        deflaterPool = null;
+    }
+
+
+    public int getCompressionGzipPoolSize() {
+        return compressionGzipPoolSize;
+    }
+
+
+    /**
+     * Set the maximum number of unused Deflaters that are retained for reuse when compressing responses with gzip.
+     * Each Deflater holds native memory so Deflaters beyond this limit are ended when they are no longer in use.
+     *
+     * @param compressionGzipPoolSize The maximum number of unused Deflaters, or a negative value to use the default
+     *                                    set with {@link #setDefaultCompressionGzipPoolSize(int)}
+     */
+    public void setCompressionGzipPoolSize(int compressionGzipPoolSize) {
+        this.compressionGzipPoolSize = compressionGzipPoolSize;
+        updateDeflaterPoolMaxIdle();
+    }
+
+
+    public int getDefaultCompressionGzipPoolSize() {
+        return defaultCompressionGzipPoolSize;
+    }
+
+
+    /**
+     * Set the maximum number of unused Deflaters that are retained for reuse when no explicit limit has been
+     * configured. Connectors set this to the maximum number of threads that may write responses.
+     *
+     * @param defaultCompressionGzipPoolSize The default maximum number of unused Deflaters
+     */
+    public void setDefaultCompressionGzipPoolSize(int defaultCompressionGzipPoolSize) {
+        this.defaultCompressionGzipPoolSize = defaultCompressionGzipPoolSize;
+        updateDeflaterPoolMaxIdle();
+    }
+
+
+    private int getDeflaterPoolMaxIdle() {
+        if (compressionGzipPoolSize < 0) {
+            return defaultCompressionGzipPoolSize;
+        }
+        return compressionGzipPoolSize;
+    }
+
+
+    private void updateDeflaterPoolMaxIdle() {
+        DeflaterPool pool = deflaterPool;
+        if (pool != null) {
+            pool.setMaxIdle(getDeflaterPoolMaxIdle());
+        }
+    }
+
+
+    public int getCompressionCacheSize() {
+        return compressionCacheSize;
+    }
+
+
+    /**
+     * Set the maximum total size of the compressed response bodies that are cached so that responses with the same
+     * ETag and body are only compressed once.
+     *
+     * @param compressionCacheSize The maximum size in bytes. Zero or less disables the cache.
+     */
+    public void setCompressionCacheSize(int compressionCacheSize) {
+        this.compressionCacheSize = compressionCacheSize;
+        compressedBodyCache = null;
+    }
+
+
+    public String getCompressionEncodings() {
+        return compressionEncodings;
+    }
+
+
+    /**
+     * Set the content codings that may be used to compress responses, in order of preference. Content codings that
+     * are not available are logged and ignored.
+     *
+     * @param compressionEncodings A comma separated list of content codings (e.g. <code>br,zstd,gzip</code>) and/or
+     *                                 the fully qualified names of classes that implement {@link ContentCoding}
+     */
+    public void setCompressionEncodings(String compressionEncodings) {
+        List<ContentCoding> values = new ArrayList<>();
+        StringTokenizer tokens = new StringTokenizer(compressionEncodings, ",");
+        while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken().trim();
+            if (!token.isEmpty()) {
+                ContentCoding contentCoding = ContentCodings.getContentCoding(token);
+                if (contentCoding != null) {
+                    values.add(contentCoding);
+                }
+            }
+        }
+        this.compressionEncodings = compressionEncodings;
+        this.contentCodings = values.toArray(new ContentCoding[0]);
+    }
+
+
+    /**
+     * @return the available content codings that may be used to compress responses in order of preference
+     */
+    public ContentCoding[] getContentCodings() {
+        return contentCodings;
+    }
+
+
+    /**
+     * @return the pool of Deflaters, configured with the current gzip compression level, to use to compress responses
+     */
+    public DeflaterPool getDeflaterPool() {
+        DeflaterPool result = deflaterPool;
+        if (result == null) {
+            synchronized (this) {
+                result = deflaterPool;
+                if (result == null) {
+                    result = new DeflaterPool(compressionGzipLevel, true, getDeflaterPoolMaxIdle());
+                    deflaterPool = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the cache of compressed response bodies or {@code null} if the cache is disabled
+     */
+    public CompressedBodyCache getCompressedBodyCache() {
+        if (compressionCacheSize <= 0) {
+            return null;
+        }
+        CompressedBodyCache result = compressedBodyCache;
+        if (result == null) {
+            synchronized (this) {
+                result = compressedBodyCache;
+                if (result == null) {
+                    result = new CompressedBodyCache(compressionCacheSize);
+                    compressedBodyCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
     /**
      * Determines if compression should be enabled for the given response and if it is, sets any necessary headers to
      * mark it as such.
@@ -183,9 +361,27 @@ public class CompressionConfig {
      * @return {@code true} if compression was enabled for the given response, otherwise {@code false}
      */
     public boolean useCompression(Request request, Response response) {
+        return negotiateCompression(request, response) != null;
+    }
+
+
+    /**
+     * Determines if compression should be enabled for the given response and, if it is, selects the content coding to
+     * use from those that are both configured and acceptable to the client and sets any necessary headers to mark the
+     * response as compressed. When more than one content coding is acceptable, the one with the highest quality value
+     * in the request is used and the order of the configured content codings is used to break ties.
+     *
+     * @param request  The request that triggered the response
+     * @param response The response to consider compressing
+     *
+     * @return the content coding to use to compress the given response or {@code null} if the response should not be
+     *             compressed
+     */
+    public ContentCoding negotiateCompression(Request request, Response response) {
         // Check if compression is enabled
-        if (compressionLevel == 0) {
-            return false;
+        ContentCoding[] contentCodings = this.contentCodings;
+        if (compressionLevel == 0 || contentCodings.length == 0) {
+            return null;
         }
 
         boolean useTransferEncoding = false;
@@ -205,7 +401,7 @@ public class CompressionConfig {
                 // Because we are using StringReader, any exception here is a
                 // Tomcat bug.
                 log.warn(sm.getString("compressionConfig.ContentEncodingParseFail"), e);
-                return false;
+                return null;
             }
             if (tokens.contains("identity")) {
                 // If identity, do not do content modifications
@@ -214,7 +410,7 @@ public class CompressionConfig {
                     || tokens.contains("dcz") || tokens.contains("deflate") || tokens.contains("gzip")
                     || tokens.contains("pack200-gzip") || tokens.contains("zstd")) {
                 // Content should not be compressed twice
-                return false;
+                return null;
             }
         }
 
@@ -223,33 +419,42 @@ public class CompressionConfig {
             // Check if the response is of sufficient length to trigger the compression
             long contentLength = response.getContentLengthLong();
             if (contentLength != -1 && contentLength < compressionMinSize) {
-                return false;
+                return null;
             }
 
             // Check for compatible MIME-TYPE
             String[] compressibleMimeTypes = getCompressibleMimeTypes();
             if (compressibleMimeTypes != null &&
                     !startsWithStringArray(compressibleMimeTypes, response.getContentType())) {
-                return false;
+                return null;
+            }
+        }
+
+        // gzip is the only transfer coding supported for compression
+        ContentCoding gzip = null;
+        for (ContentCoding contentCoding : contentCodings) {
+            if (contentCoding instanceof GzipContentCoding) {
+                gzip = contentCoding;
+                break;
             }
         }
 
+        ContentCoding selected = null;
         Enumeration<String> headerValues = request.getMimeHeaders().values("TE");
-        boolean foundGzip = false;
         // TE and accept-encoding seem to have equivalent syntax
-        while (!foundGzip && headerValues.hasMoreElements()) {
+        while (gzip != null && selected == null && headerValues.hasMoreElements()) {
             List<TE> tes;
             try {
                 tes = TE.parse(new StringReader(headerValues.nextElement()));
             } catch (IOException ioe) {
                 // If there is a problem reading the header, disable compression
-                return false;
+                return null;
             }
 
             for (TE te : tes) {
-                if ("gzip".equalsIgnoreCase(te.getEncoding())) {
+                if (GzipContentCoding.NAME.equalsIgnoreCase(te.getEncoding())) {
                     useTransferEncoding = true;
-                    foundGzip = true;
+                    selected = gzip;
                     break;
                 }
             }
@@ -260,7 +465,7 @@ public class CompressionConfig {
         if (!useTransferEncoding && eTag != null && !eTag.trim().startsWith("W/")) {
             // Has an ETag that doesn't start with "W/..." so it must be a
             // strong ETag
-            return false;
+            return null;
         }
 
         if (useContentEncoding && !useTransferEncoding) {
@@ -268,30 +473,37 @@ public class CompressionConfig {
             // Therefore, set the Vary header to keep proxies happy
             ResponseUtil.addVaryFieldName(responseHeaders, "accept-encoding");
 
-            // Check if user-agent supports gzip encoding
-            // Only interested in whether gzip encoding is supported. Other
-            // encodings and weights can be ignored.
+            // Select the acceptable content coding with the highest quality. Use the configured order to break ties.
+            double selectedQuality = 0;
+            int selectedIndex = contentCodings.length;
             headerValues = request.getMimeHeaders().values("accept-encoding");
-            while (!foundGzip && headerValues.hasMoreElements()) {
+            while (headerValues.hasMoreElements()) {
                 List<AcceptEncoding> acceptEncodings;
                 try {
                     acceptEncodings = AcceptEncoding.parse(new StringReader(headerValues.nextElement()));
                 } catch (IOException ioe) {
                     // If there is a problem reading the header, disable compression
-                    return false;
+                    return null;
                 }
 
                 for (AcceptEncoding acceptEncoding : acceptEncodings) {
-                    if ("gzip".equalsIgnoreCase(acceptEncoding.getEncoding())) {
-                        foundGzip = true;
-                        break;
+                    for (int i = 0; i < contentCodings.length; i++) {
+                        if (contentCodings[i].getName().equalsIgnoreCase(acceptEncoding.getEncoding())) {
+                            if (acceptEncoding.getQuality() > selectedQuality ||
+                                    acceptEncoding.getQuality() == selectedQuality && i < selectedIndex) {
+                                selected = contentCodings[i];
+                                selectedQuality = acceptEncoding.getQuality();
+                                selectedIndex = i;
+                            }
+                            break;
+                        }
                     }
                 }
             }
         }
 
-        if (!foundGzip) {
-            return false;
+        if (selected == null) {
+            return null;
         }
 
         // If force mode, the browser checks are skipped
@@ -303,7 +515,7 @@ public class CompressionConfig {
                 if (userAgentValueMB != null) {
                     String userAgentValue = userAgentValueMB.toString();
                     if (noCompressionUserAgents.matcher(userAgentValue).matches()) {
-                        return false;
+                        return null;
                     }
                 }
             }
@@ -315,13 +527,13 @@ public class CompressionConfig {
         response.setContentLength(-1);
         if (useTransferEncoding) {
             // Configure the transfer encoding for compressed content
-            responseHeaders.addValue("Transfer-Encoding").setString("gzip");
+            responseHeaders.addValue("Transfer-Encoding").setString(selected.getName());
         } else {
             // Configure the content encoding for compressed content
-            responseHeaders.addValue("Content-Encoding").setString("gzip");
+            responseHeaders.addValue("Content-Encoding").setString(selected.getName());
         }
 
-        return true;
+        return selected;
     }
 
 
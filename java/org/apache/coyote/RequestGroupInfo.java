@@ -18,6 +18,12 @@ package org.apache.coyote;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.tomcat.util.modeler.BaseModelMBean;
 
@@ -32,6 +38,12 @@ public class RequestGroupInfo extends BaseModelMBean {
     private int deadErrorCount = 0;
     private long deadBytesReceived = 0;
     private long deadBytesSent = 0;
+    /*
+     * Allocation statistics keyed by Context name and then Wrapper name. Two levels are used so that recording a sample
+     * does not need to build a composite key.
+     */
+    private final ConcurrentMap<String,ConcurrentMap<String,AllocationStatistics>> allocations =
+            new ConcurrentHashMap<>();
 
     public synchronized void addRequestProcessor(RequestInfo rp) {
         processors.add(rp);
@@ -145,6 +157,55 @@ public class RequestGroupInfo extends BaseModelMBean {
         }
     }
 
+    /**
+     * Record the number of bytes allocated by the container thread while processing a request.
+     *
+     * @param context The name of the Context the request was mapped to
+     * @param wrapper The name of the Wrapper the request was mapped to
+     * @param bytes   The number of bytes allocated
+     */
+    public void addAllocatedBytes(String context, String wrapper, long bytes) {
+        ConcurrentMap<String,AllocationStatistics> wrappers = allocations.get(context);
+        if (wrappers == null) {
+            wrappers = new ConcurrentHashMap<>();
+            ConcurrentMap<String,AllocationStatistics> existing = allocations.putIfAbsent(context, wrappers);
+            if (existing != null) {
+                wrappers = existing;
+            }
+        }
+        AllocationStatistics statistics = wrappers.get(wrapper);
+        if (statistics == null) {
+            statistics = new AllocationStatistics();
+            AllocationStatistics existing = wrappers.putIfAbsent(wrapper, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        statistics.add(bytes);
+    }
+
+    /**
+     * @return the histogram of bytes allocated per request, one entry for each Context and Wrapper combination that has
+     *             been recorded
+     */
+    public String[] getAllocationHistogram() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String,ConcurrentMap<String,AllocationStatistics>> context : allocations.entrySet()) {
+            for (Map.Entry<String,AllocationStatistics> wrapper : context.getValue().entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("context=[").append(context.getKey()).append("], wrapper=[").append(wrapper.getKey());
+                sb.append("], ");
+                wrapper.getValue().append(sb);
+                result.add(sb.toString());
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    public void resetAllocations() {
+        allocations.clear();
+    }
+
     public void resetCounters() {
         this.setBytesReceived(0);
         this.setBytesSent(0);
@@ -152,5 +213,63 @@ public class RequestGroupInfo extends BaseModelMBean {
         this.setProcessingTime(0);
         this.setMaxTime(0);
         this.setErrorCount(0);
+        this.resetAllocations();
+    }
+
+
+    /*
+     * Bucket 0 counts requests that allocated less than 1KiB, each following bucket doubles the limit and the last
+     * bucket counts everything from 8MiB upwards.
+     */
+    private static class AllocationStatistics {
+
+        private static final int MIN_BUCKET_BITS = 10;
+        private static final int BUCKET_COUNT = 15;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        void add(long bytes) {
+            count.increment();
+            total.add(bytes);
+            max.accumulateAndGet(bytes, Math::max);
+            int bucket = (Long.SIZE - Long.numberOfLeadingZeros(bytes)) - MIN_BUCKET_BITS;
+            buckets.incrementAndGet(Math.min(Math.max(bucket, 0), BUCKET_COUNT - 1));
+        }
+
+        void append(StringBuilder sb) {
+            long requests = count.sum();
+            sb.append("count=").append(requests);
+            sb.append(", mean=").append(requests == 0 ? 0 : total.sum() / requests);
+            sb.append(", max=").append(max.get());
+            sb.append(", histogram=[");
+            boolean first = true;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long value = buckets.get(i);
+                if (value == 0) {
+                    continue;
+                }
+                if (!first) {
+                    sb.append(", ");
+                }
+                first = false;
+                if (i < BUCKET_COUNT - 1) {
+                    sb.append('<').append(toSize(1L << (MIN_BUCKET_BITS + i)));
+                } else {
+                    sb.append(">=").append(toSize(1L << (MIN_BUCKET_BITS + i - 1)));
+                }
+                sb.append(':').append(value);
+            }
+            sb.append(']');
+        }
+
+        private static String toSize(long bytes) {
+            if (bytes >= 1024 * 1024) {
+                return (bytes >> 20) + "MiB";
+            }
+            return (bytes >> 10) + "KiB";
+        }
     }
 }
@@ -45,6 +45,7 @@ import org.apache.coyote.http11.upgrade.UpgradeGroupInfo;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorExternal;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
 import org.apache.tomcat.util.buf.StringUtils;
+import org.apache.tomcat.util.http.compression.ContentCoding;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.modeler.Util;
@@ -79,6 +80,13 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
             configureUpgradeProtocol(upgradeProtocol);
         }
 
+        // Retain at most one unused Deflater per thread that may be writing a response. The limit is unknown if an
+        // external executor is used so keep the default in that case.
+        int maxThreads = getMaxThreads();
+        if (maxThreads > 0) {
+            compressionConfig.setDefaultCompressionGzipPoolSize(maxThreads);
+        }
+
         try {
             super.init();
         } finally {
@@ -99,7 +107,7 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
         ObjectName rgOname = getGlobalRequestProcessorMBeanName();
         if (rgOname != null) {
             Registry registry = Registry.getRegistry(null);
-            ObjectName query = new ObjectName(rgOname.getCanonicalName() + ",Upgrade=*");
+            ObjectName query = new ObjectName(rgOname.getCanonicalName() + ",Upgrade=*,*");
             Set<ObjectInstance> upgrades = registry.getMBeanServer().queryMBeans(query, null);
             for (ObjectInstance upgrade : upgrades) {
                 registry.unregisterComponent(upgrade.getObjectName());
@@ -161,6 +169,25 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    private boolean useSwarScanning = false;
+
+    /**
+     * Should the request method and request headers be parsed using bulk scanning that examines eight bytes at a time
+     * (SWAR - SIMD within a register) to skip over bytes that need no special handling rather than examining every
+     * byte individually? The request target is always parsed byte by byte as every byte has to be checked against the
+     * configurable tables of allowed characters.
+     *
+     * @return {@code true} if bulk scanning is used, otherwise {@code false}
+     */
+    public boolean getUseSwarScanning() {
+        return useSwarScanning;
+    }
+
+    public void setUseSwarScanning(boolean useSwarScanning) {
+        this.useSwarScanning = useSwarScanning;
+    }
+
+
     private String relaxedPathChars = null;
 
     public String getRelaxedPathChars() {
@@ -340,11 +367,57 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    public int getCompressionGzipLevel() {
+        return compressionConfig.getCompressionGzipLevel();
+    }
+
+    public void setCompressionGzipLevel(int compressionGzipLevel) {
+        compressionConfig.setCompressionGzipLevel(compressionGzipLevel);
+    }
+
+
+    public int getCompressionGzipPoolSize() {
+        return compressionConfig.getCompressionGzipPoolSize();
+    }
+
+    public void setCompressionGzipPoolSize(int compressionGzipPoolSize) {
+        compressionConfig.setCompressionGzipPoolSize(compressionGzipPoolSize);
+    }
+
+
+    public int getCompressionCacheSize() {
+        return compressionConfig.getCompressionCacheSize();
+    }
+
+    public void setCompressionCacheSize(int compressionCacheSize) {
+        compressionConfig.setCompressionCacheSize(compressionCacheSize);
+    }
+
+
+    public String getCompressionEncodings() {
+        return compressionConfig.getCompressionEncodings();
+    }
+
+    public void setCompressionEncodings(String compressionEncodings) {
+        compressionConfig.setCompressionEncodings(compressionEncodings);
+    }
+
+
+    public CompressionConfig getCompressionConfig() {
+        return compressionConfig;
+    }
+
+
     public boolean useCompression(Request request, Response response) {
         return compressionConfig.useCompression(request, response);
     }
 
 
+    public ContentCoding negotiateCompression(Request request, Response response) {
+        return compressionConfig.negotiateCompression(request, response);
+    }
+
+
     private Pattern restrictedUserAgents = null;
 
     /**
@@ -113,6 +113,12 @@ public final class Constants {
     public static final int GZIP_FILTER = 3;
 
 
+    /**
+     * Content coding filter for content codings other than gzip (output).
+     */
+    public static final int CONTENT_CODING_FILTER = 4;
+
+
     /**
      * Buffered filter (input)
      */
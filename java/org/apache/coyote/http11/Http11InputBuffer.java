@@ -32,6 +32,7 @@ import org.apache.tomcat.util.http.parser.HttpHeaderParser;
 import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderDataSource;
 import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderParseStatus;
 import org.apache.tomcat.util.http.parser.HttpParser;
+import org.apache.tomcat.util.http.parser.HttpScanner;
 import org.apache.tomcat.util.net.ApplicationBufferHandler;
 import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.res.StringManager;
@@ -127,6 +128,11 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
     private final HttpParser httpParser;
     private final HttpHeaderParser httpHeaderParser;
 
+    /**
+     * Should runs of bytes in the request method and headers be scanned in bulk rather than one byte at a time.
+     */
+    private final boolean swarScanning;
+
     /**
      * Maximum allowed size of the HTTP request line plus headers plus any leading blank lines.
      */
@@ -135,11 +141,17 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
     // ----------------------------------------------------------- Constructors
 
     public Http11InputBuffer(Request request, int headerBufferSize, HttpParser httpParser) {
+        this(request, headerBufferSize, httpParser, false);
+    }
+
+
+    public Http11InputBuffer(Request request, int headerBufferSize, HttpParser httpParser, boolean swarScanning) {
 
         this.request = request;
 
         this.headerBufferSize = headerBufferSize;
         this.httpParser = httpParser;
+        this.swarScanning = swarScanning;
 
         filterLibrary = new InputFilter[0];
         activeFilters = new InputFilter[0];
@@ -152,7 +164,7 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
         parsingRequestLineQPos = -1;
 
         parsingHeader = true;
-        httpHeaderParser = new HttpHeaderParser(this, request.getMimeHeaders(), true);
+        httpHeaderParser = new HttpHeaderParser(this, request.getMimeHeaders(), true, swarScanning);
 
         swallowInput = true;
 
@@ -377,6 +389,13 @@ public class Http11InputBuffer implements InputBuffer, ApplicationBufferHandler,
                         return false;
                     }
                 }
+                if (swarScanning) {
+                    byteBuffer.position(HttpScanner.skipToken(byteBuffer.array(), byteBuffer.position(),
+                            byteBuffer.limit()));
+                    if (byteBuffer.position() >= byteBuffer.limit()) {
+                        continue;
+                    }
+                }
                 // Spec says method name is a token followed by a single SP but
                 // also be tolerant of multiple SP and/or HT.
                 int pos = byteBuffer.position();
@@ -56,6 +56,14 @@ public class Http11NioProtocol extends AbstractHttp11Protocol<NioChannel> {
         return ((NioEndpoint) getEndpoint()).getSelectorTimeout();
     }
 
+    public void setPollerCount(int pollerCount) {
+        ((NioEndpoint) getEndpoint()).setPollerCount(pollerCount);
+    }
+
+    public int getPollerCount() {
+        return ((NioEndpoint) getEndpoint()).getPollerCount();
+    }
+
     public void setPollerThreadPriority(int threadPriority) {
         ((NioEndpoint) getEndpoint()).setPollerThreadPriority(threadPriority);
     }
@@ -41,6 +41,7 @@ import org.apache.coyote.UpgradeToken;
 import org.apache.coyote.http11.filters.BufferedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedInputFilter;
 import org.apache.coyote.http11.filters.ChunkedOutputFilter;
+import org.apache.coyote.http11.filters.ContentCodingOutputFilter;
 import org.apache.coyote.http11.filters.GzipOutputFilter;
 import org.apache.coyote.http11.filters.IdentityInputFilter;
 import org.apache.coyote.http11.filters.IdentityOutputFilter;
@@ -56,6 +57,8 @@ import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
 import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.http.compression.GzipContentCoding;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.http.parser.TokenList;
 import org.apache.tomcat.util.log.UserDataHelper;
@@ -164,7 +167,8 @@ public class Http11Processor extends AbstractProcessor {
         }
         this.httpParser = httpParser;
 
-        inputBuffer = new Http11InputBuffer(request, protocol.getMaxHttpRequestHeaderSize(), httpParser);
+        inputBuffer = new Http11InputBuffer(request, protocol.getMaxHttpRequestHeaderSize(), httpParser,
+                protocol.getUseSwarScanning());
         request.setInputBuffer(inputBuffer);
 
         outputBuffer = new Http11OutputBuffer(response, protocol.getMaxHttpResponseHeaderSize());
@@ -189,7 +193,10 @@ public class Http11Processor extends AbstractProcessor {
 
         // Create and add the gzip filters.
         // inputBuffer.addFilter(new GzipInputFilter());
-        outputBuffer.addFilter(new GzipOutputFilter());
+        outputBuffer.addFilter(new GzipOutputFilter(protocol.getCompressionConfig()));
+
+        // Create and add the filter for other content codings
+        outputBuffer.addFilter(new ContentCodingOutputFilter());
 
         pluggableFilterIndex = inputBuffer.getFilters().length;
     }
@@ -903,9 +910,9 @@ public class Http11Processor extends AbstractProcessor {
         }
 
         // Check for compression
-        boolean useCompression = false;
+        ContentCoding contentCoding = null;
         if (entityBody && sendfileData == null) {
-            useCompression = protocol.useCompression(request, response);
+            contentCoding = protocol.negotiateCompression(request, response);
         }
 
         MimeHeaders headers = response.getMimeHeaders();
@@ -951,8 +958,13 @@ public class Http11Processor extends AbstractProcessor {
             }
         }
 
-        if (useCompression) {
+        if (contentCoding instanceof GzipContentCoding) {
             outputBuffer.addActiveFilter(outputFilters[Constants.GZIP_FILTER]);
+        } else if (contentCoding != null) {
+            ContentCodingOutputFilter contentCodingOutputFilter =
+                    (ContentCodingOutputFilter) outputFilters[Constants.CONTENT_CODING_FILTER];
+            contentCodingOutputFilter.setContentCoding(contentCoding);
+            outputBuffer.addActiveFilter(contentCodingOutputFilter);
         }
 
         // Add date header unless application has already set one (e.g. in a
@@ -0,0 +1,204 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.coyote.Response;
+import org.apache.coyote.http11.HttpOutputBuffer;
+import org.apache.coyote.http11.OutputFilter;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Output filter that compresses the response body using a {@link ContentCoding}. The gzip content coding is normally
+ * handled by {@link GzipOutputFilter} which supports the reuse of Deflaters and the caching of compressed bodies. This
+ * filter is used for the other content codings.
+ */
+public class ContentCodingOutputFilter implements OutputFilter {
+
+    protected static final Log log = LogFactory.getLog(ContentCodingOutputFilter.class);
+    private static final StringManager sm = StringManager.getManager(ContentCodingOutputFilter.class);
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * Next buffer in the pipeline.
+     */
+    protected HttpOutputBuffer buffer;
+
+
+    /**
+     * The content coding used for the current response.
+     */
+    protected ContentCoding contentCoding;
+
+
+    /**
+     * Compression output stream.
+     */
+    protected OutputStream compressionStream = null;
+
+
+    /**
+     * Fake internal output stream.
+     */
+    protected final FakeOutputStream fakeOutputStream = new FakeOutputStream();
+
+
+    public ContentCodingOutputFilter() {
+        this(null);
+    }
+
+
+    public ContentCodingOutputFilter(ContentCoding contentCoding) {
+        this.contentCoding = contentCoding;
+    }
+
+
+    /**
+     * Set the content coding to use for the current response. Must be called before any data is written.
+     *
+     * @param contentCoding The content coding
+     */
+    public void setContentCoding(ContentCoding contentCoding) {
+        this.contentCoding = contentCoding;
+    }
+
+
+    // --------------------------------------------------- OutputBuffer Methods
+
+    @Override
+    public int doWrite(ByteBuffer chunk) throws IOException {
+        if (compressionStream == null) {
+            compressionStream = contentCoding.createOutputStream(fakeOutputStream, contentCoding.getDefaultLevel());
+        }
+        int len = chunk.remaining();
+        if (chunk.hasArray()) {
+            compressionStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+            chunk.position(chunk.position() + len);
+        } else {
+            byte[] bytes = new byte[len];
+            chunk.get(bytes);
+            compressionStream.write(bytes, 0, len);
+        }
+        return len;
+    }
+
+
+    @Override
+    public long getBytesWritten() {
+        return buffer.getBytesWritten();
+    }
+
+
+    // --------------------------------------------------- OutputFilter Methods
+
+    @Override
+    public void flush() throws IOException {
+        if (compressionStream != null) {
+            try {
+                compressionStream.flush();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("contentCodingOutputFilter.flushFail", contentCoding.getName()), e);
+                }
+            }
+        }
+        buffer.flush();
+    }
+
+
+    @Override
+    public void setResponse(Response response) {
+        // NOOP: No need for parameters from response in this filter
+    }
+
+
+    @Override
+    public void setBuffer(HttpOutputBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    @Override
+    public void end() throws IOException {
+        if (compressionStream == null) {
+            compressionStream = contentCoding.createOutputStream(fakeOutputStream, contentCoding.getDefaultLevel());
+        }
+        // Completes the compressed data and releases the resources used for compression
+        compressionStream.close();
+        compressionStream = null;
+        buffer.end();
+    }
+
+
+    @Override
+    public void recycle() {
+        if (compressionStream != null) {
+            // The response was not completed. Release the resources used for compression without writing anything.
+            fakeOutputStream.discard = true;
+            try {
+                compressionStream.close();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("contentCodingOutputFilter.closeFail", contentCoding.getName()), e);
+                }
+            }
+            compressionStream = null;
+        }
+        fakeOutputStream.discard = false;
+    }
+
+
+    // ------------------------------------------- FakeOutputStream Inner Class
+
+
+    protected class FakeOutputStream extends OutputStream {
+        protected final ByteBuffer outputChunk = ByteBuffer.allocate(1);
+        private boolean discard = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discard) {
+                outputChunk.put(0, (byte) (b & 0xff));
+                outputChunk.clear();
+                buffer.doWrite(outputChunk);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discard) {
+                buffer.doWrite(ByteBuffer.wrap(b, off, len));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            /* NOOP */}
+
+        @Override
+        public void close() throws IOException {
+            /* NOOP */}
+    }
+}
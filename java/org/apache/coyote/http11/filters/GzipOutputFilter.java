@@ -16,20 +16,36 @@
  */
 package org.apache.coyote.http11.filters;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.zip.GZIPOutputStream;
-
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.coyote.CompressedBodyCache;
+import org.apache.coyote.CompressionConfig;
+import org.apache.coyote.Request;
 import org.apache.coyote.Response;
 import org.apache.coyote.http11.HttpOutputBuffer;
 import org.apache.coyote.http11.OutputFilter;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.DeflaterPool;
 import org.apache.tomcat.util.res.StringManager;
 
 /**
  * Gzip output filter.
+ * <p>
+ * If a {@link CompressionConfig} is provided, Deflaters are obtained from its pool and, if the configuration has a
+ * {@link CompressedBodyCache}, compressed bodies of responses with an ETag are cached. When a later response for the
+ * same host and request URI has the same ETag, the uncompressed body is buffered (rather than compressed) until the end
+ * of the response. If it has the same length and SHA-256 digest as the cached body, the cached compressed body is
+ * written. Otherwise the buffered body is compressed as normal. A flush before the end of the response also causes
+ * the buffered body to be compressed.
  *
  * @author Remy Maucherat
  */
@@ -38,6 +54,11 @@ public class GzipOutputFilter implements OutputFilter {
     protected static final Log log = LogFactory.getLog(GzipOutputFilter.class);
     private static final StringManager sm = StringManager.getManager(GzipOutputFilter.class);
 
+    // Magic number, compression method (deflate), no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER =
+            new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int BUFFER_SIZE = 512;
+
 
     // ----------------------------------------------------- Instance Variables
 
@@ -50,7 +71,7 @@ public class GzipOutputFilter implements OutputFilter {
     /**
      * Compression output stream.
      */
-    protected GZIPOutputStream compressionStream = null;
+    protected DeflaterOutputStream compressionStream = null;
 
 
     /**
@@ -59,14 +80,76 @@ public class GzipOutputFilter implements OutputFilter {
     protected final OutputStream fakeOutputStream = new FakeOutputStream();
 
 
+    private final DeflaterPool deflaterPool;
+    private final CompressedBodyCache compressedBodyCache;
+    private Deflater deflater = null;
+
+    // Caching of compressed bodies for the current response
+    private final MessageDigest bodyDigest;
+    private CompressedBodyCache.Key cacheKey = null;
+    private CompressedBodyCache.Entry cachedEntry = null;
+    private ByteArrayOutputStream uncompressedBody = null;
+    private ByteArrayOutputStream compressedBody = null;
+
+
+    public GzipOutputFilter() {
+        this(null);
+    }
+
+
+    /**
+     * Create a filter that uses the Deflater pool and, if configured, the compressed body cache of the given
+     * configuration.
+     *
+     * @param compressionConfig The compression configuration or {@code null} to create a new Deflater, using the
+     *                              default compression level, for each response
+     */
+    public GzipOutputFilter(CompressionConfig compressionConfig) {
+        if (compressionConfig == null) {
+            deflaterPool = null;
+            compressedBodyCache = null;
+        } else {
+            deflaterPool = compressionConfig.getDeflaterPool();
+            compressedBodyCache = compressionConfig.getCompressedBodyCache();
+        }
+        if (compressedBodyCache == null) {
+            bodyDigest = null;
+        } else {
+            try {
+                bodyDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+
     // --------------------------------------------------- OutputBuffer Methods
 
     @Override
     public int doWrite(ByteBuffer chunk) throws IOException {
+        int len = chunk.remaining();
+        if (cachedEntry != null) {
+            if (uncompressedBody.size() + len <= cachedEntry.uncompressedLength()) {
+                if (chunk.hasArray()) {
+                    uncompressedBody.write(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+                    bodyDigest.update(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+                    chunk.position(chunk.position() + len);
+                } else {
+                    byte[] bytes = new byte[len];
+                    chunk.get(bytes);
+                    uncompressedBody.write(bytes, 0, len);
+                    bodyDigest.update(bytes, 0, len);
+                }
+                return len;
+            }
+            // Longer than the cached body so it can't be used
+            compressUncompressedBody();
+        }
         if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+            compressionStream = createCompressionStream();
         }
-        int len = chunk.remaining();
         if (chunk.hasArray()) {
             compressionStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
             chunk.position(chunk.position() + len);
@@ -92,6 +175,10 @@ public class GzipOutputFilter implements OutputFilter {
      */
     @Override
     public void flush() throws IOException {
+        if (cachedEntry != null) {
+            // The data needs to be written so the cached body can't be used
+            compressUncompressedBody();
+        }
         if (compressionStream != null) {
             try {
                 if (log.isTraceEnabled()) {
@@ -110,7 +197,19 @@ public class GzipOutputFilter implements OutputFilter {
 
     @Override
     public void setResponse(Response response) {
-        // NOOP: No need for parameters from response in this filter
+        if (compressedBodyCache == null) {
+            return;
+        }
+        String eTag = response.getMimeHeaders().getHeader("ETag");
+        Request request = response.getRequest();
+        if (eTag != null && request != null) {
+            cacheKey = new CompressedBodyCache.Key(request.serverName().toString(), request.requestURI().toString(),
+                    eTag);
+            cachedEntry = compressedBodyCache.get(cacheKey);
+            if (cachedEntry != null) {
+                uncompressedBody = new ByteArrayOutputStream((int) Math.min(cachedEntry.uncompressedLength(), 8192));
+            }
+        }
     }
 
 
@@ -122,11 +221,28 @@ public class GzipOutputFilter implements OutputFilter {
 
     @Override
     public void end() throws IOException {
+        if (cachedEntry != null) {
+            if (uncompressedBody.size() == cachedEntry.uncompressedLength() &&
+                    MessageDigest.isEqual(bodyDigest.digest(), cachedEntry.digest())) {
+                compressedBodyCache.recordHit();
+                buffer.doWrite(ByteBuffer.wrap(cachedEntry.compressedBody()));
+                buffer.end();
+                return;
+            }
+            compressUncompressedBody();
+        }
         if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+            compressionStream = createCompressionStream();
         }
         compressionStream.finish();
         compressionStream.close();
+        if (compressedBody != null) {
+            GzipDeflaterOutputStream gzipStream = (GzipDeflaterOutputStream) compressionStream;
+            compressedBodyCache.put(cacheKey, new CompressedBodyCache.Entry(gzipStream.getUncompressedLength(),
+                    bodyDigest.digest(), compressedBody.toByteArray()));
+            compressedBody = null;
+        }
+        releaseDeflater();
         buffer.end();
     }
 
@@ -135,6 +251,50 @@ public class GzipOutputFilter implements OutputFilter {
     public void recycle() {
         // Set compression stream to null
         compressionStream = null;
+        releaseDeflater();
+        cacheKey = null;
+        cachedEntry = null;
+        if (bodyDigest != null) {
+            bodyDigest.reset();
+        }
+        uncompressedBody = null;
+        compressedBody = null;
+    }
+
+
+    private DeflaterOutputStream createCompressionStream() throws IOException {
+        if (deflaterPool == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        } else {
+            deflater = deflaterPool.lease();
+        }
+        if (cacheKey != null) {
+            compressedBodyCache.recordMiss();
+            compressedBody = new ByteArrayOutputStream();
+            bodyDigest.reset();
+            return new GzipDeflaterOutputStream(fakeOutputStream, deflater, bodyDigest);
+        }
+        return new GzipDeflaterOutputStream(fakeOutputStream, deflater, null);
+    }
+
+
+    private void compressUncompressedBody() throws IOException {
+        cachedEntry = null;
+        compressionStream = createCompressionStream();
+        uncompressedBody.writeTo(compressionStream);
+        uncompressedBody = null;
+    }
+
+
+    private void releaseDeflater() {
+        if (deflater != null) {
+            if (deflaterPool == null) {
+                deflater.end();
+            } else {
+                deflaterPool.release(deflater);
+            }
+            deflater = null;
+        }
     }
 
 
@@ -154,6 +314,14 @@ public class GzipOutputFilter implements OutputFilter {
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
+            if (compressedBody != null) {
+                if (compressedBody.size() + len <= compressedBodyCache.getMaxSize()) {
+                    compressedBody.write(b, off, len);
+                } else {
+                    // Too big to cache
+                    compressedBody = null;
+                }
+            }
             buffer.doWrite(ByteBuffer.wrap(b, off, len));
         }
 
@@ -167,4 +335,52 @@ public class GzipOutputFilter implements OutputFilter {
     }
 
 
+    // ------------------------------------ GzipDeflaterOutputStream Inner Class
+
+    /*
+     * Equivalent to GZIPOutputStream but uses the provided Deflater so Deflaters may be reused.
+     */
+    private static class GzipDeflaterOutputStream extends DeflaterOutputStream {
+
+        private final CRC32 crc = new CRC32();
+        private final MessageDigest digest;
+
+        GzipDeflaterOutputStream(OutputStream out, Deflater deflater, MessageDigest digest) throws IOException {
+            super(out, deflater, BUFFER_SIZE, true);
+            this.digest = digest;
+            out.write(GZIP_HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+            if (digest != null) {
+                digest.update(b, off, len);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!def.finished()) {
+                super.finish();
+                byte[] trailer = new byte[8];
+                writeInt((int) crc.getValue(), trailer, 0);
+                writeInt((int) def.getBytesRead(), trailer, 4);
+                out.write(trailer);
+            }
+        }
+
+        long getUncompressedLength() {
+            return def.getBytesRead();
+        }
+
+        private static void writeInt(int value, byte[] buf, int offset) {
+            // Little endian
+            buf[offset] = (byte) value;
+            buf[offset + 1] = (byte) (value >> 8);
+            buf[offset + 2] = (byte) (value >> 16);
+            buf[offset + 3] = (byte) (value >> 24);
+        }
+    }
 }
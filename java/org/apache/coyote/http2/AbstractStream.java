@@ -69,7 +69,7 @@ abstract class AbstractStream {
     /**
      * @return the stream identifier
      */
-    final int getIdAsInt() {
+    public final int getIdAsInt() {
         return identifier.intValue();
     }
 
@@ -162,7 +162,7 @@ abstract class AbstractStream {
     /**
      * @return the requested amount of resources requested
      */
-    final int getConnectionAllocationRequested() {
+    public final int getConnectionAllocationRequested() {
         return connectionAllocationRequested;
     }
 
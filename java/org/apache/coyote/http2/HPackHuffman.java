@@ -437,24 +437,28 @@ public class HPackHuffman {
         if (buffer.remaining() <= toEncode.length()) {
             return false;
         }
-        int start = buffer.position();
-        // this sucks, but we need to put the length first
-        // and we don't really have any option but to calculate it in advance to make sure we have left enough room
-        // so we end up iterating twice
-        int length = 0;
-        for (int i = 0; i < toEncode.length(); ++i) {
-            char c = toEncode.charAt(i);
-            if (c > 255) {
-                throw new IllegalArgumentException(
-                        sm.getString("hpack.invalidCharacter", Character.toString(c), Integer.valueOf(c)));
-            }
-            if (forceLowercase) {
-                c = Hpack.toLower(c);
-            }
-            HuffmanCode code = HUFFMAN_CODES[c];
-            length += code.length;
+        // The length has to be written first so it is calculated in advance
+        return encode(buffer, toEncode, forceLowercase, getEncodedLength(toEncode, forceLowercase));
+    }
+
+
+    /**
+     * Encodes the given string into the buffer using a Huffman encoded length that has already been calculated with
+     * {@link #getEncodedLength(String, boolean)}. If there is not enough space in the buffer, or the encoded version
+     * is bigger than the original it will return false and not modify the buffers position.
+     *
+     * @param buffer         The buffer to encode into
+     * @param toEncode       The string to encode
+     * @param forceLowercase If the string should be encoded in lower case
+     * @param byteLength     The length in bytes of the Huffman encoded string
+     *
+     * @return true if encoding succeeded
+     */
+    public static boolean encode(ByteBuffer buffer, String toEncode, boolean forceLowercase, int byteLength) {
+        if (buffer.remaining() <= toEncode.length()) {
+            return false;
         }
-        int byteLength = length / 8 + (length % 8 == 0 ? 0 : 1);
+        int start = buffer.position();
 
         buffer.put((byte) (1 << 7));
         Hpack.encodeInteger(buffer, byteLength, 7);
@@ -524,6 +528,33 @@ public class HPackHuffman {
         return true;
     }
 
+    /**
+     * Calculates the length of the given string once Huffman encoded.
+     *
+     * @param toEncode       The string to encode
+     * @param forceLowercase If the string should be converted to lower case
+     *
+     * @return the length in bytes of the Huffman encoded string, excluding the length prefix
+     *
+     * @throws IllegalArgumentException If the string contains a character that cannot be encoded
+     */
+    public static int getEncodedLength(String toEncode, boolean forceLowercase) {
+        int length = 0;
+        for (int i = 0; i < toEncode.length(); ++i) {
+            char c = toEncode.charAt(i);
+            if (c > 255) {
+                throw new IllegalArgumentException(
+                        sm.getString("hpack.invalidCharacter", Character.toString(c), Integer.valueOf(c)));
+            }
+            if (forceLowercase) {
+                c = Hpack.toLower(c);
+            }
+            HuffmanCode code = HUFFMAN_CODES[c];
+            length += code.length;
+        }
+        return length / 8 + (length % 8 == 0 ? 0 : 1);
+    }
+
     protected static class HuffmanCode {
         /**
          * The value of the least significant bits of the code
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -39,29 +40,33 @@ class HpackEncoder {
     private static final Log log = LogFactory.getLog(HpackEncoder.class);
     private static final StringManager sm = StringManager.getManager(HpackEncoder.class);
 
-    private static final HpackHeaderFunction DEFAULT_HEADER_FUNCTION = new HpackHeaderFunction() {
-        @Override
-        public boolean shouldUseIndexing(String headerName, String value) {
-            // content length and date change all the time
-            // no need to index them, or they will churn the table
-            return switch (headerName) {
-                case "content-length", "date" -> false;
-                default -> true;
-            };
-        }
-
-        @Override
-        public boolean shouldUseHuffman(String header, String value) {
-            return value.length() > 5; // TODO: figure out a good value for this
-        }
-
-        @Override
-        public boolean shouldUseHuffman(String header) {
-            return header.length() > 5; // TODO: figure out a good value for this
-        }
+    /*
+     * Values of these headers change on (almost) every response so indexing them would just churn the dynamic table.
+     */
+    private static final Set<String> NEVER_INDEXED =
+            Set.of("age", "content-length", "content-range", "date", "etag", "expires", "last-modified", "location",
+                    "set-cookie");
 
+    /*
+     * Values of these headers are typically the same for many of the responses on a connection so they are always
+     * indexed.
+     */
+    private static final Set<String> ALWAYS_INDEXED = Set.of(":status", "access-control-allow-credentials",
+            "access-control-allow-headers", "access-control-allow-methods", "access-control-allow-origin",
+            "access-control-expose-headers", "cache-control", "content-encoding", "content-language",
+            "content-security-policy", "content-type", "referrer-policy", "server", "strict-transport-security",
+            "vary", "x-content-type-options", "x-frame-options", "x-powered-by");
+
+    /*
+     * Other headers are indexed until it is clear that the values are rarely reused. A header is considered volatile
+     * once at least this many values have been indexed and fewer than half of them have been reused.
+     */
+    private static final int VOLATILE_MIN_INDEXED = 4;
 
-    };
+    /*
+     * Limit on the number of header names for which state is retained per connection.
+     */
+    private static final int MAX_CACHED_NAMES = 64;
 
     private int headersIterator = -1;
     private boolean firstPass = true;
@@ -108,8 +113,25 @@ class HpackEncoder {
 
     private final HpackHeaderFunction hpackHeaderFunction;
 
+    /*
+     * Lower case header names keyed by the names as provided. Response header names are usually constants so this
+     * avoids converting the same names to lower case for every response.
+     */
+    private final Map<String,String> lowerCaseNames = new HashMap<>();
+
+    /*
+     * Per header name statistics used by the indexing policy.
+     */
+    private final Map<String,NameStatistics> nameStatistics = new HashMap<>();
+
+    /*
+     * Header fields encoded as literals that do not reference the dynamic table, keyed by header name. If the next
+     * value for the header is the same, the encoded bytes can be copied rather than encoded again.
+     */
+    private final Map<String,EncodedField> encodedFields = new HashMap<>();
+
     HpackEncoder() {
-        this.hpackHeaderFunction = DEFAULT_HEADER_FUNCTION;
+        this.hpackHeaderFunction = new DefaultHeaderFunction();
     }
 
     /**
@@ -133,8 +155,7 @@ class HpackEncoder {
             }
         }
         while (it < currentHeaders.size()) {
-            // FIXME: Review lowercase policy
-            String headerName = headers.getName(it).toString().toLowerCase(Locale.US);
+            String headerName = toLowerCase(headers.getName(it).toString());
             boolean skip = false;
             if (firstPass) {
                 if (headerName.charAt(0) != ':') {
@@ -151,7 +172,6 @@ class HpackEncoder {
                 if (log.isTraceEnabled()) {
                     log.trace(sm.getString("hpackEncoder.encodeHeader", headerName, val));
                 }
-                TableEntry tableEntry = findInTable(headerName, val);
 
                 // We use 11 to make sure we have enough room for the
                 // variable length integers
@@ -161,42 +181,14 @@ class HpackEncoder {
                     this.headersIterator = it;
                     return State.UNDERFLOW;
                 }
-                // Only index if it will fit
-                boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
-                        (headerName.length() + val.length() + 32) < maxTableSize;
-                if (tableEntry == null && canIndex) {
-                    // add the entry to the dynamic table
-                    target.put((byte) (1 << 6));
-                    writeHuffmanEncodableName(target, headerName);
-                    writeHuffmanEncodableValue(target, headerName, val);
-                    addToDynamicTable(headerName, val);
-                } else if (tableEntry == null) {
-                    // literal never indexed
-                    target.put((byte) (1 << 4));
-                    writeHuffmanEncodableName(target, headerName);
-                    writeHuffmanEncodableValue(target, headerName, val);
+
+                EncodedField encodedField = encodedFields.get(headerName);
+                if (encodedField != null && val.equals(encodedField.value)) {
+                    // Same literal as last time
+                    target.put(encodedField.encoded);
                 } else {
-                    // so we know something is already in the table
-                    if (val.equals(tableEntry.value)) {
-                        // the whole thing is in the table
-                        target.put((byte) (1 << 7));
-                        Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
-                    } else {
-                        if (canIndex) {
-                            // add the entry to the dynamic table
-                            target.put((byte) (1 << 6));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
-                            writeHuffmanEncodableValue(target, headerName, val);
-                            addToDynamicTable(headerName, val);
-
-                        } else {
-                            target.put((byte) (1 << 4));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
-                            writeHuffmanEncodableValue(target, headerName, val);
-                        }
-                    }
+                    encodeField(target, headerName, val);
                 }
-
             }
             if (++it == currentHeaders.size() && firstPass) {
                 firstPass = false;
@@ -208,9 +200,82 @@ class HpackEncoder {
         return State.COMPLETE;
     }
 
+    private void encodeField(ByteBuffer target, String headerName, String val) {
+        TableEntry tableEntry = findInTable(headerName, val);
+        if (tableEntry != null && val.equals(tableEntry.value)) {
+            // the whole thing is in the table
+            target.put((byte) (1 << 7));
+            Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+            if (tableEntry instanceof DynamicTableEntry) {
+                getNameStatistics(headerName).reused++;
+            }
+            return;
+        }
+
+        // Only index if it will fit
+        boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) &&
+                (headerName.length() + val.length() + 32) < maxTableSize;
+        if (canIndex) {
+            // add the entry to the dynamic table
+            target.put((byte) (1 << 6));
+            if (tableEntry == null) {
+                writeHuffmanEncodableName(target, headerName);
+            } else {
+                Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
+            }
+            writeHuffmanEncodableValue(target, headerName, val);
+            addToDynamicTable(headerName, val);
+            getNameStatistics(headerName).indexed++;
+        } else {
+            // literal never indexed
+            int start = target.position();
+            target.put((byte) (1 << 4));
+            if (tableEntry == null) {
+                writeHuffmanEncodableName(target, headerName);
+            } else {
+                Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
+            }
+            writeHuffmanEncodableValue(target, headerName, val);
+            if (!(tableEntry instanceof DynamicTableEntry)) {
+                // The representation does not depend on the state of the dynamic table so it can be reused
+                byte[] encoded = new byte[target.position() - start];
+                target.get(start, encoded);
+                if (encodedFields.size() >= MAX_CACHED_NAMES && !encodedFields.containsKey(headerName)) {
+                    encodedFields.clear();
+                }
+                encodedFields.put(headerName, new EncodedField(val, encoded));
+            }
+        }
+    }
+
+    private String toLowerCase(String name) {
+        String result = lowerCaseNames.get(name);
+        if (result == null) {
+            result = name.toLowerCase(Locale.US);
+            if (lowerCaseNames.size() >= MAX_CACHED_NAMES) {
+                lowerCaseNames.clear();
+            }
+            lowerCaseNames.put(name, result);
+        }
+        return result;
+    }
+
+    private NameStatistics getNameStatistics(String headerName) {
+        NameStatistics result = nameStatistics.get(headerName);
+        if (result == null) {
+            result = new NameStatistics();
+            if (nameStatistics.size() >= MAX_CACHED_NAMES) {
+                nameStatistics.clear();
+            }
+            nameStatistics.put(headerName, result);
+        }
+        return result;
+    }
+
     private void writeHuffmanEncodableName(ByteBuffer target, String headerName) {
-        if (hpackHeaderFunction.shouldUseHuffman(headerName)) {
-            if (HPackHuffman.encode(target, headerName, true)) {
+        int huffmanLength = hpackHeaderFunction.getHuffmanLength(headerName);
+        if (huffmanLength >= 0) {
+            if (HPackHuffman.encode(target, headerName, true, huffmanLength)) {
                 return;
             }
         }
@@ -223,8 +288,9 @@ class HpackEncoder {
     }
 
     private void writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
-        if (hpackHeaderFunction.shouldUseHuffman(headerName, val)) {
-            if (!HPackHuffman.encode(target, val, false)) {
+        int huffmanLength = hpackHeaderFunction.getHuffmanLength(headerName, val);
+        if (huffmanLength >= 0) {
+            if (!HPackHuffman.encode(target, val, false, huffmanLength)) {
                 writeValueString(target, val);
             }
         } else {
@@ -374,26 +440,68 @@ class HpackEncoder {
         }
     }
 
+    private static class NameStatistics {
+        private int indexed;
+        private int reused;
+    }
+
+    private record EncodedField(String value, byte[] encoded) {
+    }
+
+    /*
+     * Indexes header fields that are likely to be repeated on the connection and uses Huffman encoding when it is
+     * shorter than the raw string.
+     */
+    private class DefaultHeaderFunction implements HpackHeaderFunction {
+
+        @Override
+        public boolean shouldUseIndexing(String headerName, String value) {
+            if (NEVER_INDEXED.contains(headerName)) {
+                return false;
+            }
+            if (ALWAYS_INDEXED.contains(headerName)) {
+                return true;
+            }
+            NameStatistics statistics = nameStatistics.get(headerName);
+            return statistics == null || statistics.indexed < VOLATILE_MIN_INDEXED ||
+                    statistics.reused * 2 >= statistics.indexed;
+        }
+
+        @Override
+        public int getHuffmanLength(String header, String value) {
+            int length = HPackHuffman.getEncodedLength(value, false);
+            return length < value.length() ? length : -1;
+        }
+
+        @Override
+        public int getHuffmanLength(String header) {
+            int length = HPackHuffman.getEncodedLength(header, true);
+            return length < header.length() ? length : -1;
+        }
+    }
+
     private interface HpackHeaderFunction {
         boolean shouldUseIndexing(String header, String value);
 
         /**
-         * Returns true if huffman encoding should be used on the header value
+         * Determines if huffman encoding should be used on the header value
          *
          * @param header The header name
          * @param value  The header value to be encoded
          *
-         * @return <code>true</code> if the value should be encoded
+         * @return the length in bytes of the huffman encoded value if the value should be encoded, otherwise
+         *             <code>-1</code>
          */
-        boolean shouldUseHuffman(String header, String value);
+        int getHuffmanLength(String header, String value);
 
         /**
-         * Returns true if huffman encoding should be used on the header name
+         * Determines if huffman encoding should be used on the header name
          *
          * @param header The header name to be encoded
          *
-         * @return <code>true</code> if the value should be encoded
+         * @return the length in bytes of the huffman encoded name if the name should be encoded, otherwise
+         *             <code>-1</code>
          */
-        boolean shouldUseHuffman(String header);
+        int getHuffmanLength(String header);
     }
 }
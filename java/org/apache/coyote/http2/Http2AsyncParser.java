@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import jakarta.servlet.http.WebConnection;
 
 import org.apache.coyote.ProtocolException;
+import org.apache.tomcat.util.buf.ByteBufferPool;
 import org.apache.tomcat.util.net.SocketEvent;
 import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.net.SocketWrapperBase.BlockingMode;
@@ -51,7 +52,7 @@ class Http2AsyncParser extends Http2Parser {
         byte[] prefaceData = new byte[CLIENT_PREFACE_START.length];
         ByteBuffer preface = ByteBuffer.wrap(prefaceData);
         ByteBuffer header = ByteBuffer.allocate(9);
-        ByteBuffer framePayload = ByteBuffer.allocate(input.getMaxFrameSize());
+        ByteBuffer framePayload = leaseFramePayload();
         PrefaceCompletionHandler handler =
                 new PrefaceCompletionHandler(webConnection, stream, prefaceData, preface, header, framePayload);
         socketWrapper.read(BlockingMode.NON_BLOCK, socketWrapper.getReadTimeout(), TimeUnit.MILLISECONDS, null, handler,
@@ -120,6 +121,7 @@ class Http2AsyncParser extends Http2Parser {
                 if (payload.hasRemaining()) {
                     socketWrapper.unRead(payload);
                 }
+                releaseFramePayload(payload);
                 // Finish processing the connection
                 upgradeHandler.processConnectionCallback(webConnection, stream);
             } else {
@@ -135,7 +137,7 @@ class Http2AsyncParser extends Http2Parser {
     protected boolean readFrame(boolean block, FrameType expected) throws IOException, Http2Exception {
         handleAsyncException();
         ByteBuffer header = ByteBuffer.allocate(9);
-        ByteBuffer framePayload = ByteBuffer.allocate(input.getMaxFrameSize());
+        ByteBuffer framePayload = leaseFramePayload();
         FrameCompletionHandler handler = new FrameCompletionHandler(expected, header, framePayload);
         CompletionState state = socketWrapper.read(block ? BlockingMode.BLOCK : BlockingMode.NON_BLOCK,
                 block ? socketWrapper.getReadTimeout() : 0, TimeUnit.MILLISECONDS, null, handler, handler, header,
@@ -148,6 +150,24 @@ class Http2AsyncParser extends Http2Parser {
         }
     }
 
+    private ByteBuffer leaseFramePayload() {
+        ByteBufferPool bufferPool = socketWrapper.getSharedBufferPool();
+        if (bufferPool == null) {
+            return ByteBuffer.allocate(input.getMaxFrameSize());
+        }
+        ByteBuffer framePayload = bufferPool.lease(input.getMaxFrameSize(), false);
+        // Don't read beyond the maximum frame size if the buffer is larger
+        framePayload.limit(input.getMaxFrameSize());
+        return framePayload;
+    }
+
+    private void releaseFramePayload(ByteBuffer framePayload) {
+        ByteBufferPool bufferPool = socketWrapper.getSharedBufferPool();
+        if (bufferPool != null) {
+            bufferPool.release(framePayload);
+        }
+    }
+
     private void handleAsyncException() throws IOException, Http2Exception {
         if (error != null) {
             Throwable error = this.error;
@@ -314,6 +334,7 @@ class Http2AsyncParser extends Http2Parser {
                     if (payload.hasRemaining()) {
                         socketWrapper.unRead(payload);
                     }
+                    releaseFramePayload(payload);
                 }
             }
             if (state == CompletionState.DONE) {
@@ -24,6 +24,8 @@ import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -51,6 +53,22 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
     private final Lock sendResetLock = new ReentrantLock();
     private final AtomicReference<Throwable> error = new AtomicReference<>();
     private final AtomicReference<IOException> applicationIOE = new AtomicReference<>();
+    // Write coalescing. Ensures frames are written to the network in the
+    // order they were passed to writeFrames(). The lock is only held while
+    // a write is started, never while waiting for one to complete.
+    private final Lock pendingFramesLock = new ReentrantLock();
+    private ByteBuffer pendingFrames = null;
+    // Re-used for the life of the connection. One may be being written to
+    // the network while the other collects frames. Writes are not started
+    // until the previous write has completed so, once the write of one
+    // buffer has started, the other buffer is free to be re-used.
+    private final ByteBuffer[] coalescingBuffers = new ByteBuffer[2];
+    private int nextCoalescingBuffer = 0;
+    // The completion that reports a failure to write the pending frames.
+    // applicationErrorCompletion if any of them were written on behalf of the
+    // application.
+    private CompletionHandler<Long,Void> pendingFramesCompletion = null;
+    private volatile ScheduledFuture<?> pendingFramesFlush = null;
 
     public Http2AsyncUpgradeHandler(Http2Protocol protocol, Adapter adapter, Request coyoteRequest,
             SocketWrapperBase<?> socketWrapper) {
@@ -111,8 +129,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
 
     @Override
     protected void writeSettings() {
-        socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                SocketWrapperBase.COMPLETE_WRITE, errorCompletion,
+        writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false,
                 ByteBuffer.wrap(localSettings.getSettingsFrameForPending()),
                 ByteBuffer.wrap(createWindowUpdateForSettings()));
         Throwable err = error.get();
@@ -161,8 +178,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 }
             }
 
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(rstFrame));
+            writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(rstFrame));
         } finally {
             sendResetLock.unlock();
         }
@@ -182,12 +198,10 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
         byte[] payloadLength = new byte[3];
         ByteUtil.setThreeBytes(payloadLength, 0, len);
         if (debugMsg != null) {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(payloadLength),
+            writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(payloadLength),
                     ByteBuffer.wrap(GOAWAY), ByteBuffer.wrap(fixedPayload), ByteBuffer.wrap(debugMsg));
         } else {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(payloadLength),
+            writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(payloadLength),
                     ByteBuffer.wrap(GOAWAY), ByteBuffer.wrap(fixedPayload));
         }
         handleAsyncException();
@@ -201,8 +215,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
             AsyncHeaderFrameBuffers headerFrameBuffers =
                     (AsyncHeaderFrameBuffers) doWriteHeaders(stream, mimeHeaders, endOfStream, payloadSize);
             if (headerFrameBuffers != null) {
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, applicationErrorCompletion,
+                writeFrames(BlockingMode.SEMI_BLOCK, applicationErrorCompletion, true,
                         headerFrameBuffers.bufs.toArray(BYTEBUFFER_ARRAY));
                 handleAsyncException();
             }
@@ -243,8 +256,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
             ByteUtil.set31Bits(header, 5, stream.getIdAsInt());
             int orgLimit = data.limit();
             data.limit(data.position() + len);
-            socketWrapper.write(BlockingMode.BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, applicationErrorCompletion, ByteBuffer.wrap(header), data);
+            writeFrames(BlockingMode.BLOCK, applicationErrorCompletion, true, ByteBuffer.wrap(header), data);
             data.limit(orgLimit);
             handleAsyncException();
         }
@@ -277,20 +289,34 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 frame2[3] = FrameType.WINDOW_UPDATE.getIdByte();
                 ByteUtil.set31Bits(frame2, 9, streamIncrement);
                 ByteUtil.set31Bits(frame2, 5, stream.getIdAsInt());
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(frame),
+                writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, true, ByteBuffer.wrap(frame),
                         ByteBuffer.wrap(frame2));
                 neetToWriteConnectionUpdate = false;
             }
         }
         if (neetToWriteConnectionUpdate) {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(frame));
+            writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, true, ByteBuffer.wrap(frame));
         }
         handleAsyncException();
     }
 
 
+    @Override
+    void writeWindowSizeIncrease(int streamId, int increment) throws IOException {
+        if (log.isTraceEnabled()) {
+            log.trace(sm.getString("upgradeHandler.windowSizeIncrease", getConnectionId(), Integer.toString(streamId),
+                    Integer.valueOf(increment)));
+        }
+        byte[] frame = new byte[13];
+        ByteUtil.setThreeBytes(frame, 0, 4);
+        frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 5, streamId);
+        ByteUtil.set31Bits(frame, 9, increment);
+        writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, true, ByteBuffer.wrap(frame));
+        handleAsyncException();
+    }
+
+
     @Override
     public void settingsEnd(boolean ack) throws IOException {
         if (ack) {
@@ -299,13 +325,151 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 log.warn(sm.getString("upgradeHandler.unexpectedAck", connectionId, getIdAsString()));
             }
         } else {
-            socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                    SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(SETTINGS_ACK));
+            writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(SETTINGS_ACK));
         }
         handleAsyncException();
     }
 
 
+    /*
+     * Writes the given frames to the network. When write coalescing is enabled, frames that may be coalesced are copied
+     * to a per connection buffer that is written once it is full or once the coalescing delay has passed, so frames
+     * for several streams are sent in a single network write. Any other write is preceded by a write of the pending
+     * frames so the order in which frames are sent is preserved.
+     */
+    private void writeFrames(BlockingMode blockingMode, CompletionHandler<Long,Void> completion, boolean coalesce,
+            ByteBuffer... frames) {
+        long delay = protocol.getWriteCoalescingDelay();
+        ScheduledExecutorService executor = getUtilityExecutor();
+        if (delay <= 0 || executor == null) {
+            write(blockingMode, completion, frames);
+            return;
+        }
+        pendingFramesLock.lock();
+        try {
+            if (coalesce) {
+                int frameBytes = 0;
+                for (ByteBuffer frame : frames) {
+                    frameBytes += frame.remaining();
+                }
+                if (frameBytes < protocol.getWriteCoalescingSize()) {
+                    if (pendingFrames != null && frameBytes > pendingFrames.remaining()) {
+                        startPendingFramesWrite(BlockingMode.SEMI_BLOCK);
+                    }
+                    if (pendingFrames == null) {
+                        pendingFrames = nextCoalescingBuffer();
+                    }
+                    // Copy since the caller may re-use the buffers once this method returns
+                    for (ByteBuffer frame : frames) {
+                        pendingFrames.put(frame);
+                    }
+                    if (pendingFramesCompletion != applicationErrorCompletion) {
+                        pendingFramesCompletion = completion;
+                    }
+                    if (pendingFramesFlush == null) {
+                        pendingFramesFlush =
+                                executor.schedule(this::flushPendingFrames, delay, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+            }
+            startPendingFramesWrite(BlockingMode.SEMI_BLOCK);
+        } finally {
+            pendingFramesLock.unlock();
+        }
+        // Not holding the lock since this may block until the frames have been written
+        write(blockingMode, completion, frames);
+    }
+
+
+    /*
+     * Must be called while holding pendingFramesLock.
+     */
+    private ByteBuffer nextCoalescingBuffer() {
+        int size = protocol.getWriteCoalescingSize();
+        ByteBuffer buffer = coalescingBuffers[nextCoalescingBuffer];
+        if (buffer == null || buffer.capacity() != size) {
+            buffer = ByteBuffer.allocate(size);
+            coalescingBuffers[nextCoalescingBuffer] = buffer;
+        }
+        nextCoalescingBuffer = 1 - nextCoalescingBuffer;
+        return buffer.clear();
+    }
+
+
+    /*
+     * Must be called while holding pendingFramesLock. Only starts the write so the lock is never held while waiting
+     * for the client to read the frames. Returns false if the frames were not written because the blocking mode is
+     * NON_BLOCK and another write is in progress.
+     */
+    private boolean startPendingFramesWrite(BlockingMode blockingMode) {
+        if (pendingFrames == null) {
+            return true;
+        }
+        ByteBuffer frames = pendingFrames.flip();
+        if (write(blockingMode, pendingFramesCompletion, frames) == CompletionState.NOT_DONE) {
+            // Continue adding frames after those already pending
+            frames.position(frames.limit()).limit(frames.capacity());
+            return false;
+        }
+        pendingFrames = null;
+        pendingFramesCompletion = null;
+        return true;
+    }
+
+
+    private void writePendingFrames() {
+        pendingFramesLock.lock();
+        try {
+            startPendingFramesWrite(BlockingMode.SEMI_BLOCK);
+        } finally {
+            pendingFramesLock.unlock();
+        }
+    }
+
+
+    private void flushPendingFrames() {
+        pendingFramesLock.lock();
+        try {
+            pendingFramesFlush = null;
+            if (isConnectionClosed()) {
+                pendingFrames = null;
+                pendingFramesCompletion = null;
+                return;
+            }
+            // Don't block the utility thread. If another write is in progress, try again once the delay has passed.
+            if (!startPendingFramesWrite(BlockingMode.NON_BLOCK)) {
+                ScheduledExecutorService executor = getUtilityExecutor();
+                if (executor != null) {
+                    pendingFramesFlush = executor.schedule(this::flushPendingFrames,
+                            protocol.getWriteCoalescingDelay(), TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            pendingFramesLock.unlock();
+        }
+    }
+
+
+    /*
+     * All frames written by this handler, other than those written by sendfile, are written by this method.
+     * Package private so tests can observe the network writes.
+     */
+    CompletionState write(BlockingMode blockingMode, CompletionHandler<Long,Void> completion, ByteBuffer... buffers) {
+        return socketWrapper.write(blockingMode, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
+                SocketWrapperBase.COMPLETE_WRITE, completion, buffers);
+    }
+
+
+    @Override
+    protected void cancelCoalescedWrites() {
+        ScheduledFuture<?> flush = pendingFramesFlush;
+        if (flush != null) {
+            flush.cancel(false);
+        }
+    }
+
+
     private void handleAsyncException() throws IOException {
         IOException ioe = applicationIOE.getAndSet(null);
         if (ioe != null) {
@@ -366,6 +530,8 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 }
                 ByteUtil.set31Bits(header, 5, sendfile.stream.getIdAsInt());
                 sendfile.mappedBuffer.limit(sendfile.mappedBuffer.position() + frameSize);
+                // The completion handler expects only this frame to be written
+                writePendingFrames();
                 socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS,
                         sendfile, SocketWrapperBase.COMPLETE_WRITE_WITH_COMPLETION, new SendfileCompletionHandler(),
                         ByteBuffer.wrap(header), sendfile.mappedBuffer);
@@ -474,9 +640,9 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
 
     protected class AsyncPingManager extends PingManager {
         @Override
-        public void sendPing(boolean force) throws IOException {
+        public int sendPing(boolean force) throws IOException {
             if (initiateDisabled) {
-                return;
+                return -1;
             }
             long now = System.nanoTime();
             if (force || now - lastPingNanoTime > pingIntervalNano) {
@@ -486,11 +652,12 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 PingRecord pingRecord = new PingRecord(sentSequence, now);
                 inflightPings.add(pingRecord);
                 ByteUtil.set31Bits(payload, 4, sentSequence);
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(PING),
+                writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(PING),
                         ByteBuffer.wrap(payload));
                 handleAsyncException();
+                return sentSequence;
             }
+            return -1;
         }
 
         @Override
@@ -499,8 +666,7 @@ public class Http2AsyncUpgradeHandler extends Http2UpgradeHandler {
                 super.receivePing(payload, true);
             } else {
                 // Client originated ping. Echo it back.
-                socketWrapper.write(BlockingMode.SEMI_BLOCK, protocol.getWriteTimeout(), TimeUnit.MILLISECONDS, null,
-                        SocketWrapperBase.COMPLETE_WRITE, errorCompletion, ByteBuffer.wrap(PING_ACK),
+                writeFrames(BlockingMode.SEMI_BLOCK, errorCompletion, false, ByteBuffer.wrap(PING_ACK),
                         ByteBuffer.wrap(payload));
                 handleAsyncException();
             }
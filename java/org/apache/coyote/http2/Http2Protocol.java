@@ -35,6 +35,7 @@ import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.http.compression.ContentCoding;
 import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.res.StringManager;
@@ -65,6 +66,10 @@ public class Http2Protocol implements UpgradeProtocol {
     static final int DEFAULT_OVERHEAD_CONTINUATION_THRESHOLD = 1024;
     static final int DEFAULT_OVERHEAD_DATA_THRESHOLD = 1024;
     static final int DEFAULT_OVERHEAD_WINDOW_UPDATE_THRESHOLD = 1024;
+    // Write coalescing is disabled by default
+    static final long DEFAULT_WRITE_COALESCING_DELAY = 0;
+    // Matches the maximum TLS record size
+    static final int DEFAULT_WRITE_COALESCING_SIZE = 16 * 1024;
 
     private static final String HTTP_UPGRADE_NAME = "h2c";
     private static final String ALPN_NAME = "h2";
@@ -78,12 +83,19 @@ public class Http2Protocol implements UpgradeProtocol {
     // These are the stream level timeouts
     private long streamReadTimeout = DEFAULT_STREAM_READ_TIMEOUT;
     private long streamWriteTimeout = DEFAULT_STREAM_WRITE_TIMEOUT;
+    // Maximum time, in milliseconds, frames may be held back so they can be
+    // written to the network along with frames from other streams
+    private long writeCoalescingDelay = DEFAULT_WRITE_COALESCING_DELAY;
+    private int writeCoalescingSize = DEFAULT_WRITE_COALESCING_SIZE;
 
     private long maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
     private int maxConcurrentStreamExecution = DEFAULT_MAX_CONCURRENT_STREAM_EXECUTION;
     // To advertise a different default to the client specify it here but DO NOT
     // change the default defined in ConnectionSettingsBase.
     private int initialWindowSize = ConnectionSettingsBase.DEFAULT_INITIAL_WINDOW_SIZE;
+    // Flow control windows for request bodies are auto-tuned up to this size.
+    // Auto-tuning is disabled if this is not greater than initialWindowSize.
+    private int maxReceiveWindowSize = -1;
     // Limits
     private int maxHeaderCount = Constants.DEFAULT_MAX_HEADER_COUNT;
     private int maxTrailerCount = Constants.DEFAULT_MAX_TRAILER_COUNT;
@@ -98,7 +110,11 @@ public class Http2Protocol implements UpgradeProtocol {
     // Reference to HTTP/1.1 protocol that this instance is configured under
     private AbstractHttp11Protocol<?> http11Protocol = null;
 
+    private String streamScheduler = Rfc9218StreamScheduler.class.getName();
+    private volatile Class<? extends StreamScheduler> streamSchedulerClass = Rfc9218StreamScheduler.class;
+
     private final RequestGroupInfo global = new RequestGroupInfo();
+    private final StreamSchedulerInfo streamSchedulerInfo = new StreamSchedulerInfo();
 
     /*
      * Setting discardRequestsAndResponses can have a significant performance impact. The magnitude of the impact is
@@ -219,6 +235,65 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public long getWriteCoalescingDelay() {
+        return writeCoalescingDelay;
+    }
+
+
+    public void setWriteCoalescingDelay(long writeCoalescingDelay) {
+        this.writeCoalescingDelay = writeCoalescingDelay;
+    }
+
+
+    public int getWriteCoalescingSize() {
+        return writeCoalescingSize;
+    }
+
+
+    public void setWriteCoalescingSize(int writeCoalescingSize) {
+        this.writeCoalescingSize = writeCoalescingSize;
+    }
+
+
+    public String getStreamScheduler() {
+        return streamScheduler;
+    }
+
+
+    /**
+     * Set the {@link StreamScheduler} implementation used to share the connection flow control window between the
+     * streams waiting for an allocation from it.
+     *
+     * @param streamScheduler The fully qualified class name of the {@link StreamScheduler} implementation
+     */
+    public void setStreamScheduler(String streamScheduler) {
+        this.streamScheduler = streamScheduler;
+        // Resolved when the first connection needs it
+        this.streamSchedulerClass = null;
+    }
+
+
+    StreamScheduler createStreamScheduler() {
+        Class<? extends StreamScheduler> clazz = streamSchedulerClass;
+        if (clazz == null) {
+            try {
+                clazz = Class.forName(streamScheduler).asSubclass(StreamScheduler.class);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                log.error(sm.getString("http2Protocol.streamScheduler.invalid", streamScheduler), e);
+                clazz = Rfc9218StreamScheduler.class;
+            }
+            streamSchedulerClass = clazz;
+        }
+        try {
+            return clazz.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            log.error(sm.getString("http2Protocol.streamScheduler.invalid", streamScheduler), e);
+            streamSchedulerClass = Rfc9218StreamScheduler.class;
+            return new Rfc9218StreamScheduler();
+        }
+    }
+
+
     public long getMaxConcurrentStreams() {
         return maxConcurrentStreams;
     }
@@ -249,6 +324,16 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public int getMaxReceiveWindowSize() {
+        return maxReceiveWindowSize;
+    }
+
+
+    public void setMaxReceiveWindowSize(int maxReceiveWindowSize) {
+        this.maxReceiveWindowSize = maxReceiveWindowSize;
+    }
+
+
     public boolean getUseSendfile() {
         return useSendfile;
     }
@@ -359,6 +444,11 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public ContentCoding negotiateCompression(Request request, Response response) {
+        return http11Protocol.negotiateCompression(request, response);
+    }
+
+
     public ContinueResponseTiming getContinueResponseTimingInternal() {
         return http11Protocol.getContinueResponseTimingInternal();
     }
@@ -379,6 +469,8 @@ public class Http2Protocol implements UpgradeProtocol {
             // This can be null when running the testsuite
             if (oname != null) {
                 Registry.getRegistry(null).registerComponent(global, oname, null);
+                Registry.getRegistry(null).registerComponent(streamSchedulerInfo,
+                        new ObjectName(oname.getCanonicalName() + ",component=StreamScheduler"), null);
             }
         } catch (Exception e) {
             log.warn(sm.getString("http2Protocol.jmxRegistration.fail"), e);
@@ -400,6 +492,11 @@ public class Http2Protocol implements UpgradeProtocol {
     }
 
 
+    public StreamSchedulerInfo getStreamSchedulerInfo() {
+        return streamSchedulerInfo;
+    }
+
+
     public boolean getDiscardRequestsAndResponses() {
         return discardRequestsAndResponses;
     }
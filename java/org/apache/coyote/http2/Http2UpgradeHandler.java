@@ -21,15 +21,13 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -119,13 +117,13 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     private HpackDecoder hpackDecoder;
     private HpackEncoder hpackEncoder;
 
-    private final ConcurrentNavigableMap<Integer,AbstractNonZeroStream> streams = new ConcurrentSkipListMap<>();
+    private final StreamTable streams = new StreamTable();
     protected final AtomicInteger activeRemoteStreamCount = new AtomicInteger(0);
     private volatile int maxProcessedStreamId;
     private final PingManager pingManager = getPingManager();
     private volatile int newStreamsSinceLastPrune = 0;
-    private final Set<Stream> backLogStreams = new HashSet<>();
-    private long backLogSize = 0;
+    // Streams waiting for an allocation from the connection flow control window
+    private final StreamScheduler backLog;
     // The time at which the connection will timeout unless data arrives before
     // then. -1 means no timeout.
     private volatile long connectionTimeout = -1;
@@ -139,6 +137,18 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     private volatile int lastNonFinalDataPayload;
     private volatile int lastWindowUpdate;
 
+    // Write coalescing. Only modified while holding the socket lock.
+    private int coalescedFrameBytes = 0;
+    private volatile ScheduledFuture<?> coalescedFlush = null;
+
+    // Receive window auto-tuning. Only accessed by the thread processing input.
+    private int receiveWindowSize;
+    private boolean receiveWindowPingInFlight = false;
+    private int receiveWindowPingSequence;
+    private long receiveWindowBytesReceived = 0;
+    // Growth of stream input buffers beyond the initial window size
+    private final AtomicLong receiveWindowGrowth = new AtomicLong();
+
 
     Http2UpgradeHandler(Http2Protocol protocol, Adapter adapter, Request coyoteRequest,
             SocketWrapperBase<?> socketWrapper) {
@@ -146,6 +156,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         this.protocol = protocol;
         this.adapter = adapter;
         this.socketWrapper = socketWrapper;
+        this.backLog = protocol.createStreamScheduler();
 
         // Defaults to -10 * the count factor.
         // i.e. when the connection opens, 10 'overhead' frames in a row will
@@ -165,6 +176,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
         localSettings.set(Setting.MAX_CONCURRENT_STREAMS, protocol.getMaxConcurrentStreams());
         localSettings.set(Setting.INITIAL_WINDOW_SIZE, protocol.getInitialWindowSize());
+        receiveWindowSize = protocol.getInitialWindowSize();
 
         pingManager.initiateDisabled = protocol.getInitiatePingDisabled();
 
@@ -175,7 +187,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             }
             Integer key = Integer.valueOf(1);
             Stream stream = new Stream(key, this, coyoteRequest);
-            streams.put(key, stream);
+            streams.put(stream);
             activeRemoteStreamCount.set(1);
             maxProcessedStreamId = 1;
         }
@@ -532,7 +544,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
     @Override
     public void destroy() {
-        // NO-OP
+        cancelCoalescedWrites();
     }
 
 
@@ -818,7 +830,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 data.limit(data.position() + len);
                 socketWrapper.write(true, data);
                 data.limit(orgLimit);
-                socketWrapper.flush(true);
+                flushFrames(header.length + len);
             } catch (IOException ioe) {
                 handleAppInitiatedIOException(ioe);
             } finally {
@@ -880,7 +892,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     ByteUtil.set31Bits(frame, 9, streamIncrement);
                     try {
                         socketWrapper.write(true, frame, 0, frame.length);
-                        socketWrapper.flush(true);
+                        flushFrames(frame.length * 2);
                         needFlush = false;
                     } catch (IOException ioe) {
                         if (applicationInitiated) {
@@ -892,7 +904,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                 }
             }
             if (needFlush) {
-                socketWrapper.flush(true);
+                flushFrames(frame.length);
             }
         } finally {
             socketWrapper.getLock().unlock();
@@ -900,6 +912,101 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    /*
+     * Writes a WINDOW_UPDATE frame for a receive window that has been increased by auto-tuning. A stream identifier of
+     * zero increases the connection window.
+     */
+    void writeWindowSizeIncrease(int streamId, int increment) throws IOException {
+        if (log.isTraceEnabled()) {
+            log.trace(sm.getString("upgradeHandler.windowSizeIncrease", getConnectionId(), Integer.toString(streamId),
+                    Integer.valueOf(increment)));
+        }
+        byte[] frame = new byte[13];
+        ByteUtil.setThreeBytes(frame, 0, 4);
+        frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 5, streamId);
+        ByteUtil.set31Bits(frame, 9, increment);
+        socketWrapper.getLock().lock();
+        try {
+            socketWrapper.write(true, frame, 0, frame.length);
+            flushFrames(frame.length);
+        } finally {
+            socketWrapper.getLock().unlock();
+        }
+    }
+
+
+    /*
+     * Flushes the frames that have been written to the socket write buffer. If write coalescing is enabled, the flush
+     * is deferred until either the configured number of bytes has been written or the coalescing delay has passed so
+     * frames from several streams may be sent to the network in a single write. Must be called while holding the
+     * socket lock.
+     */
+    protected void flushFrames(int frameBytes) throws IOException {
+        long delay = protocol.getWriteCoalescingDelay();
+        ScheduledExecutorService executor = getUtilityExecutor();
+        if (delay <= 0 || executor == null) {
+            socketWrapper.flush(true);
+            return;
+        }
+        coalescedFrameBytes += frameBytes;
+        if (coalescedFrameBytes >= protocol.getWriteCoalescingSize()) {
+            coalescedFrameBytes = 0;
+            socketWrapper.flush(true);
+        } else if (coalescedFlush == null) {
+            coalescedFlush = executor.schedule(this::flushCoalescedFrames, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private void flushCoalescedFrames() {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
+            coalescedFlush = null;
+            coalescedFrameBytes = 0;
+            if (isConnectionClosed()) {
+                return;
+            }
+            // Don't block the utility thread. Any remaining data will be written by processWrites().
+            if (socketWrapper.flush(false)) {
+                socketWrapper.registerWriteInterest();
+            }
+        } catch (IOException ioe) {
+            // The connection will be closed when the error is seen by the next read or write
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("upgradeHandler.coalescedFlushFail", connectionId), ioe);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /*
+     * Cancels any scheduled flush of coalesced frames. Called when the connection is closed or destroyed.
+     */
+    protected void cancelCoalescedWrites() {
+        ScheduledFuture<?> flush = coalescedFlush;
+        if (flush != null) {
+            flush.cancel(false);
+        }
+    }
+
+
+    protected boolean isConnectionClosed() {
+        return connectionState.get() == ConnectionState.CLOSED;
+    }
+
+
+    protected ScheduledExecutorService getUtilityExecutor() {
+        if (protocol.getHttp11Protocol() == null) {
+            return null;
+        }
+        return protocol.getHttp11Protocol().getUtilityExecutor();
+    }
+
+
     protected void processWrites() throws IOException {
         Lock lock = socketWrapper.getLock();
         lock.lock();
@@ -948,9 +1055,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                      * block) add it to the backlog so it can obtain an allocation when capacity is available.
                      */
                     if (stream.getConnectionAllocationMade() == 0 && stream.getConnectionAllocationRequested() == 0) {
-                        stream.setConnectionAllocationRequested(reservation);
-                        backLogSize += reservation;
-                        backLogStreams.add(stream);
+                        addToBackLog(stream, reservation);
                     }
                 } else if (windowSize < reservation) {
                     /*
@@ -960,10 +1065,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                      */
                     allocation = (int) windowSize;
                     decrementWindowSize(allocation);
-                    int reservationRemaining = reservation - allocation;
-                    stream.setConnectionAllocationRequested(reservationRemaining);
-                    backLogSize += reservationRemaining;
-                    backLogStreams.add(stream);
+                    addToBackLog(stream, reservation - allocation);
 
                 } else {
                     // The connection window has sufficient capacity for this reservation. Allocate the full amount.
@@ -1073,104 +1175,30 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    private void addToBackLog(Stream stream, int reservation) {
+        if (stream.getConnectionAllocationRequested() == 0) {
+            stream.setBackLogNanoTime(System.nanoTime());
+        }
+        stream.setConnectionAllocationRequested(reservation);
+        backLog.add(stream);
+    }
+
+
     private Set<AbstractStream> releaseBackLog(int increment) throws Http2Exception {
         windowAllocationLock.lock();
         try {
             Set<AbstractStream> result = new HashSet<>();
-            if (backLogSize < increment) {
-                // Can clear the whole backlog
-                for (AbstractStream stream : backLogStreams) {
-                    if (stream.getConnectionAllocationRequested() > 0) {
-                        stream.setConnectionAllocationMade(stream.getConnectionAllocationRequested());
-                        stream.setConnectionAllocationRequested(0);
-                        result.add(stream);
-                    }
-                }
-                // Cast is safe due to test above
-                int remaining = increment - (int) backLogSize;
-                backLogSize = 0;
+            int remaining = backLog.allocate(increment, stream -> result.add((Stream) stream));
+            if (remaining > 0) {
+                // Whole backlog has been cleared
                 super.incrementWindowSize(remaining);
-
-                backLogStreams.clear();
-            } else {
-                // Can't clear the whole backlog.
-                // Need streams in priority order
-                Set<Stream> orderedStreams = new ConcurrentSkipListSet<>(Comparator.comparingInt(Stream::getUrgency)
-                        .thenComparing(Stream::getIncremental).thenComparing(Stream::getIdAsInt));
-                orderedStreams.addAll(backLogStreams);
-
-                // Iteration 1. Need to work out how much we can clear.
-                long urgencyWhereAllocationIsExhausted = 0;
-                long requestedAllocationForIncrementalStreams = 0;
-                int remaining = increment;
-                Iterator<Stream> orderedStreamsIterator = orderedStreams.iterator();
-                while (orderedStreamsIterator.hasNext()) {
-                    Stream s = orderedStreamsIterator.next();
-                    if (urgencyWhereAllocationIsExhausted < s.getUrgency()) {
-                        if (remaining < 1) {
-                            break;
-                        }
-                        requestedAllocationForIncrementalStreams = 0;
-                    }
-                    urgencyWhereAllocationIsExhausted = s.getUrgency();
-                    if (s.getIncremental()) {
-                        requestedAllocationForIncrementalStreams += s.getConnectionAllocationRequested();
-                        remaining -= s.getConnectionAllocationRequested();
-                    } else {
-                        remaining -= s.getConnectionAllocationRequested();
-                        if (remaining < 1) {
-                            break;
-                        }
-                    }
-                }
-
-                // Iteration 2. Allocate.
-                // Reset for second iteration
-                remaining = increment;
-                orderedStreamsIterator = orderedStreams.iterator();
-                while (orderedStreamsIterator.hasNext()) {
-                    Stream s = orderedStreamsIterator.next();
-                    if (s.getUrgency() < urgencyWhereAllocationIsExhausted) {
-                        // Can fully allocate
-                        remaining = allocate(s, remaining);
-                        result.add(s);
-                        orderedStreamsIterator.remove();
-                        backLogStreams.remove(s);
-                    } else if (requestedAllocationForIncrementalStreams == 0) {
-                        // Allocation ran out in non-incremental streams so fully
-                        // allocate in iterator order until allocation is exhausted
-                        remaining = allocate(s, remaining);
-                        result.add(s);
-                        if (s.getConnectionAllocationRequested() == 0) {
-                            // Fully allocated
-                            orderedStreamsIterator.remove();
-                            backLogStreams.remove(s);
-                        }
-                        if (remaining < 1) {
-                            break;
-                        }
-                    } else {
-                        // Allocation ran out in incremental streams. Distribute
-                        // remaining allocation between the incremental streams at
-                        // this urgency level.
-                        if (s.getUrgency() != urgencyWhereAllocationIsExhausted) {
-                            break;
-                        }
-
-                        int share = (int) (s.getConnectionAllocationRequested() * remaining /
-                                requestedAllocationForIncrementalStreams);
-                        if (share == 0) {
-                            share = 1;
-                        }
-                        allocate(s, share);
-                        result.add(s);
-                        if (s.getConnectionAllocationRequested() == 0) {
-                            // Fully allocated (unlikely but possible due to
-                            // rounding if only a few bytes required).
-                            orderedStreamsIterator.remove();
-                            backLogStreams.remove(s);
-                        }
-                    }
+            }
+            long now = System.nanoTime();
+            for (AbstractStream stream : result) {
+                if (stream.getConnectionAllocationRequested() == 0) {
+                    Stream s = (Stream) stream;
+                    protocol.getStreamSchedulerInfo().recordQueueingDelay(s.getUrgency(),
+                            now - s.getBackLogNanoTime());
                 }
             }
             return result;
@@ -1180,7 +1208,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
-    private int allocate(AbstractStream stream, int allocation) {
+    int allocate(AbstractStream stream, int allocation) {
         windowAllocationLock.lock();
         try {
             if (log.isTraceEnabled()) {
@@ -1210,8 +1238,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
 
     Stream getStream(int streamId) {
-        Integer key = Integer.valueOf(streamId);
-        AbstractStream result = streams.get(key);
+        AbstractStream result = streams.get(streamId);
         if (result instanceof Stream) {
             return (Stream) result;
         }
@@ -1231,8 +1258,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
 
     private AbstractNonZeroStream getAbstractNonZeroStream(int streamId) {
-        Integer key = Integer.valueOf(streamId);
-        return streams.get(key);
+        return streams.get(streamId);
     }
 
 
@@ -1258,7 +1284,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         pruneClosedStreams(streamId);
 
         Stream result = new Stream(key, this);
-        streams.put(key, result);
+        streams.put(result);
         return result;
     }
 
@@ -1270,6 +1296,8 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             return;
         }
 
+        cancelCoalescedWrites();
+
         for (AbstractNonZeroStream stream : streams.values()) {
             if (stream instanceof Stream) {
                 // The connection is closing. Close the associated streams as no
@@ -1317,23 +1345,18 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
         int toClose = size - (int) max;
 
+        if (toClose < 1) {
+            return;
+        }
+
         // Need to try and prune some streams. Prune streams starting with the
         // oldest. Pruning stops as soon as enough streams have been pruned.
-        // Iterator is in key order.
-        for (AbstractNonZeroStream stream : streams.values()) {
-            if (toClose < 1) {
-                return;
-            }
-            if (stream instanceof Stream && ((Stream) stream).isActive()) {
-                continue;
-            }
-            streams.remove(stream.getIdentifier());
-            toClose--;
-            if (log.isTraceEnabled()) {
-                log.trace(sm.getString("upgradeHandler.pruned", connectionId, stream.getIdAsString()));
-            }
-
-        }
+        toClose -= streams.prune(toClose, stream -> !(stream instanceof Stream && ((Stream) stream).isActive()),
+                stream -> {
+                    if (log.isTraceEnabled()) {
+                        log.trace(sm.getString("upgradeHandler.pruned", connectionId, stream.getIdAsString()));
+                    }
+                });
 
         if (toClose > 0) {
             log.warn(sm.getString("upgradeHandler.pruneIncomplete", connectionId, Integer.toString(streamId),
@@ -1505,7 +1528,12 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     public void endRequestBodyFrame(int streamId, int dataLength) throws Http2Exception, IOException {
         AbstractNonZeroStream abstractNonZeroStream = getAbstractNonZeroStream(streamId, true);
         if (abstractNonZeroStream instanceof Stream) {
-            ((Stream) abstractNonZeroStream).getInputBuffer().onDataAvailable();
+            Stream stream = (Stream) abstractNonZeroStream;
+            stream.getInputBuffer().onDataAvailable();
+            if (dataLength > 0 && protocol.getMaxReceiveWindowSize() > receiveWindowSize) {
+                sampleReceiveWindow(dataLength);
+            }
+            growReceiveWindow(stream);
         } else {
             // The Stream was recycled between the call in Http2Parser to
             // startRequestBodyFrame() and the synchronized block that contains
@@ -1519,6 +1547,87 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
     }
 
 
+    /*
+     * The bandwidth-delay product of the connection is estimated by counting the request body bytes received during
+     * the round trip of a PING.
+     */
+    private void sampleReceiveWindow(int dataLength) throws IOException {
+        if (receiveWindowPingInFlight) {
+            receiveWindowBytesReceived += dataLength;
+        } else {
+            int sequence = pingManager.sendPing(true);
+            if (sequence > 0) {
+                receiveWindowPingInFlight = true;
+                receiveWindowPingSequence = sequence;
+                receiveWindowBytesReceived = dataLength;
+            }
+        }
+    }
+
+
+    /*
+     * Called when a PING ACK is received. Only the ACK for the PING that started the current sample ends it. If the
+     * client sent most of the receive window during the round trip then it is limited by the window so the window is
+     * increased to twice the bytes received, up to the configured maximum.
+     */
+    private void tuneReceiveWindow(int receivedSequence) throws IOException {
+        if (!receiveWindowPingInFlight || receivedSequence < receiveWindowPingSequence) {
+            return;
+        }
+        receiveWindowPingInFlight = false;
+        if (receivedSequence != receiveWindowPingSequence) {
+            // The ACK for the PING that started the sample was not received. Discard the sample.
+            return;
+        }
+        if (receiveWindowBytesReceived * 3 < receiveWindowSize * 2L) {
+            return;
+        }
+        int newSize = (int) Math.min(protocol.getMaxReceiveWindowSize(), receiveWindowBytesReceived * 2);
+        if (newSize <= receiveWindowSize) {
+            return;
+        }
+        writeWindowSizeIncrease(0, newSize - receiveWindowSize);
+        receiveWindowSize = newSize;
+        for (AbstractNonZeroStream stream : streams.values()) {
+            if (stream instanceof Stream) {
+                growReceiveWindow((Stream) stream);
+            }
+        }
+    }
+
+
+    private void growReceiveWindow(Stream stream) throws IOException {
+        int increase = stream.getInputBuffer().growInBuffer(receiveWindowSize);
+        if (increase > 0) {
+            writeWindowSizeIncrease(stream.getIdAsInt(), increase);
+        }
+    }
+
+
+    /**
+     * Reserves memory for a stream to increase the size of its input buffer and hence its receive window.
+     *
+     * @param increase The requested increase in bytes
+     *
+     * @return The increase in bytes that may be made. This may be less than requested and may be zero.
+     */
+    int allocateReceiveWindowGrowth(int increase) {
+        long limit = protocol.getMaxReceiveWindowSize();
+        while (true) {
+            long current = receiveWindowGrowth.get();
+            int allowed = (int) Math.max(0, Math.min(increase, limit - current));
+            if (allowed == 0 || receiveWindowGrowth.compareAndSet(current, current + allowed)) {
+                return allowed;
+            }
+        }
+    }
+
+
+    void releaseReceiveWindowGrowth(int increase) {
+        receiveWindowGrowth.addAndGet(-increase);
+    }
+
+
     @Override
     public void onSwallowedDataFramePayload(int streamId, int swallowedDataBytesCount) throws IOException {
         AbstractNonZeroStream abstractNonZeroStream = getAbstractNonZeroStream(streamId);
@@ -1788,8 +1897,14 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         increaseOverheadCount(FrameType.PRIORITY_UPDATE);
         AbstractNonZeroStream abstractNonZeroStream = getAbstractNonZeroStream(prioritizedStreamID, true);
         if (abstractNonZeroStream instanceof Stream stream) {
-            stream.setUrgency(p.getUrgency());
-            stream.setIncremental(p.getIncremental());
+            windowAllocationLock.lock();
+            try {
+                stream.setUrgency(p.getUrgency());
+                stream.setIncremental(p.getIncremental());
+                backLog.update(stream);
+            } finally {
+                windowAllocationLock.unlock();
+            }
         }
     }
 
@@ -1801,7 +1916,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
 
 
     void replaceStream(AbstractNonZeroStream original, AbstractNonZeroStream replacement) {
-        AbstractNonZeroStream current = streams.get(original.getIdentifier());
+        AbstractNonZeroStream current = streams.get(original.getIdAsInt());
         /*
          * Only replace the Stream once. No point replacing one RecycledStream instance with another.
          *
@@ -1813,7 +1928,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
             if (log.isTraceEnabled()) {
                 log.trace(sm.getString("upgradeHandler.replace.first", getConnectionId(), original.getIdAsString()));
             }
-            streams.put(original.getIdentifier(), replacement);
+            streams.put(replacement);
         } else {
             if (log.isTraceEnabled()) {
                 log.trace(
@@ -1849,11 +1964,13 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
          *
          * @param force Send a ping, even if one was sent recently
          *
+         * @return the sequence number of the ping that was sent or {@code -1} if no ping was sent
+         *
          * @throws IOException If an I/O issue prevents the ping from being sent
          */
-        public void sendPing(boolean force) throws IOException {
+        public int sendPing(boolean force) throws IOException {
             if (initiateDisabled) {
-                return;
+                return -1;
             }
             long now = System.nanoTime();
             if (force || now - lastPingNanoTime > pingIntervalNano) {
@@ -1868,10 +1985,12 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     socketWrapper.write(true, PING, 0, PING.length);
                     socketWrapper.write(true, payload, 0, payload.length);
                     socketWrapper.flush(true);
+                    return sentSequence;
                 } finally {
                     socketWrapper.getLock().unlock();
                 }
             }
+            return -1;
         }
 
         public void receivePing(byte[] payload, boolean ack) throws IOException {
@@ -1895,6 +2014,7 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
                     if (log.isTraceEnabled()) {
                         log.trace(sm.getString("pingManager.roundTripTime", connectionId, Long.valueOf(roundTripTime)));
                     }
+                    tuneReceiveWindow(receivedSequence);
                 }
 
             } else {
@@ -1981,9 +2101,10 @@ class Http2UpgradeHandler extends AbstractStream implements InternalHttpUpgradeH
         @Override
         public void endFrame() throws IOException {
             try {
+                int frameBytes = header.length + payload.remaining();
                 socketWrapper.write(true, header, 0, header.length);
                 socketWrapper.write(true, payload);
-                socketWrapper.flush(true);
+                flushFrames(frameBytes);
             } catch (IOException ioe) {
                 handleAppInitiatedIOException(ioe);
             }
@@ -0,0 +1,137 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * The default {@link StreamScheduler} that follows the recommendations of RFC 9218. Streams are placed in a bucket per
+ * urgency level and capacity is always allocated to more urgent buckets first. Within a bucket, non-incremental streams
+ * are served one at a time in stream ID order and any capacity that remains is then shared between the incremental
+ * streams. Each incremental stream is offered a share of the capacity weighted by the size of its outstanding request.
+ * The order of the incremental streams is rotated as they are served so that capacity left over from rounding goes to
+ * a different stream each time.
+ */
+public class Rfc9218StreamScheduler implements StreamScheduler {
+
+    private static final int URGENCY_LEVELS = 8;
+
+    private final Set<ScheduledStream> backLog = new HashSet<>();
+    private final UrgencyLevel[] urgencyLevels = new UrgencyLevel[URGENCY_LEVELS];
+
+
+    @Override
+    public void add(ScheduledStream stream) {
+        if (!backLog.add(stream)) {
+            return;
+        }
+        int urgency = Math.max(0, Math.min(URGENCY_LEVELS - 1, stream.getUrgency()));
+        UrgencyLevel urgencyLevel = urgencyLevels[urgency];
+        if (urgencyLevel == null) {
+            urgencyLevel = new UrgencyLevel();
+            urgencyLevels[urgency] = urgencyLevel;
+        }
+        if (stream.getIncremental()) {
+            urgencyLevel.incremental.addLast(stream);
+        } else {
+            urgencyLevel.sequential.add(stream);
+        }
+    }
+
+
+    @Override
+    public void update(ScheduledStream stream) {
+        if (!backLog.remove(stream)) {
+            return;
+        }
+        for (UrgencyLevel urgencyLevel : urgencyLevels) {
+            if (urgencyLevel != null &&
+                    (urgencyLevel.sequential.remove(stream) || urgencyLevel.incremental.remove(stream))) {
+                break;
+            }
+        }
+        add(stream);
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return backLog.isEmpty();
+    }
+
+
+    @Override
+    public int allocate(int capacity, Consumer<ScheduledStream> allocated) {
+        int remaining = capacity;
+        for (int urgency = 0; urgency < URGENCY_LEVELS && remaining > 0; urgency++) {
+            UrgencyLevel urgencyLevel = urgencyLevels[urgency];
+            if (urgencyLevel == null) {
+                continue;
+            }
+
+            // Non-incremental streams are served one at a time in stream ID order
+            Iterator<ScheduledStream> sequential = urgencyLevel.sequential.iterator();
+            while (remaining > 0 && sequential.hasNext()) {
+                ScheduledStream stream = sequential.next();
+                remaining -= stream.allocate(remaining);
+                allocated.accept(stream);
+                if (stream.getConnectionAllocationRequested() == 0) {
+                    sequential.remove();
+                    backLog.remove(stream);
+                }
+            }
+
+            // Incremental streams share whatever is left in proportion to what they requested
+            Deque<ScheduledStream> incremental = urgencyLevel.incremental;
+            while (remaining > 0 && !incremental.isEmpty()) {
+                long requested = 0;
+                for (ScheduledStream stream : incremental) {
+                    requested += stream.getConnectionAllocationRequested();
+                }
+                int available = remaining;
+                int count = incremental.size();
+                for (int i = 0; i < count && remaining > 0; i++) {
+                    ScheduledStream stream = incremental.pollFirst();
+                    int share = (int) Math.max(1,
+                            (long) stream.getConnectionAllocationRequested() * available / requested);
+                    remaining -= stream.allocate(Math.min(share, remaining));
+                    allocated.accept(stream);
+                    if (stream.getConnectionAllocationRequested() == 0) {
+                        backLog.remove(stream);
+                    } else {
+                        incremental.addLast(stream);
+                    }
+                }
+            }
+        }
+        return remaining;
+    }
+
+
+    private static class UrgencyLevel {
+        private final Set<ScheduledStream> sequential =
+                new TreeSet<>(Comparator.comparingInt(ScheduledStream::getIdAsInt));
+        private final Deque<ScheduledStream> incremental = new ArrayDeque<>();
+    }
+}
@@ -54,7 +54,7 @@ import org.apache.tomcat.util.net.ApplicationBufferHandler;
 import org.apache.tomcat.util.net.WriteBuffer;
 import org.apache.tomcat.util.res.StringManager;
 
-class Stream extends AbstractNonZeroStream implements HeaderEmitter {
+class Stream extends AbstractNonZeroStream implements HeaderEmitter, StreamScheduler.ScheduledStream {
 
     private static final Log log = LogFactory.getLog(Stream.class);
     private static final StringManager sm = StringManager.getManager(Stream.class);
@@ -93,6 +93,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     private final StreamOutputBuffer streamOutputBuffer = new StreamOutputBuffer();
     private final Http2OutputBuffer http2OutputBuffer;
     private final AtomicBoolean removedFromActiveCount = new AtomicBoolean(false);
+    // The time this stream was added to the connection's backlog
+    private long backLogNanoTime;
 
     // State machine would be too much overhead
     private int headerState = HEADER_STATE_START;
@@ -796,6 +798,7 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         } else {
             remaining = inputByteBuffer.remaining();
         }
+        inputBuffer.releaseInBufferGrowth();
         handler.replaceStream(this, new RecycledStream(getConnectionId(), getIdentifier(), state, remaining));
     }
 
@@ -892,6 +895,22 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
     }
 
 
+    @Override
+    public int allocate(int allocation) {
+        return allocation - handler.allocate(this, allocation);
+    }
+
+
+    long getBackLogNanoTime() {
+        return backLogNanoTime;
+    }
+
+
+    void setBackLogNanoTime(long backLogNanoTime) {
+        this.backLogNanoTime = backLogNanoTime;
+    }
+
+
     public void setIncremental(boolean incremental) {
         this.incremental = incremental;
     }
@@ -1145,6 +1164,19 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
 
         abstract void insertReplayedBody(ByteChunk body);
 
+        /**
+         * Increases the size of the input buffer, and hence the flow control window for the stream, for receive window
+         * auto-tuning.
+         *
+         * @param size The new size for the input buffer
+         *
+         * @return The increase in size which may be less than requested (including zero) if the memory available for
+         *             larger input buffers is limited
+         */
+        abstract int growInBuffer(int size);
+
+        abstract void releaseInBufferGrowth();
+
         protected abstract boolean timeoutRead(long now);
     }
 
@@ -1176,6 +1208,8 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         private volatile long readTimeoutExpiry;
         private volatile boolean closed;
         private volatile boolean resetReceived;
+        // Increase in the size of inBuffer due to receive window auto-tuning
+        private int inBufferGrowth;
 
         @Override
         public final int doRead(ApplicationBufferHandler applicationBufferHandler) throws IOException {
@@ -1197,6 +1231,10 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                 if (inBuffer == null) {
                     return -1;
                 }
+                if (inBuffer != tmpInBuffer) {
+                    // inBuffer has been replaced with a larger buffer
+                    return doRead(applicationBufferHandler);
+                }
                 boolean canRead = false;
                 while (inBuffer.position() == 0 && (canRead = isActive() && !isInputFinished())) {
                     // Need to block until some data is written
@@ -1216,6 +1254,11 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                             throw new IOException(sm.getString("stream.inputBuffer.reset"));
                         }
 
+                        if (inBuffer != tmpInBuffer) {
+                            // inBuffer has been replaced with a larger buffer
+                            return doRead(applicationBufferHandler);
+                        }
+
                         if (inBuffer.position() == 0 && isActive() && !isInputFinished()) {
                             String msg = sm.getString("stream.inputBuffer.readTimeout");
                             StreamException se = new StreamException(msg, Http2Error.ENHANCE_YOUR_CALM, getIdAsInt());
@@ -1240,6 +1283,9 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
                     if (log.isTraceEnabled()) {
                         log.trace(sm.getString("stream.inputBuffer.copy", Integer.toString(written)));
                     }
+                    if (outBuffer.length < written) {
+                        outBuffer = new byte[inBuffer.capacity()];
+                    }
                     inBuffer.get(outBuffer, 0, written);
                     inBuffer.clear();
                 } else if (!canRead) {
@@ -1393,6 +1439,50 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
         }
 
 
+        @Override
+        final int growInBuffer(int size) {
+            ByteBuffer tmpInBuffer = inBuffer;
+            if (tmpInBuffer == null || tmpInBuffer.capacity() >= size) {
+                return 0;
+            }
+            readStateLock.lock();
+            try {
+                // No point increasing the window if no more data will be received
+                if (inBuffer == null || closed || isInputFinished()) {
+                    return 0;
+                }
+                ByteBuffer oldInBuffer = inBuffer;
+                synchronized (oldInBuffer) {
+                    int increase = handler.allocateReceiveWindowGrowth(size - oldInBuffer.capacity());
+                    if (increase > 0) {
+                        ByteBuffer newInBuffer = ByteBuffer.allocate(oldInBuffer.capacity() + increase);
+                        oldInBuffer.flip();
+                        newInBuffer.put(oldInBuffer);
+                        inBuffer = newInBuffer;
+                        inBufferGrowth += increase;
+                        // Any reader waiting on the old buffer needs to switch to the new one
+                        oldInBuffer.notifyAll();
+                    }
+                    return increase;
+                }
+            } finally {
+                readStateLock.unlock();
+            }
+        }
+
+
+        @Override
+        final void releaseInBufferGrowth() {
+            readStateLock.lock();
+            try {
+                handler.releaseReceiveWindowGrowth(inBufferGrowth);
+                inBufferGrowth = 0;
+            } finally {
+                readStateLock.unlock();
+            }
+        }
+
+
         @Override
         final void receiveReset() {
             if (inBuffer != null) {
@@ -1536,6 +1626,17 @@ class Stream extends AbstractNonZeroStream implements HeaderEmitter {
             // NO-OP
         }
 
+        @Override
+        int growInBuffer(int size) {
+            // NO-OP
+            return 0;
+        }
+
+        @Override
+        void releaseInBufferGrowth() {
+            // NO-OP
+        }
+
 
         @Override
         protected boolean timeoutRead(long now) {
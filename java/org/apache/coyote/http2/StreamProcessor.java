@@ -39,12 +39,15 @@ import org.apache.coyote.NonPipeliningProcessor;
 import org.apache.coyote.Request;
 import org.apache.coyote.RequestGroupInfo;
 import org.apache.coyote.Response;
+import org.apache.coyote.http11.filters.ContentCodingOutputFilter;
 import org.apache.coyote.http11.filters.GzipOutputFilter;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
 import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.http.compression.GzipContentCoding;
 import org.apache.tomcat.util.http.parser.HttpParser;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.DispatchType;
@@ -202,10 +205,19 @@ class StreamProcessor extends AbstractProcessor implements NonPipeliningProcesso
         // Compression can't be used with sendfile
         // Need to check for compression (and set headers appropriately) before
         // adding headers below
-        if (noSendfile && protocol != null && protocol.useCompression(coyoteRequest, coyoteResponse)) {
+        ContentCoding contentCoding = null;
+        if (noSendfile && protocol != null) {
+            contentCoding = protocol.negotiateCompression(coyoteRequest, coyoteResponse);
+        }
+        if (contentCoding instanceof GzipContentCoding) {
             // Enable compression. Headers will have been set. Need to configure
             // output filter at this point.
-            stream.addOutputFilter(new GzipOutputFilter());
+            GzipOutputFilter gzipOutputFilter =
+                    new GzipOutputFilter(protocol.getHttp11Protocol().getCompressionConfig());
+            gzipOutputFilter.setResponse(coyoteResponse);
+            stream.addOutputFilter(gzipOutputFilter);
+        } else if (contentCoding != null) {
+            stream.addOutputFilter(new ContentCodingOutputFilter(contentCoding));
         }
 
         // Check to see if a response body is present
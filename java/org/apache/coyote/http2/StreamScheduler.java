@@ -0,0 +1,102 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.function.Consumer;
+
+/**
+ * Determines how capacity in the connection flow control window is shared between the streams that are waiting for an
+ * allocation from it (the backlog). A new instance is created for each connection using the public no argument
+ * constructor of the class configured via {@link Http2Protocol#setStreamScheduler(String)}.
+ * <p>
+ * All methods are called while holding the connection's window allocation lock so implementations do not need to be
+ * thread-safe.
+ */
+public interface StreamScheduler {
+
+    /**
+     * Adds the given stream to the backlog. Adding a stream that is already in the backlog has no effect.
+     *
+     * @param stream The stream waiting for an allocation from the connection flow control window
+     */
+    void add(ScheduledStream stream);
+
+
+    /**
+     * Called when the priority of a stream changes. If the stream is in the backlog the new priority must be used for
+     * subsequent allocations.
+     *
+     * @param stream The stream with the new priority
+     */
+    void update(ScheduledStream stream);
+
+
+    /**
+     * @return {@code true} if no streams are waiting for an allocation, otherwise {@code false}
+     */
+    boolean isEmpty();
+
+
+    /**
+     * Shares the given capacity between the streams in the backlog. Streams are granted an allocation via
+     * {@link ScheduledStream#allocate(int)} and streams that have been granted everything they requested must be
+     * removed from the backlog.
+     *
+     * @param capacity  The capacity that has become available in the connection flow control window
+     * @param allocated Called for each stream granted an allocation. May be called more than once for a stream.
+     *
+     * @return The capacity that was not allocated to any stream
+     */
+    int allocate(int capacity, Consumer<ScheduledStream> allocated);
+
+
+    /**
+     * The view of a stream available to a {@link StreamScheduler}.
+     */
+    interface ScheduledStream {
+
+        /**
+         * @return the stream identifier
+         */
+        int getIdAsInt();
+
+        /**
+         * @return the RFC 9218 urgency of the stream, from 0 (most urgent) to 7 (least urgent)
+         */
+        int getUrgency();
+
+        /**
+         * @return the RFC 9218 incremental flag of the stream
+         */
+        boolean getIncremental();
+
+        /**
+         * @return the part of the stream's request for connection flow control window capacity that has yet to be
+         *             granted
+         */
+        int getConnectionAllocationRequested();
+
+        /**
+         * Grants capacity from the connection flow control window to the stream.
+         *
+         * @param allocation The maximum capacity to grant
+         *
+         * @return The capacity granted which will be no more than the outstanding request
+         */
+        int allocate(int allocation);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics, aggregated across all HTTP/2 connections for a protocol, for the time streams spend waiting in the
+ * backlog for an allocation from the connection flow control window. The statistics are grouped by the urgency of the
+ * stream.
+ */
+public class StreamSchedulerInfo {
+
+    private static final int URGENCY_LEVELS = 8;
+
+    private final QueueingDelay[] queueingDelays = new QueueingDelay[URGENCY_LEVELS];
+
+
+    public StreamSchedulerInfo() {
+        for (int i = 0; i < URGENCY_LEVELS; i++) {
+            queueingDelays[i] = new QueueingDelay();
+        }
+    }
+
+
+    void recordQueueingDelay(int urgency, long delayNanos) {
+        queueingDelays[Math.max(0, Math.min(URGENCY_LEVELS - 1, urgency))].record(delayNanos);
+    }
+
+
+    /**
+     * @param urgency The urgency level
+     *
+     * @return the number of times a stream of the given urgency has been granted the allocation it was waiting for
+     */
+    long getQueuedCount(int urgency) {
+        return queueingDelays[urgency].count.sum();
+    }
+
+
+    public String[] getQueueingDelay() {
+        String[] result = new String[URGENCY_LEVELS];
+        for (int i = 0; i < URGENCY_LEVELS; i++) {
+            QueueingDelay queueingDelay = queueingDelays[i];
+            long count = queueingDelay.count.sum();
+            long average = count == 0 ? 0 : queueingDelay.total.sum() / count;
+            result[i] = "urgency=[" + i + "], count=[" + count + "], averageMillis=[" +
+                    TimeUnit.NANOSECONDS.toMillis(average) + "], maxMillis=[" +
+                    TimeUnit.NANOSECONDS.toMillis(queueingDelay.max.get()) + "]";
+        }
+        return result;
+    }
+
+
+    public void resetCounters() {
+        for (QueueingDelay queueingDelay : queueingDelays) {
+            queueingDelay.count.reset();
+            queueingDelay.total.reset();
+            queueingDelay.max.set(0);
+        }
+    }
+
+
+    private static class QueueingDelay {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long delayNanos) {
+            count.increment();
+            total.add(delayNanos);
+            max.accumulateAndGet(delayNanos, Math::max);
+        }
+    }
+}
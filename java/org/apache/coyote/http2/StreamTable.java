@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The streams of a connection, keyed by stream identifier.
+ * <p>
+ * Look-ups do not lock and do not box the stream identifier. The streams are held in an open addressing hash table,
+ * using linear probing, and the key is the identifier of the stream in each slot so no separate key array is required.
+ * Modifications are made while holding a lock. When the table needs to grow, or needs to be cleared of the markers left
+ * by removed streams, a new table is built and published so concurrent look-ups always see a consistent table.
+ * <p>
+ * The identifiers of the streams are also held, in ascending order, in a separate array so that streams can be pruned
+ * oldest first without sorting. Pruning only has to examine the identifiers from the start of that array until enough
+ * streams have been pruned.
+ */
+class StreamTable {
+
+    private static final int MIN_CAPACITY = 16;
+    // Marks a slot that held a stream that has since been removed
+    private static final Object REMOVED = new Object();
+
+    private final Lock writeLock = new ReentrantLock();
+
+    private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(MIN_CAPACITY);
+    private volatile int size = 0;
+    // Only accessed while holding the write lock
+    private int removedCount = 0;
+    // The identifiers of the streams in the table in ascending order are held in order[orderStart, orderStart + size)
+    private int[] order = new int[MIN_CAPACITY];
+    private int orderStart = 0;
+
+
+    /**
+     * @param streamId The stream identifier
+     *
+     * @return the stream with the given identifier or {@code null} if there is no such stream
+     */
+    AbstractNonZeroStream get(int streamId) {
+        AtomicReferenceArray<Object> table = this.table;
+        int mask = table.length() - 1;
+        int index = hash(streamId) & mask;
+        while (true) {
+            Object entry = table.get(index);
+            if (entry == null) {
+                return null;
+            }
+            if (entry != REMOVED && ((AbstractNonZeroStream) entry).getIdAsInt() == streamId) {
+                return (AbstractNonZeroStream) entry;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+
+    /**
+     * Adds the given stream to the table, replacing any existing stream with the same identifier.
+     *
+     * @param stream The stream to add
+     */
+    void put(AbstractNonZeroStream stream) {
+        int streamId = stream.getIdAsInt();
+        writeLock.lock();
+        try {
+            AtomicReferenceArray<Object> table = this.table;
+            int mask = table.length() - 1;
+            int index = hash(streamId) & mask;
+            int firstRemoved = -1;
+            while (true) {
+                Object entry = table.get(index);
+                if (entry == null) {
+                    break;
+                }
+                if (entry == REMOVED) {
+                    if (firstRemoved == -1) {
+                        firstRemoved = index;
+                    }
+                } else if (((AbstractNonZeroStream) entry).getIdAsInt() == streamId) {
+                    // Replace
+                    table.set(index, stream);
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            if (firstRemoved == -1) {
+                if ((size + removedCount + 1) * 2 > table.length()) {
+                    rebuild(size + 1);
+                    // The new table has no removed markers and plenty of space
+                    insert(this.table, stream);
+                } else {
+                    table.set(index, stream);
+                }
+            } else {
+                table.set(firstRemoved, stream);
+                removedCount--;
+            }
+            addToOrder(streamId);
+            size++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of streams in the table
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * @return the streams in the table in stream identifier order. This is a snapshot and is not updated if the table
+     *             is modified.
+     */
+    List<AbstractNonZeroStream> values() {
+        writeLock.lock();
+        try {
+            List<AbstractNonZeroStream> result = new ArrayList<>(size);
+            for (int i = orderStart; i < orderStart + size; i++) {
+                result.add(get(order[i]));
+            }
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes up to the given number of streams from the table, starting with the stream with the lowest identifier.
+     *
+     * @param count    The maximum number of streams to remove
+     * @param prunable Used to determine if a stream may be removed
+     * @param pruned   Called for each stream that is removed
+     *
+     * @return the number of streams removed
+     */
+    int prune(int count, Predicate<AbstractNonZeroStream> prunable, Consumer<AbstractNonZeroStream> pruned) {
+        writeLock.lock();
+        try {
+            AtomicReferenceArray<Object> table = this.table;
+            int end = orderStart + size;
+            int removed = 0;
+            int i = orderStart;
+            while (i < end && removed < count) {
+                int streamId = order[i];
+                int index = indexOf(table, streamId);
+                AbstractNonZeroStream stream = (AbstractNonZeroStream) table.get(index);
+                if (prunable.test(stream)) {
+                    table.set(index, REMOVED);
+                    // Stream identifiers are never zero so zero marks a pruned stream
+                    order[i] = 0;
+                    removed++;
+                    pruned.accept(stream);
+                }
+                i++;
+            }
+            // Move any retained identifiers from the examined range up to close the gaps left by the pruned streams
+            int retained = i;
+            for (int j = i - 1; j >= orderStart; j--) {
+                if (order[j] != 0) {
+                    order[--retained] = order[j];
+                }
+            }
+            orderStart = retained;
+            size -= removed;
+            removedCount += removed;
+            if (removedCount > table.length() / 4) {
+                rebuild(size);
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    /*
+     * Must be called while holding the write lock and only for streams known to be present.
+     */
+    private static int indexOf(AtomicReferenceArray<Object> table, int streamId) {
+        int mask = table.length() - 1;
+        int index = hash(streamId) & mask;
+        while (true) {
+            Object entry = table.get(index);
+            if (entry != REMOVED && ((AbstractNonZeroStream) entry).getIdAsInt() == streamId) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+
+    private void addToOrder(int streamId) {
+        if (orderStart + size == order.length) {
+            // Grow the array if it is at least half full, otherwise just move the identifiers to the start
+            int[] newOrder = size * 2 < order.length ? order : new int[order.length * 2];
+            System.arraycopy(order, orderStart, newOrder, 0, size);
+            order = newOrder;
+            orderStart = 0;
+        }
+        int end = orderStart + size;
+        // Streams are almost always created in identifier order
+        if (size == 0 || order[end - 1] < streamId) {
+            order[end] = streamId;
+        } else {
+            int insertionPoint = -(Arrays.binarySearch(order, orderStart, end, streamId) + 1);
+            System.arraycopy(order, insertionPoint, order, insertionPoint + 1, end - insertionPoint);
+            order[insertionPoint] = streamId;
+        }
+    }
+
+
+    private void rebuild(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // Keep the load factor at or below 0.25 after a rebuild so the next rebuild is not imminent
+        while (capacity < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Object> oldTable = this.table;
+        AtomicReferenceArray<Object> newTable = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < oldTable.length(); i++) {
+            Object entry = oldTable.get(i);
+            if (entry != null && entry != REMOVED) {
+                insert(newTable, (AbstractNonZeroStream) entry);
+            }
+        }
+        removedCount = 0;
+        this.table = newTable;
+    }
+
+
+    private static void insert(AtomicReferenceArray<Object> table, AbstractNonZeroStream stream) {
+        int mask = table.length() - 1;
+        int index = hash(stream.getIdAsInt()) & mask;
+        while (table.get(index) != null) {
+            index = (index + 1) & mask;
+        }
+        table.set(index, stream);
+    }
+
+
+    private static int hash(int streamId) {
+        // Client initiated stream identifiers are all odd so spread them across the table
+        int h = streamId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A pool of {@link ByteBuffer}s that may be shared between components (socket
+ * buffers, HTTP/2 frame buffers, WebSocket frame buffers etc.) so that buffer
+ * memory is proportional to the amount of active I/O rather than to the number
+ * of connections.
+ * <p>
+ * Buffers are organised into size classes that are powers of two between
+ * {@link #MIN_SIZE_CLASS} and {@link #MAX_SIZE_CLASS}. A lease returns a buffer
+ * from the smallest size class that is large enough for the request so the
+ * capacity of the returned buffer may be larger than requested. Requests larger
+ * than the largest size class are allocated directly and are never pooled.
+ * <p>
+ * Direct buffers are allocated in slabs that are then sliced into buffers of
+ * the required size class. This reduces the number of (relatively expensive)
+ * direct memory allocations. Heap buffers are allocated individually.
+ * <p>
+ * The pool only retains released buffers up to the configured maximum number of
+ * bytes. Buffers released once that limit has been reached are discarded and
+ * left for the garbage collector.
+ */
+public class ByteBufferPool {
+
+    /**
+     * The size of the smallest size class.
+     */
+    public static final int MIN_SIZE_CLASS = 1024;
+
+    /**
+     * The size of the largest size class.
+     */
+    public static final int MAX_SIZE_CLASS = 1024 * 1024;
+
+    /**
+     * The target size for slabs used to allocate direct buffers.
+     */
+    public static final int SLAB_SIZE = 128 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE_CLASS);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_SIZE_CLASS) - MIN_SHIFT + 1;
+
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+
+    private final SynchronizedStack<ByteBuffer>[] heapBuffers;
+    private final SynchronizedStack<ByteBuffer>[] directBuffers;
+
+    private final LongAdder leaseCount = new LongAdder();
+    private final LongAdder allocationCount = new LongAdder();
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param maxPooledBytes The maximum number of bytes of unused buffers that
+     *                           will be retained by the pool. A value of
+     *                           <code>-1</code> means unlimited.
+     */
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        heapBuffers = new SynchronizedStack[CLASS_COUNT];
+        directBuffers = new SynchronizedStack[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            heapBuffers[i] = new SynchronizedStack<>();
+            directBuffers[i] = new SynchronizedStack<>();
+        }
+    }
+
+
+    /**
+     * Obtain a buffer from the pool. The buffer will be cleared and ready for
+     * writing.
+     *
+     * @param size   The minimum capacity required
+     * @param direct Should the buffer be a direct buffer
+     *
+     * @return A buffer with a capacity of at least <code>size</code>
+     */
+    public ByteBuffer lease(int size, boolean direct) {
+        leaseCount.increment();
+        int sizeClass = sizeClass(size);
+        if (sizeClass == -1) {
+            allocationCount.increment();
+            return allocate(size, direct);
+        }
+        SynchronizedStack<ByteBuffer> stack = direct ? directBuffers[sizeClass] : heapBuffers[sizeClass];
+        ByteBuffer result = stack.pop();
+        if (result != null) {
+            pooledBytes.addAndGet(-result.capacity());
+            return result;
+        }
+        allocationCount.increment();
+        int capacity = MIN_SIZE_CLASS << sizeClass;
+        if (direct && capacity < SLAB_SIZE) {
+            int count = SLAB_SIZE / capacity;
+            // Only allocate a full slab if the pool can retain the unused slices
+            if (maxPooledBytes < 0 || pooledBytes.get() + (long) (count - 1) * capacity <= maxPooledBytes) {
+                ByteBuffer slab = ByteBuffer.allocateDirect(count * capacity);
+                result = slab.slice(0, capacity);
+                for (int i = 1; i < count; i++) {
+                    release(slab.slice(i * capacity, capacity));
+                }
+                return result;
+            }
+        }
+        return allocate(capacity, direct);
+    }
+
+
+    /**
+     * Return a buffer to the pool. The caller must not use the buffer after it
+     * has been returned. Buffers that do not belong to a size class are ignored.
+     *
+     * @param buffer The buffer to return to the pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isReadOnly()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass == -1 || (MIN_SIZE_CLASS << sizeClass) != capacity) {
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes && maxPooledBytes >= 0) {
+            // Pool is full
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        buffer.clear();
+        SynchronizedStack<ByteBuffer> stack = buffer.isDirect() ? directBuffers[sizeClass] : heapBuffers[sizeClass];
+        stack.push(buffer);
+    }
+
+
+    /**
+     * Discard all the buffers currently held by the pool.
+     */
+    public void clear() {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            clear(heapBuffers[i]);
+            clear(directBuffers[i]);
+        }
+    }
+
+
+    private void clear(SynchronizedStack<ByteBuffer> stack) {
+        ByteBuffer buffer;
+        while ((buffer = stack.pop()) != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+    }
+
+
+    /**
+     * @return The number of bytes currently held by the pool in unused buffers
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+
+    /**
+     * @return The maximum number of bytes the pool will retain in unused
+     *             buffers or <code>-1</code> for unlimited
+     */
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+
+    /**
+     * @return The number of buffers leased from the pool
+     */
+    public long getLeaseCount() {
+        return leaseCount.sum();
+    }
+
+
+    /**
+     * @return The number of times a lease required new memory to be allocated
+     */
+    public long getAllocationCount() {
+        return allocationCount.sum();
+    }
+
+
+    /*
+     * Returns the index of the smallest size class that can hold the given
+     * number of bytes or -1 if the size is larger than the largest size class.
+     */
+    private static int sizeClass(int size) {
+        if (size <= MIN_SIZE_CLASS) {
+            return 0;
+        }
+        if (size > MAX_SIZE_CLASS) {
+            return -1;
+        }
+        return (32 - Integer.numberOfLeadingZeros(size - 1)) - MIN_SHIFT;
+    }
+
+
+    private static ByteBuffer allocate(int size, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(size);
+        } else {
+            return ByteBuffer.allocate(size);
+        }
+    }
+}
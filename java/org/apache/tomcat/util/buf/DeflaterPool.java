@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A pool of {@link Deflater}s that all use the same compression level and
+ * format. Each Deflater holds native memory that is only released when the
+ * Deflater is ended so reusing Deflaters, rather than creating one for each
+ * compressed response or message, avoids both the cost of allocating and
+ * initialising that memory and the delay before it is released.
+ * <p>
+ * Deflaters are reset when they are returned to the pool. The pool only retains
+ * unused Deflaters up to the configured maximum. Deflaters returned once that
+ * limit has been reached are ended.
+ */
+public class DeflaterPool {
+
+    private final int level;
+    private final boolean nowrap;
+    private final SynchronizedStack<Deflater> idle = new SynchronizedStack<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile int maxIdle;
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param level   The compression level for Deflaters created by this pool
+     * @param nowrap  If {@code true} the Deflaters will not use the ZLIB header
+     *                    and checksum fields. This is required for GZIP and
+     *                    for the WebSocket permessage-deflate extension.
+     * @param maxIdle The maximum number of unused Deflaters that will be
+     *                    retained by the pool. A value of <code>-1</code>
+     *                    means unlimited.
+     */
+    public DeflaterPool(int level, boolean nowrap, int maxIdle) {
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maxIdle = maxIdle;
+    }
+
+
+    /**
+     * Obtain a Deflater from the pool, creating a new Deflater if the pool is
+     * empty.
+     *
+     * @return A Deflater ready to compress a new stream of data
+     */
+    public Deflater lease() {
+        Deflater result = idle.pop();
+        if (result == null) {
+            result = new Deflater(level, nowrap);
+        } else {
+            idleCount.decrementAndGet();
+        }
+        return result;
+    }
+
+
+    /**
+     * Return a Deflater to the pool. The caller must not use the Deflater after
+     * it has been returned.
+     *
+     * @param deflater The Deflater to return to the pool
+     */
+    public void release(Deflater deflater) {
+        if (deflater == null) {
+            return;
+        }
+        int maxIdle = this.maxIdle;
+        if (idleCount.incrementAndGet() > maxIdle && maxIdle > -1) {
+            idleCount.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        idle.push(deflater);
+    }
+
+
+    /**
+     * End all the Deflaters currently held by the pool.
+     */
+    public void clear() {
+        Deflater deflater;
+        while ((deflater = idle.pop()) != null) {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * @return The number of unused Deflaters currently held by the pool
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+
+    /**
+     * @return The maximum number of unused Deflaters that will be retained by
+     *             the pool. A value of <code>-1</code> means unlimited.
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+
+    /**
+     * Set the maximum number of unused Deflaters that will be retained by the
+     * pool. Reducing the limit does not end any Deflaters already held by the
+     * pool.
+     *
+     * @param maxIdle The maximum number of unused Deflaters. A value of
+     *                    <code>-1</code> means unlimited.
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+
+    /**
+     * @return The compression level used by Deflaters created by this pool
+     */
+    public int getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A pool of {@link Inflater}s that all use the same format. Each Inflater holds
+ * native memory that is only released when the Inflater is ended so reusing
+ * Inflaters, rather than creating one for each compressed request or message,
+ * avoids both the cost of allocating and initialising that memory and the delay
+ * before it is released.
+ * <p>
+ * Inflaters are reset when they are returned to the pool. The pool only retains
+ * unused Inflaters up to the configured maximum. Inflaters returned once that
+ * limit has been reached are ended.
+ */
+public class InflaterPool {
+
+    private final boolean nowrap;
+    private final SynchronizedStack<Inflater> idle = new SynchronizedStack<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile int maxIdle;
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param nowrap  If {@code true} the Inflaters will not expect the ZLIB
+     *                    header and checksum fields. This is required for GZIP
+     *                    and for the WebSocket permessage-deflate extension.
+     * @param maxIdle The maximum number of unused Inflaters that will be
+     *                    retained by the pool. A value of <code>-1</code>
+     *                    means unlimited.
+     */
+    public InflaterPool(boolean nowrap, int maxIdle) {
+        this.nowrap = nowrap;
+        this.maxIdle = maxIdle;
+    }
+
+
+    /**
+     * Obtain an Inflater from the pool, creating a new Inflater if the pool is
+     * empty.
+     *
+     * @return An Inflater ready to decompress a new stream of data
+     */
+    public Inflater lease() {
+        Inflater result = idle.pop();
+        if (result == null) {
+            result = new Inflater(nowrap);
+        } else {
+            idleCount.decrementAndGet();
+        }
+        return result;
+    }
+
+
+    /**
+     * Return an Inflater to the pool. The caller must not use the Inflater after
+     * it has been returned.
+     *
+     * @param inflater The Inflater to return to the pool
+     */
+    public void release(Inflater inflater) {
+        if (inflater == null) {
+            return;
+        }
+        int maxIdle = this.maxIdle;
+        if (idleCount.incrementAndGet() > maxIdle && maxIdle > -1) {
+            idleCount.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        idle.push(inflater);
+    }
+
+
+    /**
+     * End all the Inflaters currently held by the pool.
+     */
+    public void clear() {
+        Inflater inflater;
+        while ((inflater = idle.pop()) != null) {
+            idleCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * @return The number of unused Inflaters currently held by the pool
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+
+    /**
+     * @return The maximum number of unused Inflaters that will be retained by
+     *             the pool. A value of <code>-1</code> means unlimited.
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+
+    /**
+     * Set the maximum number of unused Inflaters that will be retained by the
+     * pool. Reducing the limit does not end any Inflaters already held by the
+     * pool.
+     *
+     * @param maxIdle The maximum number of unused Inflaters. A value of
+     *                    <code>-1</code> means unlimited.
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A content coding, as used in the Accept-Encoding and Content-Encoding HTTP headers, that Tomcat can use to compress
+ * response bodies. Implementations are obtained via {@link ContentCodings#getContentCoding(String)} and must be thread
+ * safe.
+ */
+public interface ContentCoding {
+
+    /**
+     * @return the name of the content coding as used in HTTP headers, e.g. {@code gzip}
+     */
+    String getName();
+
+
+    /**
+     * Is the content coding available in the current environment? Content codings that depend on native libraries
+     * will not be available if the library cannot be loaded.
+     *
+     * @return {@code true} if the content coding can be used, otherwise {@code false}
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+
+    /**
+     * @return the compression level that is suitable for compressing responses as they are generated
+     */
+    int getDefaultLevel();
+
+
+    /**
+     * @return the compression level that gives the smallest output, regardless of the time taken, which is suitable
+     *             for content that is compressed once and then served many times
+     */
+    int getMaxLevel();
+
+
+    /**
+     * Create a stream that compresses the data written to it using this content coding. Calling {@code flush()} on
+     * the returned stream writes all the compressed data for the data written so far to the underlying stream. Calling
+     * {@code close()} completes the compressed data, releases any resources used for compression and closes the
+     * underlying stream.
+     *
+     * @param out   The stream to which the compressed data will be written
+     * @param level The compression level
+     *
+     * @return the compressing stream
+     *
+     * @throws IOException If an I/O error occurs while writing any header for the compressed data
+     */
+    OutputStream createOutputStream(OutputStream out, int level) throws IOException;
+}
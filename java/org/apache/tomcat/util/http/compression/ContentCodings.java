@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Obtains {@link ContentCoding} implementations by name.
+ * <p>
+ * The {@code gzip} content coding is always available. The {@code br} (Brotli) and {@code zstd} (Zstandard) content
+ * codings use the native brotlienc and zstd libraries via the Java Foreign Function and Memory API. They are only
+ * available when Tomcat is running on a Java version that supports that API, the optional tomcat-coyote-ffm JAR is
+ * present and the native library can be loaded. Other content codings may be provided by specifying the fully
+ * qualified name of a class that implements {@link ContentCoding} and has a public, no argument constructor.
+ */
+public final class ContentCodings {
+
+    private static final Log log = LogFactory.getLog(ContentCodings.class);
+    private static final StringManager sm = StringManager.getManager(ContentCodings.class);
+
+    private static final Map<String,String> NATIVE_CONTENT_CODINGS =
+            Map.of("br", "org.apache.tomcat.util.http.compression.ffm.BrotliContentCoding", "zstd",
+                    "org.apache.tomcat.util.http.compression.ffm.ZstdContentCoding");
+
+
+    private ContentCodings() {
+        // Utility class. Hide default constructor.
+    }
+
+
+    /**
+     * Obtain a content coding.
+     *
+     * @param name The name of the content coding (e.g. {@code gzip}, {@code br} or {@code zstd}) or the fully
+     *                 qualified name of a class that implements {@link ContentCoding}
+     *
+     * @return the content coding or {@code null} if the content coding is not available
+     */
+    public static ContentCoding getContentCoding(String name) {
+        if (GzipContentCoding.NAME.equalsIgnoreCase(name)) {
+            return new GzipContentCoding();
+        }
+        String className = NATIVE_CONTENT_CODINGS.getOrDefault(name.toLowerCase(Locale.ENGLISH), name);
+        ContentCoding result;
+        try {
+            result = Class.forName(className).asSubclass(ContentCoding.class).getConstructor().newInstance();
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            // Includes the class version errors triggered by the FFM implementations on older Java versions
+            log.warn(sm.getString("contentCodings.notAvailable", name));
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("contentCodings.loadFail", className), t);
+            }
+            return null;
+        }
+        if (!result.isAvailable()) {
+            log.warn(sm.getString("contentCodings.notAvailable", name));
+            return null;
+        }
+        return result;
+    }
+}
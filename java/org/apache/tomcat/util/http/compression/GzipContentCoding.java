@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzip content coding, implemented using the compression support provided by the JRE.
+ */
+public class GzipContentCoding implements ContentCoding {
+
+    public static final String NAME = "gzip";
+
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    @Override
+    public int getDefaultLevel() {
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+
+    @Override
+    public int getMaxLevel() {
+        return Deflater.BEST_COMPRESSION;
+    }
+
+
+    @Override
+    public OutputStream createOutputStream(OutputStream out, int level) throws IOException {
+        return new LevelGzipOutputStream(out, level);
+    }
+
+
+    private static class LevelGzipOutputStream extends GZIPOutputStream {
+
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 512, true);
+            // Nothing has been compressed yet so the new level applies to all the data
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression.ffm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * The Brotli ({@code br}) content coding, implemented using the native brotlienc library.
+ */
+public class BrotliContentCoding implements ContentCoding {
+
+    private static final Log log = LogFactory.getLog(BrotliContentCoding.class);
+    private static final StringManager sm = StringManager.getManager(BrotliContentCoding.class);
+
+    public static final String NAME = "br";
+
+    // BROTLI_PARAM_QUALITY
+    private static final int PARAMETER_QUALITY = 1;
+
+    private static final MethodHandle BrotliEncoderCreateInstance;
+    private static final MethodHandle BrotliEncoderDestroyInstance;
+    private static final MethodHandle BrotliEncoderSetParameter;
+    private static final MethodHandle BrotliEncoderCompressStream;
+    private static final MethodHandle BrotliEncoderHasMoreOutput;
+    private static final MethodHandle BrotliEncoderIsFinished;
+    private static final boolean AVAILABLE;
+
+    static {
+        MethodHandle createInstance = null;
+        MethodHandle destroyInstance = null;
+        MethodHandle setParameter = null;
+        MethodHandle compressStream = null;
+        MethodHandle hasMoreOutput = null;
+        MethodHandle isFinished = null;
+        boolean available = false;
+        try {
+            NativeLibrary library = new NativeLibrary("brotlienc", 1);
+            createInstance = library.downcall("BrotliEncoderCreateInstance", FunctionDescriptor.of(ValueLayout.ADDRESS,
+                    ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+            destroyInstance = library.downcall("BrotliEncoderDestroyInstance",
+                    FunctionDescriptor.ofVoid(ValueLayout.ADDRESS));
+            setParameter = library.downcall("BrotliEncoderSetParameter", FunctionDescriptor.of(ValueLayout.JAVA_INT,
+                    ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+            compressStream = library.downcall("BrotliEncoderCompressStream",
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                            ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+                            ValueLayout.ADDRESS));
+            hasMoreOutput = library.downcall("BrotliEncoderHasMoreOutput",
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+            isFinished = library.downcall("BrotliEncoderIsFinished",
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+            available = true;
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            log.debug(sm.getString("brotli.loadFail"), t);
+        }
+        BrotliEncoderCreateInstance = createInstance;
+        BrotliEncoderDestroyInstance = destroyInstance;
+        BrotliEncoderSetParameter = setParameter;
+        BrotliEncoderCompressStream = compressStream;
+        BrotliEncoderHasMoreOutput = hasMoreOutput;
+        BrotliEncoderIsFinished = isFinished;
+        AVAILABLE = available;
+    }
+
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    @Override
+    public boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+
+    @Override
+    public int getDefaultLevel() {
+        // The library default is 11 which is too slow to compress responses as they are generated
+        return 5;
+    }
+
+
+    @Override
+    public int getMaxLevel() {
+        return 11;
+    }
+
+
+    @Override
+    public OutputStream createOutputStream(OutputStream out, int level) throws IOException {
+        return new BrotliOutputStream(out, level);
+    }
+
+
+    private static class BrotliOutputStream extends NativeCompressorOutputStream {
+
+        private final MemorySegment state;
+        // size_t available_in, const uint8_t* next_in, size_t available_out and uint8_t* next_out
+        private final MemorySegment availableIn = arena.allocate(ValueLayout.JAVA_LONG);
+        private final MemorySegment nextIn = arena.allocate(ValueLayout.ADDRESS);
+        private final MemorySegment availableOut = arena.allocate(ValueLayout.JAVA_LONG);
+        private final MemorySegment nextOut = arena.allocate(ValueLayout.ADDRESS);
+
+        BrotliOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            try {
+                state = (MemorySegment) BrotliEncoderCreateInstance.invokeExact(MemorySegment.NULL,
+                        MemorySegment.NULL, MemorySegment.NULL);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                throw new IOException(t);
+            }
+            if (state.equals(MemorySegment.NULL)) {
+                throw new IOException(sm.getString("brotli.createFail"));
+            }
+            registerFree(new FreeState(state));
+            int result;
+            try {
+                result = (int) BrotliEncoderSetParameter.invokeExact(state, PARAMETER_QUALITY, level);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                result = 0;
+            }
+            if (result == 0) {
+                release();
+                throw new IOException(sm.getString("brotli.invalidQuality", Integer.toString(level)));
+            }
+        }
+
+
+        @Override
+        protected void compress(int length, int operation) throws IOException {
+            availableIn.set(ValueLayout.JAVA_LONG, 0, length);
+            nextIn.set(ValueLayout.ADDRESS, 0, input);
+            boolean done;
+            do {
+                availableOut.set(ValueLayout.JAVA_LONG, 0, BUFFER_SIZE);
+                nextOut.set(ValueLayout.ADDRESS, 0, output);
+                try {
+                    if ((int) BrotliEncoderCompressStream.invokeExact(state, operation, availableIn, nextIn,
+                            availableOut, nextOut, MemorySegment.NULL) == 0) {
+                        throw new IOException(sm.getString("brotli.error"));
+                    }
+                    writeOutput(BUFFER_SIZE - availableOut.get(ValueLayout.JAVA_LONG, 0));
+                    done = availableIn.get(ValueLayout.JAVA_LONG, 0) == 0 &&
+                            (int) BrotliEncoderHasMoreOutput.invokeExact(state) == 0 &&
+                            (operation != OPERATION_FINISH || (int) BrotliEncoderIsFinished.invokeExact(state) != 0);
+                } catch (IOException ioe) {
+                    throw ioe;
+                } catch (Throwable t) {
+                    ExceptionUtils.handleThrowable(t);
+                    throw new IOException(t);
+                }
+            } while (!done);
+        }
+    }
+
+
+    private static class FreeState implements Runnable {
+
+        private final MemorySegment state;
+
+        FreeState(MemorySegment state) {
+            this.state = state;
+        }
+
+        @Override
+        public void run() {
+            try {
+                BrotliEncoderDestroyInstance.invokeExact(state);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.warn(sm.getString("brotli.freeFail"), t);
+            }
+        }
+    }
+}
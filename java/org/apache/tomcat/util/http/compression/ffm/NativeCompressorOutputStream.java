@@ -0,0 +1,165 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression.ffm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Cleaner.Cleanable;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Base class for output streams that compress using a native library. Data is collected in a native input buffer and
+ * passed to the library when the buffer is full, when the stream is flushed and when the stream is closed. Compressed
+ * data is written by the library to a native output buffer and then copied to the underlying stream.
+ * <p>
+ * The native compression state is released when the stream is closed. If a stream is abandoned without being closed,
+ * for example because the client reset the HTTP/2 stream, the native state is released once the stream has been
+ * garbage collected.
+ */
+abstract class NativeCompressorOutputStream extends OutputStream {
+
+    private static final StringManager sm = StringManager.getManager(NativeCompressorOutputStream.class);
+
+    protected static final int BUFFER_SIZE = 16 * 1024;
+
+    // The operations used by both Brotli and Zstandard
+    protected static final int OPERATION_PROCESS = 0;
+    protected static final int OPERATION_FLUSH = 1;
+    protected static final int OPERATION_FINISH = 2;
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    // Not confined as the stream may be used by more than one thread (but not concurrently) for async requests
+    protected final Arena arena = Arena.ofAuto();
+    protected final MemorySegment input = arena.allocate(BUFFER_SIZE);
+    protected final MemorySegment output = arena.allocate(BUFFER_SIZE);
+
+    private final OutputStream out;
+    private final byte[] outputBytes = new byte[BUFFER_SIZE];
+    private int inputLength = 0;
+    private boolean closed = false;
+    private Cleanable cleanable = null;
+
+
+    NativeCompressorOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException(sm.getString("nativeCompressor.closed"));
+        }
+        while (len > 0) {
+            int copy = Math.min(len, BUFFER_SIZE - inputLength);
+            MemorySegment.copy(b, off, input, ValueLayout.JAVA_BYTE, inputLength, copy);
+            inputLength += copy;
+            off += copy;
+            len -= copy;
+            if (inputLength == BUFFER_SIZE) {
+                compress(inputLength, OPERATION_PROCESS);
+                inputLength = 0;
+            }
+        }
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        compress(inputLength, OPERATION_FLUSH);
+        inputLength = 0;
+        out.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            compress(inputLength, OPERATION_FINISH);
+            out.close();
+        } finally {
+            release();
+        }
+    }
+
+
+    /**
+     * Write the given number of bytes from the native output buffer to the underlying stream.
+     *
+     * @param length The number of bytes to write
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    protected void writeOutput(long length) throws IOException {
+        if (length > 0) {
+            MemorySegment.copy(output, ValueLayout.JAVA_BYTE, 0, outputBytes, 0, (int) length);
+            out.write(outputBytes, 0, (int) length);
+        }
+    }
+
+
+    /**
+     * Compress the given number of bytes from the start of the native input buffer. All the input must be consumed.
+     * For the flush and finish operations, all the compressed data must also be written to the underlying stream.
+     *
+     * @param length    The number of bytes of input
+     * @param operation The compression operation
+     *
+     * @throws IOException If the native library reports an error or the compressed data cannot be written
+     */
+    protected abstract void compress(int length, int operation) throws IOException;
+
+
+    /**
+     * Register the action that releases the native compression state. The action must not refer to this stream.
+     *
+     * @param free The action that releases the native compression state
+     */
+    protected void registerFree(Runnable free) {
+        cleanable = cleaner.register(this, free);
+    }
+
+
+    /**
+     * Release the native compression state, if it has not already been released.
+     */
+    protected void release() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression.ffm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Locates the native compression libraries and the functions they provide.
+ */
+class NativeLibrary {
+
+    private final SymbolLookup symbolLookup;
+
+
+    /**
+     * Load the named library. The platform specific library name (e.g. {@code libzstd.so} for {@code zstd} on Linux)
+     * is tried first. As the unversioned name is often only provided by development packages on Linux, the name with
+     * the given major version appended is then tried.
+     *
+     * @param name         The platform independent library name
+     * @param majorVersion The major version of the library
+     *
+     * @throws IllegalArgumentException if the library cannot be found
+     */
+    NativeLibrary(String name, int majorVersion) {
+        String libraryName = System.mapLibraryName(name);
+        SymbolLookup lookup;
+        try {
+            lookup = SymbolLookup.libraryLookup(libraryName, Arena.global());
+        } catch (IllegalArgumentException e) {
+            lookup = SymbolLookup.libraryLookup(libraryName + "." + majorVersion, Arena.global());
+        }
+        symbolLookup = lookup;
+    }
+
+
+    /**
+     * @param name       The name of the function
+     * @param descriptor The signature of the function
+     *
+     * @return a method handle for the function
+     *
+     * @throws IllegalArgumentException if the library does not provide the function
+     */
+    MethodHandle downcall(String name, FunctionDescriptor descriptor) {
+        MemorySegment address = symbolLookup.find(name).orElseThrow(() -> new IllegalArgumentException(name));
+        return Linker.nativeLinker().downcallHandle(address, descriptor);
+    }
+
+
+    /**
+     * Read a NUL terminated string returned by a native function.
+     *
+     * @param address   The address of the string
+     * @param maxLength The maximum length of the string
+     *
+     * @return the string
+     */
+    static String readString(MemorySegment address, int maxLength) {
+        MemorySegment segment = address.reinterpret(maxLength);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < maxLength; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, i);
+            if (b == 0) {
+                break;
+            }
+            result.append((char) b);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression.ffm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * The Zstandard ({@code zstd}) content coding, implemented using the native zstd library.
+ */
+public class ZstdContentCoding implements ContentCoding {
+
+    private static final Log log = LogFactory.getLog(ZstdContentCoding.class);
+    private static final StringManager sm = StringManager.getManager(ZstdContentCoding.class);
+
+    public static final String NAME = "zstd";
+
+    // ZSTD_c_compressionLevel
+    private static final int PARAMETER_COMPRESSION_LEVEL = 100;
+
+    // ZSTD_inBuffer and ZSTD_outBuffer: a pointer to the data, the size of the data and the current position
+    private static final MemoryLayout BUFFER_LAYOUT =
+            MemoryLayout.structLayout(ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG);
+    private static final long BUFFER_SIZE_OFFSET = ValueLayout.ADDRESS.byteSize();
+    private static final long BUFFER_POS_OFFSET = BUFFER_SIZE_OFFSET + ValueLayout.JAVA_LONG.byteSize();
+
+    private static final MethodHandle ZSTD_createCCtx;
+    private static final MethodHandle ZSTD_freeCCtx;
+    private static final MethodHandle ZSTD_CCtx_setParameter;
+    private static final MethodHandle ZSTD_compressStream2;
+    private static final MethodHandle ZSTD_isError;
+    private static final MethodHandle ZSTD_getErrorName;
+    private static final boolean AVAILABLE;
+
+    static {
+        MethodHandle createCCtx = null;
+        MethodHandle freeCCtx = null;
+        MethodHandle setParameter = null;
+        MethodHandle compressStream2 = null;
+        MethodHandle isError = null;
+        MethodHandle getErrorName = null;
+        boolean available = false;
+        try {
+            NativeLibrary library = new NativeLibrary("zstd", 1);
+            createCCtx = library.downcall("ZSTD_createCCtx", FunctionDescriptor.of(ValueLayout.ADDRESS));
+            freeCCtx = library.downcall("ZSTD_freeCCtx",
+                    FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+            setParameter = library.downcall("ZSTD_CCtx_setParameter", FunctionDescriptor.of(ValueLayout.JAVA_LONG,
+                    ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+            compressStream2 = library.downcall("ZSTD_compressStream2", FunctionDescriptor.of(ValueLayout.JAVA_LONG,
+                    ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+            isError = library.downcall("ZSTD_isError",
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG));
+            getErrorName = library.downcall("ZSTD_getErrorName",
+                    FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+            available = true;
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            log.debug(sm.getString("zstd.loadFail"), t);
+        }
+        ZSTD_createCCtx = createCCtx;
+        ZSTD_freeCCtx = freeCCtx;
+        ZSTD_CCtx_setParameter = setParameter;
+        ZSTD_compressStream2 = compressStream2;
+        ZSTD_isError = isError;
+        ZSTD_getErrorName = getErrorName;
+        AVAILABLE = available;
+    }
+
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    @Override
+    public boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+
+    @Override
+    public int getDefaultLevel() {
+        return 3;
+    }
+
+
+    @Override
+    public int getMaxLevel() {
+        // Higher levels are available but require significantly more memory to decompress
+        return 19;
+    }
+
+
+    @Override
+    public OutputStream createOutputStream(OutputStream out, int level) throws IOException {
+        return new ZstdOutputStream(out, level);
+    }
+
+
+    private static class ZstdOutputStream extends NativeCompressorOutputStream {
+
+        private final MemorySegment cctx;
+        private final MemorySegment inBuffer = arena.allocate(BUFFER_LAYOUT);
+        private final MemorySegment outBuffer = arena.allocate(BUFFER_LAYOUT);
+
+        ZstdOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            try {
+                cctx = (MemorySegment) ZSTD_createCCtx.invokeExact();
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                throw new IOException(t);
+            }
+            if (cctx.equals(MemorySegment.NULL)) {
+                throw new IOException(sm.getString("zstd.createFail"));
+            }
+            registerFree(new FreeContext(cctx));
+            try {
+                setLevel(level);
+            } catch (IOException ioe) {
+                release();
+                throw ioe;
+            }
+            inBuffer.set(ValueLayout.ADDRESS, 0, input);
+            outBuffer.set(ValueLayout.ADDRESS, 0, output);
+        }
+
+
+        @Override
+        protected void compress(int length, int operation) throws IOException {
+            inBuffer.set(ValueLayout.JAVA_LONG, BUFFER_SIZE_OFFSET, length);
+            inBuffer.set(ValueLayout.JAVA_LONG, BUFFER_POS_OFFSET, 0);
+            outBuffer.set(ValueLayout.JAVA_LONG, BUFFER_SIZE_OFFSET, BUFFER_SIZE);
+            boolean done;
+            do {
+                outBuffer.set(ValueLayout.JAVA_LONG, BUFFER_POS_OFFSET, 0);
+                long remaining;
+                try {
+                    remaining = (long) ZSTD_compressStream2.invokeExact(cctx, outBuffer, inBuffer, operation);
+                } catch (Throwable t) {
+                    ExceptionUtils.handleThrowable(t);
+                    throw new IOException(t);
+                }
+                checkError(remaining);
+                writeOutput(outBuffer.get(ValueLayout.JAVA_LONG, BUFFER_POS_OFFSET));
+                if (operation == OPERATION_PROCESS) {
+                    done = inBuffer.get(ValueLayout.JAVA_LONG, BUFFER_POS_OFFSET) == length;
+                } else {
+                    // For flush and finish, zero means all the input has been consumed and all output written
+                    done = remaining == 0;
+                }
+            } while (!done);
+        }
+
+
+        private void setLevel(int level) throws IOException {
+            long result;
+            try {
+                result = (long) ZSTD_CCtx_setParameter.invokeExact(cctx, PARAMETER_COMPRESSION_LEVEL, level);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                throw new IOException(t);
+            }
+            checkError(result);
+        }
+
+
+        private static void checkError(long result) throws IOException {
+            String errorName;
+            try {
+                if ((int) ZSTD_isError.invokeExact(result) == 0) {
+                    return;
+                }
+                errorName = NativeLibrary.readString((MemorySegment) ZSTD_getErrorName.invokeExact(result), 256);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                throw new IOException(t);
+            }
+            throw new IOException(sm.getString("zstd.error", errorName));
+        }
+    }
+
+
+    private static class FreeContext implements Runnable {
+
+        private final MemorySegment cctx;
+
+        FreeContext(MemorySegment cctx) {
+            this.cctx = cctx;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long result = (long) ZSTD_freeCCtx.invokeExact(cctx);
+                if (result != 0) {
+                    log.warn(sm.getString("zstd.freeFail"));
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.warn(sm.getString("zstd.freeFail"), t);
+            }
+        }
+    }
+}
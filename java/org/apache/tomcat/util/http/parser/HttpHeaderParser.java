@@ -41,6 +41,7 @@ public class HttpHeaderParser {
     private final HeaderDataSource source;
     private final MimeHeaders headers;
     private final boolean tolerantEol;
+    private final boolean swarScanning;
     private final HeaderParseData headerData = new HeaderParseData();
 
     private HeaderParsePosition headerParsePos = HeaderParsePosition.HEADER_START;
@@ -49,9 +50,26 @@ public class HttpHeaderParser {
 
 
     public HttpHeaderParser(HeaderDataSource source, MimeHeaders headers, boolean tolerantEol) {
+        this(source, headers, tolerantEol, false);
+    }
+
+
+    /**
+     * Create a header parser.
+     *
+     * @param source       The source of the header data
+     * @param headers      The headers to populate
+     * @param tolerantEol  Should a bare LF be accepted as a line terminator
+     * @param swarScanning Should runs of header name and header value bytes be scanned in bulk using
+     *                         {@link HttpScanner} rather than one byte at a time. The source must provide a header
+     *                         buffer with an array offset of zero.
+     */
+    public HttpHeaderParser(HeaderDataSource source, MimeHeaders headers, boolean tolerantEol,
+            boolean swarScanning) {
         this.source = source;
         this.headers = headers;
         this.tolerantEol = tolerantEol;
+        this.swarScanning = swarScanning;
     }
 
 
@@ -125,6 +143,14 @@ public class HttpHeaderParser {
                 }
             }
 
+            if (swarScanning) {
+                ByteBuffer buf = source.getHeaderByteBuffer();
+                buf.position(HttpScanner.skipTokenToLowerCase(buf.array(), buf.position(), buf.limit()));
+                if (buf.position() >= buf.limit()) {
+                    continue;
+                }
+            }
+
             int pos = source.getHeaderByteBuffer().position();
             chr = source.getHeaderByteBuffer().get();
             if (chr == COLON) {
@@ -205,6 +231,10 @@ public class HttpHeaderParser {
                         }
                     }
 
+                    if (swarScanning && chr != CR && skipHeaderValueBytes()) {
+                        continue;
+                    }
+
                     prevChr = chr;
                     chr = source.getHeaderByteBuffer().get();
                     if (chr == CR && prevChr != CR) {
@@ -267,6 +297,37 @@ public class HttpHeaderParser {
     }
 
 
+    /*
+     * Copies a run of header value bytes that contains no control characters in a single operation. Equivalent to
+     * processing the bytes one at a time in the HEADER_VALUE loop of parseHeader().
+     *
+     * Returns true if all of the available data was consumed.
+     */
+    private boolean skipHeaderValueBytes() {
+        ByteBuffer buf = source.getHeaderByteBuffer();
+        byte[] array = buf.array();
+        int pos = buf.position();
+        int runEnd = HttpScanner.skipNonControl(array, pos, buf.limit());
+        int len = runEnd - pos;
+        if (len > 0) {
+            chr = array[runEnd - 1];
+            int last = runEnd - 1;
+            while (last >= pos && array[last] == SP) {
+                last--;
+            }
+            if (last >= pos) {
+                headerData.lastSignificantChar = headerData.realPos + last - pos + 1;
+            }
+            if (headerData.realPos != pos) {
+                System.arraycopy(array, pos, array, headerData.realPos, len);
+            }
+            headerData.realPos += len;
+            buf.position(runEnd);
+        }
+        return runEnd >= buf.limit();
+    }
+
+
     private HeaderParseStatus skipLine() throws IOException {
         // Parse the rest of the invalid header so we can construct a useful
         // exception and/or debug message.
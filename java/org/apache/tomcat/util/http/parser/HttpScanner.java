@@ -0,0 +1,181 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk scanning of HTTP request data. The methods in this class examine eight bytes at a time using SWAR (SIMD within
+ * a register) techniques on {@code long} values to skip over runs of bytes that require no special handling. Parsers
+ * use them to find the next byte that needs to be examined individually (a delimiter, a line terminator or an invalid
+ * byte) and then process that byte with their usual byte-by-byte logic.
+ * <p>
+ * Each method returns the index of the first byte in the given range that does not belong to the run being scanned
+ * for, or the end of the range if all the bytes belong to the run.
+ */
+public final class HttpScanner {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    // Adding these to a byte sets the high bit if the byte is >= 'A' or > 'Z' respectively
+    private static final long UPPER_START = ONES * (0x80 - 'A');
+    private static final long UPPER_END = ONES * (0x80 - 'Z' - 1);
+
+    private static final boolean[] IS_TOKEN = new boolean[256];
+
+    static {
+        for (int i = 0; i < 128; i++) {
+            IS_TOKEN[i] = HttpParser.isToken(i);
+        }
+    }
+
+
+    private HttpScanner() {
+        // Utility class. Hide default constructor.
+    }
+
+
+    /**
+     * Scan a run of token characters.
+     *
+     * @param buf   The data to scan
+     * @param start The index of the first byte to scan
+     * @param end   The index after the last byte to scan
+     *
+     * @return The index of the first byte that is not a token character or {@code end}
+     */
+    public static int skipToken(byte[] buf, int start, int end) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            if (!isTokenStride(buf, pos)) {
+                break;
+            }
+            pos += 8;
+        }
+        while (pos < end && IS_TOKEN[buf[pos] & 0xFF]) {
+            pos++;
+        }
+        return pos;
+    }
+
+
+    /**
+     * Scan a run of token characters, converting any upper case characters in the run to lower case in place.
+     *
+     * @param buf   The data to scan
+     * @param start The index of the first byte to scan
+     * @param end   The index after the last byte to scan
+     *
+     * @return The index of the first byte that is not a token character or {@code end}
+     */
+    public static int skipTokenToLowerCase(byte[] buf, int start, int end) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            if (!isTokenStride(buf, pos)) {
+                break;
+            }
+            long word = (long) LONG_VIEW.get(buf, pos);
+            // Token characters are all < 0x80 so the additions can't carry between bytes
+            long upper = (word + UPPER_START) & ~(word + UPPER_END) & HIGH_BITS;
+            if (upper != 0) {
+                LONG_VIEW.set(buf, pos, word | (upper >>> 2));
+            }
+            pos += 8;
+        }
+        while (pos < end) {
+            byte b = buf[pos];
+            if (!IS_TOKEN[b & 0xFF]) {
+                break;
+            }
+            if (b >= 'A' && b <= 'Z') {
+                buf[pos] = (byte) (b + ('a' - 'A'));
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+
+    /**
+     * Scan a run of bytes that are not control characters. The run ends at the first byte in the range 0x00 to 0x1F
+     * inclusive (which includes HT, CR and LF) or DEL (0x7F). SP and bytes with the high bit set (obs-text) are part
+     * of the run.
+     *
+     * @param buf   The data to scan
+     * @param start The index of the first byte to scan
+     * @param end   The index after the last byte to scan
+     *
+     * @return The index of the first control character or {@code end}
+     */
+    public static int skipNonControl(byte[] buf, int start, int end) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            long word = (long) LONG_VIEW.get(buf, pos);
+            long found = lessThan(word, 0x20) | equalTo(word, 0x7F);
+            if (found != 0) {
+                return pos + firstByte(found);
+            }
+            pos += 8;
+        }
+        while (pos < end) {
+            int b = buf[pos] & 0xFF;
+            if (b < 0x20 || b == 0x7F) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+
+    /*
+     * Validates eight bytes using table look-ups that are combined without branching.
+     */
+    private static boolean isTokenStride(byte[] buf, int pos) {
+        return IS_TOKEN[buf[pos] & 0xFF] & IS_TOKEN[buf[pos + 1] & 0xFF] & IS_TOKEN[buf[pos + 2] & 0xFF] &
+                IS_TOKEN[buf[pos + 3] & 0xFF] & IS_TOKEN[buf[pos + 4] & 0xFF] & IS_TOKEN[buf[pos + 5] & 0xFF] &
+                IS_TOKEN[buf[pos + 6] & 0xFF] & IS_TOKEN[buf[pos + 7] & 0xFF];
+    }
+
+
+    /*
+     * The following methods set the high bit of matching bytes. A borrow or carry may also set the high bit of a byte
+     * that follows a matching byte but the lowest matching byte is always accurate. The data is read in little-endian
+     * order so that the lowest byte is the first byte in the buffer.
+     */
+
+    private static long lessThan(long word, int n) {
+        return (word - ONES * n) & ~word & HIGH_BITS;
+    }
+
+
+    private static long equalTo(long word, int n) {
+        long x = word ^ (ONES * n);
+        return (x - ONES) & ~x & HIGH_BITS;
+    }
+
+
+    private static int firstByte(long found) {
+        return Long.numberOfTrailingZeros(found) >>> 3;
+    }
+}
@@ -50,6 +50,7 @@ import javax.net.ssl.SSLParameters;
 import org.apache.juli.logging.Log;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
+import org.apache.tomcat.util.buf.ByteBufferPool;
 import org.apache.tomcat.util.buf.HexUtils;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.modeler.Registry;
@@ -687,6 +688,35 @@ public abstract class AbstractEndpoint<S,U> {
     }
 
 
+    /**
+     * The maximum number of bytes of unused buffers retained by the buffer pool
+     * shared by the connections of this endpoint. -1 means unlimited, 0 means
+     * that the shared buffer pool is not used. Defaults to 0.
+     */
+    private long sharedBufferPoolSize = 0;
+    public long getSharedBufferPoolSize() {
+        return sharedBufferPoolSize;
+    }
+    public void setSharedBufferPoolSize(long sharedBufferPoolSize) {
+        this.sharedBufferPoolSize = sharedBufferPoolSize;
+    }
+
+
+    private volatile ByteBufferPool sharedBufferPool = null;
+    /**
+     * Obtain the pool of buffers shared by the connections of this endpoint.
+     * Components that need a buffer for the duration of an I/O operation (e.g.
+     * socket buffers, HTTP/2 frame buffers, WebSocket frame buffers) can lease
+     * buffers from this pool and return them when they are no longer required.
+     *
+     * @return The shared buffer pool or {@code null} if the shared buffer pool
+     *         is not used
+     */
+    public ByteBufferPool getSharedBufferPool() {
+        return sharedBufferPool;
+    }
+
+
     /**
      * Time to wait for the internal executor (if used) to terminate when the
      * endpoint is stopped in milliseconds. Defaults to 5000 (5 seconds).
@@ -752,6 +782,40 @@ public abstract class AbstractEndpoint<S,U> {
         return -1;
     }
 
+    /**
+     * Returns the number of bytes allocated to the socket buffers of the
+     * connections that are currently idle (i.e. not associated with a
+     * processor such as keep-alive connections waiting for the next request).
+     * The value is calculated on each call and is approximate.
+     *
+     * @return The number of bytes allocated to the buffers of idle connections
+     */
+    public long getIdleConnectionBufferBytes() {
+        return getConnectionBufferBytes(true);
+    }
+
+    /**
+     * Returns the number of bytes allocated to the socket buffers of the
+     * connections that are currently being processed. The value is calculated
+     * on each call and is approximate.
+     *
+     * @return The number of bytes allocated to the buffers of active
+     *         connections
+     */
+    public long getActiveConnectionBufferBytes() {
+        return getConnectionBufferBytes(false);
+    }
+
+    private long getConnectionBufferBytes(boolean idle) {
+        long result = 0;
+        for (SocketWrapperBase<S> socketWrapper : connections.values()) {
+            if ((socketWrapper.getCurrentProcessor() == null) == idle) {
+                result += socketWrapper.getSocketBufferHandler().getAllocatedBytes();
+            }
+        }
+        return result;
+    }
+
     /**
      * External Executor based thread pool.
      */
@@ -1550,6 +1614,9 @@ public abstract class AbstractEndpoint<S,U> {
             bindWithCleanup();
             bindState = BindState.BOUND_ON_START;
         }
+        if (sharedBufferPoolSize != 0 && sharedBufferPool == null) {
+            sharedBufferPool = new ByteBufferPool(sharedBufferPoolSize);
+        }
         startInternal();
     }
 
@@ -1590,6 +1657,11 @@ public abstract class AbstractEndpoint<S,U> {
 
     public final void stop() throws Exception {
         stopInternal();
+        ByteBufferPool sharedBufferPool = this.sharedBufferPool;
+        if (sharedBufferPool != null) {
+            this.sharedBufferPool = null;
+            sharedBufferPool.clear();
+        }
         if (bindState == BindState.BOUND_ON_START || bindState == BindState.SOCKET_CLOSED_ON_STOP) {
             unbind();
             bindState = BindState.UNBOUND;
@@ -309,7 +309,7 @@ public class Nio2Endpoint extends AbstractNetworkChannelEndpoint<Nio2Channel,Asy
                 SocketBufferHandler bufhandler = new SocketBufferHandler(
                         socketProperties.getAppReadBufSize(),
                         socketProperties.getAppWriteBufSize(),
-                        socketProperties.getDirectBuffer());
+                        socketProperties.getDirectBuffer(), getSharedBufferPool());
                 channel = createChannel(bufhandler);
             }
             Nio2SocketWrapper newWrapper = new Nio2SocketWrapper(channel, this);
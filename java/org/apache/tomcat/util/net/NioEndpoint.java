@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Channel;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.FileChannel;
 import java.nio.channels.NetworkChannel;
@@ -51,8 +52,11 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.management.ObjectName;
 import javax.net.ssl.SSLEngine;
 
 import org.apache.juli.logging.Log;
@@ -61,6 +65,7 @@ import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.collections.SynchronizedQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.compat.JrePlatform;
+import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.Acceptor.AcceptorState;
 import org.apache.tomcat.util.net.jsse.JSSESupport;
@@ -95,11 +100,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     private volatile CountDownLatch stopLatch = null;
 
-    /**
-     * Cache for poller events
-     */
-    private SynchronizedStack<PollerEvent> eventCache;
-
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
@@ -147,14 +147,38 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     public int getPollerThreadPriority() { return pollerThreadPriority; }
 
 
+    /**
+     * Number of poller threads, each with its own selector. New connections
+     * are distributed across the pollers in a round-robin fashion.
+     */
+    private int pollerCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 8);
+    public void setPollerCount(int pollerCount) {
+        this.pollerCount = pollerCount;
+        if (pollerCount <= 0) {
+            this.pollerCount = 1;
+        }
+    }
+    public int getPollerCount() { return pollerCount; }
+
+
+    /**
+     * Release the socket buffers of connections that are idle between requests
+     * and re-acquire them when more data is received.
+     */
+    private boolean releaseIdleBuffers = false;
+    public void setReleaseIdleBuffers(boolean releaseIdleBuffers) { this.releaseIdleBuffers = releaseIdleBuffers; }
+    public boolean getReleaseIdleBuffers() { return releaseIdleBuffers; }
+
+
     private long selectorTimeout = 1000;
     public void setSelectorTimeout(long timeout) { this.selectorTimeout = timeout;}
     public long getSelectorTimeout() { return this.selectorTimeout; }
 
     /**
-     * The socket poller.
+     * The socket pollers.
      */
-    private Poller poller = null;
+    private Poller[] pollers = null;
+    private final AtomicInteger pollerRotater = new AtomicInteger(0);
 
 
     // --------------------------------------------------------- Public Methods
@@ -166,10 +190,15 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      *         for the next request to be received on the socket
      */
     public int getKeepAliveCount() {
-        if (poller == null) {
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
             return 0;
         } else {
-            return poller.getKeyCount();
+            int sum = 0;
+            for (Poller poller : pollers) {
+                sum += poller.getKeyCount();
+            }
+            return sum;
         }
     }
 
@@ -195,8 +224,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     public void bind() throws Exception {
         initServerSocket();
 
-        setStopLatch(new CountDownLatch(1));
-
         // Initialize SSL if needed
         initialiseSsl();
     }
@@ -258,10 +285,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 processorCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
                         socketProperties.getProcessorCache());
             }
-            if (socketProperties.getEventCache() != 0) {
-                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                        socketProperties.getEventCache());
-            }
             int actualBufferPool =
                     socketProperties.getActualBufferPool(isSSLEnabled() ? getSniParseLimit() * 2 : 0);
             if (actualBufferPool != 0) {
@@ -276,12 +299,22 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
             initializeConnectionLatch();
 
-            // Start poller thread
-            poller = new Poller();
-            Thread pollerThread = new Thread(poller, getName() + "-Poller");
-            pollerThread.setPriority(threadPriority);
-            pollerThread.setDaemon(true);
-            pollerThread.start();
+            // Start poller threads
+            Poller[] pollers = new Poller[getPollerCount()];
+            for (int i = 0; i < pollers.length; i++) {
+                pollers[i] = new Poller(i);
+            }
+            this.pollers = pollers;
+            // Sized from the pollers actually started as the poller count may have changed since the last start
+            setStopLatch(new CountDownLatch(pollers.length));
+            for (int i = 0; i < pollers.length; i++) {
+                String pollerName = (pollers.length == 1) ? "-Poller" : "-Poller-" + i;
+                Thread pollerThread = new Thread(pollers[i], getName() + pollerName);
+                pollerThread.setPriority(threadPriority);
+                pollerThread.setDaemon(true);
+                pollerThread.start();
+                registerJmx(pollers[i]);
+            }
 
             startAcceptorThread();
         }
@@ -304,9 +337,12 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              */
             int acceptorWaitMilliSeconds = 100 + 2 * getSocketProperties().getUnlockTimeout();
             acceptor.stopMillis(acceptorWaitMilliSeconds);
-            if (poller != null) {
-                poller.destroy();
-                poller = null;
+            if (pollers != null) {
+                for (Poller poller : pollers) {
+                    poller.destroy();
+                    unregisterJmx(poller);
+                }
+                pollers = null;
             }
             try {
                 if (!getStopLatch().await(selectorTimeout + 100, TimeUnit.MILLISECONDS)) {
@@ -316,10 +352,6 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 log.warn(sm.getString("endpoint.nio.stopLatchAwaitInterrupted"), e);
             }
             shutdownExecutor();
-            if (eventCache != null) {
-                eventCache.clear();
-                eventCache = null;
-            }
             if (nioChannels != null) {
                 NioChannel socket;
                 while ((socket = nioChannels.pop()) != null) {
@@ -421,8 +453,43 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
     }
 
 
+    /**
+     * Obtain the poller that should be used for a new connection. Pollers are
+     * allocated in a round-robin fashion.
+     *
+     * @return The next poller or {@code null} if the endpoint is not running
+     */
     protected Poller getPoller() {
-        return poller;
+        Poller[] pollers = this.pollers;
+        if (pollers == null) {
+            return null;
+        }
+        int idx = Math.abs(pollerRotater.getAndIncrement() % pollers.length);
+        return pollers[idx];
+    }
+
+
+    private void registerJmx(Poller poller) {
+        if (getDomain() == null) {
+            // Before init the domain is null
+            return;
+        }
+        try {
+            ObjectName pollerOname = new ObjectName(getDomain() + ":type=Poller,ThreadPool=\"" +
+                    getName() + "\",name=" + poller.getIndex());
+            poller.setObjectName(pollerOname);
+            Registry.getRegistry(null).registerComponent(poller, pollerOname, null);
+        } catch (Exception e) {
+            log.warn(sm.getString("endpoint.nio.pollerJmxRegistrationFailed", Integer.valueOf(poller.getIndex())), e);
+        }
+    }
+
+
+    private void unregisterJmx(Poller poller) {
+        if (poller.getObjectName() != null) {
+            Registry.getRegistry(null).unregisterComponent(poller.getObjectName());
+            poller.setObjectName(null);
+        }
     }
 
 
@@ -456,7 +523,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                 SocketBufferHandler bufhandler = new SocketBufferHandler(
                         socketProperties.getAppReadBufSize(),
                         socketProperties.getAppWriteBufSize(),
-                        socketProperties.getDirectBuffer());
+                        socketProperties.getDirectBuffer(), getSharedBufferPool());
                 channel = createChannel(bufhandler);
             }
             NioSocketWrapper newWrapper = new NioSocketWrapper(channel, this);
@@ -474,7 +541,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             socketWrapper.setReadTimeout(getConnectionTimeout());
             socketWrapper.setWriteTimeout(getConnectionTimeout());
             socketWrapper.setKeepAliveLeft(NioEndpoint.this.getMaxKeepAliveRequests());
-            poller.register(socketWrapper);
+            socketWrapper.getPoller().register(socketWrapper);
             return true;
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -600,10 +667,19 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
      */
     public class Poller implements Runnable {
 
+        private final int index;
         private final Selector selector;
         private final SynchronizedQueue<PollerEvent> events =
                 new SynchronizedQueue<>();
 
+        /**
+         * Cache for poller events. Each poller has its own cache so pollers do
+         * not contend with each other when recycling events.
+         */
+        private final SynchronizedStack<PollerEvent> eventCache;
+
+        private ObjectName oname = null;
+
         private volatile boolean close = false;
         // Optimize expiration handling
         private long nextExpiration = 0;
@@ -612,14 +688,70 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
 
         private volatile int keyCount = 0;
 
+        private final LongAdder registerCount = new LongAdder();
+        private final LongAdder eventCount = new LongAdder();
+        private final LongAdder selectCount = new LongAdder();
+
         public Poller() throws IOException {
+            this(0);
+        }
+
+        public Poller(int index) throws IOException {
+            this.index = index;
             this.selector = Selector.open();
+            if (socketProperties.getEventCache() != 0) {
+                eventCache = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+                        socketProperties.getEventCache());
+            } else {
+                eventCache = null;
+            }
         }
 
+        public int getIndex() { return index; }
+
         public int getKeyCount() { return keyCount; }
 
+        /**
+         * @return The number of sockets currently registered with this poller's
+         *         selector
+         */
+        public int getRegisteredCount() {
+            try {
+                return selector.keys().size();
+            } catch (ClosedSelectorException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * @return The number of events waiting to be processed by this poller
+         */
+        public int getEventQueueSize() { return events.size(); }
+
+        /**
+         * @return The number of sockets registered with this poller since it
+         *         was started
+         */
+        public long getRegisterCount() { return registerCount.sum(); }
+
+        /**
+         * @return The number of poller events processed by this poller since it
+         *         was started
+         */
+        public long getEventCount() { return eventCount.sum(); }
+
+        /**
+         * @return The number of select operations performed by this poller
+         *         since it was started
+         */
+        public long getSelectCount() { return selectCount.sum(); }
+
         public Selector getSelector() { return selector; }
 
+        ObjectName getObjectName() { return oname; }
+
+        void setObjectName(ObjectName oname) { this.oname = oname; }
+
         /**
          * Destroy the poller.
          */
@@ -681,6 +813,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             PollerEvent pe;
             for (int i = 0, size = events.size(); i < size && (pe = events.poll()) != null; i++ ) {
                 result = true;
+                eventCount.increment();
                 NioSocketWrapper socketWrapper = pe.getSocketWrapper();
                 SocketChannel sc = socketWrapper.getSocket().getIOChannel();
                 int interestOps = pe.getInterestOps();
@@ -738,6 +871,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
             socketWrapper.interestOps(SelectionKey.OP_READ);//this is what OP_REGISTER turns into.
             PollerEvent pollerEvent = createPollerEvent(socketWrapper, OP_REGISTER);
             addEvent(pollerEvent);
+            registerCount.increment();
         }
 
         /**
@@ -763,6 +897,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
                             keyCount = selector.select(selectorTimeout);
                         }
                         wakeupCounter.set(0);
+                        selectCount.increment();
                     }
                     if (close) {
                         events();
@@ -1432,6 +1567,14 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
         }
 
 
+        @Override
+        public void releaseIdleBuffers() {
+            if (((NioEndpoint) getEndpoint()).getReleaseIdleBuffers()) {
+                socketBufferHandler.releaseBuffers();
+            }
+        }
+
+
         @Override
         public void registerWriteInterest() {
             if (log.isTraceEnabled()) {
@@ -1700,8 +1843,7 @@ public class NioEndpoint extends AbstractNetworkChannelEndpoint<NioChannel,Socke
              * in turn can result in unintentionally closing currently active
              * connections.
              */
-            Poller poller = NioEndpoint.this.poller;
-            if (poller == null) {
+            if (pollers == null) {
                 socketWrapper.close();
                 return;
             }
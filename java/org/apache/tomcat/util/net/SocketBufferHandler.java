@@ -19,6 +19,7 @@ package org.apache.tomcat.util.net;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
+import org.apache.tomcat.util.buf.ByteBufferPool;
 import org.apache.tomcat.util.buf.ByteBufferUtils;
 
 public class SocketBufferHandler {
@@ -38,6 +39,10 @@ public class SocketBufferHandler {
         @Override
         public void unReadReadBuffer(ByteBuffer returnedData) {
         }
+        @Override
+        public boolean releaseBuffers() {
+            return false;
+        }
     };
 
     private volatile boolean readBufferConfiguredForWrite = true;
@@ -47,16 +52,124 @@ public class SocketBufferHandler {
     private volatile ByteBuffer writeBuffer;
 
     private final boolean direct;
+    private final ByteBufferPool bufferPool;
+
+    /*
+     * Set when the buffers have been released while the connection is idle.
+     * The buffers are re-acquired, with the sizes below, on next use.
+     */
+    private volatile boolean buffersReleased = false;
+    private int readBufferSize;
+    private int writeBufferSize;
 
     public SocketBufferHandler(int readBufferSize, int writeBufferSize,
             boolean direct) {
+        this(readBufferSize, writeBufferSize, direct, null);
+    }
+
+    /**
+     * Create a buffer handler, obtaining the buffers from the given pool.
+     *
+     * @param readBufferSize  The minimum size of the read buffer
+     * @param writeBufferSize The minimum size of the write buffer
+     * @param direct          Should direct buffers be used
+     * @param bufferPool      The pool from which the buffers are leased and to
+     *                            which they are returned when this handler is
+     *                            freed. If {@code null}, buffers are allocated
+     *                            as required.
+     */
+    public SocketBufferHandler(int readBufferSize, int writeBufferSize,
+            boolean direct, ByteBufferPool bufferPool) {
         this.direct = direct;
-        if (direct) {
-            readBuffer = ByteBuffer.allocateDirect(readBufferSize);
-            writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
+        this.bufferPool = bufferPool;
+        readBuffer = allocate(readBufferSize);
+        writeBuffer = allocate(writeBufferSize);
+    }
+
+
+    private ByteBuffer allocate(int size) {
+        if (bufferPool != null) {
+            return bufferPool.lease(size, direct);
+        } else if (direct) {
+            return ByteBuffer.allocateDirect(size);
         } else {
-            readBuffer = ByteBuffer.allocate(readBufferSize);
-            writeBuffer = ByteBuffer.allocate(writeBufferSize);
+            return ByteBuffer.allocate(size);
+        }
+    }
+
+
+    private void deallocate(ByteBuffer buffer) {
+        if (bufferPool != null) {
+            bufferPool.release(buffer);
+        } else if (direct) {
+            ByteBufferUtils.cleanDirectBuffer(buffer);
+        }
+    }
+
+
+    /**
+     * Release the read and write buffers if they contain no data. This is
+     * intended to be used when a connection is idle (e.g. waiting for the next
+     * request on a keep-alive connection) so that idle connections do not hold
+     * buffer memory. The buffers will be re-acquired automatically the next
+     * time they are used. The caller must ensure that no other thread is using
+     * the buffers while this method executes.
+     *
+     * @return {@code true} if the buffers have been released, {@code false} if
+     *         they still contain data
+     */
+    public boolean releaseBuffers() {
+        if (buffersReleased) {
+            return true;
+        }
+        if (!isReadBufferEmpty() || !isWriteBufferEmpty()) {
+            return false;
+        }
+        readBufferSize = readBuffer.capacity();
+        writeBufferSize = writeBuffer.capacity();
+        deallocate(readBuffer);
+        deallocate(writeBuffer);
+        readBuffer = null;
+        writeBuffer = null;
+        readBufferConfiguredForWrite = true;
+        writeBufferConfiguredForWrite = true;
+        buffersReleased = true;
+        return true;
+    }
+
+
+    /**
+     * @return {@code true} if the buffers have been released and not yet
+     *         re-acquired
+     */
+    public boolean isBuffersReleased() {
+        return buffersReleased;
+    }
+
+
+    /**
+     * @return The number of bytes currently allocated to the read and write
+     *         buffers
+     */
+    public long getAllocatedBytes() {
+        if (buffersReleased) {
+            return 0;
+        }
+        ByteBuffer readBuffer = this.readBuffer;
+        ByteBuffer writeBuffer = this.writeBuffer;
+        return (readBuffer == null ? 0 : readBuffer.capacity()) + (writeBuffer == null ? 0 : writeBuffer.capacity());
+    }
+
+
+    private void acquireBuffers() {
+        if (buffersReleased) {
+            synchronized (this) {
+                if (buffersReleased) {
+                    readBuffer = allocate(readBufferSize);
+                    writeBuffer = allocate(writeBufferSize);
+                    buffersReleased = false;
+                }
+            }
         }
     }
 
@@ -72,6 +185,7 @@ public class SocketBufferHandler {
 
 
     private void setReadBufferConfiguredForWrite(boolean readBufferConFiguredForWrite) {
+        acquireBuffers();
         // NO-OP if buffer is already in correct state
         if (this.readBufferConfiguredForWrite != readBufferConFiguredForWrite) {
             if (readBufferConFiguredForWrite) {
@@ -92,11 +206,15 @@ public class SocketBufferHandler {
 
 
     public ByteBuffer getReadBuffer() {
+        acquireBuffers();
         return readBuffer;
     }
 
 
     public boolean isReadBufferEmpty() {
+        if (buffersReleased) {
+            return true;
+        }
         if (readBufferConfiguredForWrite) {
             return readBuffer.position() == 0;
         } else {
@@ -165,6 +283,7 @@ public class SocketBufferHandler {
 
 
     private void setWriteBufferConfiguredForWrite(boolean writeBufferConfiguredForWrite) {
+        acquireBuffers();
         // NO-OP if buffer is already in correct state
         if (this.writeBufferConfiguredForWrite != writeBufferConfiguredForWrite) {
             if (writeBufferConfiguredForWrite) {
@@ -187,6 +306,7 @@ public class SocketBufferHandler {
 
 
     public boolean isWriteBufferWritable() {
+        acquireBuffers();
         if (writeBufferConfiguredForWrite) {
             return writeBuffer.hasRemaining();
         } else {
@@ -196,11 +316,15 @@ public class SocketBufferHandler {
 
 
     public ByteBuffer getWriteBuffer() {
+        acquireBuffers();
         return writeBuffer;
     }
 
 
     public boolean isWriteBufferEmpty() {
+        if (buffersReleased) {
+            return true;
+        }
         if (writeBufferConfiguredForWrite) {
             return writeBuffer.position() == 0;
         } else {
@@ -210,6 +334,10 @@ public class SocketBufferHandler {
 
 
     public void reset() {
+        if (buffersReleased) {
+            // Nothing to reset. Buffers will be cleared when re-acquired.
+            return;
+        }
         readBuffer.clear();
         readBufferConfiguredForWrite = true;
         writeBuffer.clear();
@@ -218,17 +346,41 @@ public class SocketBufferHandler {
 
 
     public void expand(int newSize) {
+        if (buffersReleased) {
+            synchronized (this) {
+                if (buffersReleased) {
+                    readBufferSize = Math.max(readBufferSize, newSize);
+                    writeBufferSize = Math.max(writeBufferSize, newSize);
+                    return;
+                }
+            }
+        }
         configureReadBufferForWrite();
-        readBuffer = ByteBufferUtils.expand(readBuffer, newSize);
+        readBuffer = expand(readBuffer, newSize);
         configureWriteBufferForWrite();
-        writeBuffer = ByteBufferUtils.expand(writeBuffer, newSize);
+        writeBuffer = expand(writeBuffer, newSize);
+    }
+
+    private ByteBuffer expand(ByteBuffer in, int newSize) {
+        if (bufferPool == null) {
+            return ByteBufferUtils.expand(in, newSize);
+        }
+        if (in.capacity() >= newSize) {
+            return in;
+        }
+        ByteBuffer out = bufferPool.lease(newSize, direct);
+        in.flip();
+        out.put(in);
+        bufferPool.release(in);
+        return out;
     }
 
     public void free() {
-        if (direct) {
-            ByteBufferUtils.cleanDirectBuffer(readBuffer);
-            ByteBufferUtils.cleanDirectBuffer(writeBuffer);
+        if (buffersReleased) {
+            return;
         }
+        deallocate(readBuffer);
+        deallocate(writeBuffer);
     }
 
 }
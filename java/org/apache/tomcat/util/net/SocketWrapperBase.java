@@ -38,6 +38,7 @@ import jakarta.servlet.ServletConnection;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.buf.ByteBufferPool;
 import org.apache.tomcat.util.res.StringManager;
 
 public abstract class SocketWrapperBase<E> {
@@ -300,6 +301,13 @@ public abstract class SocketWrapperBase<E> {
 
     public SocketBufferHandler getSocketBufferHandler() { return socketBufferHandler; }
 
+    /**
+     * @return The buffer pool shared by the connections of the endpoint
+     *         associated with this socket or {@code null} if the endpoint does
+     *         not use a shared buffer pool
+     */
+    public ByteBufferPool getSharedBufferPool() { return endpoint.getSharedBufferPool(); }
+
     public boolean hasDataToRead() {
         // Return true because it is always safe to make a read attempt
         return true;
@@ -785,6 +793,16 @@ public abstract class SocketWrapperBase<E> {
 
     public abstract void registerReadInterest();
 
+    /**
+     * Called when the connection is idle between requests, before read
+     * interest is registered, to allow the endpoint to release resources that
+     * are not required until more data arrives. The default implementation is a
+     * NO-OP.
+     */
+    public void releaseIdleBuffers() {
+        // NO-OP
+    }
+
     public abstract void registerWriteInterest();
 
     public abstract SendfileDataBase createSendfileData(String filename, long pos, long length);
@@ -93,6 +93,16 @@ public class Constants {
     // Milliseconds so this is 20 seconds
     public static final long DEFAULT_BLOCKING_SEND_TIMEOUT = 20 * 1000;
 
+    // Configuration for send queues. The defaults are set on the container.
+    public static final String SEND_QUEUE_MAX_MESSAGES_PROPERTY = "org.apache.tomcat.websocket.SEND_QUEUE_MAX_MESSAGES";
+    public static final String SEND_QUEUE_MAX_BYTES_PROPERTY = "org.apache.tomcat.websocket.SEND_QUEUE_MAX_BYTES";
+    public static final String SEND_QUEUE_OVERFLOW_POLICY_PROPERTY =
+            "org.apache.tomcat.websocket.SEND_QUEUE_OVERFLOW_POLICY";
+    public static final String QUEUE_ASYNC_SENDS_PROPERTY = "org.apache.tomcat.websocket.QUEUE_ASYNC_SENDS";
+    static final int DEFAULT_SEND_QUEUE_MAX_MESSAGES = 16;
+    // 1 MiB
+    static final long DEFAULT_SEND_QUEUE_MAX_BYTES = 1024 * 1024;
+
     // Configuration for session close timeout
     public static final String SESSION_CLOSE_TIMEOUT_PROPERTY = "org.apache.tomcat.websocket.SESSION_CLOSE_TIMEOUT";
     // Default is 30 seconds - setting is in milliseconds
@@ -113,6 +123,10 @@ public class Constants {
     static final int DEFAULT_PROCESS_PERIOD = Integer
             .getInteger("org.apache.tomcat.websocket.DEFAULT_PROCESS_PERIOD", 10).intValue();
 
+    // Default number of unused Deflaters, and separately Inflaters, retained for
+    // reuse by sessions that do not use context takeover
+    static final int DEFAULT_DEFLATE_POOL_SIZE = 32;
+
     public static final String WS_AUTHENTICATION_USER_NAME = "org.apache.tomcat.websocket.WS_AUTHENTICATION_USER_NAME";
     public static final String WS_AUTHENTICATION_PASSWORD = "org.apache.tomcat.websocket.WS_AUTHENTICATION_PASSWORD";
     public static final String WS_AUTHENTICATION_REALM = "org.apache.tomcat.websocket.WS_AUTHENTICATION_REALM";
@@ -39,7 +39,7 @@ public class PerMessageDeflate implements Transformation {
     private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
     private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
 
-    private static final int RSV_BITMASK = 0b100;
+    static final int RSV_BITMASK = 0b100;
     private static final byte[] EOM_BYTES = new byte[] { 0, 0, -1, -1 };
 
     public static final String NAME = "permessage-deflate";
@@ -49,11 +49,23 @@ public class PerMessageDeflate implements Transformation {
     private final boolean clientContextTakeover;
     private final int clientMaxWindowBits;
     private final boolean isServer;
-    private final Inflater inflater = new Inflater(true);
+    private final boolean deflaterContextTakeover;
+    private final boolean inflaterContextTakeover;
+    private final PerMessageDeflateResources resources;
+    private final boolean contextTakeoverAcquired;
     private final ByteBuffer readBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
-    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
     private final byte[] EOM_BUFFER = new byte[EOM_BYTES.length + 1];
 
+    /*
+     * The Deflater and Inflater are created, or leased from the shared pools, when first required. Without context
+     * takeover, pooled Deflaters and Inflaters are returned at the end of each message. Changes to the fields are made
+     * while holding the lock as close() may be called concurrently with reads and writes.
+     */
+    private final Object zlibLock = new Object();
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean closed = false;
+
     private volatile Transformation next;
     private volatile boolean skipDecompression = false;
     private volatile ByteBuffer writeBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
@@ -62,6 +74,12 @@ public class PerMessageDeflate implements Transformation {
     private volatile boolean emptyMessage = true;
 
     static PerMessageDeflate negotiate(List<List<Parameter>> preferences, boolean isServer) {
+        return negotiate(preferences, isServer, null);
+    }
+
+
+    static PerMessageDeflate negotiate(List<List<Parameter>> preferences, boolean isServer,
+            PerMessageDeflateResources resources) {
         // Accept the first preference that the endpoint is able to support
         for (List<Parameter> preference : preferences) {
             boolean ok = true;
@@ -148,8 +166,20 @@ public class PerMessageDeflate implements Transformation {
                 }
             }
             if (ok) {
+                boolean contextTakeoverAcquired = false;
+                if (isServer && resources != null && (serverContextTakeover || clientContextTakeover)) {
+                    if (resources.acquireContextTakeover()) {
+                        contextTakeoverAcquired = true;
+                    } else {
+                        // RFC 7692 permits the server to require no context
+                        // takeover in both directions even if the client
+                        // did not offer it
+                        serverContextTakeover = false;
+                        clientContextTakeover = false;
+                    }
+                }
                 return new PerMessageDeflate(serverContextTakeover, serverMaxWindowBits, clientContextTakeover,
-                        clientMaxWindowBits, isServer);
+                        clientMaxWindowBits, isServer, resources, contextTakeoverAcquired);
             }
         }
         // Failed to negotiate agreeable terms
@@ -158,12 +188,17 @@ public class PerMessageDeflate implements Transformation {
 
 
     private PerMessageDeflate(boolean serverContextTakeover, int serverMaxWindowBits, boolean clientContextTakeover,
-            int clientMaxWindowBits, boolean isServer) {
+            int clientMaxWindowBits, boolean isServer, PerMessageDeflateResources resources,
+            boolean contextTakeoverAcquired) {
         this.serverContextTakeover = serverContextTakeover;
         this.serverMaxWindowBits = serverMaxWindowBits;
         this.clientContextTakeover = clientContextTakeover;
         this.clientMaxWindowBits = clientMaxWindowBits;
         this.isServer = isServer;
+        deflaterContextTakeover = isServer ? serverContextTakeover : clientContextTakeover;
+        inflaterContextTakeover = isServer ? clientContextTakeover : serverContextTakeover;
+        this.resources = resources;
+        this.contextTakeoverAcquired = contextTakeoverAcquired;
     }
 
 
@@ -185,6 +220,7 @@ public class PerMessageDeflate implements Transformation {
             return next.getMoreData(opCode, fin, rsv, dest);
         }
 
+        Inflater inflater = getInflater();
         int written;
         boolean usedEomBytes = false;
 
@@ -221,11 +257,15 @@ public class PerMessageDeflate implements Transformation {
                     usedEomBytes = true;
                 }
             } else if (written == 0) {
-                if (fin && (isServer && !clientContextTakeover || !isServer && !serverContextTakeover)) {
-                    try {
-                        inflater.reset();
-                    } catch (NullPointerException e) {
-                        throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"), e);
+                if (fin && !inflaterContextTakeover) {
+                    if (resources == null) {
+                        try {
+                            inflater.reset();
+                        } catch (NullPointerException e) {
+                            throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"), e);
+                        }
+                    } else {
+                        releaseInflater();
                     }
                 }
                 return TransformationResult.END_OF_FRAME;
@@ -329,6 +369,7 @@ public class PerMessageDeflate implements Transformation {
                 // final (empty) part straight through.
                 allCompressedParts.add(uncompressedPart);
             } else {
+                Deflater deflater = getDeflater();
                 List<MessagePart> compressedParts = new ArrayList<>();
                 ByteBuffer uncompressedPayload = uncompressedPart.getPayload();
                 SendHandler uncompressedIntermediateHandler = uncompressedPart.getIntermediateHandler();
@@ -461,16 +502,92 @@ public class PerMessageDeflate implements Transformation {
     private void startNewMessage() throws IOException {
         firstCompressedFrameWritten = false;
         emptyMessage = true;
-        if (isServer && !serverContextTakeover || !isServer && !clientContextTakeover) {
-            try {
-                deflater.reset();
-            } catch (NullPointerException e) {
-                throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"), e);
+        if (!deflaterContextTakeover) {
+            if (resources == null) {
+                try {
+                    getDeflater().reset();
+                } catch (NullPointerException e) {
+                    throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"), e);
+                }
+            } else {
+                releaseDeflater();
+            }
+        }
+    }
+
+
+    private Deflater getDeflater() throws IOException {
+        synchronized (zlibLock) {
+            if (closed) {
+                throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"));
+            }
+            if (deflater == null) {
+                if (resources == null) {
+                    deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                } else if (deflaterContextTakeover) {
+                    deflater = resources.createDeflater();
+                } else {
+                    deflater = resources.leaseDeflater();
+                }
+            }
+            return deflater;
+        }
+    }
+
+
+    private void releaseDeflater() {
+        synchronized (zlibLock) {
+            if (deflater != null) {
+                resources.releaseDeflater(deflater);
+                deflater = null;
+            }
+        }
+    }
+
+
+    private Inflater getInflater() throws IOException {
+        synchronized (zlibLock) {
+            if (closed) {
+                throw new IOException(sm.getString("perMessageDeflate.alreadyClosed"));
+            }
+            if (inflater == null) {
+                if (resources == null) {
+                    inflater = new Inflater(true);
+                } else if (inflaterContextTakeover) {
+                    inflater = resources.createInflater();
+                } else {
+                    inflater = resources.leaseInflater();
+                }
+            }
+            return inflater;
+        }
+    }
+
+
+    private void releaseInflater() {
+        synchronized (zlibLock) {
+            if (inflater != null) {
+                resources.releaseInflater(inflater);
+                inflater = null;
             }
         }
     }
 
 
+    /*
+     * Without context takeover for sent messages, each message is compressed independently of any previous messages so
+     * a message compressed once may be sent as is. That is only possible if this is the only extension.
+     */
+    boolean canSendPrecompressed() {
+        return !deflaterContextTakeover && (next == null || next.getExtensionResponse() == null);
+    }
+
+
+    PerMessageDeflateResources getResources() {
+        return resources;
+    }
+
+
     private int getRsv(MessagePart uncompressedMessagePart) {
         int result = uncompressedMessagePart.getRsv();
         if (!firstCompressedFrameWritten) {
@@ -483,9 +600,37 @@ public class PerMessageDeflate implements Transformation {
 
     @Override
     public void close() {
-        // There will always be a next transformation
-        next.close();
-        inflater.end();
-        deflater.end();
+        // There will always be a next transformation once the session has
+        // started but not if the upgrade failed before it started
+        if (next != null) {
+            next.close();
+        }
+        synchronized (zlibLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // A Deflater or Inflater may be part way through a message so it
+            // is always ended rather than returned to a pool
+            if (inflater != null) {
+                if (resources == null) {
+                    inflater.end();
+                } else {
+                    resources.endInflater(inflater);
+                }
+                inflater = null;
+            }
+            if (deflater != null) {
+                if (resources == null) {
+                    deflater.end();
+                } else {
+                    resources.endDeflater(deflater);
+                }
+                deflater = null;
+            }
+            if (contextTakeoverAcquired) {
+                resources.releaseContextTakeover();
+            }
+        }
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.tomcat.util.buf.DeflaterPool;
+import org.apache.tomcat.util.buf.InflaterPool;
+
+/**
+ * The zlib resources shared by the {@link PerMessageDeflate} transformations of the sessions created by a WebSocket
+ * container.
+ * <p>
+ * Sessions that have negotiated no context takeover for a direction do not need to retain the compression state for
+ * that direction between messages. Those sessions lease a Deflater or Inflater from a pool at the start of each
+ * compressed message and return it at the end of the message. Sessions that use context takeover have to retain
+ * dedicated zlib state for the lifetime of the session. On the server side the number of sessions permitted to use
+ * context takeover may be limited. Once the limit is reached, new sessions are forced to use no context takeover in
+ * both directions.
+ * <p>
+ * The native memory used by zlib is not visible to Java so this class also tracks the number of Deflaters and Inflaters
+ * in use and held by the pools and provides an estimate of the native memory they use.
+ */
+public class PerMessageDeflateResources {
+
+    /*
+     * zlib allocates (1 << (windowBits + 2)) + (1 << (memLevel + 9)) bytes for a deflate stream plus around 6 KiB of
+     * state. The JDK always uses a window of 15 bits and a memory level of 8.
+     */
+    private static final long DEFLATER_NATIVE_MEMORY = 262144 + 5952;
+    /*
+     * zlib allocates a 32 KiB window for an inflate stream, when it is first required, plus around 7 KiB of state.
+     */
+    private static final long INFLATER_NATIVE_MEMORY = 32768 + 7160;
+
+    private final DeflaterPool deflaterPool;
+    private final InflaterPool inflaterPool;
+
+    private volatile int maxContextTakeoverSessions = -1;
+    private final AtomicInteger contextTakeoverSessionCount = new AtomicInteger();
+    private final LongAdder contextTakeoverRefusedCount = new LongAdder();
+
+    private final AtomicInteger deflaterCount = new AtomicInteger();
+    private final AtomicInteger inflaterCount = new AtomicInteger();
+
+
+    /**
+     * Create the resources for a WebSocket container.
+     *
+     * @param maxIdle The maximum number of unused Deflaters and, separately, unused Inflaters that will be retained for
+     *                    reuse. A value of <code>-1</code> means unlimited.
+     */
+    public PerMessageDeflateResources(int maxIdle) {
+        deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, maxIdle);
+        inflaterPool = new InflaterPool(true, maxIdle);
+    }
+
+
+    /**
+     * @return the maximum number of sessions that may use context takeover. A value of <code>-1</code> means unlimited.
+     */
+    public int getMaxContextTakeoverSessions() {
+        return maxContextTakeoverSessions;
+    }
+
+
+    /**
+     * Set the maximum number of server sessions that may use context takeover. Sessions negotiated once the limit has
+     * been reached are forced to use no context takeover in both directions. Reducing the limit does not affect
+     * existing sessions.
+     *
+     * @param maxContextTakeoverSessions The maximum number of sessions. A value of <code>-1</code> means unlimited.
+     */
+    public void setMaxContextTakeoverSessions(int maxContextTakeoverSessions) {
+        this.maxContextTakeoverSessions = maxContextTakeoverSessions;
+    }
+
+
+    /**
+     * @return the maximum number of unused Deflaters and, separately, unused Inflaters that will be retained for reuse
+     */
+    public int getMaxIdle() {
+        return deflaterPool.getMaxIdle();
+    }
+
+
+    /**
+     * @param maxIdle The maximum number of unused Deflaters and, separately, unused Inflaters that will be retained for
+     *                    reuse. A value of <code>-1</code> means unlimited.
+     */
+    public void setMaxIdle(int maxIdle) {
+        deflaterPool.setMaxIdle(maxIdle);
+        inflaterPool.setMaxIdle(maxIdle);
+    }
+
+
+    /**
+     * @return the number of sessions currently using context takeover
+     */
+    public int getContextTakeoverSessionCount() {
+        return contextTakeoverSessionCount.get();
+    }
+
+
+    /**
+     * @return the number of sessions that were forced to use no context takeover because the limit on sessions using
+     *             context takeover had been reached
+     */
+    public long getContextTakeoverRefusedCount() {
+        return contextTakeoverRefusedCount.sum();
+    }
+
+
+    /**
+     * @return the number of Deflaters currently in use by sessions
+     */
+    public int getDeflaterCount() {
+        return deflaterCount.get();
+    }
+
+
+    /**
+     * @return the number of unused Deflaters currently retained for reuse
+     */
+    public int getIdleDeflaterCount() {
+        return deflaterPool.getIdleCount();
+    }
+
+
+    /**
+     * @return the number of Inflaters currently in use by sessions
+     */
+    public int getInflaterCount() {
+        return inflaterCount.get();
+    }
+
+
+    /**
+     * @return the number of unused Inflaters currently retained for reuse
+     */
+    public int getIdleInflaterCount() {
+        return inflaterPool.getIdleCount();
+    }
+
+
+    /**
+     * @return an estimate, in bytes, of the native memory used by zlib for the Deflaters and Inflaters that are in use
+     *             or retained for reuse
+     */
+    public long getNativeMemoryEstimate() {
+        return (getDeflaterCount() + getIdleDeflaterCount()) * DEFLATER_NATIVE_MEMORY +
+                (getInflaterCount() + getIdleInflaterCount()) * INFLATER_NATIVE_MEMORY;
+    }
+
+
+    /**
+     * End all the unused Deflaters and Inflaters currently retained for reuse.
+     */
+    public void clear() {
+        deflaterPool.clear();
+        inflaterPool.clear();
+    }
+
+
+    boolean acquireContextTakeover() {
+        int max = maxContextTakeoverSessions;
+        if (max < 0) {
+            contextTakeoverSessionCount.incrementAndGet();
+            return true;
+        }
+        int count;
+        do {
+            count = contextTakeoverSessionCount.get();
+            if (count >= max) {
+                contextTakeoverRefusedCount.increment();
+                return false;
+            }
+        } while (!contextTakeoverSessionCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+
+    void releaseContextTakeover() {
+        contextTakeoverSessionCount.decrementAndGet();
+    }
+
+
+    Deflater createDeflater() {
+        deflaterCount.incrementAndGet();
+        return new Deflater(deflaterPool.getLevel(), true);
+    }
+
+
+    void endDeflater(Deflater deflater) {
+        deflaterCount.decrementAndGet();
+        deflater.end();
+    }
+
+
+    Deflater leaseDeflater() {
+        deflaterCount.incrementAndGet();
+        return deflaterPool.lease();
+    }
+
+
+    void releaseDeflater(Deflater deflater) {
+        deflaterCount.decrementAndGet();
+        deflaterPool.release(deflater);
+    }
+
+
+    Inflater createInflater() {
+        inflaterCount.incrementAndGet();
+        return new Inflater(true);
+    }
+
+
+    void endInflater(Inflater inflater) {
+        inflaterCount.decrementAndGet();
+        inflater.end();
+    }
+
+
+    Inflater leaseInflater() {
+        inflaterCount.incrementAndGet();
+        return inflaterPool.lease();
+    }
+
+
+    void releaseInflater(Inflater inflater) {
+        inflaterCount.decrementAndGet();
+        inflaterPool.release(inflater);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A complete WebSocket message that is sent via the send queue of one or more sessions. The message is encoded once
+ * and, for sessions that use the permessage-deflate extension without context takeover for server to client messages,
+ * compressed at most once. Each session then writes a view of the same payload so the per-session cost of a
+ * broadcast is independent of the size of the message.
+ * <p>
+ * Instances are immutable and may be sent any number of times.
+ */
+public final class QueuedMessage {
+
+    private static final StringManager sm = StringManager.getManager(QueuedMessage.class);
+
+    private final byte opCode;
+    private final ByteBuffer payload;
+
+    private final Object compressedPayloadLock = new Object();
+    private volatile ByteBuffer compressedPayload = null;
+
+
+    /**
+     * Create a text message.
+     *
+     * @param text The message
+     *
+     * @return the message in a form that may be queued
+     */
+    public static QueuedMessage text(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException(sm.getString("wsRemoteEndpoint.nullData"));
+        }
+        return new QueuedMessage(Constants.OPCODE_TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Create a binary message. The remaining bytes of the provided buffer form the message. The content of the buffer
+     * must not be modified once this method has been called but the position and limit of the provided buffer are not
+     * used or changed.
+     *
+     * @param data The message
+     *
+     * @return the message in a form that may be queued
+     */
+    public static QueuedMessage binary(ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException(sm.getString("wsRemoteEndpoint.nullData"));
+        }
+        return new QueuedMessage(Constants.OPCODE_BINARY, data.slice());
+    }
+
+
+    private QueuedMessage(byte opCode, ByteBuffer payload) {
+        this.opCode = opCode;
+        this.payload = payload;
+    }
+
+
+    /**
+     * @return the length, in bytes, of the uncompressed message payload
+     */
+    public int getLength() {
+        return payload.remaining();
+    }
+
+
+    byte getOpCode() {
+        return opCode;
+    }
+
+
+    boolean isText() {
+        return opCode == Constants.OPCODE_TEXT;
+    }
+
+
+    ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+
+    /*
+     * Returns the payload compressed as a single permessage-deflate message that does not depend on any previous
+     * messages, without the trailing empty block. Must not be called for an empty message as empty messages are never
+     * compressed.
+     */
+    ByteBuffer getCompressedPayload(PerMessageDeflateResources resources) {
+        ByteBuffer result = compressedPayload;
+        if (result == null) {
+            synchronized (compressedPayloadLock) {
+                result = compressedPayload;
+                if (result == null) {
+                    result = compress(resources);
+                    compressedPayload = result;
+                }
+            }
+        }
+        return result.duplicate();
+    }
+
+
+    private ByteBuffer compress(PerMessageDeflateResources resources) {
+        Deflater deflater;
+        if (resources == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        } else {
+            deflater = resources.leaseDeflater();
+        }
+        try {
+            deflater.setInput(payload.duplicate());
+            byte[] output = new byte[Math.max(payload.remaining() / 2, 64)];
+            int length = 0;
+            while (true) {
+                int written = deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                length += written;
+                if (length < output.length) {
+                    // The output buffer was not filled so the flush is complete
+                    break;
+                }
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            // Drop the 0x00 0x00 0xff 0xff that ends the output of a sync flush
+            return ByteBuffer.wrap(output, 0, length - 4).slice();
+        } finally {
+            if (resources == null) {
+                deflater.end();
+            } else {
+                resources.releaseDeflater(deflater);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+/**
+ * Determines what happens when a message is queued for a session that does not have space in its send queue for the
+ * message. The space in a send queue is limited both by the number of messages and by the total size of their
+ * payloads.
+ */
+public enum SendQueueOverflowPolicy {
+
+    /**
+     * The new message is not sent to the session.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest waiting messages are not sent to the session until there is space for the new message which is then
+     * added to the end of the queue.
+     */
+    DROP_OLDEST,
+
+    /**
+     * None of the waiting messages are sent to the session and the new message replaces them. This is intended for
+     * applications where each message supersedes the previous ones, such as the current value of a frequently updated
+     * price or position, so a slow client only receives the latest value.
+     */
+    COALESCE,
+
+    /**
+     * The session is closed with a close code of {@link jakarta.websocket.CloseReason.CloseCodes#VIOLATED_POLICY}.
+     */
+    CLOSE
+}
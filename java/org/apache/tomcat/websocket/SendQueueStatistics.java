@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics for the send queues of the sessions created by a WebSocket container.
+ * <p>
+ * A message is added to the send queue of a session when it is broadcast to that session, or sent asynchronously to
+ * that session with the queuing of asynchronous sends enabled, while the session is already sending another message.
+ * A session with messages in its send queue is sending messages more slowly than the application is generating them.
+ * These statistics identify how many such slow consumers there are, how much memory their queues are using and how
+ * often the send queue limits are reached.
+ */
+public class SendQueueStatistics {
+
+    private final AtomicInteger queuingSessionCount = new AtomicInteger();
+    private final AtomicInteger queuedMessageCount = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong maxSessionQueuedBytes = new AtomicLong();
+
+    private final LongAdder totalQueuedMessageCount = new LongAdder();
+    private final LongAdder droppedMessageCount = new LongAdder();
+    private final LongAdder coalescedMessageCount = new LongAdder();
+    private final LongAdder overflowCloseCount = new LongAdder();
+
+
+    /**
+     * @return the number of sessions that currently have one or more messages in their send queue
+     */
+    public int getQueuingSessionCount() {
+        return queuingSessionCount.get();
+    }
+
+
+    /**
+     * @return the number of messages currently in the send queues of all sessions
+     */
+    public int getQueuedMessageCount() {
+        return queuedMessageCount.get();
+    }
+
+
+    /**
+     * @return the total size, in bytes, of the payloads of the messages currently in the send queues of all sessions.
+     *             The payload of a broadcast message is counted once for each session in which it is queued although
+     *             only one copy of the payload is held in memory.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+
+    /**
+     * @return the largest total size, in bytes, of the payloads in the send queue of any one session since the
+     *             statistics were last reset
+     */
+    public long getMaxSessionQueuedBytes() {
+        return maxSessionQueuedBytes.get();
+    }
+
+
+    /**
+     * @return the number of messages that have been added to a send queue since the statistics were last reset
+     */
+    public long getTotalQueuedMessageCount() {
+        return totalQueuedMessageCount.sum();
+    }
+
+
+    /**
+     * @return the number of messages that were not sent because the send queue of the session was full, since the
+     *             statistics were last reset. Messages replaced by a newer message are not included.
+     */
+    public long getDroppedMessageCount() {
+        return droppedMessageCount.sum();
+    }
+
+
+    /**
+     * @return the number of messages that were not sent because they were replaced by a newer message, since the
+     *             statistics were last reset
+     */
+    public long getCoalescedMessageCount() {
+        return coalescedMessageCount.sum();
+    }
+
+
+    /**
+     * @return the number of sessions that were closed because their send queue was full, since the statistics were
+     *             last reset
+     */
+    public long getOverflowCloseCount() {
+        return overflowCloseCount.sum();
+    }
+
+
+    /**
+     * Reset the counters and the maximum queue size. The current number of queuing sessions, queued messages and
+     * queued bytes are not affected.
+     */
+    public void reset() {
+        maxSessionQueuedBytes.set(0);
+        totalQueuedMessageCount.reset();
+        droppedMessageCount.reset();
+        coalescedMessageCount.reset();
+        overflowCloseCount.reset();
+    }
+
+
+    void messageQueued(long bytes, boolean firstMessage, long sessionQueuedBytes) {
+        if (firstMessage) {
+            queuingSessionCount.incrementAndGet();
+        }
+        queuedMessageCount.incrementAndGet();
+        queuedBytes.addAndGet(bytes);
+        totalQueuedMessageCount.increment();
+        maxSessionQueuedBytes.accumulateAndGet(sessionQueuedBytes, Math::max);
+    }
+
+
+    void messageRemoved(long bytes, boolean lastMessage) {
+        if (lastMessage) {
+            queuingSessionCount.decrementAndGet();
+        }
+        queuedMessageCount.decrementAndGet();
+        queuedBytes.addAndGet(-bytes);
+    }
+
+
+    void messageDropped() {
+        droppedMessageCount.increment();
+    }
+
+
+    void messageCoalesced() {
+        coalescedMessageCount.increment();
+    }
+
+
+    void overflowClose() {
+        overflowCloseCount.increment();
+    }
+}
@@ -24,6 +24,7 @@ import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import jakarta.websocket.CloseReason;
@@ -34,6 +35,7 @@ import jakarta.websocket.PongMessage;
 
 import org.apache.juli.logging.Log;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.buf.ByteBufferPool;
 import org.apache.tomcat.util.res.StringManager;
 
 /**
@@ -48,6 +50,8 @@ public abstract class WsFrameBase {
     protected final WsSession wsSession;
     protected final ByteBuffer inputBuffer;
     private final Transformation transformation;
+    private final ByteBufferPool bufferPool;
+    private final AtomicBoolean buffersReleased = new AtomicBoolean(false);
 
     // Attributes for control messages
     // They can appear in the middle of other messages so need separate attributes
@@ -86,7 +90,26 @@ public abstract class WsFrameBase {
     private volatile ReadState readState = ReadState.WAITING;
 
     public WsFrameBase(WsSession wsSession, Transformation transformation) {
-        inputBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+        this(wsSession, transformation, null);
+    }
+
+
+    /**
+     * Create a frame processor, obtaining the input buffer from the given pool.
+     *
+     * @param wsSession      The session for which frames will be processed
+     * @param transformation The transformation (if any) to apply to the frames
+     * @param bufferPool     The pool from which to obtain the input buffer. If
+     *                           {@code null} the input buffer is allocated
+     *                           directly.
+     */
+    protected WsFrameBase(WsSession wsSession, Transformation transformation, ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        if (bufferPool == null) {
+            inputBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+        } else {
+            inputBuffer = bufferPool.lease(Constants.DEFAULT_BUFFER_SIZE, false);
+        }
         inputBuffer.position(0).limit(0);
         messageBufferBinary = ByteBuffer.allocate(wsSession.getMaxBinaryMessageBufferSize());
         messageBufferText = CharBuffer.allocate(wsSession.getMaxTextMessageBufferSize());
@@ -107,6 +130,17 @@ public abstract class WsFrameBase {
     }
 
 
+    /**
+     * Return the input buffer to the buffer pool, if one was used. This must
+     * only be called once no further data will be processed for this frame.
+     */
+    protected void releaseBuffers() {
+        if (bufferPool != null && buffersReleased.compareAndSet(false, true)) {
+            bufferPool.release(inputBuffer);
+        }
+    }
+
+
     protected void processInputBuffer() throws IOException {
         while (!isSuspended()) {
             wsSession.updateLastActiveRead();
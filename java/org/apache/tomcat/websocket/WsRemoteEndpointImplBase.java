@@ -86,6 +86,15 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
     private WsSession wsSession;
     private final List<EncoderEntry> encoderEntries = new ArrayList<>();
 
+    // Complete messages waiting for the current message to complete
+    private final Object sendQueueLock = new Object();
+    private final Queue<QueuedSend> sendQueue = new ArrayDeque<>();
+    private long sendQueueBytes = 0;
+    private boolean sendQueueClosed = false;
+    private boolean sendQueueDraining = false;
+    // A message from the send queue is being written and its handler has not yet been notified
+    private boolean sendQueueWriting = false;
+
 
     protected void setTransformation(Transformation transformation) {
         this.transformation = transformation;
@@ -136,6 +145,7 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
         stateMachine.binaryStart();
         sendMessageBlock(Constants.OPCODE_BINARY, data, true);
         stateMachine.complete(true);
+        startQueued();
     }
 
 
@@ -153,7 +163,11 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
         if (handler == null) {
             throw new IllegalArgumentException(sm.getString("wsRemoteEndpoint.nullHandler"));
         }
-        StateUpdateSendHandler sush = new StateUpdateSendHandler(handler, stateMachine);
+        if (wsSession.isQueueAsyncSends()) {
+            wsSession.sendQueued(QueuedMessage.binary(data), handler);
+            return;
+        }
+        StateUpdateSendHandler sush = new StateUpdateSendHandler(handler, this);
         stateMachine.binaryStart();
         startMessage(Constants.OPCODE_BINARY, data, true, sush);
     }
@@ -166,6 +180,9 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
         stateMachine.binaryPartialStart();
         sendMessageBlock(Constants.OPCODE_BINARY, partialByte, last);
         stateMachine.complete(last);
+        if (last) {
+            startQueued();
+        }
     }
 
 
@@ -210,6 +227,10 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
         if (handler == null) {
             throw new IllegalArgumentException(sm.getString("wsRemoteEndpoint.nullHandler"));
         }
+        if (wsSession.isQueueAsyncSends()) {
+            wsSession.sendQueued(QueuedMessage.text(text), handler);
+            return;
+        }
         stateMachine.textStart();
         TextMessageSendHandler tmsh = new TextMessageSendHandler(handler, CharBuffer.wrap(text), true, encoder,
                 encoderBuffer, this);
@@ -253,6 +274,9 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
             sendMessageBlock(Constants.OPCODE_TEXT, encoderBuffer, last && isDone, timeout);
         }
         stateMachine.complete(last);
+        if (last) {
+            startQueued();
+        }
     }
 
 
@@ -382,6 +406,11 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
             return;
         }
 
+        writeOrQueueMessageParts(messageParts);
+    }
+
+
+    private void writeOrQueueMessageParts(List<MessagePart> messageParts) {
         MessagePart mp = messageParts.removeFirst();
 
         boolean doWrite = false;
@@ -417,6 +446,237 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
     }
 
 
+    /**
+     * Sends a complete message via the send queue. If this endpoint is not already sending a message, and no messages
+     * are waiting in the send queue, the message is sent immediately. Otherwise, the message is added to the send queue
+     * and is sent once the messages ahead of it have been sent.
+     *
+     * @param message        The message to send
+     * @param maxMessages    The maximum number of messages that may be waiting in the send queue. A value of
+     *                           <code>-1</code> means unlimited.
+     * @param maxBytes       The maximum total size, in bytes, of the payloads of the messages that may be waiting in
+     *                           the send queue. A value of <code>-1</code> means unlimited.
+     * @param overflowPolicy What to do if there is no space in the send queue for the message
+     * @param handler        Notified when the message has been sent, or if it is not sent
+     */
+    void sendQueued(QueuedMessage message, int maxMessages, long maxBytes, SendQueueOverflowPolicy overflowPolicy,
+            SendHandler handler) {
+        SendQueueStatistics statistics = wsSession.getSendQueueStatistics();
+        QueuedSend queued = new QueuedSend(message, handler);
+        List<QueuedSend> dropped = null;
+        List<QueuedSend> coalesced = null;
+        boolean start = false;
+        boolean overflow = false;
+        synchronized (sendQueueLock) {
+            if (sendQueueClosed) {
+                dropped = List.of(queued);
+            } else if (sendQueue.isEmpty() && !sendQueueWriting && stateMachine.tryStart(message.isText())) {
+                sendQueueWriting = true;
+                start = true;
+            } else if (hasSpace(message, maxMessages, maxBytes)) {
+                enqueue(queued, statistics);
+            } else {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST -> dropped = List.of(queued);
+                    case DROP_OLDEST -> {
+                        dropped = new ArrayList<>();
+                        while (!sendQueue.isEmpty() && !hasSpace(message, maxMessages, maxBytes)) {
+                            dropped.add(dequeue(statistics));
+                        }
+                        if (hasSpace(message, maxMessages, maxBytes)) {
+                            enqueue(queued, statistics);
+                        } else {
+                            dropped.add(queued);
+                        }
+                    }
+                    case COALESCE -> {
+                        coalesced = new ArrayList<>(sendQueue.size());
+                        while (!sendQueue.isEmpty()) {
+                            coalesced.add(dequeue(statistics));
+                        }
+                        if (hasSpace(message, maxMessages, maxBytes)) {
+                            enqueue(queued, statistics);
+                        } else {
+                            dropped = List.of(queued);
+                        }
+                    }
+                    case CLOSE -> {
+                        dropped = List.of(queued);
+                        overflow = true;
+                    }
+                }
+            }
+        }
+        if (start) {
+            writeQueued(queued);
+        }
+        if (coalesced != null) {
+            for (QueuedSend replaced : coalesced) {
+                statistics.messageCoalesced();
+                replaced.handler().onResult(new SendResult(getSession(),
+                        new IOException(sm.getString("wsRemoteEndpoint.sendQueueCoalesced"))));
+            }
+        }
+        if (dropped != null) {
+            for (QueuedSend drop : dropped) {
+                statistics.messageDropped();
+                drop.handler().onResult(new SendResult(getSession(),
+                        new IOException(sm.getString("wsRemoteEndpoint.sendQueueDropped"))));
+            }
+        }
+        if (overflow) {
+            statistics.overflowClose();
+            try {
+                wsSession.close(new CloseReason(CloseCodes.VIOLATED_POLICY,
+                        sm.getString("wsRemoteEndpoint.sendQueueOverflow")));
+            } catch (IOException ioe) {
+                log.debug(sm.getString("wsRemoteEndpoint.sendQueueCloseFail", wsSession.getId()), ioe);
+            }
+        }
+    }
+
+
+    int getSendQueueLength() {
+        synchronized (sendQueueLock) {
+            return sendQueue.size();
+        }
+    }
+
+
+    long getSendQueueBytes() {
+        synchronized (sendQueueLock) {
+            return sendQueueBytes;
+        }
+    }
+
+
+    /*
+     * Must be called while holding sendQueueLock.
+     */
+    private boolean hasSpace(QueuedMessage message, int maxMessages, long maxBytes) {
+        return (maxMessages < 0 || sendQueue.size() < maxMessages) &&
+                (maxBytes < 0 || sendQueueBytes + message.getLength() <= maxBytes);
+    }
+
+
+    /*
+     * Must be called while holding sendQueueLock.
+     */
+    private void enqueue(QueuedSend queued, SendQueueStatistics statistics) {
+        boolean first = sendQueue.isEmpty();
+        sendQueue.add(queued);
+        sendQueueBytes += queued.message().getLength();
+        statistics.messageQueued(queued.message().getLength(), first, sendQueueBytes);
+    }
+
+
+    /*
+     * Must be called while holding sendQueueLock.
+     */
+    private QueuedSend dequeue(SendQueueStatistics statistics) {
+        QueuedSend queued = sendQueue.poll();
+        sendQueueBytes -= queued.message().getLength();
+        statistics.messageRemoved(queued.message().getLength(), sendQueue.isEmpty());
+        return queued;
+    }
+
+
+    /*
+     * Called each time a complete message has been sent, after the SendHandler for that message (if any) has been
+     * notified. A queued message that completes inline would otherwise start the next one recursively so, if the
+     * queue is already being drained, this is a NO-OP as the draining thread checks the queue again after each write.
+     */
+    private void startQueued() {
+        synchronized (sendQueueLock) {
+            if (sendQueueDraining) {
+                return;
+            }
+            sendQueueDraining = true;
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                QueuedSend queued;
+                synchronized (sendQueueLock) {
+                    queued = sendQueue.peek();
+                    if (queued == null || sendQueueWriting || !stateMachine.tryStart(queued.message().isText())) {
+                        // Must be cleared while holding the lock so a concurrent completion is not missed
+                        sendQueueDraining = false;
+                        drained = true;
+                        return;
+                    }
+                    dequeue(wsSession.getSendQueueStatistics());
+                    sendQueueWriting = true;
+                }
+                writeQueued(queued);
+            }
+        } finally {
+            if (!drained) {
+                // A SendHandler threw an exception
+                synchronized (sendQueueLock) {
+                    sendQueueDraining = false;
+                }
+            }
+        }
+    }
+
+
+    /*
+     * Called once the SendHandler for a message from the send queue has been notified.
+     */
+    private void queuedSendComplete(boolean ok) {
+        synchronized (sendQueueLock) {
+            sendQueueWriting = false;
+        }
+        if (ok) {
+            startQueued();
+        }
+    }
+
+
+    private void writeQueued(QueuedSend queued) {
+        QueuedMessage message = queued.message();
+        SendHandler handler = new QueuedSendHandler(queued.handler(), this);
+
+        ByteBuffer payload;
+        int rsv;
+        if (transformation.getExtensionResponse() == null) {
+            // No extensions
+            payload = message.getPayload();
+            rsv = 0;
+        } else if (transformation instanceof PerMessageDeflate perMessageDeflate &&
+                perMessageDeflate.canSendPrecompressed()) {
+            if (message.getLength() == 0) {
+                // Empty messages are never compressed
+                payload = message.getPayload();
+                rsv = 0;
+            } else {
+                payload = message.getCompressedPayload(perMessageDeflate.getResources());
+                rsv = PerMessageDeflate.RSV_BITMASK;
+            }
+        } else {
+            // The message has to be transformed separately for this session
+            try {
+                startMessage(message.getOpCode(), message.getPayload(), true, handler);
+            } catch (IllegalStateException ise) {
+                handler.onResult(new SendResult(getSession(), ise));
+            }
+            return;
+        }
+
+        wsSession.updateLastActiveWrite();
+
+        List<MessagePart> messageParts = new ArrayList<>(1);
+        messageParts.add(new MessagePart(true, rsv, message.getOpCode(), payload, intermediateMessageHandler,
+                new EndMessageHandler(this, handler), -1));
+        try {
+            writeOrQueueMessageParts(messageParts);
+        } catch (IllegalStateException ise) {
+            handler.onResult(new SendResult(getSession(), ise));
+        }
+    }
+
+
     void endMessage(SendHandler handler, SendResult result) {
         boolean doWrite = false;
         MessagePart mpNext;
@@ -745,6 +1005,19 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
         // closed once so it is closed here on the output side.
         transformation.close();
         doClose();
+
+        SendQueueStatistics statistics = wsSession.getSendQueueStatistics();
+        List<QueuedSend> abandoned = new ArrayList<>();
+        synchronized (sendQueueLock) {
+            sendQueueClosed = true;
+            while (!sendQueue.isEmpty()) {
+                abandoned.add(dequeue(statistics));
+            }
+        }
+        for (QueuedSend queued : abandoned) {
+            queued.handler().onResult(
+                    new SendResult(getSession(), new IOException(sm.getString("wsRemoteEndpoint.closed"))));
+        }
     }
 
 
@@ -847,6 +1120,9 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
             if (isDone) {
                 endpoint.stateMachine.complete(isLast);
                 handler.onResult(result);
+                if (isLast) {
+                    endpoint.startQueued();
+                }
             } else if (!result.isOK()) {
                 handler.onResult(result);
             } else if (closed) {
@@ -1064,6 +1340,9 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
                 endpoint.sendMessageBlock(Constants.OPCODE_BINARY, buffer, last);
             }
             endpoint.stateMachine.complete(last);
+            if (last) {
+                endpoint.startQueued();
+            }
             buffer.clear();
         }
     }
@@ -1141,6 +1420,9 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
                 buffer.clear();
             } else {
                 endpoint.stateMachine.complete(last);
+                if (last) {
+                    endpoint.startQueued();
+                }
             }
         }
     }
@@ -1166,6 +1448,14 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
     private static class StateMachine {
         private State state = State.OPEN;
 
+        public synchronized boolean tryStart(boolean text) {
+            if (state != State.OPEN) {
+                return false;
+            }
+            state = text ? State.TEXT_FULL_WRITING : State.BINARY_FULL_WRITING;
+            return true;
+        }
+
         public synchronized void streamStart() {
             checkState(State.OPEN);
             state = State.STREAM_WRITING;
@@ -1228,17 +1518,44 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
 
 
     private record StateUpdateSendHandler(SendHandler handler,
-                                          StateMachine stateMachine) implements SendHandler {
+                                          WsRemoteEndpointImplBase endpoint) implements SendHandler {
         @Override
         public void onResult(SendResult result) {
             if (result.isOK()) {
-                stateMachine.complete(true);
+                endpoint.stateMachine.complete(true);
             }
             handler.onResult(result);
+            if (result.isOK()) {
+                endpoint.startQueued();
+            }
+        }
+    }
+
+
+    /*
+     * The next message in the send queue must not be started until the handler for this message has been notified,
+     * else completions could be reported out of order.
+     */
+    private record QueuedSendHandler(SendHandler handler,
+                                     WsRemoteEndpointImplBase endpoint) implements SendHandler {
+        @Override
+        public void onResult(SendResult result) {
+            if (result.isOK()) {
+                endpoint.stateMachine.complete(true);
+            }
+            try {
+                handler.onResult(result);
+            } finally {
+                endpoint.queuedSendComplete(result.isOK());
+            }
         }
     }
 
 
+    private record QueuedSend(QueuedMessage message, SendHandler handler) {
+    }
+
+
     private static class BlockingSendHandler implements SendHandler {
 
         private volatile SendResult sendResult = null;
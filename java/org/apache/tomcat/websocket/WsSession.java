@@ -47,6 +47,7 @@ import jakarta.websocket.MessageHandler.Partial;
 import jakarta.websocket.MessageHandler.Whole;
 import jakarta.websocket.PongMessage;
 import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
 import jakarta.websocket.SendResult;
 import jakarta.websocket.Session;
 import jakarta.websocket.WebSocketContainer;
@@ -693,6 +694,85 @@ public class WsSession implements Session {
     }
 
 
+    /**
+     * Sends a complete message via the send queue of this session. If this session is not already sending a message,
+     * and no messages are waiting in the send queue, the message is sent immediately. Otherwise, the message is added
+     * to the end of the send queue and is sent once the messages ahead of it have been sent. The space in the send
+     * queue is limited by {@link WsWebSocketContainer#getSendQueueMaxMessages()} and
+     * {@link WsWebSocketContainer#getSendQueueMaxBytes()}. If there is no space for the message,
+     * {@link WsWebSocketContainer#getSendQueueOverflowPolicy()} determines what happens. The limits and the policy may
+     * be overridden for this session with the user properties {@link Constants#SEND_QUEUE_MAX_MESSAGES_PROPERTY},
+     * {@link Constants#SEND_QUEUE_MAX_BYTES_PROPERTY} and {@link Constants#SEND_QUEUE_OVERFLOW_POLICY_PROPERTY}.
+     * <p>
+     * This method does not block waiting for the message to be sent.
+     *
+     * @param message The message to send
+     * @param handler Notified when the message has been sent or if it is not sent. May be {@code null}.
+     */
+    public void sendQueued(QueuedMessage message, SendHandler handler) {
+        SendHandler sendHandler = handler == null ? result -> {} : handler;
+        if (!isOpen()) {
+            sendHandler.onResult(new SendResult(this, new IOException(sm.getString("wsSession.closed", id))));
+            return;
+        }
+        int maxMessages = webSocketContainer.getSendQueueMaxMessages();
+        Object obj = userProperties.get(Constants.SEND_QUEUE_MAX_MESSAGES_PROPERTY);
+        if (obj instanceof Integer) {
+            maxMessages = ((Integer) obj).intValue();
+        }
+        long maxBytes = webSocketContainer.getSendQueueMaxBytes();
+        obj = userProperties.get(Constants.SEND_QUEUE_MAX_BYTES_PROPERTY);
+        if (obj instanceof Long || obj instanceof Integer) {
+            maxBytes = ((Number) obj).longValue();
+        }
+        SendQueueOverflowPolicy overflowPolicy = webSocketContainer.getSendQueueOverflowPolicy();
+        obj = userProperties.get(Constants.SEND_QUEUE_OVERFLOW_POLICY_PROPERTY);
+        if (obj instanceof SendQueueOverflowPolicy) {
+            overflowPolicy = (SendQueueOverflowPolicy) obj;
+        } else if (obj instanceof String) {
+            overflowPolicy = SendQueueOverflowPolicy.valueOf((String) obj);
+        }
+        wsRemoteEndpoint.sendQueued(message, maxMessages, maxBytes, overflowPolicy, sendHandler);
+    }
+
+
+    /**
+     * @return the number of messages currently waiting in the send queue of this session
+     */
+    public int getSendQueueLength() {
+        return wsRemoteEndpoint.getSendQueueLength();
+    }
+
+
+    /**
+     * @return the total size, in bytes, of the payloads of the messages currently waiting in the send queue of this
+     *             session
+     */
+    public long getSendQueueBytes() {
+        return wsRemoteEndpoint.getSendQueueBytes();
+    }
+
+
+    /*
+     * Complete text and binary messages sent asynchronously use the send queue if enabled for this session or, by
+     * default, for the container.
+     */
+    boolean isQueueAsyncSends() {
+        Object obj = userProperties.get(Constants.QUEUE_ASYNC_SENDS_PROPERTY);
+        if (obj instanceof Boolean) {
+            return ((Boolean) obj).booleanValue();
+        } else if (obj instanceof String) {
+            return Boolean.parseBoolean((String) obj);
+        }
+        return webSocketContainer.getQueueAsyncSends();
+    }
+
+
+    SendQueueStatistics getSendQueueStatistics() {
+        return webSocketContainer.getSendQueueStatistics();
+    }
+
+
     protected void checkCloseTimeout() {
         // Skip the check if no session close timeout has been set.
         if (sessionCloseTimeoutExpiry != null) {
@@ -96,6 +96,13 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
     private volatile long defaultMaxSessionIdleTimeout = 0;
     private int backgroundProcessCount = 0;
     private int processPeriod = Constants.DEFAULT_PROCESS_PERIOD;
+    private final PerMessageDeflateResources perMessageDeflateResources =
+            new PerMessageDeflateResources(Constants.DEFAULT_DEFLATE_POOL_SIZE);
+    private volatile int sendQueueMaxMessages = Constants.DEFAULT_SEND_QUEUE_MAX_MESSAGES;
+    private volatile long sendQueueMaxBytes = Constants.DEFAULT_SEND_QUEUE_MAX_BYTES;
+    private volatile SendQueueOverflowPolicy sendQueueOverflowPolicy = SendQueueOverflowPolicy.DROP_NEWEST;
+    private volatile boolean queueAsyncSends = false;
+    private final SendQueueStatistics sendQueueStatistics = new SendQueueStatistics();
 
     private InstanceManager instanceManager;
 
@@ -403,7 +410,7 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
             for (Extension extension : extensionsAgreed) {
                 List<List<Extension.Parameter>> wrapper = new ArrayList<>(1);
                 wrapper.add(extension.getParameters());
-                Transformation t = factory.create(extension.getName(), wrapper, false);
+                Transformation t = factory.create(extension.getName(), wrapper, false, perMessageDeflateResources);
                 if (t == null) {
                     throw new DeploymentException(sm.getString("wsWebSocketContainer.invalidExtensionParameters"));
                 }
@@ -941,6 +948,107 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
     }
 
 
+    /**
+     * @return the zlib resources shared by the permessage-deflate extension of the sessions created by this container
+     */
+    public PerMessageDeflateResources getPerMessageDeflateResources() {
+        return perMessageDeflateResources;
+    }
+
+
+    /**
+     * @return the default maximum number of messages that may be waiting in the send queue of a session. A value of
+     *             <code>-1</code> means unlimited.
+     */
+    public int getSendQueueMaxMessages() {
+        return sendQueueMaxMessages;
+    }
+
+
+    /**
+     * Set the default maximum number of messages that may be waiting in the send queue of a session. The default may
+     * be overridden for individual sessions via the session user property
+     * {@link Constants#SEND_QUEUE_MAX_MESSAGES_PROPERTY}.
+     *
+     * @param sendQueueMaxMessages The maximum number of messages. A value of <code>-1</code> means unlimited.
+     */
+    public void setSendQueueMaxMessages(int sendQueueMaxMessages) {
+        this.sendQueueMaxMessages = sendQueueMaxMessages;
+    }
+
+
+    /**
+     * @return the default maximum total size, in bytes, of the payloads of the messages that may be waiting in the
+     *             send queue of a session. A value of <code>-1</code> means unlimited.
+     */
+    public long getSendQueueMaxBytes() {
+        return sendQueueMaxBytes;
+    }
+
+
+    /**
+     * Set the default maximum total size, in bytes, of the payloads of the messages that may be waiting in the send
+     * queue of a session. The default may be overridden for individual sessions via the session user property
+     * {@link Constants#SEND_QUEUE_MAX_BYTES_PROPERTY}.
+     *
+     * @param sendQueueMaxBytes The maximum size. A value of <code>-1</code> means unlimited.
+     */
+    public void setSendQueueMaxBytes(long sendQueueMaxBytes) {
+        this.sendQueueMaxBytes = sendQueueMaxBytes;
+    }
+
+
+    /**
+     * @return the default policy applied when a message is queued for a session that does not have space for it in
+     *             its send queue
+     */
+    public SendQueueOverflowPolicy getSendQueueOverflowPolicy() {
+        return sendQueueOverflowPolicy;
+    }
+
+
+    /**
+     * Set the default policy applied when a message is queued for a session that does not have space for it in its
+     * send queue. The default may be overridden for individual sessions via the session user property
+     * {@link Constants#SEND_QUEUE_OVERFLOW_POLICY_PROPERTY}.
+     *
+     * @param sendQueueOverflowPolicy The policy
+     */
+    public void setSendQueueOverflowPolicy(SendQueueOverflowPolicy sendQueueOverflowPolicy) {
+        this.sendQueueOverflowPolicy = sendQueueOverflowPolicy;
+    }
+
+
+    /**
+     * @return {@code true} if complete text and binary messages sent asynchronously while the session is already
+     *             sending a message are added to the send queue of the session by default
+     */
+    public boolean getQueueAsyncSends() {
+        return queueAsyncSends;
+    }
+
+
+    /**
+     * Configure whether complete text and binary messages sent asynchronously while the session is already sending a
+     * message are added to the send queue of the session rather than the attempt to send failing with an
+     * {@link IllegalStateException}. The default may be overridden for individual sessions via the session user
+     * property {@link Constants#QUEUE_ASYNC_SENDS_PROPERTY}.
+     *
+     * @param queueAsyncSends {@code true} to queue asynchronous sends by default
+     */
+    public void setQueueAsyncSends(boolean queueAsyncSends) {
+        this.queueAsyncSends = queueAsyncSends;
+    }
+
+
+    /**
+     * @return the statistics for the send queues of the sessions created by this container
+     */
+    public SendQueueStatistics getSendQueueStatistics() {
+        return sendQueueStatistics;
+    }
+
+
     /**
      * {@inheritDoc} Currently, this implementation does not support any extensions.
      */
@@ -993,6 +1101,8 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
                 }
             }
         }
+
+        perMessageDeflateResources.clear();
     }
 
 
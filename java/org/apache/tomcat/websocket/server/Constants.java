@@ -23,6 +23,12 @@ public class Constants {
 
     public static final String BINARY_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.binaryBufferSize";
     public static final String TEXT_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.textBufferSize";
+    public static final String MAX_CONTEXT_TAKEOVER_SESSIONS_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.maxContextTakeoverSessions";
+    public static final String DEFLATE_POOL_SIZE_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.deflatePoolSize";
+    public static final String SEND_QUEUE_MAX_MESSAGES_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.sendQueueMaxMessages";
+    public static final String SEND_QUEUE_MAX_BYTES_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.sendQueueMaxBytes";
+    public static final String SEND_QUEUE_OVERFLOW_POLICY_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.sendQueueOverflowPolicy";
+    public static final String QUEUE_ASYNC_SENDS_SERVLET_CONTEXT_INIT_PARAM = "org.apache.tomcat.websocket.queueAsyncSends";
 
     public static final String SERVER_CONTAINER_SERVLET_CONTEXT_ATTRIBUTE = "jakarta.websocket.server.ServerContainer";
 
@@ -41,6 +41,7 @@ import jakarta.websocket.server.ServerEndpointConfig;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.security.ConcurrentMessageDigest;
 import org.apache.tomcat.websocket.Constants;
+import org.apache.tomcat.websocket.PerMessageDeflateResources;
 import org.apache.tomcat.websocket.Transformation;
 import org.apache.tomcat.websocket.TransformationFactory;
 import org.apache.tomcat.websocket.Util;
@@ -137,7 +138,8 @@ public class UpgradeUtil {
         // to this connection. Note than an extension may be dropped at this
         // point if the client has requested a configuration that the server is
         // unable to support.
-        List<Transformation> transformations = createTransformations(negotiatedExtensionsPhase1);
+        List<Transformation> transformations = createTransformations(negotiatedExtensionsPhase1,
+                sc.getPerMessageDeflateResources());
 
         List<Extension> negotiatedExtensionsPhase2;
         if (transformations.isEmpty()) {
@@ -167,60 +169,69 @@ public class UpgradeUtil {
             }
         }
 
-        // Now we have the full pipeline, validate the use of the RSV bits.
-        if (transformation != null && !transformation.validateRsvBits(0)) {
-            throw new ServletException(sm.getString("upgradeUtil.incompatibleRsv"));
-        }
+        boolean upgraded = false;
+        try {
+            // Now we have the full pipeline, validate the use of the RSV bits.
+            if (transformation != null && !transformation.validateRsvBits(0)) {
+                throw new ServletException(sm.getString("upgradeUtil.incompatibleRsv"));
+            }
 
-        // If we got this far, all is good. Accept the connection.
-        resp.setHeader(Constants.UPGRADE_HEADER_NAME, Constants.UPGRADE_HEADER_VALUE);
-        resp.setHeader(Constants.CONNECTION_HEADER_NAME, Constants.CONNECTION_HEADER_VALUE);
-        resp.setHeader(HandshakeResponse.SEC_WEBSOCKET_ACCEPT, getWebSocketAccept(key));
-        if (subProtocol != null && !subProtocol.isEmpty()) {
-            // RFC6455 4.2.2 explicitly states "" is not valid here
-            resp.setHeader(Constants.WS_PROTOCOL_HEADER_NAME, subProtocol);
-        }
-        if (!transformations.isEmpty()) {
-            resp.setHeader(Constants.WS_EXTENSIONS_HEADER_NAME, responseHeaderExtensions.toString());
-        }
+            // If we got this far, all is good. Accept the connection.
+            resp.setHeader(Constants.UPGRADE_HEADER_NAME, Constants.UPGRADE_HEADER_VALUE);
+            resp.setHeader(Constants.CONNECTION_HEADER_NAME, Constants.CONNECTION_HEADER_VALUE);
+            resp.setHeader(HandshakeResponse.SEC_WEBSOCKET_ACCEPT, getWebSocketAccept(key));
+            if (subProtocol != null && !subProtocol.isEmpty()) {
+                // RFC6455 4.2.2 explicitly states "" is not valid here
+                resp.setHeader(Constants.WS_PROTOCOL_HEADER_NAME, subProtocol);
+            }
+            if (!transformations.isEmpty()) {
+                resp.setHeader(Constants.WS_EXTENSIONS_HEADER_NAME, responseHeaderExtensions.toString());
+            }
 
-        // Add method mapping to user properties
-        if (!Endpoint.class.isAssignableFrom(sec.getEndpointClass()) && sec.getUserProperties()
-                .get(org.apache.tomcat.websocket.pojo.Constants.POJO_METHOD_MAPPING_KEY) == null) {
-            // This is a POJO endpoint and the application has called upgrade
-            // directly. Need to add the method mapping.
-            try {
-                PojoMethodMapping methodMapping = new PojoMethodMapping(sec.getEndpointClass(), sec.getDecoders(),
-                        sec.getPath(), sc.getInstanceManager(Thread.currentThread().getContextClassLoader()));
-                if (methodMapping.getOnClose() != null || methodMapping.getOnOpen() != null ||
-                        methodMapping.getOnError() != null || methodMapping.hasMessageHandlers()) {
-                    sec.getUserProperties().put(org.apache.tomcat.websocket.pojo.Constants.POJO_METHOD_MAPPING_KEY,
-                            methodMapping);
+            // Add method mapping to user properties
+            if (!Endpoint.class.isAssignableFrom(sec.getEndpointClass()) && sec.getUserProperties()
+                    .get(org.apache.tomcat.websocket.pojo.Constants.POJO_METHOD_MAPPING_KEY) == null) {
+                // This is a POJO endpoint and the application has called upgrade
+                // directly. Need to add the method mapping.
+                try {
+                    PojoMethodMapping methodMapping = new PojoMethodMapping(sec.getEndpointClass(), sec.getDecoders(),
+                            sec.getPath(), sc.getInstanceManager(Thread.currentThread().getContextClassLoader()));
+                    if (methodMapping.getOnClose() != null || methodMapping.getOnOpen() != null ||
+                            methodMapping.getOnError() != null || methodMapping.hasMessageHandlers()) {
+                        sec.getUserProperties().put(org.apache.tomcat.websocket.pojo.Constants.POJO_METHOD_MAPPING_KEY,
+                                methodMapping);
+                    }
+                } catch (DeploymentException e) {
+                    throw new ServletException(
+                            sm.getString("upgradeUtil.pojoMapFail", sec.getEndpointClass().getName()), e);
                 }
-            } catch (DeploymentException e) {
-                throw new ServletException(sm.getString("upgradeUtil.pojoMapFail", sec.getEndpointClass().getName()),
-                        e);
             }
-        }
 
-        WsPerSessionServerEndpointConfig perSessionServerEndpointConfig = new WsPerSessionServerEndpointConfig(sec);
+            WsPerSessionServerEndpointConfig perSessionServerEndpointConfig = new WsPerSessionServerEndpointConfig(sec);
+
+            WsHandshakeRequest wsRequest = new WsHandshakeRequest(req, pathParams);
+            WsHandshakeResponse wsResponse = new WsHandshakeResponse();
+            sec.getConfigurator().modifyHandshake(perSessionServerEndpointConfig, wsRequest, wsResponse);
+            wsRequest.finished();
 
-        WsHandshakeRequest wsRequest = new WsHandshakeRequest(req, pathParams);
-        WsHandshakeResponse wsResponse = new WsHandshakeResponse();
-        sec.getConfigurator().modifyHandshake(perSessionServerEndpointConfig, wsRequest, wsResponse);
-        wsRequest.finished();
+            // Add any additional headers
+            for (Entry<String, List<String>> entry : wsResponse.getHeaders().entrySet()) {
+                for (String headerValue : entry.getValue()) {
+                    resp.addHeader(entry.getKey(), headerValue);
+                }
+            }
 
-        // Add any additional headers
-        for (Entry<String, List<String>> entry : wsResponse.getHeaders().entrySet()) {
-            for (String headerValue : entry.getValue()) {
-                resp.addHeader(entry.getKey(), headerValue);
+            WsHttpUpgradeHandler wsHandler = req.upgrade(WsHttpUpgradeHandler.class);
+            wsHandler.preInit(perSessionServerEndpointConfig, sc, wsRequest, negotiatedExtensionsPhase2, subProtocol,
+                    transformation, pathParams, req.isSecure());
+            upgraded = true;
+        } finally {
+            if (!upgraded && transformation != null) {
+                // Release any resources, such as a context takeover slot, held by the transformations
+                transformation.close();
             }
         }
 
-        WsHttpUpgradeHandler wsHandler = req.upgrade(WsHttpUpgradeHandler.class);
-        wsHandler.preInit(perSessionServerEndpointConfig, sc, wsRequest, negotiatedExtensionsPhase2, subProtocol,
-                transformation, pathParams, req.isSecure());
-
     }
 
 
@@ -249,7 +260,8 @@ public class UpgradeUtil {
     }
 
 
-    private static List<Transformation> createTransformations(List<Extension> negotiatedExtensions) {
+    private static List<Transformation> createTransformations(List<Extension> negotiatedExtensions,
+            PerMessageDeflateResources perMessageDeflateResources) {
 
         TransformationFactory factory = TransformationFactory.getInstance();
 
@@ -264,7 +276,8 @@ public class UpgradeUtil {
         }
 
         for (Map.Entry<String, List<List<Extension.Parameter>>> entry : extensionPreferences.entrySet()) {
-            Transformation transformation = factory.create(entry.getKey(), entry.getValue(), true);
+            Transformation transformation = factory.create(entry.getKey(), entry.getValue(), true,
+                    perMessageDeflateResources);
             if (transformation != null) {
                 result.add(transformation);
             }
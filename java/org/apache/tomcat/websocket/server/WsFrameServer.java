@@ -44,13 +44,22 @@ public class WsFrameServer extends WsFrameBase {
 
     public WsFrameServer(SocketWrapperBase<?> socketWrapper, UpgradeInfo upgradeInfo, WsSession wsSession,
             Transformation transformation, ClassLoader applicationClassLoader) {
-        super(wsSession, transformation);
+        super(wsSession, transformation, socketWrapper.getSharedBufferPool());
         this.socketWrapper = socketWrapper;
         this.upgradeInfo = upgradeInfo;
         this.applicationClassLoader = applicationClassLoader;
     }
 
 
+    /**
+     * Called when the connection has closed and no further data will be
+     * processed.
+     */
+    void destroy() {
+        releaseBuffers();
+    }
+
+
     /**
      * Called when there is data in the ServletInputStream to process.
      *
@@ -222,6 +222,10 @@ public class WsHttpUpgradeHandler implements InternalHttpUpgradeHandler {
                 log.error(sm.getString("wsHttpUpgradeHandler.destroyFailed"), e);
             }
         }
+        WsFrameServer wsFrame = this.wsFrame;
+        if (wsFrame != null) {
+            wsFrame.destroy();
+        }
     }
 
 
@@ -18,13 +18,17 @@ package org.apache.tomcat.websocket.server;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import javax.management.ObjectName;
 import javax.naming.NamingException;
 
 import jakarta.servlet.DispatcherType;
@@ -37,13 +41,21 @@ import jakarta.websocket.CloseReason;
 import jakarta.websocket.CloseReason.CloseCodes;
 import jakarta.websocket.DeploymentException;
 import jakarta.websocket.Encoder;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerContainer;
 import jakarta.websocket.server.ServerEndpoint;
 import jakarta.websocket.server.ServerEndpointConfig;
 import jakarta.websocket.server.ServerEndpointConfig.Configurator;
 
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.InstanceManager;
+import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.websocket.QueuedMessage;
+import org.apache.tomcat.websocket.SendQueueOverflowPolicy;
 import org.apache.tomcat.websocket.WsSession;
 import org.apache.tomcat.websocket.WsWebSocketContainer;
 import org.apache.tomcat.websocket.pojo.PojoMethodMapping;
@@ -54,7 +66,10 @@ import org.apache.tomcat.websocket.pojo.PojoMethodMapping;
  * <ul>
  * <li>{@link Constants#BINARY_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM}</li>
  * <li>{@link Constants#TEXT_BUFFER_SIZE_SERVLET_CONTEXT_INIT_PARAM}</li>
+ * <li>{@link Constants#MAX_CONTEXT_TAKEOVER_SESSIONS_SERVLET_CONTEXT_INIT_PARAM}</li>
+ * <li>{@link Constants#DEFLATE_POOL_SIZE_SERVLET_CONTEXT_INIT_PARAM}</li>
  * </ul>
+ * When running in Tomcat, the zlib resources used by the permessage-deflate extension are registered with JMX.
  */
 public class WsServerContainer extends WsWebSocketContainer implements ServerContainer {
 
@@ -63,6 +78,8 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
     private static final CloseReason AUTHENTICATED_HTTP_SESSION_CLOSED = new CloseReason(CloseCodes.VIOLATED_POLICY,
             "This connection was established under an authenticated " + "HTTP session that has ended.");
 
+    private final Log log = LogFactory.getLog(WsServerContainer.class); // must not be static
+
     private final WsWriteTimeout wsWriteTimeout = new WsWriteTimeout();
 
     private final ServletContext servletContext;
@@ -71,6 +88,7 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
     private final Map<String, Set<WsSession>> authenticatedSessions = new ConcurrentHashMap<>();
     private volatile boolean endpointsRegistered = false;
     private volatile boolean deploymentFailed = false;
+    private final List<ObjectName> objectNames = new CopyOnWriteArrayList<>();
 
     WsServerContainer(ServletContext servletContext) {
 
@@ -88,6 +106,39 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
             setDefaultMaxTextMessageBufferSize(Integer.parseInt(value));
         }
 
+        value = servletContext.getInitParameter(Constants.MAX_CONTEXT_TAKEOVER_SESSIONS_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            getPerMessageDeflateResources().setMaxContextTakeoverSessions(Integer.parseInt(value));
+        }
+
+        value = servletContext.getInitParameter(Constants.DEFLATE_POOL_SIZE_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            getPerMessageDeflateResources().setMaxIdle(Integer.parseInt(value));
+        }
+
+        value = servletContext.getInitParameter(Constants.SEND_QUEUE_MAX_MESSAGES_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            setSendQueueMaxMessages(Integer.parseInt(value));
+        }
+
+        value = servletContext.getInitParameter(Constants.SEND_QUEUE_MAX_BYTES_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            setSendQueueMaxBytes(Long.parseLong(value));
+        }
+
+        value = servletContext.getInitParameter(Constants.SEND_QUEUE_OVERFLOW_POLICY_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            setSendQueueOverflowPolicy(SendQueueOverflowPolicy.valueOf(value));
+        }
+
+        value = servletContext.getInitParameter(Constants.QUEUE_ASYNC_SENDS_SERVLET_CONTEXT_INIT_PARAM);
+        if (value != null) {
+            setQueueAsyncSends(Boolean.parseBoolean(value));
+        }
+
+        registerComponent(getPerMessageDeflateResources(), "WebSocketPerMessageDeflate");
+        registerComponent(getSendQueueStatistics(), "WebSocketSendQueue");
+
         FilterRegistration.Dynamic fr = servletContext.addFilter("Tomcat WebSocket (JSR356) Filter", new WsFilter());
         if (fr != null) {
             fr.setAsyncSupported(true);
@@ -99,6 +150,36 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
     }
 
 
+    private void registerComponent(Object component, String type) {
+        // Tomcat uses <engine name>/<host name> as the virtual server name
+        String virtualServerName = servletContext.getVirtualServerName();
+        int slash = virtualServerName == null ? -1 : virtualServerName.indexOf('/');
+        if (slash == -1) {
+            return;
+        }
+        String contextPath = servletContext.getContextPath();
+        try {
+            ObjectName oname = new ObjectName(virtualServerName.substring(0, slash) +
+                    ":type=" + type + ",host=" + virtualServerName.substring(slash + 1) + ",context=" +
+                    (contextPath.isEmpty() ? "/" : contextPath));
+            Registry.getRegistry(null).registerComponent(component, oname, null);
+            objectNames.add(oname);
+        } catch (Exception e) {
+            log.warn(sm.getString("serverContainer.jmxRegistrationFail", type), e);
+        }
+    }
+
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        for (ObjectName oname : objectNames) {
+            Registry.getRegistry(null).unregisterComponent(oname);
+        }
+        objectNames.clear();
+    }
+
+
     /**
      * Published the provided endpoint implementation at the specified path with the specified configuration.
      * {@link #WsServerContainer(ServletContext)} must be called before calling this method.
@@ -392,6 +473,30 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
     }
 
 
+    /**
+     * Sends a message to each of the given sessions. The message is encoded once and, where the sessions permit it,
+     * compressed once. The same payload is then written to each session. For each session, the message is sent via the
+     * send queue of that session as described in {@link WsSession#sendQueued(QueuedMessage, SendHandler)}.
+     * <p>
+     * This method does not block waiting for messages to be sent.
+     *
+     * @param message  The message to send
+     * @param sessions The sessions to send the message to
+     * @param handler  Notified, once for each session, when the message has been sent to that session or if the message
+     *                     is not sent to that session. May be {@code null}.
+     */
+    public void broadcast(QueuedMessage message, Collection<? extends Session> sessions, SendHandler handler) {
+        for (Session session : sessions) {
+            if (session instanceof WsSession wsSession) {
+                wsSession.sendQueued(message, handler);
+            } else if (handler != null) {
+                handler.onResult(new SendResult(session,
+                        new IllegalArgumentException(sm.getString("serverContainer.broadcastInvalidSession"))));
+            }
+        }
+    }
+
+
     private static void validateEncoders(Class<? extends Encoder>[] encoders, InstanceManager instanceManager)
             throws DeploymentException {
 
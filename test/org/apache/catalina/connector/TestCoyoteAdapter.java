@@ -36,6 +36,8 @@ import org.apache.catalina.Wrapper;
 import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.RequestGroupInfo;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 
@@ -333,6 +335,40 @@ public class TestCoyoteAdapter extends TomcatBaseTest {
         Assert.assertTrue(servlet.isCompleted());
     }
 
+    @Test
+    public void testTrackAllocations() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setTrackAllocations(true);
+
+        Context ctx = getProgrammaticRootContext();
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMappingDecoded("/", "hello");
+
+        tomcat.start();
+
+        for (int i = 0; i < 3; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        RequestGroupInfo global = (RequestGroupInfo) ((AbstractProtocol<?>) tomcat.getConnector()
+                .getProtocolHandler()).getHandler().getGlobal();
+        // The allocations are recorded after the response has been sent
+        String[] histogram = global.getAllocationHistogram();
+        int count = 0;
+        while (count < 50 && (histogram.length == 0 || !histogram[0].contains("count=3,"))) {
+            Thread.sleep(100);
+            histogram = global.getAllocationHistogram();
+            count++;
+        }
+        Assert.assertEquals(1, histogram.length);
+        Assert.assertTrue(histogram[0], histogram[0].startsWith("context=[], wrapper=[hello], count=3, "));
+
+        global.resetCounters();
+        Assert.assertEquals(0, global.getAllocationHistogram().length);
+    }
+
+
     @Test
     public void testNormalize01() {
         doTestNormalize("/foo/../bar", "/bar");
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.tribes.Member;
+import org.apache.catalina.tribes.group.GroupChannel;
+import org.apache.catalina.tribes.membership.MemberImpl;
+import org.apache.catalina.tribes.tipis.AbstractReplicatedMap.MapMessage;
+import org.apache.catalina.tribes.tipis.LazyReplicatedMap;
+import org.apache.tomcat.unittest.TesterContext;
+
+public class TestBackupManager {
+
+    private static final String MAP_NAME = "TestBackupManager";
+
+    private Member otherMember;
+    private TesterBackupManager manager;
+    private LazyReplicatedMap<String,Session> map;
+
+
+    @Before
+    public void setUp() throws Exception {
+        otherMember = new MemberImpl("localhost", 4001, 0);
+        manager = new TesterBackupManager();
+        manager.setContext(new TesterContext());
+        map = new LazyReplicatedMap<>(manager, new GroupChannel(), 5000, MAP_NAME, null);
+        manager.setSessionMap(map);
+    }
+
+
+    @After
+    public void tearDown() {
+        map.breakdown();
+    }
+
+
+    @Test
+    public void testBackupNotMadePrimary() throws Exception {
+        DeltaSession backup = new DeltaSession();
+        backup.setValid(true);
+        backup.setMaxInactiveInterval(1800, false);
+        backup.setId("backup", false);
+        receive(MapMessage.MSG_BACKUP, "backup", backup);
+        Assert.assertTrue(map.getInternal("backup").isBackup());
+
+        // Replicated change of the maximum inactive interval
+        DeltaRequest request = new DeltaRequest("backup", false);
+        request.setMaxInactiveInterval(1);
+        request.execute(backup, false);
+        Assert.assertEquals(1, backup.getMaxInactiveInterval());
+
+        Thread.sleep(2100);
+        manager.processExpires();
+
+        Assert.assertTrue(map.getInternal("backup").isBackup());
+        Assert.assertFalse(map.getInternal("backup").isPrimary());
+        Assert.assertEquals(0, manager.getExpiredSessions());
+    }
+
+
+    @Test
+    public void testMovedPrimaryNotExpired() throws Exception {
+        Session session = manager.createSession("moved");
+        session.setMaxInactiveInterval(1);
+        Assert.assertTrue(map.getInternal("moved").isPrimary());
+
+        // Another node has become the primary node for the session
+        receive(MapMessage.MSG_PROXY, "moved", null);
+        Assert.assertTrue(map.getInternal("moved").isProxy());
+
+        Thread.sleep(2100);
+        manager.processExpires();
+
+        Assert.assertNotNull(map.getInternal("moved"));
+        Assert.assertTrue(map.getInternal("moved").isProxy());
+        Assert.assertEquals(0, manager.getExpiredSessions());
+    }
+
+
+    private void receive(int type, String key, Serializable value) {
+        MapMessage msg = new MapMessage(MAP_NAME.getBytes(StandardCharsets.ISO_8859_1), type, false, key, value,
+                null, otherMember, new Member[0]);
+        map.messageReceived(msg, otherMember);
+    }
+
+
+    private static class TesterBackupManager extends BackupManager {
+
+        void setSessionMap(LazyReplicatedMap<String,Session> map) {
+            sessions = map;
+        }
+    }
+}
@@ -25,6 +25,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.catalina.Manager;
+import org.apache.catalina.session.CompactSessionSerializer;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.catalina.session.StandardManager;
 import org.apache.tomcat.unittest.TesterContext;
 
@@ -70,4 +72,36 @@ public class TestDeltaRequest {
         Assert.assertEquals("One", copySession.getAttribute("A"));
         Assert.assertEquals("Two", copySession.getAttribute("B"));
     }
+
+
+    @Test
+    public void testSerializationCompact() throws Exception {
+        DeltaRequest original = new DeltaRequest();
+        original.setSessionId("1234");
+        original.setAttribute("A", "One");
+        original.setAttribute("B", Integer.valueOf(2));
+        original.setMaxInactiveInterval(60);
+
+        SessionSerializer serializer = new CompactSessionSerializer();
+        byte[] bytes = original.serialize(serializer);
+
+        DeltaRequest copyRequest = new DeltaRequest();
+        try (ObjectInputStream ois =
+                serializer.createObjectInputStream(new ByteArrayInputStream(bytes), ObjectInputStream::new)) {
+            copyRequest.readExternal(ois);
+        }
+        Assert.assertEquals("1234", copyRequest.getSessionId());
+
+        DeltaSession copySession = new DeltaSession();
+        Manager manager = new StandardManager();
+        manager.setContext(new TesterContext());
+        copySession.setManager(manager);
+        copySession.setId("1234", false);
+        copySession.setValid(true);
+        copyRequest.execute(copySession, false);
+
+        Assert.assertEquals("One", copySession.getAttribute("A"));
+        Assert.assertEquals(Integer.valueOf(2), copySession.getAttribute("B"));
+        Assert.assertEquals(60, copySession.getMaxInactiveInterval());
+    }
 }
@@ -16,9 +16,18 @@
  */
 package org.apache.catalina.mapper;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
 import org.apache.tomcat.util.buf.MessageBytes;
 
 /*
@@ -70,4 +79,83 @@ public class TestMapperPerformance extends TestMapper {
         return time;
     }
 
+
+    /*
+     * Models a REST framework that registers a servlet per endpoint. The time to map should not depend significantly
+     * on the number of servlet mappings.
+     */
+    @Test
+    public void testPerformanceManyWrappers() throws Exception {
+        // Takes ~0.3s for 10k mappings on a typical laptop. If this takes more than 5s something probably needs
+        // looking at.
+        final long maxTime = 5000;
+        long timeFew = testPerformanceManyWrappersImpl(10);
+        long timeMany = testPerformanceManyWrappersImpl(10000);
+        log.info("Mappings [10], Time [" + timeFew + "]ms, Mappings [10000], Time [" + timeMany + "]ms");
+        if (timeMany >= maxTime) {
+            // Rerun to reject occasional failures, e.g. because of gc
+            log.warn("testPerformanceManyWrappers() test completed in " + timeMany + " ms");
+            timeMany = testPerformanceManyWrappersImpl(10000);
+            log.warn("testPerformanceManyWrappers() test rerun completed in " + timeMany + " ms");
+        }
+        Assert.assertTrue(String.valueOf(timeMany), timeMany < maxTime);
+    }
+
+    private long testPerformanceManyWrappersImpl(int count) throws Exception {
+        Mapper mapper = new Mapper();
+        Host host = new StandardHost();
+        host.setName("api.example.org");
+        mapper.addHost("api.example.org", new String[0], host);
+
+        List<WrapperMappingInfo> wrappers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            wrappers.add(new WrapperMappingInfo("/v1/customers/orders/resource" + i + "/items",
+                    createWrapper("exact" + i), false, false));
+            if (i % 10 == 0) {
+                wrappers.add(new WrapperMappingInfo("/v2/customers/orders/resource" + i + "/*",
+                        createWrapper("prefix" + i), false, false));
+            }
+        }
+        wrappers.add(new WrapperMappingInfo("*.json", createWrapper("json"), false, false));
+        wrappers.add(new WrapperMappingInfo("/", createWrapper("default"), false, false));
+
+        Context context = new StandardContext();
+        context.setName("api");
+        mapper.addContextVersion("api.example.org", host, "/api", "0", context, new String[0], null, wrappers);
+
+        int middle = (count / 20) * 10;
+        String[] uris = new String[] { "/api/v1/customers/orders/resource" + middle + "/items",
+                "/api/v2/customers/orders/resource" + middle + "/items/42", "/api/v3/schema/customer.json",
+                "/api/v3/unmapped" };
+        String[] expected = new String[] { "exact" + middle, "prefix" + middle, "json", "default" };
+
+        MappingData mappingData = new MappingData();
+        MessageBytes hostMB = MessageBytes.newInstance();
+        hostMB.setString("api.example.org");
+        MessageBytes[] uriMBs = new MessageBytes[uris.length];
+        for (int i = 0; i < uris.length; i++) {
+            uriMBs[i] = MessageBytes.newInstance();
+            uriMBs[i].setString(uris[i]);
+            uriMBs[i].toChars();
+            uriMBs[i].getCharChunk().setLimit(-1);
+            mappingData.recycle();
+            mapper.map(hostMB, uriMBs[i], null, mappingData);
+            Assert.assertEquals(expected[i], mappingData.wrapper.getName());
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 250000; i++) {
+            for (MessageBytes uri : uriMBs) {
+                mappingData.recycle();
+                mapper.map(hostMB, uri, null, mappingData);
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static Wrapper createWrapper(String name) {
+        Wrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
 }
@@ -21,6 +21,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
@@ -183,6 +184,98 @@ public class TestDefaultServlet extends TomcatBaseTest {
         Assert.assertTrue(responseHeaders.contains("vary: accept-encoding"));
     }
 
+    /*
+     * Verify compression of resources on demand when no precompressed version is provided.
+     */
+    @Test
+    public void testPrecompressedCache() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "precompressedCache");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        File css = new File(appDir, "test.css");
+        writeCss(css, 1000);
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.addInitParameter("precompressed", "gzip=.gz");
+        defaultServlet.addInitParameter("precompressedCacheSize", "1024");
+        ctxt.addServletMappingDecoded("/", "default");
+
+        ctxt.addMimeMapping("css", "text/css");
+
+        tomcat.start();
+
+        // Ensure changes to the resource are seen immediately
+        ctxt.getResources().setCachingAllowed(false);
+
+        // The first request triggers compression
+        List<String> responseHeaders = requestCss();
+        Assert.assertFalse(responseHeaders.contains("Content-Encoding: gzip"));
+        Assert.assertTrue(responseHeaders.contains("Content-Length: " + css.length()));
+        Assert.assertTrue(responseHeaders.contains("vary: accept-encoding"));
+
+        long compressedLength = waitForCompressedCss(css);
+
+        // Changes to the resource invalidate the compressed version
+        writeCss(css, 2000);
+        Assert.assertTrue(css.setLastModified(css.lastModified() + 10000));
+        responseHeaders = requestCss();
+        Assert.assertFalse(responseHeaders.contains("Content-Encoding: gzip"));
+        Assert.assertTrue(responseHeaders.contains("Content-Length: " + css.length()));
+
+        Assert.assertNotEquals(compressedLength, waitForCompressedCss(css));
+    }
+
+
+    private static void writeCss(File css, int rules) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(css), StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < rules; i++) {
+                w.write(".rule" + i + " { margin: 0; padding: " + i + "px; }\n");
+            }
+        }
+    }
+
+
+    private long waitForCompressedCss(File css) throws Exception {
+        int count = 0;
+        while (count < 100) {
+            List<String> responseHeaders = requestCss();
+            if (responseHeaders.contains("Content-Encoding: gzip")) {
+                for (String header : responseHeaders) {
+                    if (header.startsWith("Content-Length: ")) {
+                        long compressedLength = Long.parseLong(header.substring(16));
+                        Assert.assertTrue(compressedLength < css.length());
+                        return compressedLength;
+                    }
+                }
+                Assert.fail("No content length");
+            }
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.fail("Resource was not compressed");
+        return -1;
+    }
+
+
+    private List<String> requestCss() throws Exception {
+        TestCompressedClient client = new TestCompressedClient(getPort());
+        client.setRequest(new String[] {
+                "GET /test.css HTTP/1.1" + CRLF +
+                "Host: localhost" + CRLF +
+                "Connection: Close" + CRLF +
+                "Accept-Encoding: gzip" + CRLF + CRLF });
+        client.connect();
+        client.processRequest();
+        Assert.assertTrue(client.isResponse200());
+        return client.getResponseHeaders();
+    }
+
+
     /*
      * Verify serving of brotli compressed resources from context root.
      */
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.WriteAbortedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.core.StandardContext;
+
+public class TestCompactSessionSerializer {
+
+    private static final Manager TEST_MANAGER;
+
+    static {
+        TEST_MANAGER = new StandardManager();
+        TEST_MANAGER.setContext(new StandardContext());
+    }
+
+
+    @Test
+    public void testValues() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        serializer.addCodec(new PointCodec());
+
+        String longString = "x".repeat(10000);
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        Object[] values = new Object[] { null, Boolean.TRUE, Boolean.FALSE, "", "name", "name", "caf\u00e9 \u20ac \0",
+                "\ud800", longString, longString, Integer.valueOf(0), Integer.valueOf(-1),
+                Integer.valueOf(Integer.MIN_VALUE), Integer.valueOf(Integer.MAX_VALUE), Long.valueOf(Long.MIN_VALUE),
+                Long.valueOf(System.currentTimeMillis()), Short.valueOf((short) -300), Byte.valueOf((byte) -1),
+                Character.valueOf('\uffff'), Float.valueOf(1.5f), Double.valueOf(Double.NaN), new Point(1, -2),
+                new Point(3, 4), list, list };
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            for (Object value : values) {
+                oos.writeObject(value);
+            }
+            oos.writeObject(new byte[] { 1, 2, 3 });
+            oos.writeInt(42);
+            oos.writeUTF("utf");
+            oos.writeBoolean(true);
+        }
+
+        try (ObjectInputStream ois = createObjectInputStream(serializer, bos.toByteArray())) {
+            Object list1 = null;
+            for (Object value : values) {
+                Object result = ois.readObject();
+                Assert.assertEquals(value, result);
+                if (value == list) {
+                    if (list1 == null) {
+                        list1 = result;
+                    } else {
+                        // The Java serialization stream is shared so references are preserved
+                        Assert.assertSame(list1, result);
+                    }
+                }
+            }
+            Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) ois.readObject());
+            Assert.assertEquals(42, ois.readInt());
+            Assert.assertEquals("utf", ois.readUTF());
+            Assert.assertTrue(ois.readBoolean());
+        }
+    }
+
+
+    @Test
+    public void testSession() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        serializer.addCodec(new PointCodec());
+
+        StandardSession s1 = new StandardSession(TEST_MANAGER);
+        s1.setValid(true);
+        s1.setId("0123456789ABCDEF0123456789ABCDEF", false);
+        s1.setAttribute("string", "value");
+        s1.setAttribute("count", Integer.valueOf(5));
+        s1.setAttribute("point", new Point(10, 20));
+        s1.setAttribute("map", new HashMap<>(Map.of("key", "value")));
+        Map<String,Object> nonSerializable = new HashMap<>();
+        nonSerializable.put("key", new Object());
+        s1.setAttribute("nonSerializable", nonSerializable);
+
+        byte[] compact = write(serializer, s1);
+
+        StandardSession s2 = new StandardSession(TEST_MANAGER);
+        try (ObjectInputStream ois = createObjectInputStream(serializer, compact)) {
+            s2.readObjectData(ois);
+        }
+
+        Assert.assertEquals(s1.getIdInternal(), s2.getIdInternal());
+        Assert.assertEquals(s1.getCreationTimeInternal(), s2.getCreationTimeInternal());
+        Assert.assertEquals("value", s2.getAttribute("string"));
+        Assert.assertEquals(Integer.valueOf(5), s2.getAttribute("count"));
+        Assert.assertEquals(new Point(10, 20), s2.getAttribute("point"));
+        Assert.assertEquals(Map.of("key", "value"), s2.getAttribute("map"));
+        Assert.assertNull(s2.getAttribute("nonSerializable"));
+
+        StandardSession s3 = new StandardSession(TEST_MANAGER);
+        s3.setValid(true);
+        s3.setId("0123456789ABCDEF0123456789ABCDEF", false);
+        s3.setAttribute("string", "value");
+        s3.setAttribute("count", Integer.valueOf(5));
+        byte[] java = write(new JavaSessionSerializer(), s3);
+        compact = write(serializer, s3);
+        Assert.assertTrue("Compact [" + compact.length + "] Java [" + java.length + "]",
+                compact.length < java.length / 2);
+    }
+
+
+    @Test
+    public void testReadJavaSerialization() throws Exception {
+        StandardSession s1 = new StandardSession(TEST_MANAGER);
+        s1.setValid(true);
+        s1.setAttribute("string", "value");
+
+        byte[] java = write(new JavaSessionSerializer(), s1);
+
+        StandardSession s2 = new StandardSession(TEST_MANAGER);
+        try (ObjectInputStream ois = createObjectInputStream(new CompactSessionSerializer(), java)) {
+            s2.readObjectData(ois);
+        }
+        Assert.assertEquals("value", s2.getAttribute("string"));
+    }
+
+
+    @Test
+    public void testNotSerializable() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            oos.writeObject(new ArrayList<>(List.of("a")));
+            try {
+                oos.writeObject(new ArrayList<>(List.of(new Object())));
+                Assert.fail();
+            } catch (NotSerializableException expected) {
+                // Expected
+            }
+            oos.writeObject(new ArrayList<>(List.of("b")));
+        }
+
+        try (ObjectInputStream ois = createObjectInputStream(serializer, bos.toByteArray())) {
+            Assert.assertEquals(List.of("a"), ois.readObject());
+            try {
+                ois.readObject();
+                Assert.fail();
+            } catch (WriteAbortedException expected) {
+                // Expected
+            }
+            Assert.assertEquals(List.of("b"), ois.readObject());
+        }
+    }
+
+
+    @Test(expected = InvalidClassException.class)
+    public void testMissingCodec() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        serializer.addCodec(new PointCodec());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            oos.writeObject(new Point(1, 2));
+        }
+
+        try (ObjectInputStream ois = createObjectInputStream(new CompactSessionSerializer(), bos.toByteArray())) {
+            ois.readObject();
+        }
+    }
+
+
+    @Test(expected = EOFException.class)
+    public void testLengthLongerThanInput() throws Exception {
+        // Header, byte array tag and a length of 0x7FFFFFFF with no data following
+        byte[] data = new byte[] { 0x54, 0x43, 0x01, 0x0C, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+
+        try (ObjectInputStream ois = createObjectInputStream(new CompactSessionSerializer(), data)) {
+            ois.readObject();
+        }
+    }
+
+
+    @Test
+    public void testMaxLength() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        serializer.setMaxLength(16);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            oos.writeObject(new byte[16]);
+            oos.writeObject(new byte[17]);
+        }
+
+        try (ObjectInputStream ois = createObjectInputStream(serializer, bos.toByteArray())) {
+            Assert.assertEquals(16, ((byte[]) ois.readObject()).length);
+            try {
+                ois.readObject();
+                Assert.fail();
+            } catch (StreamCorruptedException expected) {
+                // Expected
+            }
+        }
+    }
+
+
+    private static byte[] write(SessionSerializer serializer, StandardSession session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = serializer.createObjectOutputStream(bos)) {
+            session.writeObjectData(oos);
+        }
+        return bos.toByteArray();
+    }
+
+
+    private static ObjectInputStream createObjectInputStream(SessionSerializer serializer, byte[] data)
+            throws IOException {
+        return serializer.createObjectInputStream(new ByteArrayInputStream(data), ObjectInputStream::new);
+    }
+
+
+    private record Point(int x, int y) implements Serializable {
+    }
+
+
+    private static class PointCodec implements SessionAttributeCodec<Point> {
+
+        @Override
+        public Class<Point> getType() {
+            return Point.class;
+        }
+
+        @Override
+        public void write(ObjectOutput out, Point value) throws IOException {
+            out.writeInt(value.x());
+            out.writeInt(value.y());
+        }
+
+        @Override
+        public Point read(ObjectInput in) throws IOException {
+            return new Point(in.readInt(), in.readInt());
+        }
+    }
+}
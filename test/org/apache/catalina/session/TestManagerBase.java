@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Session;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterHost;
+
+public class TestManagerBase {
+
+    private final AtomicInteger validityChecks = new AtomicInteger();
+    private StandardManager manager;
+
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new StandardManager() {
+            @Override
+            protected StandardSession getNewSession() {
+                return new StandardSession(this) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public boolean isValid() {
+                        validityChecks.incrementAndGet();
+                        return super.isValid();
+                    }
+                };
+            }
+        };
+        manager.setPathname(null);
+
+        Host host = new TesterHost();
+        Context context = new TesterContext();
+        context.setParent(host);
+        manager.setContext(context);
+
+        manager.start();
+    }
+
+
+    @After
+    public void tearDown() throws Exception {
+        manager.stop();
+    }
+
+
+    @Test
+    public void testOnlyDueSessionsChecked() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            manager.createSession("long" + i).setMaxInactiveInterval(3600);
+        }
+        // Reducing the interval moves the expiry time earlier
+        Session shortSession = manager.createSession("short");
+        shortSession.setMaxInactiveInterval(3600);
+        shortSession.setMaxInactiveInterval(1);
+
+        Thread.sleep(2100);
+        validityChecks.set(0);
+        manager.processExpires();
+
+        Assert.assertNull(manager.findSession("short"));
+        Assert.assertEquals(1000, manager.getActiveSessions());
+        Assert.assertEquals(1, validityChecks.get());
+    }
+
+
+    @Test
+    public void testAccessedSessionReindexed() throws Exception {
+        Session session = manager.createSession("accessed");
+        session.setMaxInactiveInterval(2);
+
+        Thread.sleep(1000);
+        session.access();
+        session.endAccess();
+
+        // Past the original expiry time but not the new one
+        Thread.sleep(1500);
+        manager.processExpires();
+        Assert.assertSame(session, manager.findSession("accessed"));
+
+        // Past the new expiry time
+        Thread.sleep(1100);
+        manager.processExpires();
+        Assert.assertNull(manager.findSession("accessed"));
+    }
+
+
+    @Test
+    public void testSessionsNotIndexedIgnored() throws Exception {
+        StandardSession session = manager.getNewSession();
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.id = "direct";
+        manager.sessions.put(session.getIdInternal(), session);
+        // Changing the interval of a session that was not added via add() must not index it
+        session.setMaxInactiveInterval(1);
+
+        Thread.sleep(2100);
+        validityChecks.set(0);
+        manager.processExpires();
+        Assert.assertEquals(0, validityChecks.get());
+        Assert.assertSame(session, manager.findSession("direct"));
+    }
+
+
+    @Test
+    public void testRemovedSessionNotRescheduled() throws Exception {
+        Session session = manager.createSession("removed");
+        manager.remove(session);
+        session.setMaxInactiveInterval(1);
+
+        Thread.sleep(2100);
+        validityChecks.set(0);
+        manager.processExpires();
+        Assert.assertEquals(0, validityChecks.get());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Session;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterHost;
+
+public class TestOffHeapStore {
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        OffHeapStore store = new OffHeapStore();
+        store.setSpillFile("");
+        PersistentManager manager = createManager(store);
+        manager.start();
+        try {
+            Session session = manager.createSession(null);
+            String id = session.getIdInternal();
+            session.getSession().setAttribute("name", "value");
+
+            store.save(session);
+            Assert.assertEquals(1, store.getSize());
+            Assert.assertEquals(id, store.keys()[0]);
+            Assert.assertTrue(store.getOffHeapUsed() > 0);
+            Assert.assertEquals(0, store.getSpillUsed());
+
+            Session loaded = store.load(id);
+            Assert.assertEquals(id, loaded.getIdInternal());
+            Assert.assertEquals("value", loaded.getSession().getAttribute("name"));
+            Assert.assertEquals(1, store.getMemoryLoadCount());
+            Assert.assertEquals(1.0, store.getHitRatio(), 0.0);
+
+            Assert.assertNull(store.load("unknown"));
+            Assert.assertEquals(1, store.getMissCount());
+
+            store.remove(id);
+            Assert.assertEquals(0, store.getSize());
+            Assert.assertEquals(0, store.getOffHeapUsed());
+            Assert.assertNull(store.load(id));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    @Test
+    public void testSpill() throws Exception {
+        File spillFile = File.createTempFile("TestOffHeapStore", ".spill");
+        OffHeapStore store = new OffHeapStore();
+        store.setBlockSize(1024);
+        store.setMaxOffHeapSize(4096);
+        store.setSpillFile(spillFile.getAbsolutePath());
+        store.setMaxSpillSize(4096);
+        PersistentManager manager = createManager(store);
+        manager.start();
+        try {
+            // Each session needs four blocks
+            Session session1 = createSession(manager, 1);
+            Session session2 = createSession(manager, 2);
+            Session session3 = createSession(manager, 3);
+
+            store.save(session1);
+            Assert.assertEquals(4096, store.getOffHeapUsed());
+            Assert.assertEquals(0, store.getSpillUsed());
+
+            store.save(session2);
+            Assert.assertEquals(4096, store.getOffHeapUsed());
+            Assert.assertEquals(4096, store.getSpillUsed());
+            Assert.assertEquals(4096, spillFile.length());
+
+            try {
+                store.save(session3);
+                Assert.fail();
+            } catch (IOException expected) {
+                // Both the memory and the spill file are full
+            }
+            Assert.assertEquals(2, store.getSize());
+
+            Session loaded = store.load(session2.getIdInternal());
+            Assert.assertArrayEquals(attributeValue(2), (byte[]) loaded.getSession().getAttribute("data"));
+            Assert.assertEquals(1, store.getSpillLoadCount());
+            Assert.assertEquals(0.0, store.getHitRatio(), 0.0);
+
+            // Removing a session frees its blocks for reuse
+            store.remove(session1.getIdInternal());
+            Assert.assertEquals(0, store.getOffHeapUsed());
+            store.save(session3);
+            Assert.assertEquals(4096, store.getOffHeapUsed());
+
+            loaded = store.load(session3.getIdInternal());
+            Assert.assertArrayEquals(attributeValue(3), (byte[]) loaded.getSession().getAttribute("data"));
+            Assert.assertEquals(0.5, store.getHitRatio(), 0.0);
+        } finally {
+            manager.stop();
+        }
+        Assert.assertFalse(spillFile.exists());
+    }
+
+
+    @Test
+    public void testFailedSaveRetainsPreviousCopy() throws Exception {
+        OffHeapStore store = new OffHeapStore();
+        store.setBlockSize(1024);
+        store.setMaxOffHeapSize(4096);
+        store.setSpillFile("");
+        PersistentManager manager = createManager(store);
+        manager.start();
+        try {
+            // The session needs four blocks so the store is full
+            Session session = createSession(manager, 1);
+            store.save(session);
+            Assert.assertEquals(4096, store.getOffHeapUsed());
+
+            session.getSession().setAttribute("data", attributeValue(2));
+            try {
+                store.save(session);
+                Assert.fail();
+            } catch (IOException expected) {
+                // No space for the new copy
+            }
+            Assert.assertEquals(1, store.getSize());
+            Assert.assertEquals(4096, store.getOffHeapUsed());
+
+            Session loaded = store.load(session.getIdInternal());
+            Assert.assertArrayEquals(attributeValue(1), (byte[]) loaded.getSession().getAttribute("data"));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    @Test
+    public void testExpiredKeys() throws Exception {
+        OffHeapStore store = new OffHeapStore();
+        store.setSpillFile("");
+        PersistentManager manager = createManager(store);
+        manager.start();
+        try {
+            StandardSession expired = (StandardSession) manager.createSession(null);
+            expired.setMaxInactiveInterval(1);
+            expired.thisAccessedTime = System.currentTimeMillis() - 2000;
+            StandardSession active = (StandardSession) manager.createSession(null);
+
+            store.save(expired);
+            store.save(active);
+
+            Assert.assertEquals(Arrays.asList(expired.getIdInternal()), Arrays.asList(store.expiredKeys()));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    private static PersistentManager createManager(OffHeapStore store) {
+        PersistentManager manager = new PersistentManager();
+        manager.setStore(store);
+
+        Host host = new TesterHost();
+        Context context = new TesterContext();
+        context.setParent(host);
+
+        manager.setContext(context);
+        return manager;
+    }
+
+
+    private static Session createSession(PersistentManager manager, int seed) {
+        Session session = manager.createSession(null);
+        session.getSession().setAttribute("data", attributeValue(seed));
+        return session;
+    }
+
+
+    private static byte[] attributeValue(int seed) {
+        byte[] value = new byte[3500];
+        Arrays.fill(value, (byte) seed);
+        return value;
+    }
+}
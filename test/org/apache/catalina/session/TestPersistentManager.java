@@ -16,6 +16,7 @@
  */
 package org.apache.catalina.session;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -71,6 +72,38 @@ public class TestPersistentManager {
         Assert.assertEquals(3, manager.getActiveSessionsFull());
     }
 
+    @Test
+    public void testMaxActiveSwapsLeastRecentlyUsed() throws Exception {
+        PersistentManager manager = new PersistentManager();
+        TesterStore store = new TesterStore();
+        manager.setStore(store);
+
+        Host host = new TesterHost();
+        Context context = new TesterContext();
+        context.setParent(host);
+
+        manager.setContext(context);
+
+        manager.setMaxActiveSessions(2);
+        manager.setMinIdleSwap(0);
+
+        manager.start();
+
+        Session session1 = manager.createSession(null);
+        String id1 = session1.getIdInternal();
+        String id2 = manager.createSession(null).getIdInternal();
+
+        // Make the first session the most recently used
+        Thread.sleep(50);
+        session1.access();
+        session1.endAccess();
+
+        manager.processPersistenceChecks();
+        Assert.assertTrue(manager.isLoaded(id1));
+        Assert.assertFalse(manager.isLoaded(id2));
+        Assert.assertEquals(List.of(id2), store.getSavedIds());
+    }
+
     @Test
     public void testBug62175() throws Exception {
         PersistentManager manager = new PersistentManager();
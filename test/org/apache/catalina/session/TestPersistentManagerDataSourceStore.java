@@ -19,6 +19,8 @@ package org.apache.catalina.session;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -144,6 +146,70 @@ public class TestPersistentManagerDataSourceStore extends TomcatBaseTest {
         store.clear();
     }
 
+    @Test
+    public void testDSStoreWriteBehind() throws Exception {
+        // Setup Tomcat instance
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        ctx.setDistributable(true);
+
+        Tomcat.addServlet(ctx, "DummyServlet", new DummyServlet());
+        ctx.addServletMappingDecoded("/dummy", "DummyServlet");
+
+        PersistentManager manager = new PersistentManager();
+        DerbyDataSourceStore store = new DerbyDataSourceStore("writebehind");
+        store.setSessionTable("tomcatsessions");
+        store.setWriteBehind(true);
+        // Only write the queue when explicitly flushed
+        store.setWriteBehindInterval(3600000);
+
+        manager.setStore(store);
+        ctx.setManager(manager);
+        tomcat.start();
+
+        Session session1 = manager.createSession(null);
+        Session session2 = manager.createSession(null);
+        store.save(session1);
+        store.save(session2);
+        store.save(session1);
+
+        // Queued changes are coalesced and visible before they are written
+        Assert.assertEquals(2, store.getWriteBehindQueueSize());
+        Assert.assertEquals(0, countRows(store));
+        Assert.assertEquals(session1.getIdInternal(), store.load(session1.getIdInternal()).getIdInternal());
+
+        store.flush();
+        Assert.assertEquals(0, store.getWriteBehindQueueSize());
+        Assert.assertEquals(2, countRows(store));
+
+        store.remove(session2.getIdInternal());
+        Assert.assertNull(store.load(session2.getIdInternal()));
+        Assert.assertEquals(2, countRows(store));
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals(1, countRows(store));
+
+        // A full queue is written on the calling thread
+        store.setWriteBehindMaxQueueSize(0);
+        store.save(session2);
+        Assert.assertEquals(0, store.getWriteBehindQueueSize());
+        Assert.assertEquals(2, countRows(store));
+
+        store.clear();
+    }
+
+    private static int countRows(DerbyDataSourceStore store) throws SQLException {
+        Connection connection = store.getConnection();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM tomcatsessions")) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            store.release(connection);
+        }
+    }
+
     private static class DummyServlet extends HttpServlet {
 
         private static final long serialVersionUID = -3696433049266123995L;
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Session;
+import org.apache.catalina.startup.ExpandWar;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterHost;
+
+public class TestSegmentFileStore {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("TestSegmentFileStore").toFile();
+    }
+
+
+    @After
+    public void deleteDirectory() {
+        ExpandWar.delete(directory);
+    }
+
+
+    @Test
+    public void testRestart() throws Exception {
+        PersistentManager manager = createManager(1024 * 1024);
+        manager.start();
+        String id1 = createSession(manager, "one").getIdInternal();
+        String id2 = createSession(manager, "two").getIdInternal();
+        String id3 = createSession(manager, "three").getIdInternal();
+        for (Session session : manager.findSessions()) {
+            manager.swapOut(session);
+        }
+        manager.getStore().remove(id2);
+
+        // Replace the saved copy of the first session
+        Session session = manager.findSession(id1);
+        session.getSession().setAttribute("name", "updated");
+        manager.swapOut(session);
+        manager.stop();
+
+        manager = createManager(1024 * 1024);
+        manager.start();
+        try {
+            Set<String> expected = new HashSet<>(Arrays.asList(id1, id3));
+            Assert.assertEquals(expected, new HashSet<>(Arrays.asList(manager.getStore().keys())));
+            Assert.assertEquals("updated", manager.findSession(id1).getSession().getAttribute("name"));
+            Assert.assertEquals("three", manager.findSession(id3).getSession().getAttribute("name"));
+            Assert.assertNull(manager.findSession(id2));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    @Test
+    public void testCompaction() throws Exception {
+        PersistentManager manager = createManager(4096);
+        manager.start();
+        SegmentFileStore store = (SegmentFileStore) manager.getStore();
+        String id1 = createSession(manager, "one").getIdInternal();
+        String id2 = createSession(manager, "two").getIdInternal();
+
+        // Save each session repeatedly so most records are replaced
+        for (int i = 0; i < 20; i++) {
+            for (Session session : manager.findSessions()) {
+                session.getSession().setAttribute("count", Integer.valueOf(i));
+                session.getSession().setAttribute("padding", new byte[500]);
+                store.save(session);
+            }
+        }
+        manager.findSession(id2).expire();
+        int segmentCount = store.getSegmentCount();
+        Assert.assertTrue(segmentCount > 2);
+
+        store.processExpires();
+        Assert.assertTrue(store.getSegmentCount() < segmentCount);
+        Assert.assertEquals(19, ((StandardSession) store.load(id1)).getAttribute("count"));
+
+        manager.stop();
+
+        manager = createManager(4096);
+        manager.start();
+        try {
+            store = (SegmentFileStore) manager.getStore();
+            Assert.assertEquals(Arrays.asList(id1), Arrays.asList(store.keys()));
+            Assert.assertEquals(19, ((StandardSession) store.load(id1)).getAttribute("count"));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+        PersistentManager manager = createManager(1024 * 1024);
+        manager.start();
+        String id = createSession(manager, "one").getIdInternal();
+        manager.stop();
+
+        // Simulate a record that was only partly written
+        File[] segments = directory.listFiles();
+        Assert.assertEquals(1, segments.length);
+        long length = segments[0].length();
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            raf.seek(length);
+            raf.writeInt(1000);
+            raf.write(new byte[10]);
+        }
+
+        manager = createManager(1024 * 1024);
+        manager.start();
+        try {
+            Assert.assertEquals(length, segments[0].length());
+            Assert.assertEquals("one", manager.findSession(id).getSession().getAttribute("name"));
+        } finally {
+            manager.stop();
+        }
+    }
+
+
+    private PersistentManager createManager(int segmentSize) {
+        SegmentFileStore store = new SegmentFileStore();
+        store.setDirectory(directory.getAbsolutePath());
+        store.setSegmentSize(segmentSize);
+
+        PersistentManager manager = new PersistentManager();
+        manager.setStore(store);
+
+        Host host = new TesterHost();
+        Context context = new TesterContext();
+        context.setParent(host);
+
+        manager.setContext(context);
+        return manager;
+    }
+
+
+    private static Session createSession(PersistentManager manager, String name) {
+        Session session = manager.createSession(null);
+        session.getSession().setAttribute("name", name);
+        return session;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.compression.ContentCoding;
+import org.apache.tomcat.util.http.compression.GzipContentCoding;
+import org.apache.tomcat.util.http.compression.TesterContentCoding;
+
+public class TestCompressionConfigContentCodings {
+
+    private static final String TESTER = TesterContentCoding.class.getName();
+
+
+    @Test
+    public void testDefault() {
+        doTest(null, "br, zstd, gzip", GzipContentCoding.NAME);
+    }
+
+
+    @Test
+    public void testConfiguredOrderBreaksTies() {
+        doTest(TESTER + ",gzip", "gzip, " + TesterContentCoding.NAME, TesterContentCoding.NAME);
+        doTest("gzip," + TESTER, "gzip, " + TesterContentCoding.NAME, GzipContentCoding.NAME);
+    }
+
+
+    @Test
+    public void testQualityBeatsConfiguredOrder() {
+        doTest(TESTER + ",gzip", "gzip, " + TesterContentCoding.NAME + ";q=0.5", GzipContentCoding.NAME);
+    }
+
+
+    @Test
+    public void testNotAcceptable() {
+        doTest(TESTER, "gzip", null);
+        doTest("gzip", TesterContentCoding.NAME, null);
+    }
+
+
+    @Test
+    public void testUnavailableIgnored() {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        compressionConfig.setCompressionEncodings("org.apache.coyote.NoSuchContentCoding, gzip");
+        Assert.assertEquals(1, compressionConfig.getContentCodings().length);
+        Assert.assertTrue(compressionConfig.getContentCodings()[0] instanceof GzipContentCoding);
+    }
+
+
+    @Test
+    public void testTransferEncodingRequiresGzip() {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        compressionConfig.setCompression("force");
+        compressionConfig.setCompressionEncodings(TESTER);
+
+        Request request = new Request();
+        Response response = new Response();
+        request.getMimeHeaders().addValue("TE").setString("gzip");
+
+        Assert.assertNull(compressionConfig.negotiateCompression(request, response));
+        Assert.assertNull(response.getMimeHeaders().getHeader("Transfer-Encoding"));
+    }
+
+
+    private void doTest(String compressionEncodings, String acceptEncoding, String expected) {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        // Skip length and MIME type checks
+        compressionConfig.setCompression("force");
+        if (compressionEncodings != null) {
+            compressionConfig.setCompressionEncodings(compressionEncodings);
+        }
+
+        Request request = new Request();
+        Response response = new Response();
+        request.getMimeHeaders().addValue("accept-encoding").setString(acceptEncoding);
+
+        ContentCoding contentCoding = compressionConfig.negotiateCompression(request, response);
+        if (expected == null) {
+            Assert.assertNull(contentCoding);
+            Assert.assertNull(response.getMimeHeaders().getHeader("Content-Encoding"));
+        } else {
+            Assert.assertNotNull(contentCoding);
+            Assert.assertEquals(expected, contentCoding.getName());
+            Assert.assertEquals(expected, response.getMimeHeaders().getHeader("Content-Encoding"));
+        }
+    }
+}
@@ -106,7 +106,14 @@ public class TestHttp11InputBufferCRLF extends TomcatBaseTest {
         addRequestWithSplits("GET /test HTTP/1.1" + CR + "Host: localhost:8080" + CR + "Connection: close" + CR + CR,
                 Boolean.FALSE, Boolean.FALSE, parameterSets);
 
-        return parameterSets;
+        // Test each request with both the byte by byte and the bulk parsing
+        List<Object[]> result = new ArrayList<>();
+        for (Object[] parameterSet : parameterSets) {
+            for (Boolean useSwarScanning : booleans) {
+                result.add(new Object[] { parameterSet[0], parameterSet[1], parameterSet[2], useSwarScanning });
+            }
+        }
+        return result;
     }
 
 
@@ -148,6 +155,9 @@ public class TestHttp11InputBufferCRLF extends TomcatBaseTest {
     @Parameter(2)
     public boolean valid;
 
+    @Parameter(3)
+    public boolean useSwarScanning;
+
 
     @Test
     public void testBug54947() {
@@ -178,6 +188,7 @@ public class TestHttp11InputBufferCRLF extends TomcatBaseTest {
         private Exception doRequest() {
 
             Tomcat tomcat = getTomcatInstance();
+            Assert.assertTrue(tomcat.getConnector().setProperty("useSwarScanning", Boolean.toString(useSwarScanning)));
 
             Context root = tomcat.addContext("", TEMP_DIR);
             Tomcat.addServlet(root, "TesterServlet", new TesterServlet());
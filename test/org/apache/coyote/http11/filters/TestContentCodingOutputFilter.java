@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.coyote.Response;
+import org.apache.tomcat.util.http.compression.GzipContentCoding;
+
+public class TestContentCodingOutputFilter {
+
+    @Test
+    public void testCompression() throws Exception {
+        Response res = new Response();
+        TesterOutputBuffer tob = new TesterOutputBuffer(res, 8 * 1024);
+        res.setOutputBuffer(tob);
+
+        ContentCodingOutputFilter filter = new ContentCodingOutputFilter(new GzipContentCoding());
+        tob.addFilter(filter);
+        tob.addActiveFilter(filter);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("Content coding ").append(i).append('\n');
+        }
+        byte[] body = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        tob.doWrite(ByteBuffer.wrap(body, 0, 100));
+        tob.flush();
+        // The data written so far must have been compressed and written
+        Assert.assertTrue(tob.toByteArray().length > 0);
+
+        tob.doWrite(ByteBuffer.wrap(body, 100, body.length - 100));
+        tob.end();
+
+        byte[] compressed = tob.toByteArray();
+        Assert.assertTrue(compressed.length < body.length);
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(body, gis.readAllBytes());
+        }
+    }
+
+
+    @Test
+    public void testRecycleIncompleteResponse() throws Exception {
+        Response res = new Response();
+        TesterOutputBuffer tob = new TesterOutputBuffer(res, 8 * 1024);
+        res.setOutputBuffer(tob);
+
+        ContentCodingOutputFilter filter = new ContentCodingOutputFilter(new GzipContentCoding());
+        tob.addFilter(filter);
+        tob.addActiveFilter(filter);
+
+        tob.doWrite(ByteBuffer.wrap("Incomplete".getBytes(StandardCharsets.ISO_8859_1)));
+        tob.flush();
+        int written = tob.toByteArray().length;
+
+        filter.recycle();
+
+        // Nothing further is written when the compression stream is released
+        Assert.assertEquals(written, tob.toByteArray().length);
+        Assert.assertNull(filter.compressionStream);
+    }
+}
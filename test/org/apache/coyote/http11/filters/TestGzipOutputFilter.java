@@ -16,14 +16,24 @@
  */
 package org.apache.coyote.http11.filters;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.coyote.CompressedBodyCache;
+import org.apache.coyote.CompressionConfig;
+import org.apache.coyote.Request;
 import org.apache.coyote.Response;
+import org.apache.tomcat.util.buf.DeflaterPool;
 
 /**
  * Test case to demonstrate the interaction between gzip and flushing in the
@@ -81,4 +91,138 @@ public class TestGzipOutputFilter {
         // most of the data should have been flushed out
         Assert.assertTrue(dataFound.length >= (dataExpected.length - 20));
     }
+
+
+    @Test
+    public void testPooledDeflater() throws Exception {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        compressionConfig.setCompressionGzipLevel(9);
+        GzipOutputFilter gf = new GzipOutputFilter(compressionConfig);
+
+        // The Deflater is returned to the pool and reused for the later responses
+        for (int i = 0; i < 3; i++) {
+            byte[] body = createBody("{\"response\":" + i + "}", 200);
+            byte[] compressed = compress(gf, null, body);
+            Assert.assertArrayEquals(body, decompress(compressed));
+            gf.recycle();
+        }
+    }
+
+
+    @Test
+    public void testDeflaterPoolSize() throws Exception {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        DeflaterPool pool = compressionConfig.getDeflaterPool();
+        Assert.assertEquals(compressionConfig.getDefaultCompressionGzipPoolSize(), pool.getMaxIdle());
+
+        compressionConfig.setCompressionGzipPoolSize(1);
+        Assert.assertEquals(1, pool.getMaxIdle());
+
+        Deflater d1 = pool.lease();
+        Deflater d2 = pool.lease();
+        pool.release(d1);
+        pool.release(d2);
+        Assert.assertEquals(1, pool.getIdleCount());
+        pool.clear();
+    }
+
+
+    @Test
+    public void testCompressedBodyCache() throws Exception {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        compressionConfig.setCompressionCacheSize(64 * 1024);
+        CompressedBodyCache cache = compressionConfig.getCompressedBodyCache();
+        GzipOutputFilter gf = new GzipOutputFilter(compressionConfig);
+        byte[] body = createBody("{\"config\":true}", 500);
+
+        byte[] first = compress(gf, "W/\"1\"", body);
+        gf.recycle();
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(first.length, cache.getSize());
+
+        byte[] second = compress(gf, "W/\"1\"", body);
+        gf.recycle();
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertArrayEquals(first, second);
+
+        // Same ETag but a different body must not use the cached body
+        byte[] otherBody = createBody("{\"config\":false}", 500);
+        byte[] third = compress(gf, "W/\"1\"", otherBody);
+        gf.recycle();
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertArrayEquals(otherBody, decompress(third));
+
+        // Longer body with the same ETag
+        byte[] longerBody = createBody("{\"config\":false}", 600);
+        byte[] fourth = compress(gf, "W/\"1\"", longerBody);
+        gf.recycle();
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertArrayEquals(longerBody, decompress(fourth));
+    }
+
+
+    @Test
+    public void testCompressedBodyCacheScope() throws Exception {
+        CompressionConfig compressionConfig = new CompressionConfig();
+        compressionConfig.setCompressionCacheSize(64 * 1024);
+        CompressedBodyCache cache = compressionConfig.getCompressedBodyCache();
+        GzipOutputFilter gf = new GzipOutputFilter(compressionConfig);
+        byte[] body = createBody("{\"config\":true}", 500);
+
+        compress(gf, "localhost", "/app/a", "\"1\"", body);
+        gf.recycle();
+        compress(gf, "localhost", "/app/b", "\"1\"", body);
+        gf.recycle();
+        compress(gf, "example.org", "/app/a", "\"1\"", body);
+        gf.recycle();
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+
+        compress(gf, "example.org", "/app/a", "\"1\"", body);
+        gf.recycle();
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+
+    private static byte[] compress(GzipOutputFilter gf, String eTag, byte[] body) throws IOException {
+        return compress(gf, "localhost", "/test", eTag, body);
+    }
+
+
+    private static byte[] compress(GzipOutputFilter gf, String host, String uri, String eTag, byte[] body)
+            throws IOException {
+        Request req = new Request();
+        req.serverName().setString(host);
+        req.requestURI().setString(uri);
+        Response res = new Response();
+        res.setRequest(req);
+        if (eTag != null) {
+            res.setHeader("ETag", eTag);
+        }
+        TesterOutputBuffer tob = new TesterOutputBuffer(res, 8 * 1024);
+        res.setOutputBuffer(tob);
+        tob.addFilter(gf);
+        tob.addActiveFilter(gf);
+
+        // Write the body in several parts
+        int half = body.length / 2;
+        tob.doWrite(ByteBuffer.wrap(body, 0, half));
+        tob.doWrite(ByteBuffer.wrap(body, half, body.length - half));
+        gf.end();
+        return tob.toByteArray();
+    }
+
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return is.readAllBytes();
+        }
+    }
+
+
+    private static byte[] createBody(String value, int repeat) {
+        return value.repeat(repeat).getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -17,6 +17,7 @@
 package org.apache.coyote.http2;
 
 import java.nio.ByteBuffer;
+import java.util.Locale;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -70,6 +71,78 @@ public class TestHpack {
         Assert.assertEquals("value2", headers2.getHeader("header2"));
     }
 
+    @Test
+    public void testEncodeRepeatedResponse() throws Exception {
+        MimeHeaders headers = new MimeHeaders();
+        headers.setValue(":status").setString("200");
+        headers.setValue("Content-Type").setString("application/json");
+        headers.setValue("Cache-Control").setString("no-store");
+        headers.setValue("Vary").setString("Accept-Encoding");
+        headers.setValue("Date").setString("Sat, 17 Oct 2026 10:00:00 GMT");
+        headers.setValue("Content-Length").setString("348");
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        ByteBuffer output = ByteBuffer.allocate(512);
+
+        encoder.encode(headers, output);
+        output.flip();
+        int firstSize = output.remaining();
+        MimeHeaders headers2 = new MimeHeaders();
+        decoder.setHeaderEmitter(new HeadersListener(headers2));
+        decoder.decode(output);
+
+        output.clear();
+        encoder.encode(headers, output);
+        output.flip();
+        byte[] second = new byte[output.remaining()];
+        output.get(second);
+        output.clear();
+        encoder.encode(headers, output);
+        output.flip();
+        byte[] third = new byte[output.remaining()];
+        output.get(third);
+
+        // The first four fields are now fully indexed (one byte each) and the never indexed date and length are copied
+        // from the previous response
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(0x80, second[i] & 0x80);
+        }
+        Assert.assertTrue(second.length < firstSize);
+        Assert.assertArrayEquals(second, third);
+
+        headers2.recycle();
+        decoder.decode(ByteBuffer.wrap(third));
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.getName(i).toString();
+            Assert.assertEquals(headers.getHeader(name), headers2.getHeader(name.toLowerCase(Locale.ENGLISH)));
+        }
+    }
+
+    @Test
+    public void testVolatileHeaderNotIndexed() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        ByteBuffer output = ByteBuffer.allocate(512);
+        for (int i = 0; i < 8; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue("x-request-id").setString("3f2b8c1e-7d4a-4e9b-9c6f-" + i);
+            output.clear();
+            encoder.encode(headers, output);
+            output.flip();
+            if (i < 4) {
+                // Literal with incremental indexing
+                Assert.assertEquals(0x40, output.get(0) & 0xC0);
+            } else {
+                // Values are never reused so stop indexing them
+                Assert.assertEquals(0x10, output.get(0) & 0xF0);
+            }
+            MimeHeaders headers2 = new MimeHeaders();
+            decoder.setHeaderEmitter(new HeadersListener(headers2));
+            decoder.decode(output);
+            Assert.assertEquals(headers.getHeader("x-request-id"), headers2.getHeader("x-request-id"));
+        }
+    }
+
     private static class HeadersListener implements HpackDecoder.HeaderEmitter {
         private final MimeHeaders headers;
 
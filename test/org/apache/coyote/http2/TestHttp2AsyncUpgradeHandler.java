@@ -0,0 +1,142 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import jakarta.servlet.ServletConnection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.tomcat.util.net.SocketWrapperBase;
+import org.apache.tomcat.util.net.SocketWrapperBase.BlockingMode;
+import org.apache.tomcat.util.net.SocketWrapperBase.CompletionState;
+import org.easymock.EasyMock;
+
+public class TestHttp2AsyncUpgradeHandler {
+
+    private ScheduledExecutorService executor;
+    private Http2Protocol protocol;
+    private TesterAsyncUpgradeHandler handler;
+
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        protocol = new Http2Protocol();
+        // Long enough that the frames below are all added before the delay passes
+        protocol.setWriteCoalescingDelay(1000);
+
+        SocketWrapperBase<?> socketWrapper = EasyMock.createNiceMock(SocketWrapperBase.class);
+        EasyMock.expect(socketWrapper.getServletConnection(EasyMock.anyString(), EasyMock.anyString()))
+                .andReturn(EasyMock.createNiceMock(ServletConnection.class)).anyTimes();
+        EasyMock.replay(socketWrapper);
+
+        handler = new TesterAsyncUpgradeHandler(protocol, socketWrapper, executor);
+    }
+
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        for (int streamId = 1; streamId < 20; streamId += 2) {
+            handler.writeWindowSizeIncrease(streamId, 1024);
+        }
+        Assert.assertEquals(0, handler.writes.size());
+
+        // All ten frames are written in a single network write once the delay has passed
+        int count = 0;
+        while (handler.writes.isEmpty() && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals(1, handler.writes.size());
+        Assert.assertEquals(Integer.valueOf(10 * 13), handler.writes.poll());
+    }
+
+
+    @Test
+    public void testWriteCoalescingSize() throws Exception {
+        protocol.setWriteCoalescingSize(32);
+
+        // The third frame does not fit so the first two are written
+        handler.writeWindowSizeIncrease(1, 1024);
+        handler.writeWindowSizeIncrease(3, 1024);
+        handler.writeWindowSizeIncrease(5, 1024);
+
+        Assert.assertEquals(1, handler.writes.size());
+        Assert.assertEquals(Integer.valueOf(2 * 13), handler.writes.poll());
+    }
+
+
+    @Test
+    public void testWriteCoalescingOrder() throws Exception {
+        handler.writeWindowSizeIncrease(1, 1024);
+        handler.writeWindowSizeIncrease(3, 1024);
+        // Settings acknowledgements are never coalesced but must follow the pending frames
+        handler.settingsEnd(false);
+
+        Assert.assertEquals(2, handler.writes.size());
+        Assert.assertEquals(Integer.valueOf(2 * 13), handler.writes.poll());
+        Assert.assertEquals(Integer.valueOf(9), handler.writes.poll());
+    }
+
+
+    private static class TesterAsyncUpgradeHandler extends Http2AsyncUpgradeHandler {
+
+        private final ScheduledExecutorService executor;
+        private final Queue<Integer> writes = new ConcurrentLinkedQueue<>();
+
+        TesterAsyncUpgradeHandler(Http2Protocol protocol, SocketWrapperBase<?> socketWrapper,
+                ScheduledExecutorService executor) {
+            super(protocol, null, null, socketWrapper);
+            this.executor = executor;
+        }
+
+        @Override
+        protected ScheduledExecutorService getUtilityExecutor() {
+            return executor;
+        }
+
+        @Override
+        CompletionState write(BlockingMode blockingMode, CompletionHandler<Long,Void> completion,
+                ByteBuffer... buffers) {
+            int len = 0;
+            for (ByteBuffer buffer : buffers) {
+                len += buffer.remaining();
+                buffer.position(buffer.limit());
+            }
+            writes.add(Integer.valueOf(len));
+            completion.completed(Long.valueOf(len), null);
+            return CompletionState.DONE;
+        }
+    }
+}
@@ -16,8 +16,15 @@
  */
 package org.apache.coyote.http2;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -65,6 +72,82 @@ public class TestHttp2UpgradeHandler extends Http2TestBase {
     }
 
 
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        enableHttp2();
+        http2Protocol.setWriteCoalescingDelay(50);
+        configureAndStartWebApplication();
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+
+        // Responses are smaller than the coalescing size so they are only written once the delay has passed
+        for (int streamId = 3; streamId < 9; streamId += 2) {
+            sendSimpleGetRequest(streamId);
+            readSimpleGetResponse();
+            Assert.assertEquals(getSimpleResponseTrace(streamId), output.getTrace());
+            output.clearTrace();
+        }
+    }
+
+
+    @Test
+    public void testReceiveWindowAutoTuning() throws Exception {
+        enableHttp2();
+        http2Protocol.setMaxReceiveWindowSize(1024 * 1024);
+
+        CountDownLatch readLatch = new CountDownLatch(1);
+        Context ctxt = getProgrammaticRootContext();
+        Tomcat.addServlet(ctxt, "simple", new SimpleServlet());
+        ctxt.addServletMappingDecoded("/simple", "simple");
+        Tomcat.addServlet(ctxt, "delayedRead", new DelayedReadServlet(readLatch));
+        ctxt.addServletMappingDecoded("/delayedRead", "delayedRead");
+        getTomcatInstance().start();
+
+        openClientConnection();
+        doHttpUpgrade();
+        sendClientPreface();
+        validateHttp2InitialResponse();
+        output.setTraceBody(true);
+
+        byte[] headersFrameHeader = new byte[9];
+        ByteBuffer headersPayload = ByteBuffer.allocate(128);
+        byte[] dataFrameHeader = new byte[9];
+        ByteBuffer dataPayload = ByteBuffer.allocate(128);
+        buildPostRequest(headersFrameHeader, headersPayload, false, null, -1, "/delayedRead", dataFrameHeader,
+                dataPayload, null, false, 3);
+        writeFrame(headersFrameHeader, headersPayload);
+
+        // Fill the default window. The servlet does not read so the window is not replenished.
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16383]);
+
+        // The client is limited by the window so both windows are increased to twice the data sent in the round trip
+        parser.readFrame();
+        parser.readFrame();
+        parser.readFrame();
+        Assert.assertEquals("0-Ping-[0,0,0,0,0,0,0,2]\n" + "0-WindowSize-[65535]\n" + "3-WindowSize-[65535]\n",
+                output.getTrace());
+        output.clearTrace();
+
+        // Without auto-tuning this would exceed the window
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16384]);
+        sendData(3, new byte[16383 - dataPayload.limit()]);
+        writeFrame(dataFrameHeader, dataPayload);
+        readLatch.countDown();
+
+        while (!output.getTrace().contains("3-EndOfStream")) {
+            parser.readFrame();
+        }
+        Assert.assertTrue(output.getTrace(), output.getTrace().contains("3-Body-131070\n"));
+    }
+
+
     @Test
     public void testUpgradeWithRequestBodyGet() throws Exception {
         doTestUpgradeWithRequestBody(false, false, false);
@@ -217,4 +300,35 @@ public class TestHttp2UpgradeHandler extends Http2TestBase {
             dataFramePayload.clear();
         }
     }
+
+
+    private static class DelayedReadServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CountDownLatch readLatch;
+
+        DelayedReadServlet(CountDownLatch readLatch) {
+            this.readLatch = readLatch;
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            try {
+                readLatch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            long total = 0;
+            byte[] buffer = new byte[8192];
+            try (InputStream is = req.getInputStream()) {
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    total += read;
+                }
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().print(total);
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRfc9218StreamScheduler {
+
+    @Test
+    public void testUrgentStreamOvertakesLargeDownload() {
+        StreamScheduler scheduler = new Rfc9218StreamScheduler();
+        // Large download at the default priority
+        TesterStream download = new TesterStream(1, 3, false, 1024 * 1024);
+        // Page critical CSS at a higher priority that arrives later
+        TesterStream css = new TesterStream(3, 0, false, 2048);
+        scheduler.add(download);
+        scheduler.add(css);
+
+        List<StreamScheduler.ScheduledStream> allocated = new ArrayList<>();
+        Assert.assertEquals(0, scheduler.allocate(4096, allocated::add));
+
+        Assert.assertEquals(2048, css.allocated);
+        Assert.assertEquals(2048, download.allocated);
+        Assert.assertEquals(css, allocated.get(0));
+        Assert.assertFalse(scheduler.isEmpty());
+    }
+
+
+    @Test
+    public void testNonIncrementalInStreamIdOrder() {
+        StreamScheduler scheduler = new Rfc9218StreamScheduler();
+        TesterStream s5 = new TesterStream(5, 3, false, 1000);
+        TesterStream s3 = new TesterStream(3, 3, false, 1000);
+        scheduler.add(s5);
+        scheduler.add(s3);
+
+        scheduler.allocate(1500, s -> {});
+
+        Assert.assertEquals(1000, s3.allocated);
+        Assert.assertEquals(500, s5.allocated);
+    }
+
+
+    @Test
+    public void testIncrementalRoundRobin() {
+        StreamScheduler scheduler = new Rfc9218StreamScheduler();
+        TesterStream s1 = new TesterStream(1, 3, true, 3000);
+        TesterStream s3 = new TesterStream(3, 3, true, 1000);
+        scheduler.add(s1);
+        scheduler.add(s3);
+
+        // Shared in proportion to the outstanding requests
+        scheduler.allocate(400, s -> {});
+        Assert.assertEquals(300, s1.allocated);
+        Assert.assertEquals(100, s3.allocated);
+
+        // Capacity too small to share goes to each stream in turn
+        scheduler.allocate(1, s -> {});
+        scheduler.allocate(1, s -> {});
+        Assert.assertEquals(301, s1.allocated);
+        Assert.assertEquals(101, s3.allocated);
+    }
+
+
+    @Test
+    public void testUnusedCapacityReturned() {
+        StreamScheduler scheduler = new Rfc9218StreamScheduler();
+        TesterStream s1 = new TesterStream(1, 7, true, 100);
+        TesterStream s3 = new TesterStream(3, 0, false, 100);
+        scheduler.add(s1);
+        scheduler.add(s3);
+
+        Assert.assertEquals(800, scheduler.allocate(1000, s -> {}));
+        Assert.assertTrue(scheduler.isEmpty());
+    }
+
+
+    @Test
+    public void testPriorityUpdate() {
+        StreamScheduler scheduler = new Rfc9218StreamScheduler();
+        TesterStream s1 = new TesterStream(1, 3, false, 1000);
+        TesterStream s3 = new TesterStream(3, 3, false, 1000);
+        scheduler.add(s1);
+        scheduler.add(s3);
+
+        s3.urgency = 1;
+        scheduler.update(s3);
+        scheduler.allocate(1000, s -> {});
+
+        Assert.assertEquals(0, s1.allocated);
+        Assert.assertEquals(1000, s3.allocated);
+    }
+
+
+    private static class TesterStream implements StreamScheduler.ScheduledStream {
+
+        private final int id;
+        private int urgency;
+        private final boolean incremental;
+        private int requested;
+        private int allocated;
+
+        TesterStream(int id, int urgency, boolean incremental, int requested) {
+            this.id = id;
+            this.urgency = urgency;
+            this.incremental = incremental;
+            this.requested = requested;
+        }
+
+        @Override
+        public int getIdAsInt() {
+            return id;
+        }
+
+        @Override
+        public int getUrgency() {
+            return urgency;
+        }
+
+        @Override
+        public boolean getIncremental() {
+            return incremental;
+        }
+
+        @Override
+        public int getConnectionAllocationRequested() {
+            return requested;
+        }
+
+        @Override
+        public int allocate(int allocation) {
+            int result = Math.min(allocation, requested);
+            requested -= result;
+            allocated += result;
+            return result;
+        }
+    }
+}
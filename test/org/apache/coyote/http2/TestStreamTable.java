@@ -0,0 +1,120 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStreamTable {
+
+    @Test
+    public void testPutAndGet() {
+        StreamTable table = new StreamTable();
+        for (int id = 1; id < 2000; id += 2) {
+            table.put(createStream(id));
+        }
+        Assert.assertEquals(1000, table.size());
+        for (int id = 1; id < 2000; id += 2) {
+            Assert.assertEquals(id, table.get(id).getIdAsInt());
+            Assert.assertNull(table.get(id + 1));
+        }
+    }
+
+
+    @Test
+    public void testReplace() {
+        StreamTable table = new StreamTable();
+        table.put(createStream(1));
+        table.put(createStream(3));
+        AbstractNonZeroStream replacement = createStream(3);
+        table.put(replacement);
+
+        Assert.assertEquals(2, table.size());
+        Assert.assertSame(replacement, table.get(3));
+        Assert.assertEquals(2, table.values().size());
+    }
+
+
+    @Test
+    public void testValuesInIdOrder() {
+        StreamTable table = new StreamTable();
+        table.put(createStream(5));
+        table.put(createStream(1));
+        table.put(createStream(9));
+        table.put(createStream(3));
+
+        List<Integer> ids = new ArrayList<>();
+        for (AbstractNonZeroStream stream : table.values()) {
+            ids.add(Integer.valueOf(stream.getIdAsInt()));
+        }
+        Assert.assertEquals(List.of(Integer.valueOf(1), Integer.valueOf(3), Integer.valueOf(5), Integer.valueOf(9)),
+                ids);
+    }
+
+
+    @Test
+    public void testPruneOldestFirst() {
+        StreamTable table = new StreamTable();
+        for (int id = 1; id <= 19; id += 2) {
+            table.put(createStream(id));
+        }
+
+        List<Integer> pruned = new ArrayList<>();
+        // Stream 3 may not be pruned
+        int count = table.prune(3, stream -> stream.getIdAsInt() != 3,
+                stream -> pruned.add(Integer.valueOf(stream.getIdAsInt())));
+
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(List.of(Integer.valueOf(1), Integer.valueOf(5), Integer.valueOf(7)), pruned);
+        Assert.assertEquals(7, table.size());
+        Assert.assertNull(table.get(1));
+        Assert.assertNotNull(table.get(3));
+        Assert.assertNull(table.get(7));
+        Assert.assertNotNull(table.get(9));
+    }
+
+
+    @Test
+    public void testChurn() {
+        StreamTable table = new StreamTable();
+        int next = 1;
+        for (int i = 0; i < 100; i++) {
+            table.put(createStream(next));
+            next += 2;
+        }
+        // Add and prune many more streams than the table holds at any time
+        for (int i = 0; i < 10000; i++) {
+            table.put(createStream(next));
+            Assert.assertEquals(1, table.prune(1, stream -> true, stream -> {}));
+            next += 2;
+        }
+        Assert.assertEquals(100, table.size());
+        for (int id = next - 200; id < next; id += 2) {
+            Assert.assertNotNull(table.get(id));
+        }
+        Assert.assertNull(table.get(next - 202));
+    }
+
+
+    private static AbstractNonZeroStream createStream(int id) {
+        String streamId = Integer.toString(id);
+        return new RecycledStream("0", Integer.valueOf(id), new StreamStateMachine("0", streamId), 0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteBufferPool {
+
+    @Test
+    public void testSizeClasses() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        Assert.assertEquals(ByteBufferPool.MIN_SIZE_CLASS, pool.lease(0, false).capacity());
+        Assert.assertEquals(ByteBufferPool.MIN_SIZE_CLASS, pool.lease(1, false).capacity());
+        Assert.assertEquals(8192, pool.lease(8192, false).capacity());
+        Assert.assertEquals(16384, pool.lease(8193, false).capacity());
+        Assert.assertEquals(ByteBufferPool.MAX_SIZE_CLASS, pool.lease(ByteBufferPool.MAX_SIZE_CLASS, false).capacity());
+        // Too large to be pooled
+        Assert.assertEquals(ByteBufferPool.MAX_SIZE_CLASS + 1,
+                pool.lease(ByteBufferPool.MAX_SIZE_CLASS + 1, false).capacity());
+    }
+
+
+    @Test
+    public void testReuseHeap() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        ByteBuffer b1 = pool.lease(8192, false);
+        b1.put((byte) 1);
+        pool.release(b1);
+        Assert.assertEquals(8192, pool.getPooledBytes());
+
+        ByteBuffer b2 = pool.lease(5000, false);
+        Assert.assertSame(b1, b2);
+        Assert.assertEquals(0, b2.position());
+        Assert.assertEquals(b2.capacity(), b2.limit());
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(1, pool.getAllocationCount());
+        Assert.assertEquals(2, pool.getLeaseCount());
+    }
+
+
+    @Test
+    public void testDirectSlab() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        ByteBuffer b1 = pool.lease(8192, true);
+        Assert.assertTrue(b1.isDirect());
+        Assert.assertEquals(8192, b1.capacity());
+        // The rest of the slab is retained by the pool
+        Assert.assertEquals(ByteBufferPool.SLAB_SIZE - 8192, pool.getPooledBytes());
+
+        int count = ByteBufferPool.SLAB_SIZE / 8192;
+        for (int i = 1; i < count; i++) {
+            Assert.assertTrue(pool.lease(8192, true).isDirect());
+        }
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(1, pool.getAllocationCount());
+    }
+
+
+    @Test
+    public void testDirectNoSlabWhenLimited() {
+        ByteBufferPool pool = new ByteBufferPool(8192);
+        ByteBuffer b1 = pool.lease(8192, true);
+        Assert.assertTrue(b1.isDirect());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testLimit() {
+        ByteBufferPool pool = new ByteBufferPool(16384);
+        ByteBuffer b1 = pool.lease(8192, false);
+        ByteBuffer b2 = pool.lease(8192, false);
+        ByteBuffer b3 = pool.lease(8192, false);
+        pool.release(b1);
+        pool.release(b2);
+        pool.release(b3);
+        Assert.assertEquals(16384, pool.getPooledBytes());
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testReleaseIgnoresForeignBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        pool.release(null);
+        pool.release(ByteBuffer.allocate(1000));
+        pool.release(ByteBuffer.allocate(ByteBufferPool.MAX_SIZE_CLASS * 2));
+        pool.release(ByteBuffer.allocate(8192).asReadOnlyBuffer());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A content coding that does not compress. Used to test the selection of content codings.
+ */
+public class TesterContentCoding implements ContentCoding {
+
+    public static final String NAME = "x-tester";
+
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    @Override
+    public int getDefaultLevel() {
+        return 0;
+    }
+
+
+    @Override
+    public int getMaxLevel() {
+        return 0;
+    }
+
+
+    @Override
+    public OutputStream createOutputStream(OutputStream out, int level) throws IOException {
+        return out;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderDataSource;
+import org.apache.tomcat.util.http.parser.HttpHeaderParser.HeaderParseStatus;
+
+/*
+ * Checks that the bulk (SWAR) scanning produces exactly the same results as
+ * the byte by byte parsing, however the data is split across reads.
+ */
+@RunWith(Parameterized.class)
+public class TestHttpHeaderParser {
+
+    @Parameterized.Parameters(name = "{index}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameterSets = new ArrayList<>();
+
+        parameterSets.add(new Object[] { "Host: localhost:8080\r\n" +
+                "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n" +
+                "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+                "Accept-Language: en-GB,en;q=0.5\r\n" + "Accept-Encoding: gzip, deflate, br, zstd\r\n" +
+                "Connection: keep-alive\r\n" + "Cookie: JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark\r\n" +
+                "Upgrade-Insecure-Requests: 1\r\n" + "\r\n" });
+        // Trailing whitespace, HT in a value and empty values
+        parameterSets.add(new Object[] { "X-A: a b  \r\nX-B:\tc\td\t\r\nX-C:\r\nX-DDDDDDDDDDDDDDDD:   \r\n\r\n" });
+        // Folded header values
+        parameterSets.add(new Object[] { "X-Folded: first part of the value\r\n   second part of the value  \r\n" +
+                "\tthird part\r\nX-Next: next\r\n\r\n" });
+        // obs-text in a value and LF line terminators
+        parameterSets.add(new Object[] { "X-Obs: caf\u00e9 cr\u00e8me br\u00fbl\u00e9e\nX-Lf: lf\n\n" });
+        // Invalid header names
+        parameterSets.add(new Object[] { "X-Valid: a\r\nX-In valid: b\r\n\r\n" });
+        parameterSets.add(new Object[] { "X-Valid-Long-Header-Name: a\r\nX-Invalid-Long-Header(Name: b\r\n\r\n" });
+        parameterSets.add(new Object[] { ": no name\r\n\r\n" });
+        // Invalid header values
+        parameterSets.add(new Object[] { "X-Ctl: some value with a \u0001 control character\r\n\r\n" });
+        parameterSets.add(new Object[] { "X-Del: some value with a \u007f DEL character\r\n\r\n" });
+        parameterSets.add(new Object[] { "X-Cr: some value with a bare \r CR character\r\n\r\n" });
+        parameterSets.add(new Object[] { "X-Cr: value ending with CR CR\r\r\n\r\n" });
+
+        return parameterSets;
+    }
+
+    @Parameter(0)
+    public String headers;
+
+
+    @Test
+    public void testSwarScanningMatchesByteByByte() throws IOException {
+        byte[] data = headers.getBytes(StandardCharsets.ISO_8859_1);
+        String expected = parse(data, data.length, false);
+        for (int chunk = 1; chunk <= data.length; chunk++) {
+            Assert.assertEquals("Chunk size [" + chunk + "]", expected, parse(data, chunk, false));
+            Assert.assertEquals("Chunk size [" + chunk + "]", expected, parse(data, chunk, true));
+        }
+    }
+
+
+    private static String parse(byte[] data, int chunk, boolean swarScanning) throws IOException {
+        MimeHeaders mimeHeaders = new MimeHeaders();
+        Source source = new Source(data, chunk);
+        HttpHeaderParser parser = new HttpHeaderParser(source, mimeHeaders, true, swarScanning);
+        StringBuilder result = new StringBuilder();
+        try {
+            HeaderParseStatus status;
+            do {
+                status = parser.parseHeader();
+                if (status == HeaderParseStatus.NEED_MORE_DATA) {
+                    result.append("Incomplete\n");
+                    break;
+                }
+            } while (status != HeaderParseStatus.DONE);
+        } catch (IllegalArgumentException iae) {
+            result.append("IAE: ").append(iae.getMessage()).append('\n');
+        }
+        for (int i = 0; i < mimeHeaders.size(); i++) {
+            result.append('[').append(mimeHeaders.getName(i)).append("]=[").append(mimeHeaders.getValue(i))
+                    .append("]\n");
+        }
+        return result.toString();
+    }
+
+
+    private static class Source implements HeaderDataSource {
+
+        private final ByteBuffer buffer;
+        private final int chunk;
+
+        Source(byte[] data, int chunk) {
+            // Copy the data as the parser modifies the buffer
+            this.buffer = ByteBuffer.wrap(data.clone());
+            this.buffer.limit(0);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public boolean fillHeaderBuffer() throws IOException {
+            if (buffer.limit() == buffer.capacity()) {
+                return false;
+            }
+            buffer.limit(Math.min(buffer.capacity(), buffer.limit() + chunk));
+            return true;
+        }
+
+        @Override
+        public ByteBuffer getHeaderByteBuffer() {
+            return buffer;
+        }
+    }
+}
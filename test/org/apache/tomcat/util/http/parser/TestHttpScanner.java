@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHttpScanner {
+
+    private static final String TOKEN = "Accept-Encoding_X!#$%&'*+.^`|~09azAZ";
+
+
+    @Test
+    public void testSkipTokenEveryByte() {
+        // Place every possible byte at every position of a 20 byte token run
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 20; i++) {
+                byte[] buf = TOKEN.substring(0, 20).getBytes(StandardCharsets.ISO_8859_1);
+                buf[i] = (byte) b;
+                int expected = HttpParser.isToken(b) ? 20 : i;
+                Assert.assertEquals("Byte [" + b + "] at [" + i + "]", expected, HttpScanner.skipToken(buf, 0, 20));
+            }
+        }
+    }
+
+
+    @Test
+    public void testSkipTokenToLowerCase() {
+        byte[] buf = (TOKEN + ": value").getBytes(StandardCharsets.ISO_8859_1);
+        int end = HttpScanner.skipTokenToLowerCase(buf, 0, buf.length);
+        Assert.assertEquals(TOKEN.length(), end);
+        Assert.assertEquals("accept-encoding_x!#$%&'*+.^`|~09azaz: value",
+                new String(buf, StandardCharsets.ISO_8859_1));
+    }
+
+
+    @Test
+    public void testSkipTokenToLowerCaseAllCharacters() {
+        // All the token characters, in strides and in the tail
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < 128; c++) {
+            if (HttpParser.isToken(c)) {
+                sb.append((char) c);
+            }
+        }
+        String tokens = sb.toString();
+        for (int offset = 0; offset < 8; offset++) {
+            byte[] buf = ("        ".substring(offset) + tokens).getBytes(StandardCharsets.ISO_8859_1);
+            int start = 8 - offset;
+            Assert.assertEquals(buf.length, HttpScanner.skipTokenToLowerCase(buf, start, buf.length));
+            Assert.assertEquals(tokens.toLowerCase(), new String(buf, start, buf.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+    }
+
+
+    @Test
+    public void testSkipNonControlEveryByte() {
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 20; i++) {
+                byte[] buf = new byte[20];
+                Arrays.fill(buf, (byte) ' ');
+                buf[i] = (byte) b;
+                int expected = HttpParser.isControl(b) ? i : 20;
+                Assert.assertEquals("Byte [" + b + "] at [" + i + "]", expected,
+                        HttpScanner.skipNonControl(buf, 0, 20));
+            }
+        }
+    }
+
+
+    @Test
+    public void testFirstMatchAfterCarry() {
+        // 0x00 generates a borrow into the following byte.
+        // The first match must still be reported accurately.
+        byte[] buf = new byte[] { 'a', 'b', 0x00, 0x7F, 'c', 'd', 'e', 'f', 'g' };
+        Assert.assertEquals(2, HttpScanner.skipNonControl(buf, 0, buf.length));
+    }
+
+
+    @Test
+    public void testRange() {
+        byte[] buf = "GET /index.html HTTP/1.1".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(3, HttpScanner.skipToken(buf, 0, buf.length));
+        Assert.assertEquals(buf.length, HttpScanner.skipNonControl(buf, 4, buf.length));
+        Assert.assertEquals(10, HttpScanner.skipNonControl(buf, 4, 10));
+        Assert.assertEquals(4, HttpScanner.skipNonControl(buf, 4, 4));
+    }
+}
@@ -29,6 +29,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
 
+import org.apache.tomcat.util.buf.ByteBufferPool;
+
 
 @RunWith(Parameterized.class)
 public class TestSocketBufferHandler {
@@ -48,6 +50,66 @@ public class TestSocketBufferHandler {
     public boolean direct;
 
 
+    @Test
+    public void testSharedBufferPool() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        SocketBufferHandler sbh = new SocketBufferHandler(2048, 2048, direct, pool);
+        Assert.assertEquals(direct, sbh.getReadBuffer().isDirect());
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put(getBytes("AB"));
+        sbh.expand(4096);
+        Assert.assertEquals(4096, sbh.getReadBuffer().capacity());
+        Assert.assertEquals(4096, sbh.getWriteBuffer().capacity());
+        validate(sbh, "AB");
+
+        long pooledBytes = pool.getPooledBytes();
+        sbh.free();
+        Assert.assertEquals(pooledBytes + 8192, pool.getPooledBytes());
+    }
+
+
+    @Test
+    public void testReleaseBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(-1);
+        SocketBufferHandler sbh = new SocketBufferHandler(2048, 2048, direct, pool);
+
+        sbh.configureReadBufferForWrite();
+        sbh.getReadBuffer().put(getBytes("AB"));
+        // Can't release buffers that contain data
+        Assert.assertFalse(sbh.releaseBuffers());
+        validate(sbh, "AB");
+
+        long pooledBytes = pool.getPooledBytes();
+        Assert.assertTrue(sbh.releaseBuffers());
+        Assert.assertTrue(sbh.isBuffersReleased());
+        Assert.assertEquals(0, sbh.getAllocatedBytes());
+        Assert.assertEquals(pooledBytes + 4096, pool.getPooledBytes());
+        Assert.assertTrue(sbh.isReadBufferEmpty());
+        Assert.assertTrue(sbh.isWriteBufferEmpty());
+
+        // Buffers are re-acquired on use
+        sbh.unReadReadBuffer(ByteBuffer.wrap(getBytes("WXYZ")));
+        Assert.assertFalse(sbh.isBuffersReleased());
+        Assert.assertEquals(4096, sbh.getAllocatedBytes());
+        Assert.assertEquals(pooledBytes, pool.getPooledBytes());
+        validate(sbh, "WXYZ");
+    }
+
+
+    @Test
+    public void testReleaseBuffersNoPool() {
+        SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct);
+        sbh.expand(16);
+        Assert.assertTrue(sbh.releaseBuffers());
+        Assert.assertEquals(0, sbh.getAllocatedBytes());
+        sbh.reset();
+        Assert.assertTrue(sbh.isWriteBufferWritable());
+        Assert.assertEquals(32, sbh.getAllocatedBytes());
+        Assert.assertEquals(direct, sbh.getWriteBuffer().isDirect());
+    }
+
+
     @Test
     public void testReturnWhenEmpty() {
         SocketBufferHandler sbh = new SocketBufferHandler(8, 8, direct);
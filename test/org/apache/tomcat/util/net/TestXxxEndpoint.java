@@ -18,12 +18,17 @@ package org.apache.tomcat.util.net;
 
 import java.io.File;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketAddress;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -31,6 +36,7 @@ import org.junit.Test;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.modeler.Registry;
 
 /**
  * Test case for the Endpoint implementations. The testing framework will ensure
@@ -115,4 +121,82 @@ public class TestXxxEndpoint extends TomcatBaseTest {
 
         Assert.assertTrue((new String(response.array(), 0, response.position()).startsWith("HTTP/1.1 200")));
     }
+
+    @Test
+    public void testMultiplePollers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector c = tomcat.getConnector();
+
+        if (!c.getProtocolHandlerClassName().contains("NioProtocol")) {
+            // Only the NIO connector supports multiple pollers
+            return;
+        }
+
+        Assert.assertTrue(c.setProperty("pollerCount", "3"));
+        tomcat.start();
+
+        // Enough connections to use every poller more than once
+        for (int i = 0; i < 6; i++) {
+            ByteBuffer response = ByteBuffer.allocate(1024);
+            try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", getPort()))) {
+                socket.write(ByteBuffer.wrap("OPTIONS * HTTP/1.0\r\n\r\n".getBytes()));
+                socket.read(response);
+            }
+            Assert.assertTrue((new String(response.array(), 0, response.position()).startsWith("HTTP/1.1 200")));
+        }
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> pollerNames = mbeanServer.queryNames(new ObjectName("Tomcat:type=Poller,*"), null);
+        Assert.assertEquals(3, pollerNames.size());
+        long registerCount = 0;
+        for (ObjectName pollerName : pollerNames) {
+            long count = ((Long) mbeanServer.getAttribute(pollerName, "registerCount")).longValue();
+            Assert.assertTrue(count > 0);
+            registerCount += count;
+        }
+        Assert.assertEquals(6, registerCount);
+
+        tomcat.getConnector().stop();
+        Assert.assertEquals(0, mbeanServer.queryNames(new ObjectName("Tomcat:type=Poller,*"), null).size());
+    }
+
+    @Test
+    public void testReleaseIdleBuffers() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector c = tomcat.getConnector();
+
+        if (!c.getProtocolHandlerClassName().contains("NioProtocol")) {
+            // Only the NIO connector supports releasing idle buffers
+            return;
+        }
+
+        Assert.assertTrue(c.setProperty("releaseIdleBuffers", "true"));
+        Assert.assertTrue(c.setProperty("sharedBufferPoolSize", "-1"));
+        tomcat.start();
+
+        MBeanServer mbeanServer = Registry.getRegistry(null).getMBeanServer();
+        Set<ObjectName> threadPoolNames = mbeanServer.queryNames(new ObjectName("Tomcat:type=ThreadPool,*"), null);
+        Assert.assertEquals(1, threadPoolNames.size());
+        ObjectName threadPoolName = threadPoolNames.iterator().next();
+
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", getPort()))) {
+            for (int i = 0; i < 2; i++) {
+                ByteBuffer response = ByteBuffer.allocate(1024);
+                socket.write(ByteBuffer.wrap("OPTIONS * HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes()));
+                socket.read(response);
+                Assert.assertTrue((new String(response.array(), 0, response.position()).startsWith("HTTP/1.1 200")));
+
+                // The connection is now idle and should not hold any buffers
+                long idleBytes = -1;
+                int count = 0;
+                while (idleBytes != 0 && count < 50) {
+                    Thread.sleep(100);
+                    idleBytes = ((Long) mbeanServer.getAttribute(threadPoolName,
+                            "idleConnectionBufferBytes")).longValue();
+                    count++;
+                }
+                Assert.assertEquals(0, idleBytes);
+            }
+        }
+    }
 }
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -150,6 +151,98 @@ public class TestPerMessageDeflate {
         Assert.assertEquals(mp2, compressedParts.get(1));
     }
 
+
+    @Test
+    public void testPooledWithoutContextTakeover() throws IOException {
+        List<Parameter> parameters = new ArrayList<>();
+        parameters.add(new WsExtensionParameter("server_no_context_takeover", null));
+        parameters.add(new WsExtensionParameter("client_no_context_takeover", null));
+        List<List<Parameter>> preferences = new ArrayList<>();
+        preferences.add(parameters);
+
+        PerMessageDeflateResources resources = new PerMessageDeflateResources(4);
+
+        PerMessageDeflate perMessageDeflateTx = PerMessageDeflate.negotiate(preferences, true, resources);
+        perMessageDeflateTx.setNext(new TesterTransformation());
+
+        byte[] data = "Hello, World! Hello, World! Hello, World!".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 2; i++) {
+            MessagePart mp = new MessagePart(true, 0, Constants.OPCODE_TEXT, ByteBuffer.wrap(data), null, null, -1);
+            List<MessagePart> compressedParts = perMessageDeflateTx.sendMessagePart(Collections.singletonList(mp));
+
+            // The Deflater is returned to the pool at the end of each message
+            Assert.assertEquals(0, resources.getDeflaterCount());
+            Assert.assertEquals(1, resources.getIdleDeflaterCount());
+
+            MessagePart compressedPart = compressedParts.get(0);
+            PerMessageDeflate perMessageDeflateRx = PerMessageDeflate.negotiate(preferences, true, resources);
+            perMessageDeflateRx.setNext(new TesterTransformation(compressedPart.getPayload()));
+
+            ByteBuffer received = ByteBuffer.allocate(8192);
+            TransformationResult tr = perMessageDeflateRx.getMoreData(compressedPart.getOpCode(),
+                    compressedPart.isFin(), compressedPart.getRsv(), received);
+
+            Assert.assertEquals(TransformationResult.END_OF_FRAME, tr);
+            Assert.assertArrayEquals(data, Arrays.copyOf(received.array(), received.position()));
+            Assert.assertEquals(0, resources.getInflaterCount());
+            Assert.assertEquals(1, resources.getIdleInflaterCount());
+            perMessageDeflateRx.close();
+        }
+
+        Assert.assertEquals(0, resources.getContextTakeoverSessionCount());
+        perMessageDeflateTx.close();
+        Assert.assertEquals(0, resources.getDeflaterCount());
+        Assert.assertEquals(0, resources.getInflaterCount());
+
+        resources.clear();
+        Assert.assertEquals(0, resources.getNativeMemoryEstimate());
+    }
+
+
+    @Test
+    public void testMaxContextTakeoverSessions() throws IOException {
+        List<Parameter> parameters = Collections.emptyList();
+        List<List<Parameter>> preferences = new ArrayList<>();
+        preferences.add(parameters);
+
+        PerMessageDeflateResources resources = new PerMessageDeflateResources(4);
+        resources.setMaxContextTakeoverSessions(1);
+
+        PerMessageDeflate first = PerMessageDeflate.negotiate(preferences, true, resources);
+        first.setNext(new TesterTransformation());
+        Assert.assertTrue(first.getExtensionResponse().getParameters().isEmpty());
+        Assert.assertEquals(1, resources.getContextTakeoverSessionCount());
+
+        // Limit reached so no context takeover is required in both directions
+        PerMessageDeflate second = PerMessageDeflate.negotiate(preferences, true, resources);
+        second.setNext(new TesterTransformation());
+        List<Parameter> responseParameters = second.getExtensionResponse().getParameters();
+        Assert.assertEquals(2, responseParameters.size());
+        Assert.assertEquals("server_no_context_takeover", responseParameters.get(0).getName());
+        Assert.assertEquals("client_no_context_takeover", responseParameters.get(1).getName());
+        Assert.assertEquals(1, resources.getContextTakeoverRefusedCount());
+
+        // The dedicated Deflater is retained between messages
+        MessagePart mp = new MessagePart(true, 0, Constants.OPCODE_BINARY, ByteBuffer.wrap(new byte[16]), null,
+                null, -1);
+        first.sendMessagePart(Collections.singletonList(mp));
+        Assert.assertEquals(1, resources.getDeflaterCount());
+        Assert.assertTrue(resources.getNativeMemoryEstimate() > 0);
+
+        first.close();
+        second.close();
+        Assert.assertEquals(0, resources.getContextTakeoverSessionCount());
+        Assert.assertEquals(0, resources.getDeflaterCount());
+
+        // Capacity is available again
+        PerMessageDeflate third = PerMessageDeflate.negotiate(preferences, true, resources);
+        third.setNext(new TesterTransformation());
+        Assert.assertTrue(third.getExtensionResponse().getParameters().isEmpty());
+        third.close();
+    }
+
+
     /*
      * Minimal implementation to enable other transformations to be tested. It is NOT robust.
      */
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.websocket.ClientEndpointConfig;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.CloseReason.CloseCodes;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.Extension;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import jakarta.websocket.WebSocketContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.websocket.server.Constants;
+import org.apache.tomcat.websocket.server.WsContextListener;
+import org.apache.tomcat.websocket.server.WsServerContainer;
+
+public class TestWsBroadcast extends WebSocketBaseTest {
+
+    private static final String PATH = "/broadcast";
+
+    private static volatile WsServerContainer serverContainer;
+    private static final Set<Session> serverSessions = ConcurrentHashMap.newKeySet();
+
+
+    @Test
+    public void testBroadcast() throws Exception {
+        startServer(Config.class);
+
+        List<Extension.Parameter> noContextTakeover = new ArrayList<>();
+        noContextTakeover.add(new WsExtensionParameter("server_no_context_takeover", null));
+        WsExtension sharedCompression = new WsExtension(PerMessageDeflate.NAME);
+        sharedCompression.getParameters().addAll(noContextTakeover);
+
+        List<Extension> none = new ArrayList<>();
+        List<Extension> contextTakeover = List.of(new WsExtension(PerMessageDeflate.NAME));
+        List<Extension> shared = List.of(sharedCompression);
+
+        List<Client> clients = new ArrayList<>();
+        for (List<Extension> extensions : List.of(none, contextTakeover, shared)) {
+            clients.add(connect(extensions, 3));
+        }
+        waitForServerSessions(3);
+
+        String text = "Hello, broadcast! ".repeat(100);
+        byte[] binary = new byte[5000];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) (i % 7);
+        }
+
+        CountDownLatch sent = new CountDownLatch(6);
+        Queue<SendResult> results = new ConcurrentLinkedQueue<>();
+        serverContainer.broadcast(QueuedMessage.text(text), serverSessions, result -> {
+            results.add(result);
+            sent.countDown();
+        });
+        serverContainer.broadcast(QueuedMessage.binary(ByteBuffer.wrap(binary)), serverSessions, result -> {
+            results.add(result);
+            sent.countDown();
+        });
+        Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+        for (SendResult result : results) {
+            Assert.assertTrue(result.isOK());
+        }
+
+        // Normal messages must still be compressed correctly after a broadcast
+        for (Session session : serverSessions) {
+            session.getBasicRemote().sendText(text);
+        }
+
+        for (Client client : clients) {
+            Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(text, client.messages.poll());
+            Assert.assertArrayEquals(binary, (byte[]) client.messages.poll());
+            Assert.assertEquals(text, client.messages.poll());
+            client.session.close();
+        }
+    }
+
+
+    @Test
+    public void testDropNewest() throws Exception {
+        Client client = doTestOverflow(SendQueueOverflowPolicy.DROP_NEWEST, 1);
+        Assert.assertEquals("m1", client.messages.poll());
+        client.session.close();
+    }
+
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Client client = doTestOverflow(SendQueueOverflowPolicy.DROP_OLDEST, 1);
+        Assert.assertEquals("m3", client.messages.poll());
+        client.session.close();
+    }
+
+
+    @Test
+    public void testClose() throws Exception {
+        Client client = doTestOverflow(SendQueueOverflowPolicy.CLOSE, 0);
+        Assert.assertEquals(CloseCodes.VIOLATED_POLICY, client.closeReason.getCloseCode());
+    }
+
+
+    private Client doTestOverflow(SendQueueOverflowPolicy overflowPolicy, int expectedBroadcasts) throws Exception {
+        startServer(Config.class);
+
+        Client client = connect(new ArrayList<>(), 1 + expectedBroadcasts);
+        waitForServerSessions(1);
+        Session serverSession = serverSessions.iterator().next();
+        serverSession.getUserProperties().put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_MAX_MESSAGES_PROPERTY,
+                Integer.valueOf(1));
+        serverSession.getUserProperties()
+                .put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_OVERFLOW_POLICY_PROPERTY, overflowPolicy);
+
+        // Part way through a message so the broadcast messages have to wait
+        serverSession.getBasicRemote().sendText("part1", false);
+
+        Queue<SendResult> failures = new ConcurrentLinkedQueue<>();
+        for (String message : List.of("m1", "m2", "m3")) {
+            serverContainer.broadcast(QueuedMessage.text(message), serverSessions, result -> {
+                if (!result.isOK()) {
+                    failures.add(result);
+                }
+            });
+        }
+
+        if (overflowPolicy == SendQueueOverflowPolicy.CLOSE) {
+            Assert.assertTrue(client.closed.await(10, TimeUnit.SECONDS));
+            return client;
+        }
+
+        Assert.assertEquals(2, failures.size());
+        serverSession.getBasicRemote().sendText("part2", true);
+
+        Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("part1part2", client.messages.poll());
+        return client;
+    }
+
+
+    private Client connect(List<Extension> extensions, int messageCount) throws Exception {
+        WebSocketContainer wsContainer = ContainerProvider.getWebSocketContainer();
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create().extensions(extensions).build();
+        Client client = new Client(messageCount);
+        client.session = wsContainer.connectToServer(client, config, new URI("ws://localhost:" + getPort() + PATH));
+        return client;
+    }
+
+
+    private static void waitForServerSessions(int count) throws InterruptedException {
+        int wait = 0;
+        while (serverSessions.size() < count && wait < 100) {
+            Thread.sleep(100);
+            wait++;
+        }
+        Assert.assertEquals(count, serverSessions.size());
+    }
+
+
+    public static class Config extends WsContextListener {
+
+        @Override
+        public void contextInitialized(ServletContextEvent sce) {
+            super.contextInitialized(sce);
+            serverSessions.clear();
+            serverContainer = (WsServerContainer) sce.getServletContext()
+                    .getAttribute(Constants.SERVER_CONTAINER_SERVLET_CONTEXT_ATTRIBUTE);
+            try {
+                serverContainer.addEndpoint(ServerEndpointConfig.Builder.create(ServerSessions.class, PATH).build());
+            } catch (DeploymentException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+
+    public static class ServerSessions extends Endpoint {
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            serverSessions.add(session);
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            serverSessions.remove(session);
+        }
+    }
+
+
+    private static class Client extends Endpoint {
+
+        private final CountDownLatch latch;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final Queue<Object> messages = new ConcurrentLinkedQueue<>();
+        private volatile Session session;
+        private volatile CloseReason closeReason;
+
+        Client(int messageCount) {
+            latch = new CountDownLatch(messageCount);
+        }
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            session.addMessageHandler(String.class, (MessageHandler.Whole<String>) message -> {
+                messages.add(message);
+                latch.countDown();
+            });
+            session.addMessageHandler(ByteBuffer.class, (MessageHandler.Whole<ByteBuffer>) message -> {
+                byte[] bytes = new byte[message.remaining()];
+                message.get(bytes);
+                messages.add(bytes);
+                latch.countDown();
+            });
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            this.closeReason = closeReason;
+            closed.countDown();
+        }
+    }
+}
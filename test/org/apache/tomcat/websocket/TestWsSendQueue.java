@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.websocket;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.websocket.ClientEndpointConfig;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import jakarta.websocket.WebSocketContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.websocket.server.Constants;
+import org.apache.tomcat.websocket.server.WsContextListener;
+import org.apache.tomcat.websocket.server.WsServerContainer;
+
+public class TestWsSendQueue extends WebSocketBaseTest {
+
+    private static final String PATH = "/sendQueue";
+
+    private static volatile WsServerContainer serverContainer;
+    private static volatile CountDownLatch serverSessionLatch;
+    private static volatile WsSession serverSession;
+
+
+    @Test
+    public void testQueueAsyncSends() throws Exception {
+        Client client = connect(100);
+        serverSession.getUserProperties().put(org.apache.tomcat.websocket.Constants.QUEUE_ASYNC_SENDS_PROPERTY,
+                Boolean.TRUE);
+        serverSession.getUserProperties()
+                .put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_MAX_MESSAGES_PROPERTY, Integer.valueOf(-1));
+
+        // Without the send queue, sending a message before the previous one has completed fails
+        CountDownLatch sent = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            serverSession.getAsyncRemote().sendText("message" + i, result -> {
+                if (result.isOK()) {
+                    sent.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("message" + i, client.messages.poll());
+        }
+        Assert.assertEquals(0, serverSession.getSendQueueLength());
+        Assert.assertEquals(0, serverContainer.getSendQueueStatistics().getQueuedMessageCount());
+
+        client.session.close();
+    }
+
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        Client client = connect(2);
+        serverSession.getUserProperties()
+                .put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_MAX_BYTES_PROPERTY, Long.valueOf(10));
+        serverSession.getUserProperties().put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_OVERFLOW_POLICY_PROPERTY,
+                SendQueueOverflowPolicy.DROP_OLDEST);
+
+        Queue<SendResult> failures = queueWhilePartial(List.of("aaaaa", "bbbbb", "cccccc"));
+
+        // Both earlier messages have to be dropped to make space for the last one
+        Assert.assertEquals(2, failures.size());
+        Assert.assertEquals(1, serverSession.getSendQueueLength());
+        Assert.assertEquals(6, serverSession.getSendQueueBytes());
+        SendQueueStatistics statistics = serverContainer.getSendQueueStatistics();
+        Assert.assertEquals(1, statistics.getQueuingSessionCount());
+        Assert.assertEquals(6, statistics.getQueuedBytes());
+        Assert.assertEquals(10, statistics.getMaxSessionQueuedBytes());
+        Assert.assertEquals(2, statistics.getDroppedMessageCount());
+
+        serverSession.getBasicRemote().sendText("part2", true);
+
+        Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("part1part2", client.messages.poll());
+        Assert.assertEquals("cccccc", client.messages.poll());
+        Assert.assertEquals(0, statistics.getQueuingSessionCount());
+        Assert.assertEquals(0, statistics.getQueuedBytes());
+
+        client.session.close();
+    }
+
+
+    @Test
+    public void testCoalesce() throws Exception {
+        Client client = connect(2);
+        serverSession.getUserProperties()
+                .put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_MAX_MESSAGES_PROPERTY, Integer.valueOf(2));
+        serverSession.getUserProperties().put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_OVERFLOW_POLICY_PROPERTY,
+                SendQueueOverflowPolicy.COALESCE.name());
+
+        Queue<SendResult> failures = queueWhilePartial(List.of("m1", "m2", "m3"));
+
+        Assert.assertEquals(2, failures.size());
+        Assert.assertEquals(2, serverContainer.getSendQueueStatistics().getCoalescedMessageCount());
+        Assert.assertEquals(0, serverContainer.getSendQueueStatistics().getDroppedMessageCount());
+
+        serverSession.getBasicRemote().sendText("part2", true);
+
+        Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("part1part2", client.messages.poll());
+        Assert.assertEquals("m3", client.messages.poll());
+
+        client.session.close();
+    }
+
+
+    @Test
+    public void testCompletionOrder() throws Exception {
+        Client client = connect(1001);
+        serverSession.getUserProperties()
+                .put(org.apache.tomcat.websocket.Constants.SEND_QUEUE_MAX_MESSAGES_PROPERTY, Integer.valueOf(-1));
+
+        serverSession.getBasicRemote().sendText("part1", false);
+
+        // Each handler must be notified before the next queued message is started
+        Queue<Integer> completed = new ConcurrentLinkedQueue<>();
+        CountDownLatch sent = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            Integer id = Integer.valueOf(i);
+            serverSession.sendQueued(QueuedMessage.text("m" + i), result -> {
+                if (result.isOK()) {
+                    completed.add(id);
+                    sent.countDown();
+                }
+            });
+        }
+
+        serverSession.getBasicRemote().sendText("part2", true);
+
+        Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(client.latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), completed.poll());
+        }
+
+        client.session.close();
+    }
+
+
+    private Queue<SendResult> queueWhilePartial(List<String> messages) throws Exception {
+        // Part way through a message so the queued messages have to wait
+        serverSession.getBasicRemote().sendText("part1", false);
+
+        Queue<SendResult> failures = new ConcurrentLinkedQueue<>();
+        for (String message : messages) {
+            serverSession.sendQueued(QueuedMessage.text(message), result -> {
+                if (!result.isOK()) {
+                    failures.add(result);
+                }
+            });
+        }
+        return failures;
+    }
+
+
+    private Client connect(int messageCount) throws Exception {
+        serverSessionLatch = new CountDownLatch(1);
+        startServer(Config.class);
+
+        WebSocketContainer wsContainer = ContainerProvider.getWebSocketContainer();
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create().extensions(new ArrayList<>()).build();
+        Client client = new Client(messageCount);
+        client.session = wsContainer.connectToServer(client, config, new URI("ws://localhost:" + getPort() + PATH));
+
+        Assert.assertTrue(serverSessionLatch.await(10, TimeUnit.SECONDS));
+        return client;
+    }
+
+
+    public static class Config extends WsContextListener {
+
+        @Override
+        public void contextInitialized(ServletContextEvent sce) {
+            super.contextInitialized(sce);
+            serverContainer = (WsServerContainer) sce.getServletContext()
+                    .getAttribute(Constants.SERVER_CONTAINER_SERVLET_CONTEXT_ATTRIBUTE);
+            try {
+                serverContainer.addEndpoint(ServerEndpointConfig.Builder.create(ServerSession.class, PATH).build());
+            } catch (DeploymentException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+
+    public static class ServerSession extends Endpoint {
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            serverSession = (WsSession) session;
+            serverSessionLatch.countDown();
+        }
+    }
+
+
+    private static class Client extends Endpoint {
+
+        private final CountDownLatch latch;
+        private final Queue<String> messages = new ConcurrentLinkedQueue<>();
+        private volatile Session session;
+
+        Client(int messageCount) {
+            latch = new CountDownLatch(messageCount);
+        }
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            session.addMessageHandler(String.class, (MessageHandler.Whole<String>) message -> {
+                messages.add(message);
+                latch.countDown();
+            });
+        }
+    }
+}
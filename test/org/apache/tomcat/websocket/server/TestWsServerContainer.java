@@ -18,6 +18,7 @@ package org.apache.tomcat.websocket.server;
 
 import java.lang.reflect.Field;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,8 +37,10 @@ import jakarta.websocket.Encoder;
 import jakarta.websocket.HandshakeResponse;
 import jakarta.websocket.Session;
 import jakarta.websocket.WebSocketContainer;
+import jakarta.websocket.server.HandshakeRequest;
 import jakarta.websocket.server.ServerEndpoint;
 import jakarta.websocket.server.ServerEndpointConfig;
+import jakarta.websocket.server.ServerEndpointConfig.Configurator;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -117,6 +120,51 @@ public class TestWsServerContainer extends WebSocketBaseTest {
     }
 
 
+    @Test
+    public void testModifyHandshakeFailureReleasesContextTakeover() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        // No file system docBase required
+        Context ctx = getProgrammaticRootContext();
+        ctx.addApplicationListener(FailingHandshakeConfig.class.getName());
+        Tomcat.addServlet(ctx, "default", new DefaultServlet());
+        ctx.addServletMappingDecoded("/", "default");
+
+        tomcat.start();
+
+        TesterWsClient client = new TesterWsClient("localhost", getPort());
+        String req = client.createUpgradeRequest(FailingHandshakeConfig.PATH);
+        // Offer permessage-deflate with context takeover in both directions
+        req = req.substring(0, req.length() - 2) + "Sec-WebSocket-Extensions: permessage-deflate\r\n\r\n";
+        client.write(req.getBytes(StandardCharsets.UTF_8));
+        int rc = client.readUpgradeResponse();
+        client.closeSocket();
+
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, rc);
+
+        WsServerContainer sc = (WsServerContainer) ctx.getServletContext()
+                .getAttribute(org.apache.tomcat.websocket.server.Constants.SERVER_CONTAINER_SERVLET_CONTEXT_ATTRIBUTE);
+        Assert.assertEquals(0, sc.getPerMessageDeflateResources().getContextTakeoverSessionCount());
+    }
+
+
+    public static class FailingHandshakeConfig extends TesterEndpointConfig {
+
+        public static final String PATH = "/failingHandshake";
+
+        @Override
+        protected ServerEndpointConfig getServerEndpointConfig() {
+            return ServerEndpointConfig.Builder.create(TesterEchoServer.Basic.class, PATH)
+                    .configurator(new Configurator() {
+                        @Override
+                        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request,
+                                HandshakeResponse response) {
+                            throw new IllegalStateException();
+                        }
+                    }).build();
+        }
+    }
+
+
     @Test
     public void testSpecExample3() throws Exception {
         WsServerContainer sc = new WsServerContainer(new TesterServletContext());